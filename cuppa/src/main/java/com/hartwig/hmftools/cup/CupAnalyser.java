@@ -1,5 +1,6 @@
 package com.hartwig.hmftools.cup;
 
+import static com.hartwig.hmftools.common.utils.TaskExecutor.executeTasks;
 import static com.hartwig.hmftools.common.utils.io.FileWriterUtils.closeBufferedWriter;
 import static com.hartwig.hmftools.common.utils.io.FileWriterUtils.createBufferedWriter;
 import static com.hartwig.hmftools.cup.CuppaConfig.LOG_DEBUG;
@@ -22,9 +23,12 @@ import java.io.BufferedWriter;
 import java.io.IOException;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 import com.google.common.collect.Lists;
+import com.hartwig.hmftools.common.utils.PerformanceCounter;
 import com.hartwig.hmftools.cup.common.ClassifierType;
 import com.hartwig.hmftools.cup.common.CuppaClassifier;
 import com.hartwig.hmftools.cup.common.SampleData;
@@ -57,6 +61,9 @@ public class CupAnalyser
     private BufferedWriter mSampleDataWriter;
     private BufferedWriter mSampleSimilarityWriter;
 
+    private final List<PerformanceCounter> mClassifierPerfCounters; // per classifier, merged from each task
+    private final AtomicInteger mProcessedCount;
+
     public CupAnalyser(final CommandLine cmd)
     {
         mConfig = new CuppaConfig(cmd);
@@ -84,6 +91,10 @@ public class CupAnalyser
 
         mSampleDataWriter = null;
         mSampleSimilarityWriter = null;
+
+        mClassifierPerfCounters = Lists.newArrayList();
+        mClassifiers.forEach(x -> mClassifierPerfCounters.add(new PerformanceCounter(x.categoryType().toString())));
+        mProcessedCount = new AtomicInteger();
     }
 
     private void loadSampleData(final CommandLine cmd)
@@ -121,37 +132,32 @@ public class CupAnalyser
 
         initialiseOutputFiles();
 
+        boolean allProcessed = true;
+
         if(mSampleDataCache.SpecificSample != null)
         {
             final SampleData specificSample = mSampleDataCache.SpecificSample;
 
             CUP_LOGGER.info("sample({}) running CUP analysis", specificSample.Id);
-            processSample(specificSample);
+            processSamples(Lists.newArrayList(specificSample), mClassifierPerfCounters);
         }
         else
         {
-            int sampleCount = 0;
-            for(SampleData sample : mSampleDataCache.SampleDataList)
-            {
-                CUP_LOGGER.debug("sample({}) running CUP analysis", sample.Id);
-
-                processSample(sample);
-
-                if(!allClassifiersValid())
-                    break;
-
-                ++sampleCount;
-
-                if((sampleCount % 100) == 0)
-                {
-                    CUP_LOGGER.info("processed {} samples", sampleCount);
-                }
-            }
+            allProcessed = processSampleList();
         }
 
         closeBufferedWriter(mSampleDataWriter);
         closeBufferedWriter(mSampleSimilarityWriter);
 
+        if(!allProcessed)
+        {
+            CUP_LOGGER.error("CUP analysis failed");
+            return;
+        }
+
+        if(mSampleDataCache.isMultiSample())
+            mClassifierPerfCounters.forEach(x -> x.logStats());
+
         CUP_LOGGER.info("CUP analysis complete");
     }
 
@@ -170,14 +176,96 @@ public class CupAnalyser
         return allInvalid;
     }
 
-    private void processSample(final SampleData sample)
+    private boolean processSampleList()
+    {
+        // classifiers' reference data is only read once loaded, so samples are dealt in turn to each task - keeping samples in
+        // processing order across the tasks - and each task times the classifiers with its own counters
+        int threadCount = mConfig.Threads;
+
+        if(threadCount > 1 && mConfig.DbAccess != null)
+        {
+            CUP_LOGGER.warn("sample data loaded from the database per sample, running single-threaded");
+            threadCount = 1;
+        }
+
+        final List<SampleData> samples = mSampleDataCache.SampleDataList;
+        int taskCount = Math.max(1, Math.min(threadCount, samples.size()));
+
+        final List<List<SampleData>> taskSamples = Lists.newArrayList();
+        final List<List<PerformanceCounter>> taskPerfCounters = Lists.newArrayList();
+
+        for(int t = 0; t < taskCount; ++t)
+        {
+            taskSamples.add(Lists.newArrayList());
+
+            final List<PerformanceCounter> perfCounters = Lists.newArrayList();
+            mClassifiers.forEach(x -> perfCounters.add(new PerformanceCounter(x.categoryType().toString())));
+            taskPerfCounters.add(perfCounters);
+        }
+
+        for(int i = 0; i < samples.size(); ++i)
+        {
+            taskSamples.get(i % taskCount).add(samples.get(i));
+        }
+
+        final List<Callable> tasks = Lists.newArrayList();
+
+        for(int t = 0; t < taskCount; ++t)
+        {
+            final List<SampleData> sampleList = taskSamples.get(t);
+            final List<PerformanceCounter> perfCounters = taskPerfCounters.get(t);
+            tasks.add(() -> processSamples(sampleList, perfCounters));
+        }
+
+        if(taskCount > 1)
+            CUP_LOGGER.info("classifying {} samples with {} threads", samples.size(), taskCount);
+
+        if(!executeTasks(tasks, threadCount, "Cuppa"))
+            return false;
+
+        for(final List<PerformanceCounter> perfCounters : taskPerfCounters)
+        {
+            for(int i = 0; i < perfCounters.size(); ++i)
+            {
+                mClassifierPerfCounters.get(i).merge(perfCounters.get(i));
+            }
+        }
+
+        return allClassifiersValid();
+    }
+
+    private long processSamples(final List<SampleData> samples, final List<PerformanceCounter> perfCounters)
+    {
+        for(SampleData sample : samples)
+        {
+            CUP_LOGGER.debug("sample({}) running CUP analysis", sample.Id);
+
+            processSample(sample, perfCounters);
+
+            if(mClassifiers.stream().anyMatch(x -> !x.isValid()))
+                break;
+
+            int sampleCount = mProcessedCount.incrementAndGet();
+
+            if((sampleCount % 100) == 0)
+            {
+                CUP_LOGGER.info("processed {} samples", sampleCount);
+            }
+        }
+
+        return (long)0;
+    }
+
+    private void processSample(final SampleData sample, final List<PerformanceCounter> perfCounters)
     {
         final List<SampleResult> allResults = Lists.newArrayList();
         final List<SampleSimilarity> similarities = Lists.newArrayList();
 
-        for(CuppaClassifier classifier : mClassifiers)
+        for(int i = 0; i < mClassifiers.size(); ++i)
         {
-            classifier.processSample(sample, allResults, similarities);
+            perfCounters.get(i).start();
+            mClassifiers.get(i).processSample(sample, allResults, similarities);
+            perfCounters.get(i).stop();
         }
 
         // combine all features into a single classifier
@@ -212,7 +300,14 @@ public class CupAnalyser
         if(classifierScoreResult != null)
             allResults.add(classifierScoreResult);
 
-        writeSampleData(sample, allResults);
+        writeSampleResults(sample, allResults, similarities);
+    }
+
+    private synchronized void writeSampleResults(
+            final SampleData sample, final List<SampleResult> results, final List<SampleSimilarity> similarities)
+    {
+        // each sample's results are written together, whichever task produced them
+        writeSampleData(sample, results);
         writeSampleSimilarities(sample, similarities);
     }
 
@@ -79,6 +79,7 @@ public class CuppaConfig
 
     public final String OutputDir;
     public final String OutputFileId;
+    public final int Threads;
 
     // config strings
     public static final String CATEGORIES = "categories";
@@ -116,6 +117,7 @@ public class CuppaConfig
     public static final String WRITE_CLASSIFIERS_ONLY = "write_classifiers_only";
 
     public static final String OUTPUT_FILE_ID = "output_id";
+    public static final String THREADS = "threads";
     public static final String LOG_DEBUG = "log_debug";
 
     public static final Logger CUP_LOGGER = LogManager.getLogger(CuppaConfig.class);
@@ -186,6 +188,8 @@ public class CuppaConfig
         WriteClassifiersOnly = cmd.hasOption(WRITE_CLASSIFIERS_ONLY);
 
         DbAccess = createDatabaseAccess(cmd);
+
+        Threads = Integer.parseInt(cmd.getOptionValue(THREADS, "1"));
     }
 
     private String getRefDataFile(final CommandLine cmd, final String configStr, final String defaultFilename)
@@ -257,6 +261,7 @@ public class CuppaConfig
         options.addOption(OUTPUT_DIR, true, "Path to output files");
         options.addOption(OUTPUT_FILE_ID, true, "Output file ID");
         options.addOption(LOG_DEBUG, false, "Sets log level to Debug, off by default");
+        options.addOption(THREADS, true, "Number of threads for classifying samples, default 1");
     }
 
 }
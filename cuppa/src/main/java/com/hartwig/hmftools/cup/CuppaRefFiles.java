@@ -22,4 +22,9 @@ public class CuppaRefFiles
     public static final String REF_FILE_GENE_EXP_CANCER = formatRefFilename("gene_exp_cancer");
     public static final String REF_FILE_GENE_EXP_SAMPLE = formatRefFilename("gene_exp_sample");
     public static final String REF_FILE_GENE_EXP_PERC = formatRefFilename("gene_exp_percentiles");
+
+    // statistics kept between incremental reference data builds
+    public static final String REF_STATE_FILE_SAMPLES = formatRefFilename("state_samples");
+    public static final String REF_STATE_FILE_CANCER_POS_FREQ_COUNTS = formatRefFilename("state_cancer_pos_freq_counts");
+    public static final String REF_STATE_FILE_GENE_EXP_CANCER = formatRefFilename("state_gene_exp_cancer");
 }
@@ -0,0 +1,158 @@
+package com.hartwig.hmftools.cup.common;
+
+import static java.lang.Math.min;
+
+import static com.hartwig.hmftools.common.stats.CosineSimilarity.unitVector;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.hartwig.hmftools.common.utils.Matrix;
+
+// cosine similarities of samples against a fixed set of reference vectors - the references are scaled to unit length once, and
+// samples are scored a batch at a time, in the order they will be processed, with a single matrix multiply per batch
+public class RefSimilarities
+{
+    private final Matrix mRefVectors; // a unit-length row per reference
+    private final Matrix mSampleCounts; // a column per sample
+    private final Map<String,Integer> mSampleCountsIndex;
+
+    private final List<String> mSampleOrder;
+    private final Map<String,Integer> mSampleOrderIndex;
+
+    private final Map<String,double[]> mSampleSimilarities; // computed but not yet taken
+    private final boolean[] mBatchComputed;
+    private final Object[] mBatchLocks;
+
+    public static final int SAMPLE_BATCH_SIZE = 64;
+
+    // samples are dealt to threads in turn, so a thread can still be working through the batch before the one being computed -
+    // rows left untaken by then are dropped, and recalculated if ever requested
+    private static final int RETAINED_BATCHES = 2;
+
+    public RefSimilarities(
+            final Matrix refCounts, final Matrix sampleCounts, final Map<String,Integer> sampleCountsIndex, final List<String> sampleOrder)
+    {
+        mRefVectors = new Matrix(refCounts.Cols, refCounts.Rows);
+
+        for(int r = 0; r < refCounts.Cols; ++r)
+        {
+            mRefVectors.setRow(r, unitVector(refCounts.getCol(r)));
+        }
+
+        mSampleCounts = sampleCounts;
+        mSampleCountsIndex = sampleCountsIndex;
+
+        mSampleOrder = sampleOrder;
+        mSampleOrderIndex = Maps.newHashMap();
+
+        for(int i = 0; i < sampleOrder.size(); ++i)
+        {
+            mSampleOrderIndex.put(sampleOrder.get(i), i);
+        }
+
+        mSampleSimilarities = new ConcurrentHashMap<>();
+
+        int batchCount = (sampleOrder.size() + SAMPLE_BATCH_SIZE - 1) / SAMPLE_BATCH_SIZE;
+        mBatchComputed = new boolean[batchCount];
+        mBatchLocks = new Object[batchCount];
+
+        for(int i = 0; i < batchCount; ++i)
+        {
+            mBatchLocks[i] = new Object();
+        }
+    }
+
+    public int refCount() { return mRefVectors.Rows; }
+    public int heldSimilarityCount() { return mSampleSimilarities.size(); }
+
+    // returns the sample's similarity to each reference, in reference order, or null if the sample has no counts - each sample's
+    // similarities are only held until taken, so memory is limited to the batches being processed
+    public double[] takeSimilarities(final String sampleId)
+    {
+        if(!mSampleCountsIndex.containsKey(sampleId))
+            return null;
+
+        Integer sampleOrder = mSampleOrderIndex.get(sampleId);
+
+        if(sampleOrder != null)
+        {
+            int batch = sampleOrder / SAMPLE_BATCH_SIZE;
+
+            synchronized(mBatchLocks[batch])
+            {
+                if(!mBatchComputed[batch])
+                {
+                    mSampleSimilarities.putAll(calcSimilarities(batchSampleIds(batch)));
+                    mBatchComputed[batch] = true;
+
+                    if(batch >= RETAINED_BATCHES)
+                        batchSampleIds(batch - RETAINED_BATCHES).forEach(x -> mSampleSimilarities.remove(x));
+                }
+            }
+
+            final double[] similarities = mSampleSimilarities.remove(sampleId);
+
+            if(similarities != null)
+                return similarities;
+        }
+
+        // a sample outside the expected order, requested again or dropped with its batch
+        return calcSimilarities(Lists.newArrayList(sampleId)).get(sampleId);
+    }
+
+    private List<String> batchSampleIds(int batch)
+    {
+        int batchStart = batch * SAMPLE_BATCH_SIZE;
+        return mSampleOrder.subList(batchStart, min(batchStart + SAMPLE_BATCH_SIZE, mSampleOrder.size()));
+    }
+
+    private Map<String,double[]> calcSimilarities(final List<String> sampleIds)
+    {
+        final Map<String,double[]> sampleSimilarities = Maps.newHashMap();
+
+        final List<String> batchSampleIds = Lists.newArrayList();
+        final List<double[]> batchVectors = Lists.newArrayList();
+
+        for(final String sampleId : sampleIds)
+        {
+            Integer countsIndex = mSampleCountsIndex.get(sampleId);
+
+            if(countsIndex == null)
+                continue;
+
+            batchSampleIds.add(sampleId);
+            batchVectors.add(unitVector(mSampleCounts.getCol(countsIndex)));
+        }
+
+        if(batchSampleIds.isEmpty())
+            return sampleSimilarities;
+
+        final Matrix sampleVectors = new Matrix(batchVectors.size(), mRefVectors.Cols);
+
+        for(int i = 0; i < batchVectors.size(); ++i)
+        {
+            sampleVectors.setRow(i, batchVectors.get(i));
+        }
+
+        // a row per sample of its dot product with each reference
+        final Matrix similarities = sampleVectors.multiplyTranspose(mRefVectors);
+
+        for(int i = 0; i < batchSampleIds.size(); ++i)
+        {
+            final double[] refSimilarities = similarities.getRow(i);
+
+            for(int r = 0; r < refSimilarities.length; ++r)
+            {
+                refSimilarities[r] = min(refSimilarities[r], 1.0);
+            }
+
+            sampleSimilarities.put(batchSampleIds.get(i), refSimilarities);
+        }
+
+        return sampleSimilarities;
+    }
+}
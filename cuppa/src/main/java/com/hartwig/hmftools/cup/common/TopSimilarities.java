@@ -0,0 +1,78 @@
+package com.hartwig.hmftools.cup.common;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import com.google.common.collect.Lists;
+
+// keeps the highest-scoring similarities up to a maximum count in a bounded min-heap, so each candidate costs at most a log-time
+// replacement - ties on score keep the earlier match
+public class TopSimilarities
+{
+    private final String mSampleId;
+    private final String mMatchType;
+    private final int mMaxMatches;
+    private final double mScoreCutoff;
+
+    private final PriorityQueue<Match> mMatches;
+    private int mNextOrder;
+
+    private static class Match
+    {
+        public final SampleSimilarity Similarity;
+        public final int Order;
+
+        public Match(final SampleSimilarity similarity, int order)
+        {
+            Similarity = similarity;
+            Order = order;
+        }
+    }
+
+    // the head is the lowest score, and of equal scores the latest added
+    private static final Comparator<Match> LOWEST_FIRST = (first, second) ->
+    {
+        if(first.Similarity.Score != second.Similarity.Score)
+            return first.Similarity.Score < second.Similarity.Score ? -1 : 1;
+
+        return Integer.compare(second.Order, first.Order);
+    };
+
+    public TopSimilarities(final String sampleId, final String matchType, int maxMatches, double scoreCutoff)
+    {
+        mSampleId = sampleId;
+        mMatchType = matchType;
+        mMaxMatches = maxMatches;
+        mScoreCutoff = scoreCutoff;
+        mMatches = new PriorityQueue<>(maxMatches + 1, LOWEST_FIRST);
+        mNextOrder = 0;
+    }
+
+    public void add(final String otherSampleId, double css)
+    {
+        if(css < mScoreCutoff || mMaxMatches <= 0)
+            return;
+
+        if(mMatches.size() >= mMaxMatches)
+        {
+            if(css <= mMatches.peek().Similarity.Score)
+                return;
+
+            mMatches.poll();
+        }
+
+        mMatches.add(new Match(new SampleSimilarity(mSampleId, otherSampleId, mMatchType, css), mNextOrder++));
+    }
+
+    // highest score first
+    public List<SampleSimilarity> getMatches()
+    {
+        final List<Match> matches = Lists.newArrayList(mMatches);
+        matches.sort(LOWEST_FIRST.reversed());
+
+        final List<SampleSimilarity> similarities = Lists.newArrayListWithExpectedSize(matches.size());
+        matches.forEach(x -> similarities.add(x.Similarity));
+        return similarities;
+    }
+}
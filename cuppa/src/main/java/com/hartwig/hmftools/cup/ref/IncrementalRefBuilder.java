@@ -0,0 +1,309 @@
+package com.hartwig.hmftools.cup.ref;
+
+import static com.hartwig.hmftools.common.utils.io.FileWriterUtils.createBufferedWriter;
+import static com.hartwig.hmftools.common.utils.io.FileWriterUtils.createFieldsIndexMap;
+import static com.hartwig.hmftools.cup.CuppaConfig.CUP_LOGGER;
+import static com.hartwig.hmftools.cup.CuppaConfig.DATA_DELIM;
+import static com.hartwig.hmftools.cup.CuppaRefFiles.REF_FILE_SAMPLE_POS_FREQ_COUNTS;
+import static com.hartwig.hmftools.cup.CuppaRefFiles.REF_FILE_SNV_COUNTS;
+import static com.hartwig.hmftools.cup.common.SampleData.isKnownCancerType;
+import static com.hartwig.hmftools.cup.ref.SampleRefDataLoader.loadSampleColumns;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.hartwig.hmftools.common.utils.PerformanceCounter;
+import com.hartwig.hmftools.cup.common.SampleData;
+import com.hartwig.hmftools.cup.common.SampleDataCache;
+
+// maintains the reference data from per-cancer statistics held between runs, so that sample additions, removals and relabels
+// only load and apply the changed samples' data rather than rebuilding every reference file from the full cohort
+public class IncrementalRefBuilder
+{
+    private final RefDataConfig mConfig;
+    private final SampleDataCache mSampleDataCache;
+    private final RefCohortStats mCohortStats;
+    private final SampleRefDataLoader mDataLoader;
+
+    // the sample-level counts loaded in this run, which replace or add to the unchanged samples' columns in the sample matrices
+    private final Map<String,double[]> mLoadedTriNucCounts;
+    private final Map<String,double[]> mLoadedPosFreqCounts;
+
+    enum ChangeType
+    {
+        ADD,
+        REMOVE,
+        RELABEL;
+    }
+
+    public IncrementalRefBuilder(final RefDataConfig config, final SampleDataCache sampleDataCache)
+    {
+        mConfig = config;
+        mSampleDataCache = sampleDataCache;
+        mCohortStats = new RefCohortStats(SampleRefDataLoader.maxPosFreqSampleCount());
+        mDataLoader = new SampleRefDataLoader(config, mCohortStats);
+        mLoadedTriNucCounts = Maps.newHashMap();
+        mLoadedPosFreqCounts = Maps.newHashMap();
+    }
+
+    public void run()
+    {
+        PerformanceCounter perfCounter = new PerformanceCounter("IncrementalRefBuild");
+        perfCounter.start();
+
+        if(RefCohortStats.hasState(mConfig.RefStatsDir))
+        {
+            if(!mCohortStats.loadState(mConfig.RefStatsDir))
+                return;
+        }
+        else
+        {
+            buildFromCohort();
+        }
+
+        if(!mConfig.SampleChangesFile.isEmpty() && !applySampleChanges(mConfig.SampleChangesFile))
+            return;
+
+        if(!mCohortStats.isValid())
+        {
+            CUP_LOGGER.error("reference statistics incomplete, a full rebuild is required");
+            return;
+        }
+
+        mCohortStats.writeRefFiles(mConfig.OutputDir);
+        writeSampleCounts(REF_FILE_SNV_COUNTS, mConfig.RefSnvCountsFile, mLoadedTriNucCounts);
+        writeSampleCounts(REF_FILE_SAMPLE_POS_FREQ_COUNTS, mConfig.RefSnvPositionDataFile, mLoadedPosFreqCounts);
+        mCohortStats.writeState(mConfig.RefStatsDir);
+
+        perfCounter.stop();
+        perfCounter.logStats();
+    }
+
+    private void buildFromCohort()
+    {
+        CUP_LOGGER.info("building reference statistics from {} cohort samples", mSampleDataCache.RefSampleDataList.size());
+
+        final List<SampleRefData> samples = Lists.newArrayListWithExpectedSize(mSampleDataCache.RefSampleDataList.size());
+
+        for(SampleData sampleData : mSampleDataCache.RefSampleDataList)
+        {
+            samples.add(new SampleRefData(sampleData.Id, sampleData.CancerType));
+        }
+
+        mDataLoader.loadSampleData(samples);
+        samples.forEach(x -> addSample(x));
+    }
+
+    private void addSample(final SampleRefData sample)
+    {
+        mCohortStats.addSample(sample);
+
+        if(sample.TriNucCounts != null)
+            mLoadedTriNucCounts.put(sample.SampleId, sample.TriNucCounts);
+
+        if(sample.PosFreqCounts != null)
+            mLoadedPosFreqCounts.put(sample.SampleId, sample.PosFreqCounts);
+
+        // the sample-level totals are not kept once applied
+        sample.TriNucCounts = null;
+        sample.PosFreqCounts = null;
+        sample.GeneTpms = null;
+    }
+
+    private boolean applySampleChanges(final String filename)
+    {
+        final List<SampleRefData> removedSamples = Lists.newArrayList();
+        final List<String> relabelledTypes = Lists.newArrayList();
+        final List<SampleRefData> addedSamples = Lists.newArrayList();
+        final Set<String> changedSampleIds = Sets.newHashSet();
+
+        try
+        {
+            final List<String> fileData = Files.readAllLines(new File(filename).toPath());
+
+            final String header = fileData.get(0);
+            fileData.remove(0);
+
+            // SampleId,Change,CancerType - where the cancer type is the new one for a relabel, and not required for a removal
+            final Map<String,Integer> fieldsIndexMap = createFieldsIndexMap(header, DATA_DELIM);
+            int sampleIdIndex = fieldsIndexMap.get("SampleId");
+            int changeIndex = fieldsIndexMap.get("Change");
+            Integer cancerTypeIndex = fieldsIndexMap.get("CancerType");
+
+            for(final String line : fileData)
+            {
+                final String[] items = line.split(DATA_DELIM, -1);
+                final String sampleId = items[sampleIdIndex];
+                final ChangeType changeType = parseChangeType(items[changeIndex]);
+                final String cancerType = cancerTypeIndex != null ? items[cancerTypeIndex] : "";
+
+                if(changeType == null)
+                {
+                    CUP_LOGGER.error("sample({}) invalid change({})", sampleId, items[changeIndex]);
+                    return false;
+                }
+
+                // each sample's changes are applied against its state before the file, so only one change per sample is allowed
+                if(!changedSampleIds.add(sampleId))
+                {
+                    CUP_LOGGER.error("sample({}) has more than one change", sampleId);
+                    return false;
+                }
+
+                if(changeType != ChangeType.REMOVE && cancerType.isEmpty())
+                {
+                    CUP_LOGGER.error("sample({}) change({}) missing cancer type", sampleId, changeType);
+                    return false;
+                }
+
+                final SampleRefData existingSample = mCohortStats.getSample(sampleId);
+
+                if(changeType == ChangeType.ADD)
+                {
+                    if(existingSample != null)
+                    {
+                        CUP_LOGGER.warn("sample({}) already in reference cohort, ignoring addition", sampleId);
+                        continue;
+                    }
+
+                    addedSamples.add(new SampleRefData(sampleId, cancerType));
+                    continue;
+                }
+
+                if(existingSample == null)
+                {
+                    CUP_LOGGER.warn("sample({}) not in reference cohort, ignoring change({})", sampleId, changeType);
+                    continue;
+                }
+
+                removedSamples.add(existingSample);
+
+                if(changeType == ChangeType.RELABEL && !isKnownCancerType(existingSample.CancerType) && isKnownCancerType(cancerType))
+                {
+                    // some data is only loaded for known cancer types, so the sample is loaded again as an addition
+                    relabelledTypes.add(null);
+                    addedSamples.add(new SampleRefData(sampleId, cancerType));
+                }
+                else
+                {
+                    relabelledTypes.add(changeType == ChangeType.RELABEL ? cancerType : null);
+                }
+            }
+        }
+        catch(IOException e)
+        {
+            CUP_LOGGER.error("failed to read sample changes file({}): {}", filename, e.toString());
+            return false;
+        }
+
+        CUP_LOGGER.info("applying sample changes: removed or relabelled({}) added({})", removedSamples.size(), addedSamples.size());
+
+        // removals and relabels take out what each sample previously contributed, with a relabelled sample then added back as is
+        // under its new cancer type
+        mDataLoader.loadSampleTotals(removedSamples);
+
+        for(int i = 0; i < removedSamples.size(); ++i)
+        {
+            final SampleRefData sample = removedSamples.get(i);
+            mCohortStats.removeSample(sample.SampleId);
+
+            final String newCancerType = relabelledTypes.get(i);
+
+            if(newCancerType != null)
+                addSample(sample.copyWithCancerType(newCancerType));
+        }
+
+        mDataLoader.loadSampleData(addedSamples);
+        addedSamples.forEach(x -> addSample(x));
+
+        return true;
+    }
+
+    private static ChangeType parseChangeType(final String change)
+    {
+        try
+        {
+            return ChangeType.valueOf(change);
+        }
+        catch(IllegalArgumentException e)
+        {
+            return null;
+        }
+    }
+
+    // the classifiers load the sample matrices for pairwise similarities, so they are rewritten for the current cohort, taking
+    // unchanged samples' columns from the previous output or else from the reference input, and never left stale
+    private void writeSampleCounts(final String refFilename, final String inputFilename, final Map<String,double[]> loadedCounts)
+    {
+        final String filename = mConfig.OutputDir + refFilename;
+        final File outputFile = new File(filename);
+
+        final String baseFilename = outputFile.exists() ? filename : inputFilename;
+
+        if(loadedCounts.isEmpty() && baseFilename.isEmpty())
+            return;
+
+        final List<String> sampleIds = mCohortStats.sampleIds();
+
+        if(sampleIds.isEmpty())
+        {
+            outputFile.delete();
+            return;
+        }
+
+        final List<String> unchangedSampleIds = sampleIds.stream().filter(x -> !loadedCounts.containsKey(x)).collect(Collectors.toList());
+
+        final Map<String,double[]> unchangedCounts = !unchangedSampleIds.isEmpty() ?
+                loadSampleColumns(baseFilename, unchangedSampleIds, null, null) : Maps.newHashMap();
+
+        if(unchangedCounts.size() < unchangedSampleIds.size())
+        {
+            CUP_LOGGER.error("sample counts file({}) missing {} of {} unchanged samples, not written",
+                    baseFilename, unchangedSampleIds.size() - unchangedCounts.size(), unchangedSampleIds.size());
+
+            if(outputFile.exists() && !outputFile.delete())
+                CUP_LOGGER.error("failed to remove stale sample counts file({})", filename);
+
+            return;
+        }
+
+        try
+        {
+            BufferedWriter writer = createBufferedWriter(filename, false);
+
+            writer.write(String.join(DATA_DELIM, sampleIds));
+            writer.newLine();
+
+            final List<double[]> columns = sampleIds.stream()
+                    .map(x -> loadedCounts.containsKey(x) ? loadedCounts.get(x) : unchangedCounts.get(x))
+                    .collect(Collectors.toList());
+
+            for(int b = 0; b < columns.get(0).length; ++b)
+            {
+                writer.write(String.format("%.0f", columns.get(0)[b]));
+
+                for(int i = 1; i < columns.size(); ++i)
+                {
+                    writer.write(String.format(",%.0f", columns.get(i)[b]));
+                }
+
+                writer.newLine();
+            }
+
+            writer.close();
+        }
+        catch(IOException e)
+        {
+            CUP_LOGGER.error("failed to write sample counts file({}): {}", filename, e.toString());
+        }
+    }
+}
@@ -0,0 +1,737 @@
+package com.hartwig.hmftools.cup.ref;
+
+import static com.hartwig.hmftools.common.sigs.VectorUtils.sumVector;
+import static com.hartwig.hmftools.common.stats.Percentiles.PERCENTILE_COUNT;
+import static com.hartwig.hmftools.common.utils.io.FileWriterUtils.closeBufferedWriter;
+import static com.hartwig.hmftools.common.utils.io.FileWriterUtils.createBufferedWriter;
+import static com.hartwig.hmftools.common.utils.io.FileWriterUtils.createFieldsIndexMap;
+import static com.hartwig.hmftools.cup.CuppaConfig.CUP_LOGGER;
+import static com.hartwig.hmftools.cup.CuppaConfig.DATA_DELIM;
+import static com.hartwig.hmftools.cup.CuppaRefFiles.REF_FILE_CANCER_POS_FREQ_COUNTS;
+import static com.hartwig.hmftools.cup.CuppaRefFiles.REF_FILE_DRIVER_AVG;
+import static com.hartwig.hmftools.cup.CuppaRefFiles.REF_FILE_FEATURE_PREV;
+import static com.hartwig.hmftools.cup.CuppaRefFiles.REF_FILE_GENE_EXP_CANCER;
+import static com.hartwig.hmftools.cup.CuppaRefFiles.REF_FILE_SIG_PERC;
+import static com.hartwig.hmftools.cup.CuppaRefFiles.REF_FILE_SV_PERC;
+import static com.hartwig.hmftools.cup.CuppaRefFiles.REF_FILE_TRAIT_PERC;
+import static com.hartwig.hmftools.cup.CuppaRefFiles.REF_FILE_TRAIT_RATES;
+import static com.hartwig.hmftools.cup.CuppaRefFiles.REF_STATE_FILE_CANCER_POS_FREQ_COUNTS;
+import static com.hartwig.hmftools.cup.CuppaRefFiles.REF_STATE_FILE_GENE_EXP_CANCER;
+import static com.hartwig.hmftools.cup.CuppaRefFiles.REF_STATE_FILE_SAMPLES;
+import static com.hartwig.hmftools.cup.common.SampleData.isKnownCancerType;
+import static com.hartwig.hmftools.cup.ref.SampleRefData.NO_VALUE;
+import static com.hartwig.hmftools.cup.somatics.RefSomatics.REF_SIG_TYPE_SNV_COUNT;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.hartwig.hmftools.common.purple.gender.Gender;
+import com.hartwig.hmftools.cup.feature.FeatureType;
+import com.hartwig.hmftools.cup.sample.SampleTraitType;
+import com.hartwig.hmftools.cup.svs.SvDataType;
+
+// sufficient statistics per cancer type for each reference data set - value histograms for percentiles, counts for rates and
+// prevalences, and sums for the cancer-level SNV position and gene expression totals - so that adding, removing or relabelling a
+// sample only touches its own contribution, and each reference file can be written as the full rebuild would write it
+public class RefCohortStats
+{
+    private final Map<String,SampleRefData> mSamples;
+    private final Map<String,Integer> mCancerSampleCounts;
+
+    private final Map<String,ValueHistogram> mCancerSnvCounts;
+    private final Map<String,Map<String,ValueHistogram>> mCancerSigContribs;
+    private final Map<String,Map<SampleTraitType,ValueHistogram>> mCancerTraitValues;
+    private final Map<String,int[]> mCancerTraitCounts; // WGD and female counts
+    private final Map<String,Map<SvDataType,ValueHistogram>> mCancerSvCounts;
+
+    private final Map<String,Map<String,double[]>> mCancerFeatureTotals; // per feature, its likelihood total and sample count
+    private final Map<String,FeatureType> mFeatureTypes;
+    private final Map<String,double[]> mCancerDriverTotals; // driver total and sample count
+
+    private final Map<String,double[]> mCancerPosFreqCounts;
+    private final int mMaxPosFreqSampleCount;
+
+    private final Map<String,double[]> mCancerGeneTpms;
+    private final List<String> mGeneIds;
+    private final List<String> mGeneNames;
+
+    private boolean mIsValid;
+
+    private static final int TRAIT_WGD = 0;
+    private static final int TRAIT_FEMALE = 1;
+
+    private static final SampleTraitType[] PERCENTILE_TRAITS =
+            { SampleTraitType.PURITY, SampleTraitType.PLOIDY, SampleTraitType.MS_INDELS_TMB };
+
+    public RefCohortStats(int maxPosFreqSampleCount)
+    {
+        mSamples = Maps.newHashMap();
+        mCancerSampleCounts = Maps.newHashMap();
+
+        mCancerSnvCounts = Maps.newHashMap();
+        mCancerSigContribs = Maps.newHashMap();
+        mCancerTraitValues = Maps.newHashMap();
+        mCancerTraitCounts = Maps.newHashMap();
+        mCancerSvCounts = Maps.newHashMap();
+
+        mCancerFeatureTotals = Maps.newHashMap();
+        mFeatureTypes = Maps.newHashMap();
+        mCancerDriverTotals = Maps.newHashMap();
+
+        mCancerPosFreqCounts = Maps.newHashMap();
+        mMaxPosFreqSampleCount = maxPosFreqSampleCount;
+
+        mCancerGeneTpms = Maps.newHashMap();
+        mGeneIds = Lists.newArrayList();
+        mGeneNames = Lists.newArrayList();
+
+        mIsValid = true;
+    }
+
+    public boolean isValid() { return mIsValid; }
+    public int sampleCount() { return mSamples.size(); }
+    public SampleRefData getSample(final String sampleId) { return mSamples.get(sampleId); }
+    public List<String> sampleIds() { return mSamples.keySet().stream().sorted().collect(Collectors.toList()); }
+    public boolean hasGeneInfo() { return !mGeneIds.isEmpty(); }
+    public int geneCount() { return mGeneIds.size(); }
+
+    public void setGeneInfo(final List<String> geneIds, final List<String> geneNames)
+    {
+        mGeneIds.clear();
+        mGeneIds.addAll(geneIds);
+        mGeneNames.clear();
+        mGeneNames.addAll(geneNames);
+    }
+
+    public void addSample(final SampleRefData sample)
+    {
+        if(mSamples.containsKey(sample.SampleId))
+        {
+            CUP_LOGGER.warn("sample({}) already in reference statistics", sample.SampleId);
+            return;
+        }
+
+        mSamples.put(sample.SampleId, sample);
+        applySample(sample, true);
+    }
+
+    public SampleRefData removeSample(final String sampleId)
+    {
+        final SampleRefData sample = mSamples.remove(sampleId);
+
+        if(sample == null)
+        {
+            CUP_LOGGER.warn("sample({}) not in reference statistics", sampleId);
+            return null;
+        }
+
+        applySample(sample, false);
+
+        if(!mCancerSampleCounts.containsKey(sample.CancerType))
+        {
+            mCancerPosFreqCounts.remove(sample.CancerType);
+            mCancerGeneTpms.remove(sample.CancerType);
+        }
+
+        return sample;
+    }
+
+    private void applySample(final SampleRefData sample, boolean isAdd)
+    {
+        final String cancerType = sample.CancerType;
+        boolean isKnownType = isKnownCancerType(cancerType);
+
+        updateCount(mCancerSampleCounts, cancerType, isAdd);
+
+        if(sample.hasSnvCount())
+            updateHistogram(mCancerSnvCounts, cancerType, sample.SnvCount, isAdd);
+
+        if(sample.SigContribs != null)
+        {
+            for(Map.Entry<String,Double> entry : sample.SigContribs.entrySet())
+            {
+                updateHistogram(cancerMap(mCancerSigContribs, cancerType, isAdd), entry.getKey(), entry.getValue(), isAdd);
+            }
+
+            removeIfEmpty(mCancerSigContribs, cancerType);
+        }
+
+        // the remaining data sets are only built for known cancer types
+        if(!isKnownType)
+            return;
+
+        if(sample.Traits != null)
+        {
+            final Map<SampleTraitType,ValueHistogram> traitValues = cancerMap(mCancerTraitValues, cancerType, isAdd);
+
+            for(SampleTraitType traitType : PERCENTILE_TRAITS)
+            {
+                updateHistogram(traitValues, traitType, sample.Traits.getDoubleValue(traitType), isAdd);
+            }
+
+            removeIfEmpty(mCancerTraitValues, cancerType);
+
+            int[] traitCounts = mCancerTraitCounts.computeIfAbsent(cancerType, k -> new int[TRAIT_FEMALE + 1]);
+            int change = isAdd ? 1 : -1;
+
+            if(sample.Traits.HasWGD)
+                traitCounts[TRAIT_WGD] += change;
+
+            if(sample.Traits.GenderType == Gender.FEMALE)
+                traitCounts[TRAIT_FEMALE] += change;
+
+            if(!mCancerTraitValues.containsKey(cancerType))
+                mCancerTraitCounts.remove(cancerType);
+        }
+
+        if(sample.SvCounts != null)
+        {
+            final Map<SvDataType,ValueHistogram> svCounts = cancerMap(mCancerSvCounts, cancerType, isAdd);
+
+            for(SvDataType type : SvDataType.values())
+            {
+                updateHistogram(svCounts, type, sample.SvCounts.getCount(type), isAdd);
+            }
+
+            removeIfEmpty(mCancerSvCounts, cancerType);
+        }
+
+        if(sample.hasFeatures())
+        {
+            final Map<String,double[]> featureTotals = cancerMap(mCancerFeatureTotals, cancerType, isAdd);
+
+            for(Map.Entry<String,Double> entry : sample.FeatureLikelihoods.entrySet())
+            {
+                final String feature = entry.getKey();
+
+                if(isAdd)
+                    mFeatureTypes.put(feature, sample.FeatureTypes.get(feature));
+
+                updateTotal(featureTotals, feature, entry.getValue(), isAdd);
+            }
+
+            removeIfEmpty(mCancerFeatureTotals, cancerType);
+            updateTotal(mCancerDriverTotals, cancerType, sample.DriverTotal, isAdd);
+        }
+
+        if(sample.HasPosFreqCounts)
+        {
+            if(isAdd && sample.PosFreqCounts != null)
+            {
+                // the factor is set on first addition and then kept, so a relabel or removal applies exactly what was added
+                if(sample.PosFreqFactor == NO_VALUE)
+                {
+                    double sampleTotal = sumVector(sample.PosFreqCounts);
+                    sample.PosFreqFactor = sampleTotal > mMaxPosFreqSampleCount ? mMaxPosFreqSampleCount / sampleTotal : 1.0;
+                }
+
+                updateVector(mCancerPosFreqCounts, cancerType, sample.PosFreqCounts, sample.PosFreqFactor);
+            }
+            else if(!isAdd && sample.PosFreqCounts != null && sample.PosFreqFactor != NO_VALUE)
+            {
+                updateVector(mCancerPosFreqCounts, cancerType, sample.PosFreqCounts, -sample.PosFreqFactor);
+            }
+            else if(!isAdd)
+            {
+                CUP_LOGGER.error("sample({}) removed without its SNV position counts or their factor", sample.SampleId);
+                mIsValid = false;
+            }
+        }
+
+        if(sample.HasGeneExpression)
+        {
+            if(sample.GeneTpms != null)
+            {
+                updateVector(mCancerGeneTpms, cancerType, sample.GeneTpms, isAdd ? 1 : -1);
+            }
+            else if(!isAdd)
+            {
+                CUP_LOGGER.error("sample({}) removed without its gene expression", sample.SampleId);
+                mIsValid = false;
+            }
+        }
+    }
+
+    private static void updateCount(final Map<String,Integer> counts, final String key, boolean isAdd)
+    {
+        int count = counts.getOrDefault(key, 0) + (isAdd ? 1 : -1);
+
+        if(count > 0)
+            counts.put(key, count);
+        else
+            counts.remove(key);
+    }
+
+    private static <K> void updateHistogram(final Map<K,ValueHistogram> histograms, final K key, double value, boolean isAdd)
+    {
+        if(isAdd)
+        {
+            histograms.computeIfAbsent(key, k -> new ValueHistogram()).add(value);
+            return;
+        }
+
+        final ValueHistogram histogram = histograms.get(key);
+
+        if(histogram == null || !histogram.remove(value))
+        {
+            CUP_LOGGER.warn("value({}) for {} missing from reference statistics", value, key);
+            return;
+        }
+
+        if(histogram.isEmpty())
+            histograms.remove(key);
+    }
+
+    // a total and the number of samples contributing to it, so the entry can be dropped once no samples contribute
+    private static void updateTotal(final Map<String,double[]> totals, final String key, double value, boolean isAdd)
+    {
+        double[] total = totals.computeIfAbsent(key, k -> new double[2]);
+        total[0] += isAdd ? value : -value;
+        total[1] += isAdd ? 1 : -1;
+
+        if(total[1] <= 0)
+            totals.remove(key);
+    }
+
+    private static void updateVector(final Map<String,double[]> cancerTotals, final String cancerType, final double[] values, double factor)
+    {
+        double[] totals = cancerTotals.computeIfAbsent(cancerType, k -> new double[values.length]);
+
+        for(int i = 0; i < values.length; ++i)
+        {
+            totals[i] += factor * values[i];
+        }
+    }
+
+    private static <K,V> Map<K,V> cancerMap(final Map<String,Map<K,V>> cancerMaps, final String cancerType, boolean isAdd)
+    {
+        if(isAdd)
+            return cancerMaps.computeIfAbsent(cancerType, k -> Maps.newHashMap());
+
+        return cancerMaps.getOrDefault(cancerType, Maps.newHashMap());
+    }
+
+    private static <K,V> void removeIfEmpty(final Map<String,Map<K,V>> cancerMaps, final String cancerType)
+    {
+        final Map<K,V> map = cancerMaps.get(cancerType);
+
+        if(map != null && map.isEmpty())
+            cancerMaps.remove(cancerType);
+    }
+
+    private List<String> refCancerTypes()
+    {
+        return mCancerSampleCounts.keySet().stream().filter(x -> isKnownCancerType(x)).collect(Collectors.toList());
+    }
+
+    private int cancerSampleCount(final String cancerType) { return mCancerSampleCounts.getOrDefault(cancerType, 0); }
+
+    public void writeRefFiles(final String outputDir)
+    {
+        if(!mCancerSigContribs.isEmpty() || !mCancerSnvCounts.isEmpty())
+            writeSignaturePercentiles(outputDir);
+
+        if(!mCancerTraitValues.isEmpty())
+            writeTraitFiles(outputDir);
+
+        if(!mCancerSvCounts.isEmpty())
+            writeSvPercentiles(outputDir);
+
+        if(!mCancerDriverTotals.isEmpty())
+            writeFeatureFiles(outputDir);
+
+        if(mSamples.values().stream().anyMatch(x -> x.HasPosFreqCounts))
+            writeCancerPosFrequencies(outputDir + REF_FILE_CANCER_POS_FREQ_COUNTS, "%.1f");
+
+        if(hasGeneInfo() && mSamples.values().stream().anyMatch(x -> x.HasGeneExpression))
+            writeCancerGeneExpression(outputDir + REF_FILE_GENE_EXP_CANCER, "%.2f");
+    }
+
+    private static void writePercentilesHeader(final BufferedWriter writer, final String dataTypeField) throws IOException
+    {
+        writer.write(String.format("CancerType,%s", dataTypeField));
+
+        for(int i = 0; i < PERCENTILE_COUNT; ++i)
+        {
+            writer.write(String.format(",Pct_%.2f", i * 0.01));
+        }
+
+        writer.newLine();
+    }
+
+    private static void writePercentiles(
+            final BufferedWriter writer, final String cancerType, final String dataType, final ValueHistogram values,
+            final String valueFormat) throws IOException
+    {
+        writer.write(String.format("%s,%s", cancerType, dataType));
+
+        final double[] percentileValues = values.buildPercentiles();
+
+        for(int i = 0; i < percentileValues.length; ++i)
+        {
+            writer.write(String.format(valueFormat, percentileValues[i]));
+        }
+
+        writer.newLine();
+    }
+
+    private void writeSignaturePercentiles(final String outputDir)
+    {
+        try
+        {
+            BufferedWriter writer = createBufferedWriter(outputDir + REF_FILE_SIG_PERC, false);
+            writePercentilesHeader(writer, "DataType");
+
+            for(Map.Entry<String,Map<String,ValueHistogram>> entry : mCancerSigContribs.entrySet())
+            {
+                final String cancerType = entry.getKey();
+
+                if(!isKnownCancerType(cancerType))
+                    continue;
+
+                for(Map.Entry<String,ValueHistogram> sigEntry : entry.getValue().entrySet())
+                {
+                    writePercentiles(writer, cancerType, sigEntry.getKey(), sigEntry.getValue(), ",%.6f");
+                }
+            }
+
+            for(Map.Entry<String,ValueHistogram> entry : mCancerSnvCounts.entrySet())
+            {
+                writePercentiles(writer, entry.getKey(), REF_SIG_TYPE_SNV_COUNT, entry.getValue(), ",%.0f");
+            }
+
+            closeBufferedWriter(writer);
+        }
+        catch(IOException e)
+        {
+            CUP_LOGGER.error("failed to write signatures ref data output: {}", e.toString());
+        }
+    }
+
+    private void writeTraitFiles(final String outputDir)
+    {
+        try
+        {
+            BufferedWriter percWriter = createBufferedWriter(outputDir + REF_FILE_TRAIT_PERC, false);
+            writePercentilesHeader(percWriter, "TraitType");
+
+            BufferedWriter ratesWriter = createBufferedWriter(outputDir + REF_FILE_TRAIT_RATES, false);
+            ratesWriter.write("CancerType,WGDPerc,GenderFemalePerc");
+            ratesWriter.newLine();
+
+            for(Map.Entry<String,Map<SampleTraitType,ValueHistogram>> entry : mCancerTraitValues.entrySet())
+            {
+                final String cancerType = entry.getKey();
+
+                for(SampleTraitType traitType : PERCENTILE_TRAITS)
+                {
+                    writePercentiles(percWriter, cancerType, traitType.toString(), entry.getValue().get(traitType), ",%.6f");
+                }
+
+                double cancerSamples = cancerSampleCount(cancerType);
+                final int[] traitCounts = mCancerTraitCounts.get(cancerType);
+
+                ratesWriter.write(String.format("%s,%.4f,%.4f",
+                        cancerType, traitCounts[TRAIT_WGD] / cancerSamples, traitCounts[TRAIT_FEMALE] / cancerSamples));
+                ratesWriter.newLine();
+            }
+
+            closeBufferedWriter(percWriter);
+            closeBufferedWriter(ratesWriter);
+        }
+        catch(IOException e)
+        {
+            CUP_LOGGER.error("failed to write sample traits ref data output: {}", e.toString());
+        }
+    }
+
+    private void writeSvPercentiles(final String outputDir)
+    {
+        try
+        {
+            BufferedWriter writer = createBufferedWriter(outputDir + REF_FILE_SV_PERC, false);
+            writePercentilesHeader(writer, "SvDataType");
+
+            for(Map.Entry<String,Map<SvDataType,ValueHistogram>> entry : mCancerSvCounts.entrySet())
+            {
+                for(SvDataType dataType : SvDataType.values())
+                {
+                    writePercentiles(writer, entry.getKey(), dataType.toString(), entry.getValue().get(dataType), ",%.6f");
+                }
+            }
+
+            closeBufferedWriter(writer);
+        }
+        catch(IOException e)
+        {
+            CUP_LOGGER.error("failed to write ref sample SV data output: {}", e.toString());
+        }
+    }
+
+    private void writeFeatureFiles(final String outputDir)
+    {
+        try
+        {
+            BufferedWriter writer = createBufferedWriter(outputDir + REF_FILE_FEATURE_PREV, false);
+
+            writer.write("CancerType,Feature,Type,SamplePerc");
+            writer.newLine();
+
+            for(Map.Entry<String,Map<String,double[]>> cancerEntry : mCancerFeatureTotals.entrySet())
+            {
+                final String cancerType = cancerEntry.getKey();
+                int cancerSamples = cancerSampleCount(cancerType);
+
+                for(Map.Entry<String,double[]> featureEntry : cancerEntry.getValue().entrySet())
+                {
+                    final String feature = featureEntry.getKey();
+                    double prevalence = featureEntry.getValue()[0] / cancerSamples;
+
+                    writer.write(String.format("%s,%s,%s,%.6f", cancerType, feature, mFeatureTypes.get(feature), prevalence));
+                    writer.newLine();
+                }
+            }
+
+            closeBufferedWriter(writer);
+
+            writer = createBufferedWriter(outputDir + REF_FILE_DRIVER_AVG, false);
+
+            writer.write("CancerType,AvgDrivers");
+            writer.newLine();
+
+            double panCancerDriverTotal = 0;
+            int panCancerSamples = 0;
+
+            for(Map.Entry<String,double[]> entry : mCancerDriverTotals.entrySet())
+            {
+                final String cancerType = entry.getKey();
+                double driverTotal = entry.getValue()[0];
+                int cancerSamples = cancerSampleCount(cancerType);
+
+                panCancerDriverTotal += driverTotal;
+                panCancerSamples += (int)entry.getValue()[1];
+
+                writer.write(String.format("%s,%.2f", cancerType, driverTotal / cancerSamples));
+                writer.newLine();
+            }
+
+            writer.write(String.format("ALL,%.2f", panCancerDriverTotal / panCancerSamples));
+            writer.newLine();
+
+            closeBufferedWriter(writer);
+        }
+        catch(IOException e)
+        {
+            CUP_LOGGER.error("failed to write ref feature data output: {}", e.toString());
+        }
+    }
+
+    // every reference cancer type has a column, including any without samples contributing counts
+    private void writeCancerPosFrequencies(final String filename, final String valueFormat)
+    {
+        try
+        {
+            BufferedWriter writer = createBufferedWriter(filename, false);
+
+            final List<String> cancerTypes = refCancerTypes();
+            int bucketCount = mCancerPosFreqCounts.values().stream().mapToInt(x -> x.length).max().orElse(0);
+
+            writer.write(String.join(DATA_DELIM, cancerTypes));
+            writer.newLine();
+
+            final List<double[]> cancerCounts = cancerTypes.stream()
+                    .map(x -> mCancerPosFreqCounts.getOrDefault(x, new double[bucketCount])).collect(Collectors.toList());
+
+            for(int b = 0; b < bucketCount; ++b)
+            {
+                for(int i = 0; i < cancerCounts.size(); ++i)
+                {
+                    if(i > 0)
+                        writer.write(DATA_DELIM);
+
+                    writer.write(String.format(valueFormat, cancerCounts.get(i)[b]));
+                }
+
+                writer.newLine();
+            }
+
+            closeBufferedWriter(writer);
+        }
+        catch(IOException e)
+        {
+            CUP_LOGGER.error("failed to write cancer SNV position counts({}): {}", filename, e.toString());
+        }
+    }
+
+    private void writeCancerGeneExpression(final String filename, final String valueFormat)
+    {
+        try
+        {
+            BufferedWriter writer = createBufferedWriter(filename, false);
+
+            final List<String> cancerTypes = refCancerTypes();
+
+            writer.write("GeneId,GeneName");
+
+            for(final String cancerType : cancerTypes)
+            {
+                writer.write(String.format(",%s", cancerType));
+            }
+
+            writer.newLine();
+
+            final List<double[]> cancerTpms = cancerTypes.stream()
+                    .map(x -> mCancerGeneTpms.getOrDefault(x, new double[mGeneIds.size()])).collect(Collectors.toList());
+
+            for(int i = 0; i < mGeneIds.size(); ++i)
+            {
+                writer.write(String.format("%s,%s", mGeneIds.get(i), mGeneNames.get(i)));
+
+                for(final double[] tpms : cancerTpms)
+                {
+                    writer.write(DATA_DELIM);
+                    writer.write(String.format(valueFormat, tpms[i]));
+                }
+
+                writer.newLine();
+            }
+
+            closeBufferedWriter(writer);
+        }
+        catch(IOException e)
+        {
+            CUP_LOGGER.error("failed to write cancer gene expression({}): {}", filename, e.toString());
+        }
+    }
+
+    public static boolean hasState(final String stateDir)
+    {
+        return new File(stateDir + REF_STATE_FILE_SAMPLES).exists();
+    }
+
+    // the per-sample contributions plus the cancer totals, with the totals at full precision so repeated updates do not accumulate
+    // rounding in the written reference files
+    public void writeState(final String stateDir)
+    {
+        try
+        {
+            BufferedWriter writer = createBufferedWriter(stateDir + REF_STATE_FILE_SAMPLES, false);
+            writer.write(SampleRefData.header());
+            writer.newLine();
+
+            for(final SampleRefData sample : mSamples.values())
+            {
+                writer.write(sample.toCsv());
+                writer.newLine();
+            }
+
+            closeBufferedWriter(writer);
+        }
+        catch(IOException e)
+        {
+            CUP_LOGGER.error("failed to write ref statistics state: {}", e.toString());
+            return;
+        }
+
+        if(!mCancerPosFreqCounts.isEmpty())
+            writeCancerPosFrequencies(stateDir + REF_STATE_FILE_CANCER_POS_FREQ_COUNTS, "%s");
+
+        if(hasGeneInfo())
+            writeCancerGeneExpression(stateDir + REF_STATE_FILE_GENE_EXP_CANCER, "%s");
+
+        CUP_LOGGER.info("written ref statistics state for {} samples to {}", mSamples.size(), stateDir);
+    }
+
+    public boolean loadState(final String stateDir)
+    {
+        try
+        {
+            BufferedReader fileReader = new BufferedReader(new FileReader(stateDir + REF_STATE_FILE_SAMPLES));
+
+            final Map<String,Integer> fieldsIndexMap = createFieldsIndexMap(fileReader.readLine(), DATA_DELIM);
+
+            String line = fileReader.readLine();
+
+            while(line != null)
+            {
+                addSample(SampleRefData.from(fieldsIndexMap, line));
+                line = fileReader.readLine();
+            }
+
+            fileReader.close();
+
+            // the cancer totals are taken as written rather than rebuilt from the sample-level matrices
+            final String posFreqFile = stateDir + REF_STATE_FILE_CANCER_POS_FREQ_COUNTS;
+
+            if(new File(posFreqFile).exists())
+                loadCancerTotals(posFreqFile, 0, mCancerPosFreqCounts);
+
+            final String geneExpFile = stateDir + REF_STATE_FILE_GENE_EXP_CANCER;
+
+            if(new File(geneExpFile).exists())
+                loadCancerTotals(geneExpFile, 2, mCancerGeneTpms);
+        }
+        catch(IOException e)
+        {
+            CUP_LOGGER.error("failed to load ref statistics state from {}: {}", stateDir, e.toString());
+            return false;
+        }
+
+        CUP_LOGGER.info("loaded ref statistics state for {} samples, {} cancer types", mSamples.size(), mCancerSampleCounts.size());
+        return true;
+    }
+
+    private void loadCancerTotals(final String filename, int infoColumns, final Map<String,double[]> cancerTotals) throws IOException
+    {
+        final List<String> lines = Lists.newArrayList();
+
+        BufferedReader fileReader = new BufferedReader(new FileReader(filename));
+
+        final String[] cancerTypes = fileReader.readLine().split(DATA_DELIM, -1);
+
+        String line = fileReader.readLine();
+
+        while(line != null)
+        {
+            lines.add(line);
+            line = fileReader.readLine();
+        }
+
+        fileReader.close();
+
+        final List<String> geneIds = Lists.newArrayList();
+        final List<String> geneNames = Lists.newArrayList();
+
+        for(int c = infoColumns; c < cancerTypes.length; ++c)
+        {
+            cancerTotals.put(cancerTypes[c], new double[lines.size()]);
+        }
+
+        for(int r = 0; r < lines.size(); ++r)
+        {
+            final String[] items = lines.get(r).split(DATA_DELIM, -1);
+
+            if(infoColumns > 0)
+            {
+                geneIds.add(items[0]);
+                geneNames.add(items[1]);
+            }
+
+            for(int c = infoColumns; c < cancerTypes.length; ++c)
+            {
+                cancerTotals.get(cancerTypes[c])[r] = Double.parseDouble(items[c]);
+            }
+        }
+
+        if(infoColumns > 0)
+            setGeneInfo(geneIds, geneNames);
+    }
+}
@@ -32,6 +32,7 @@ public class RefDataBuilder
     private final SampleDataCache mSampleDataCache;
 
     private final List<RefClassifier> mClassifiers;
+    private final IncrementalRefBuilder mIncrementalBuilder;
 
     public RefDataBuilder(final CommandLine cmd)
     {
@@ -43,6 +44,14 @@ public class RefDataBuilder
 
         mClassifiers = Lists.newArrayList();
 
+        if(mConfig.isIncremental())
+        {
+            mIncrementalBuilder = new IncrementalRefBuilder(mConfig, mSampleDataCache);
+            return;
+        }
+
+        mIncrementalBuilder = null;
+
         if(RefSampleTraits.requiresBuild(mConfig))
             mClassifiers.add(new RefSampleTraits(mConfig, mSampleDataCache));
 
@@ -71,6 +80,13 @@ public class RefDataBuilder
     {
         CUP_LOGGER.info("CUP building ref data sets");
 
+        if(mIncrementalBuilder != null)
+        {
+            mIncrementalBuilder.run();
+            CUP_LOGGER.info("CUP ref data incremental build complete");
+            return;
+        }
+
         for(RefClassifier classifier : mClassifiers)
         {
             classifier.buildRefDataSets();
@@ -1,6 +1,7 @@
 package com.hartwig.hmftools.cup.ref;
 
 import static com.hartwig.hmftools.common.utils.io.FileWriterUtils.OUTPUT_DIR;
+import static com.hartwig.hmftools.common.utils.io.FileWriterUtils.checkAddDirSeparator;
 import static com.hartwig.hmftools.common.utils.io.FileWriterUtils.parseOutputDir;
 import static com.hartwig.hmftools.cup.CuppaConfig.LOG_DEBUG;
 import static com.hartwig.hmftools.cup.CuppaConfig.REF_SAMPLE_DATA_FILE;
@@ -30,11 +31,17 @@ public class RefDataConfig
 
     public final DatabaseAccess DbAccess;
 
+    // incremental mode
+    public final String RefStatsDir;
+    public final String SampleChangesFile;
+
     // config strings
     public static final String REF_SAMPLE_TRAITS_FILE = "ref_sample_traits_file";
     public static final String REF_SIG_CONTRIBS_FILE = "ref_sig_contribs_file";
     public static final String REF_SV_DATA_FILE = "ref_sv_data_file";
     public static final String REF_RNA_GENE_EXP_DATA_FILE = "ref_rna_gene_exp_file";
+    public static final String REF_STATS_DIR = "ref_stats_dir";
+    public static final String SAMPLE_CHANGES_FILE = "sample_changes_file";
 
     public RefDataConfig(final CommandLine cmd)
     {
@@ -48,9 +55,14 @@ public class RefDataConfig
 
         DbAccess = createDatabaseAccess(cmd);
 
+        RefStatsDir = cmd.hasOption(REF_STATS_DIR) ? checkAddDirSeparator(cmd.getOptionValue(REF_STATS_DIR)) : "";
+        SampleChangesFile = cmd.getOptionValue(SAMPLE_CHANGES_FILE, "");
+
         OutputDir = parseOutputDir(cmd);
     }
 
+    public boolean isIncremental() { return !RefStatsDir.isEmpty(); }
+
     public static void addCmdLineArgs(Options options)
     {
         options.addOption(REF_SAMPLE_DATA_FILE, true, "Ref sample data file");
@@ -63,6 +75,9 @@ public class RefDataConfig
 
         addDatabaseCmdLineArgs(options);
 
+        options.addOption(REF_STATS_DIR, true, "Directory of per-cancer reference statistics for incremental builds, built if absent");
+        options.addOption(SAMPLE_CHANGES_FILE, true, "Incremental sample changes: SampleId,Change(ADD/REMOVE/RELABEL),CancerType");
+
         options.addOption(OUTPUT_DIR, true, "Path to output files");
         options.addOption(LOG_DEBUG, false, "Sets log level to Debug, off by default");
 
@@ -0,0 +1,261 @@
+package com.hartwig.hmftools.cup.ref;
+
+import static java.lang.Math.min;
+
+import static com.hartwig.hmftools.cup.CuppaConfig.DATA_DELIM;
+import static com.hartwig.hmftools.cup.CuppaConfig.SUBSET_DELIM;
+import static com.hartwig.hmftools.cup.feature.FeatureType.DRIVER;
+
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+
+import com.google.common.collect.Maps;
+import com.hartwig.hmftools.common.purple.gender.Gender;
+import com.hartwig.hmftools.cup.feature.FeatureType;
+import com.hartwig.hmftools.cup.feature.SampleFeatureData;
+import com.hartwig.hmftools.cup.sample.SampleTraitsData;
+import com.hartwig.hmftools.cup.svs.SvData;
+import com.hartwig.hmftools.cup.svs.SvDataType;
+
+// a reference sample's contribution to each cancer type's statistics, kept so that it can later be removed or moved to another
+// cancer type without reloading the rest of the cohort
+public class SampleRefData
+{
+    public final String SampleId;
+    public final String CancerType;
+
+    public double SnvCount; // total of the tri-nucleotide counts, or NO_VALUE if not available
+    public Map<String,Double> SigContribs; // reportable signatures only
+    public SampleTraitsData Traits;
+    public SvData SvCounts;
+
+    public Map<String,Double> FeatureLikelihoods; // summed per feature and capped at 1
+    public Map<String,FeatureType> FeatureTypes;
+    public double DriverTotal;
+
+    // the sample-level matrices are too large to keep per sample, so only whether the sample contributed to the cancer totals is kept
+    public boolean HasPosFreqCounts;
+    public boolean HasGeneExpression;
+
+    // the scale applied to the SNV position counts when added to the cancer totals, so removal takes out the same amount
+    public double PosFreqFactor;
+
+    // only populated while the sample is being added or removed
+    public double[] TriNucCounts;
+    public double[] PosFreqCounts;
+    public double[] GeneTpms;
+
+    public static final double NO_VALUE = -1;
+
+    public SampleRefData(final String sampleId, final String cancerType)
+    {
+        SampleId = sampleId;
+        CancerType = cancerType;
+
+        SnvCount = NO_VALUE;
+        SigContribs = null;
+        Traits = null;
+        SvCounts = null;
+        FeatureLikelihoods = null;
+        FeatureTypes = null;
+        DriverTotal = 0;
+        HasPosFreqCounts = false;
+        HasGeneExpression = false;
+        PosFreqFactor = NO_VALUE;
+        TriNucCounts = null;
+        PosFreqCounts = null;
+        GeneTpms = null;
+    }
+
+    public boolean hasSnvCount() { return SnvCount != NO_VALUE; }
+    public boolean hasFeatures() { return FeatureLikelihoods != null; }
+
+    public SampleRefData copyWithCancerType(final String cancerType)
+    {
+        SampleRefData sample = new SampleRefData(SampleId, cancerType);
+        sample.SnvCount = SnvCount;
+        sample.SigContribs = SigContribs;
+        sample.Traits = Traits;
+        sample.SvCounts = SvCounts;
+        sample.FeatureLikelihoods = FeatureLikelihoods;
+        sample.FeatureTypes = FeatureTypes;
+        sample.DriverTotal = DriverTotal;
+        sample.HasPosFreqCounts = HasPosFreqCounts;
+        sample.HasGeneExpression = HasGeneExpression;
+        sample.PosFreqFactor = PosFreqFactor;
+        sample.TriNucCounts = TriNucCounts;
+        sample.PosFreqCounts = PosFreqCounts;
+        sample.GeneTpms = GeneTpms;
+        return sample;
+    }
+
+    public void setFeatures(final List<SampleFeatureData> features)
+    {
+        FeatureLikelihoods = Maps.newHashMap();
+        FeatureTypes = Maps.newHashMap();
+        DriverTotal = 0;
+
+        for(SampleFeatureData feature : features)
+        {
+            if(feature.Type == DRIVER)
+                DriverTotal += feature.Likelihood;
+
+            FeatureTypes.putIfAbsent(feature.Name, feature.Type);
+            FeatureLikelihoods.merge(feature.Name, feature.Likelihood, Double::sum);
+        }
+
+        FeatureLikelihoods.replaceAll((name, likelihood) -> min(likelihood, 1));
+    }
+
+    public static String header()
+    {
+        return "SampleId,CancerType,SnvCount,SigContribs,Gender,WholeGenomeDuplication,Purity,Ploidy,MsIndelsPerMb,ChordHrd"
+                + ",SvCounts,DriverTotal,Features,HasPosFreqCounts,HasGeneExpression,PosFreqFactor";
+    }
+
+    // values are written in full so that removing a sample later subtracts exactly what was added
+    public String toCsv()
+    {
+        StringJoiner sj = new StringJoiner(DATA_DELIM);
+        sj.add(SampleId);
+        sj.add(CancerType);
+        sj.add(hasSnvCount() ? String.valueOf(SnvCount) : "");
+
+        StringJoiner sigSj = new StringJoiner(SUBSET_DELIM);
+
+        if(SigContribs != null)
+            SigContribs.forEach((sigName, contrib) -> sigSj.add(String.format("%s=%s", sigName, contrib)));
+
+        sj.add(sigSj.toString());
+
+        if(Traits != null)
+        {
+            sj.add(Traits.GenderType.toString());
+            sj.add(Traits.HasWGD ? "1" : "0");
+            sj.add(String.valueOf(Traits.Purity));
+            sj.add(String.valueOf(Traits.Ploidy));
+            sj.add(String.valueOf(Traits.IndelsMbPerMb));
+            sj.add(String.valueOf(Traits.ChordHrd));
+        }
+        else
+        {
+            sj.add("").add("").add("").add("").add("").add("");
+        }
+
+        StringJoiner svSj = new StringJoiner(SUBSET_DELIM);
+
+        if(SvCounts != null)
+        {
+            for(SvDataType type : SvDataType.values())
+            {
+                svSj.add(String.valueOf(SvCounts.getCount(type)));
+            }
+        }
+
+        sj.add(svSj.toString());
+
+        StringJoiner featureSj = new StringJoiner(SUBSET_DELIM);
+
+        if(hasFeatures())
+        {
+            sj.add(String.valueOf(DriverTotal));
+            FeatureLikelihoods.forEach((name, likelihood) -> featureSj.add(
+                    String.format("%s=%s=%s", name, FeatureTypes.get(name), likelihood)));
+        }
+        else
+        {
+            sj.add("");
+        }
+
+        sj.add(featureSj.toString());
+        sj.add(String.valueOf(HasPosFreqCounts));
+        sj.add(String.valueOf(HasGeneExpression));
+        sj.add(PosFreqFactor != NO_VALUE ? String.valueOf(PosFreqFactor) : "");
+
+        return sj.toString();
+    }
+
+    public static SampleRefData from(final Map<String,Integer> fieldsIndexMap, final String data)
+    {
+        final String[] items = data.split(DATA_DELIM, -1);
+
+        final String sampleId = items[fieldsIndexMap.get("SampleId")];
+        SampleRefData sample = new SampleRefData(sampleId, items[fieldsIndexMap.get("CancerType")]);
+
+        final String snvCount = items[fieldsIndexMap.get("SnvCount")];
+
+        if(!snvCount.isEmpty())
+            sample.SnvCount = Double.parseDouble(snvCount);
+
+        final String sigContribs = items[fieldsIndexMap.get("SigContribs")];
+
+        if(!sigContribs.isEmpty())
+        {
+            sample.SigContribs = Maps.newHashMap();
+
+            for(String sigItem : sigContribs.split(SUBSET_DELIM, -1))
+            {
+                final String[] sigInfo = sigItem.split("=");
+                sample.SigContribs.put(sigInfo[0], Double.parseDouble(sigInfo[1]));
+            }
+        }
+
+        final String gender = items[fieldsIndexMap.get("Gender")];
+
+        if(!gender.isEmpty())
+        {
+            sample.Traits = new SampleTraitsData(
+                    sampleId, Gender.valueOf(gender),
+                    items[fieldsIndexMap.get("WholeGenomeDuplication")].equals("1"),
+                    Double.parseDouble(items[fieldsIndexMap.get("Purity")]),
+                    Double.parseDouble(items[fieldsIndexMap.get("Ploidy")]),
+                    Double.parseDouble(items[fieldsIndexMap.get("MsIndelsPerMb")]),
+                    Double.parseDouble(items[fieldsIndexMap.get("ChordHrd")]));
+        }
+
+        final String svCounts = items[fieldsIndexMap.get("SvCounts")];
+
+        if(!svCounts.isEmpty())
+        {
+            final String[] counts = svCounts.split(SUBSET_DELIM, -1);
+            sample.SvCounts = new SvData(sampleId);
+
+            for(SvDataType type : SvDataType.values())
+            {
+                sample.SvCounts.setCount(type, Integer.parseInt(counts[SvDataType.typeIndex(type)]));
+            }
+        }
+
+        final String driverTotal = items[fieldsIndexMap.get("DriverTotal")];
+
+        if(!driverTotal.isEmpty())
+        {
+            sample.DriverTotal = Double.parseDouble(driverTotal);
+            sample.FeatureLikelihoods = Maps.newHashMap();
+            sample.FeatureTypes = Maps.newHashMap();
+
+            final String features = items[fieldsIndexMap.get("Features")];
+
+            if(!features.isEmpty())
+            {
+                for(String featureItem : features.split(SUBSET_DELIM, -1))
+                {
+                    final String[] featureInfo = featureItem.split("=");
+                    sample.FeatureTypes.put(featureInfo[0], FeatureType.valueOf(featureInfo[1]));
+                    sample.FeatureLikelihoods.put(featureInfo[0], Double.parseDouble(featureInfo[2]));
+                }
+            }
+        }
+
+        sample.HasPosFreqCounts = Boolean.parseBoolean(items[fieldsIndexMap.get("HasPosFreqCounts")]);
+        sample.HasGeneExpression = Boolean.parseBoolean(items[fieldsIndexMap.get("HasGeneExpression")]);
+
+        final String posFreqFactor = items[fieldsIndexMap.get("PosFreqFactor")];
+
+        if(!posFreqFactor.isEmpty())
+            sample.PosFreqFactor = Double.parseDouble(posFreqFactor);
+
+        return sample;
+    }
+}
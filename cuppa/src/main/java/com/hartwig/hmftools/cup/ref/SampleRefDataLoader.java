@@ -0,0 +1,341 @@
+package com.hartwig.hmftools.cup.ref;
+
+import static com.hartwig.hmftools.common.sigs.PositionFrequencies.DEFAULT_POS_FREQ_BUCKET_SIZE;
+import static com.hartwig.hmftools.common.sigs.SnvSigUtils.populateBucketMap;
+import static com.hartwig.hmftools.common.sigs.VectorUtils.sumVector;
+import static com.hartwig.hmftools.common.utils.io.FileWriterUtils.createFieldsIndexMap;
+import static com.hartwig.hmftools.cup.CuppaConfig.CUP_LOGGER;
+import static com.hartwig.hmftools.cup.CuppaConfig.DATA_DELIM;
+import static com.hartwig.hmftools.cup.common.CupConstants.POS_FREQ_BUCKET_SIZE;
+import static com.hartwig.hmftools.cup.common.SampleData.isKnownCancerType;
+import static com.hartwig.hmftools.cup.feature.FeatureDataLoader.loadFeaturesFromDatabase;
+import static com.hartwig.hmftools.cup.sample.SampleTraitsDataLoader.loadTraitsFromCohortFile;
+import static com.hartwig.hmftools.cup.sample.SampleTraitsDataLoader.loadTraitsFromDatabase;
+import static com.hartwig.hmftools.cup.somatics.RefSomatics.REPORTABLE_SIGS;
+import static com.hartwig.hmftools.cup.somatics.RefSomatics.populateReportableSignatures;
+import static com.hartwig.hmftools.cup.somatics.SomaticDataLoader.extractPositionFrequencyCounts;
+import static com.hartwig.hmftools.cup.somatics.SomaticDataLoader.extractTrinucleotideCounts;
+import static com.hartwig.hmftools.cup.somatics.SomaticDataLoader.loadRefSigContributions;
+import static com.hartwig.hmftools.cup.somatics.SomaticDataLoader.loadSigContribsFromDatabase;
+import static com.hartwig.hmftools.cup.somatics.SomaticDataLoader.loadSomaticVariants;
+import static com.hartwig.hmftools.cup.svs.SvDataLoader.loadSvDataFromCohortFile;
+import static com.hartwig.hmftools.cup.svs.SvDataLoader.loadSvDataFromDatabase;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.hartwig.hmftools.common.sigs.PositionFrequencies;
+import com.hartwig.hmftools.common.variant.SomaticVariant;
+import com.hartwig.hmftools.cup.feature.SampleFeatureData;
+import com.hartwig.hmftools.cup.sample.SampleTraitsData;
+import com.hartwig.hmftools.cup.svs.SvData;
+
+// loads the reference data of specific samples from the same sources, and with the same rules, as the full reference data build
+public class SampleRefDataLoader
+{
+    private final RefDataConfig mConfig;
+    private final RefCohortStats mCohortStats;
+    private final PositionFrequencies mPositionFrequencies;
+
+    // below this many samples the database is queried per sample rather than for the whole cohort at once
+    private static final int COHORT_QUERY_SAMPLE_COUNT = 100;
+
+    public SampleRefDataLoader(final RefDataConfig config, final RefCohortStats cohortStats)
+    {
+        mConfig = config;
+        mCohortStats = cohortStats;
+        mPositionFrequencies = new PositionFrequencies(POS_FREQ_BUCKET_SIZE, DEFAULT_POS_FREQ_BUCKET_SIZE);
+
+        populateReportableSignatures();
+    }
+
+    public static int maxPosFreqSampleCount()
+    {
+        return new PositionFrequencies(POS_FREQ_BUCKET_SIZE, DEFAULT_POS_FREQ_BUCKET_SIZE).getMaxSampleCount();
+    }
+
+    public void loadSampleData(final List<SampleRefData> samples)
+    {
+        if(samples.isEmpty())
+            return;
+
+        final List<String> knownTypeSampleIds = samples.stream()
+                .filter(x -> isKnownCancerType(x.CancerType)).map(x -> x.SampleId).collect(Collectors.toList());
+
+        loadSnvCounts(samples, true);
+        loadSigContributions(samples, knownTypeSampleIds);
+        loadTraits(samples, knownTypeSampleIds);
+        loadSvData(samples, knownTypeSampleIds);
+        loadFeatures(samples, knownTypeSampleIds);
+        loadGeneExpression(samples);
+    }
+
+    // the sample-level counts which each sample added to its cancer's totals, needed to take them back out
+    public void loadSampleTotals(final List<SampleRefData> samples)
+    {
+        final List<SampleRefData> posFreqSamples = samples.stream().filter(x -> x.HasPosFreqCounts).collect(Collectors.toList());
+
+        if(!posFreqSamples.isEmpty())
+            loadSnvCounts(posFreqSamples, false);
+
+        final List<SampleRefData> geneExpSamples = samples.stream().filter(x -> x.HasGeneExpression).collect(Collectors.toList());
+
+        if(!geneExpSamples.isEmpty())
+            loadGeneExpression(geneExpSamples);
+    }
+
+    private void loadSnvCounts(final List<SampleRefData> samples, boolean setSnvCount)
+    {
+        final List<String> sampleIds = samples.stream().map(x -> x.SampleId).collect(Collectors.toList());
+
+        final Map<String,double[]> sampleTriNucCounts = setSnvCount ?
+                loadSampleColumns(mConfig.RefSnvCountsFile, sampleIds, null, null) : Maps.newHashMap();
+
+        final Map<String,double[]> samplePosFreqCounts = loadSampleColumns(mConfig.RefSnvPositionDataFile, sampleIds, null, null);
+
+        final Map<String,Integer> triNucBucketNameMap = Maps.newHashMap();
+        populateBucketMap(triNucBucketNameMap);
+
+        for(SampleRefData sample : samples)
+        {
+            double[] triNucCounts = sampleTriNucCounts.get(sample.SampleId);
+            double[] posFreqCounts = samplePosFreqCounts.get(sample.SampleId);
+
+            if(((setSnvCount && triNucCounts == null) || posFreqCounts == null) && mConfig.DbAccess != null)
+            {
+                final List<SomaticVariant> variants = loadSomaticVariants(sample.SampleId, mConfig.DbAccess);
+
+                if(setSnvCount && triNucCounts == null)
+                    triNucCounts = extractTrinucleotideCounts(variants, triNucBucketNameMap);
+
+                if(posFreqCounts == null)
+                {
+                    extractPositionFrequencyCounts(variants, mPositionFrequencies);
+                    posFreqCounts = new double[mPositionFrequencies.getBucketCount()];
+
+                    final int[] counts = mPositionFrequencies.getCounts();
+
+                    for(int b = 0; b < posFreqCounts.length; ++b)
+                    {
+                        posFreqCounts[b] = counts[b];
+                    }
+                }
+            }
+
+            if(setSnvCount && triNucCounts != null)
+            {
+                sample.SnvCount = sumVector(triNucCounts);
+                sample.TriNucCounts = triNucCounts;
+            }
+
+            if(posFreqCounts != null)
+            {
+                sample.PosFreqCounts = posFreqCounts;
+                sample.HasPosFreqCounts = true;
+            }
+            else if(sample.HasPosFreqCounts)
+            {
+                CUP_LOGGER.warn("sample({}) missing SNV position counts", sample.SampleId);
+            }
+        }
+    }
+
+    private void loadSigContributions(final List<SampleRefData> samples, final List<String> knownTypeSampleIds)
+    {
+        final Map<String,Map<String,Double>> sampleSigContributions = Maps.newHashMap();
+
+        if(!mConfig.RefSigContribsFile.isEmpty())
+            loadRefSigContributions(mConfig.RefSigContribsFile, sampleSigContributions);
+        else if(mConfig.DbAccess != null)
+            loadSigContribsFromDatabase(mConfig.DbAccess, knownTypeSampleIds, sampleSigContributions);
+
+        for(SampleRefData sample : samples)
+        {
+            final Map<String,Double> sigAllocations = sampleSigContributions.get(sample.SampleId);
+
+            if(sigAllocations == null)
+                continue;
+
+            sample.SigContribs = Maps.newHashMap();
+
+            for(String sigName : REPORTABLE_SIGS.keySet())
+            {
+                sample.SigContribs.put(sigName, sigAllocations.getOrDefault(sigName, 0.0));
+            }
+        }
+    }
+
+    private void loadTraits(final List<SampleRefData> samples, final List<String> knownTypeSampleIds)
+    {
+        final Map<String,SampleTraitsData> sampleTraitsData = Maps.newHashMap();
+
+        if(!mConfig.RefSampleTraitsFile.isEmpty())
+            loadTraitsFromCohortFile(mConfig.RefSampleTraitsFile, sampleTraitsData);
+        else if(mConfig.DbAccess != null)
+            loadTraitsFromDatabase(mConfig.DbAccess, knownTypeSampleIds, sampleTraitsData);
+
+        samples.forEach(x -> x.Traits = sampleTraitsData.get(x.SampleId));
+    }
+
+    private void loadSvData(final List<SampleRefData> samples, final List<String> knownTypeSampleIds)
+    {
+        final Map<String,SvData> sampleSvData = Maps.newHashMap();
+
+        if(!mConfig.RefSampleSvDataFile.isEmpty())
+            loadSvDataFromCohortFile(mConfig.RefSampleSvDataFile, sampleSvData);
+        else if(mConfig.DbAccess != null)
+            loadSvDataFromDatabase(mConfig.DbAccess, knownTypeSampleIds, sampleSvData);
+
+        samples.forEach(x -> x.SvCounts = sampleSvData.get(x.SampleId));
+    }
+
+    private void loadFeatures(final List<SampleRefData> samples, final List<String> knownTypeSampleIds)
+    {
+        if(mConfig.DbAccess == null || knownTypeSampleIds.isEmpty())
+            return;
+
+        final Map<String,List<SampleFeatureData>> sampleFeaturesMap = Maps.newHashMap();
+
+        if(knownTypeSampleIds.size() >= COHORT_QUERY_SAMPLE_COUNT)
+        {
+            loadFeaturesFromDatabase(mConfig.DbAccess, knownTypeSampleIds, sampleFeaturesMap, true);
+        }
+        else
+        {
+            for(final String sampleId : knownTypeSampleIds)
+            {
+                loadFeaturesFromDatabase(mConfig.DbAccess, Lists.newArrayList(sampleId), sampleFeaturesMap, true);
+            }
+        }
+
+        for(SampleRefData sample : samples)
+        {
+            final List<SampleFeatureData> features = sampleFeaturesMap.get(sample.SampleId);
+
+            if(features != null)
+                sample.setFeatures(features);
+        }
+    }
+
+    private void loadGeneExpression(final List<SampleRefData> samples)
+    {
+        if(mConfig.RefRnaGeneExpFile.isEmpty())
+            return;
+
+        final List<String> geneIds = Lists.newArrayList();
+        final List<String> geneNames = Lists.newArrayList();
+
+        final Map<String,double[]> sampleTpms = loadSampleColumns(
+                mConfig.RefRnaGeneExpFile, samples.stream().map(x -> x.SampleId).collect(Collectors.toList()), geneIds, geneNames);
+
+        if(!mCohortStats.hasGeneInfo())
+        {
+            mCohortStats.setGeneInfo(geneIds, geneNames);
+        }
+        else if(geneIds.size() != mCohortStats.geneCount())
+        {
+            CUP_LOGGER.error("RNA gene expression file({}) genes({}) differ from reference statistics genes({})",
+                    mConfig.RefRnaGeneExpFile, geneIds.size(), mCohortStats.geneCount());
+            return;
+        }
+
+        for(SampleRefData sample : samples)
+        {
+            final double[] tpms = sampleTpms.get(sample.SampleId);
+
+            if(tpms != null)
+            {
+                sample.GeneTpms = tpms;
+                sample.HasGeneExpression = true;
+            }
+            else if(sample.HasGeneExpression)
+            {
+                CUP_LOGGER.warn("sample({}) missing gene expression data", sample.SampleId);
+            }
+        }
+    }
+
+    // reads only the requested samples' columns from a matrix file with a column per sample, and optionally its gene ID and name
+    static Map<String,double[]> loadSampleColumns(
+            final String filename, final List<String> sampleIds, final List<String> geneIds, final List<String> geneNames)
+    {
+        final Map<String,double[]> sampleColumns = Maps.newHashMap();
+
+        if(filename.isEmpty())
+            return sampleColumns;
+
+        try
+        {
+            BufferedReader fileReader = new BufferedReader(new FileReader(filename));
+
+            final Map<String,Integer> fieldsIndexMap = createFieldsIndexMap(fileReader.readLine(), DATA_DELIM);
+            Integer geneIdIndex = fieldsIndexMap.get("GeneId");
+            Integer geneNameIndex = fieldsIndexMap.get("GeneName");
+
+            final List<String> loadedSampleIds = Lists.newArrayList();
+            final List<Integer> columnIndices = Lists.newArrayList();
+
+            for(final String sampleId : sampleIds)
+            {
+                Integer index = fieldsIndexMap.get(sampleId);
+
+                if(index != null)
+                {
+                    loadedSampleIds.add(sampleId);
+                    columnIndices.add(index);
+                }
+            }
+
+            final List<double[]> rowValues = Lists.newArrayList();
+
+            String line = fileReader.readLine();
+
+            while(line != null)
+            {
+                final String[] items = line.split(DATA_DELIM, -1);
+
+                if(geneIds != null && geneIdIndex != null && geneNameIndex != null)
+                {
+                    geneIds.add(items[geneIdIndex]);
+                    geneNames.add(items[geneNameIndex]);
+                }
+
+                final double[] values = new double[columnIndices.size()];
+
+                for(int i = 0; i < columnIndices.size(); ++i)
+                {
+                    values[i] = Double.parseDouble(items[columnIndices.get(i)]);
+                }
+
+                rowValues.add(values);
+                line = fileReader.readLine();
+            }
+
+            fileReader.close();
+
+            for(int i = 0; i < loadedSampleIds.size(); ++i)
+            {
+                final double[] column = new double[rowValues.size()];
+
+                for(int r = 0; r < rowValues.size(); ++r)
+                {
+                    column[r] = rowValues.get(r)[i];
+                }
+
+                sampleColumns.put(loadedSampleIds.get(i), column);
+            }
+        }
+        catch(IOException e)
+        {
+            CUP_LOGGER.error("failed to read sample data from matrix file({}): {}", filename, e.toString());
+        }
+
+        return sampleColumns;
+    }
+}
@@ -0,0 +1,117 @@
+package com.hartwig.hmftools.cup.ref;
+
+import static java.lang.Math.ceil;
+import static java.lang.Math.floor;
+import static java.lang.Math.min;
+
+import static com.hartwig.hmftools.common.sigs.DataUtils.capValue;
+import static com.hartwig.hmftools.common.stats.Percentiles.PERCENTILE_COUNT;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+// a count of each distinct value, from which percentiles are taken exactly as from the full sorted list of values - values can be
+// added and removed in log time rather than re-sorting the list
+public class ValueHistogram
+{
+    private final TreeMap<Double,Integer> mValueCounts;
+    private int mTotal;
+
+    public ValueHistogram()
+    {
+        mValueCounts = new TreeMap<>();
+        mTotal = 0;
+    }
+
+    public int count() { return mTotal; }
+    public boolean isEmpty() { return mTotal == 0; }
+
+    public void add(double value)
+    {
+        mValueCounts.merge(value, 1, Integer::sum);
+        ++mTotal;
+    }
+
+    public boolean remove(double value)
+    {
+        Integer count = mValueCounts.get(value);
+
+        if(count == null)
+            return false;
+
+        if(count == 1)
+            mValueCounts.remove(value);
+        else
+            mValueCounts.put(value, count - 1);
+
+        --mTotal;
+        return true;
+    }
+
+    public double[] buildPercentiles()
+    {
+        double[] percentiles = new double[PERCENTILE_COUNT];
+        calcPercentileValues(percentiles);
+        return percentiles;
+    }
+
+    // matches Percentiles.calcPercentileValues applied to the sorted values
+    public void calcPercentileValues(final double[] percentileValues)
+    {
+        if(mTotal == 0)
+            return;
+
+        if(mTotal == 1)
+        {
+            for(int i = 0; i < percentileValues.length; ++i)
+            {
+                percentileValues[i] = mValueCounts.firstKey();
+            }
+
+            return;
+        }
+
+        int valueCount = mTotal;
+        int slotCount = percentileValues.length;
+        double valuesPerSlot = (valueCount - 1) / (double) (slotCount - 1);
+
+        // the lower and upper indices each only increase, so are found by walking the counts once each
+        final ValueCursor lowerCursor = new ValueCursor();
+        final ValueCursor upperCursor = new ValueCursor();
+
+        percentileValues[0] = lowerCursor.valueAt(0);
+
+        for(int i = 1; i < percentileValues.length; ++i)
+        {
+            double valueIndex = i * valuesPerSlot;
+            int valueLowerIndex = (int) floor(valueIndex);
+            int valueUpperIndex = min((int) ceil(valueIndex), valueCount - 1);
+
+            double valueLower = lowerCursor.valueAt(valueLowerIndex);
+            double valueUpper = upperCursor.valueAt(valueUpperIndex);
+            double lowerFraction = capValue(1 - (valueIndex - valueLowerIndex), 0, 1);
+
+            percentileValues[i] = lowerFraction * valueLower + (1 - lowerFraction) * valueUpper;
+        }
+    }
+
+    private class ValueCursor
+    {
+        private final Iterator<Map.Entry<Double,Integer>> mIterator = mValueCounts.entrySet().iterator();
+        private double mValue = 0;
+        private int mEndIndex = 0; // exclusive index in the sorted values of the current value's last occurrence
+
+        public double valueAt(int index)
+        {
+            while(index >= mEndIndex)
+            {
+                final Map.Entry<Double,Integer> entry = mIterator.next();
+                mValue = entry.getKey();
+                mEndIndex += entry.getValue();
+            }
+
+            return mValue;
+        }
+    }
+}
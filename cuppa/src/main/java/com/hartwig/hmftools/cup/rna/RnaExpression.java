@@ -22,7 +22,6 @@ import static com.hartwig.hmftools.cup.common.CupConstants.CSS_SIMILARITY_CUTOFF
 import static com.hartwig.hmftools.cup.common.CupConstants.CSS_SIMILARITY_MAX_MATCHES;
 import static com.hartwig.hmftools.cup.common.ResultType.LIKELIHOOD;
 import static com.hartwig.hmftools.cup.common.SampleResult.checkIsValidCancerType;
-import static com.hartwig.hmftools.cup.common.SampleSimilarity.recordCssSimilarity;
 import static com.hartwig.hmftools.cup.rna.RefRnaExpression.loadRefPercentileData;
 
 import java.util.List;
@@ -38,6 +37,7 @@ import com.hartwig.hmftools.cup.common.SampleData;
 import com.hartwig.hmftools.cup.common.SampleDataCache;
 import com.hartwig.hmftools.cup.common.SampleResult;
 import com.hartwig.hmftools.cup.common.SampleSimilarity;
+import com.hartwig.hmftools.cup.common.TopSimilarities;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.Options;
@@ -279,7 +279,8 @@ public class RnaExpression implements CuppaClassifier
     {
         final Map<String,Double> cancerCssTotals = Maps.newHashMap();
 
-        final List<SampleSimilarity> topMatches = Lists.newArrayList();
+        final TopSimilarities topMatches = new TopSimilarities(
+                sample.Id, EXPRESSION_PAIRWISE.toString(), CSS_SIMILARITY_MAX_MATCHES, CSS_SIMILARITY_CUTOFF);
 
         for(Map.Entry<String,Integer> entry : mRefSampleGeneExpIndexMap.entrySet())
         {
@@ -305,11 +306,7 @@ public class RnaExpression implements CuppaClassifier
                 continue;
 
             if(mConfig.WriteSimilarities)
-            {
-                recordCssSimilarity(
-                        topMatches, sample.Id, refSampleId, css, EXPRESSION_PAIRWISE.toString(),
-                        CSS_SIMILARITY_MAX_MATCHES, CSS_SIMILARITY_CUTOFF);
-            }
+                topMatches.add(refSampleId, css);
 
             double cssWeight = pow(RNA_GENE_EXP_DIFF_EXPONENT, -100 * (1 - css));
 
@@ -335,7 +332,7 @@ public class RnaExpression implements CuppaClassifier
         results.add(new SampleResult(
                 sample.Id, CLASSIFIER, LIKELIHOOD, EXPRESSION_PAIRWISE.toString(), String.format("%.4g", totalCss), cancerCssTotals));
 
-        similarities.addAll(topMatches);
+        similarities.addAll(topMatches.getMatches());
     }
 
     private double[] adjustRefTpmTotals(final double[] refGeneTpmTotals, final double[] sampleGeneTPMs)
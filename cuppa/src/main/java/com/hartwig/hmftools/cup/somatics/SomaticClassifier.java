@@ -7,6 +7,8 @@ import static java.lang.Math.round;
 import static java.lang.Math.sqrt;
 
 import static com.hartwig.hmftools.common.stats.CosineSimilarity.calcCosineSim;
+import static com.hartwig.hmftools.common.stats.CosineSimilarity.calcUnitVectorCosineSim;
+import static com.hartwig.hmftools.common.stats.CosineSimilarity.unitVector;
 import static com.hartwig.hmftools.common.stats.Percentiles.getPercentile;
 import static com.hartwig.hmftools.common.sigs.VectorUtils.sumVector;
 import static com.hartwig.hmftools.cup.CuppaConfig.CUP_LOGGER;
@@ -26,7 +28,6 @@ import static com.hartwig.hmftools.cup.common.ResultType.LIKELIHOOD;
 import static com.hartwig.hmftools.cup.common.ResultType.PERCENTILE;
 import static com.hartwig.hmftools.cup.common.SampleData.isKnownCancerType;
 import static com.hartwig.hmftools.cup.common.SampleResult.checkIsValidCancerType;
-import static com.hartwig.hmftools.cup.common.SampleSimilarity.recordCssSimilarity;
 import static com.hartwig.hmftools.cup.somatics.RefSomatics.populateReportableSignatures;
 import static com.hartwig.hmftools.cup.somatics.SomaticDataLoader.loadRefSampleCounts;
 import static com.hartwig.hmftools.cup.somatics.SomaticDataLoader.loadRefSignaturePercentileData;
@@ -37,6 +38,7 @@ import static com.hartwig.hmftools.cup.somatics.SomaticDataLoader.loadSigContrib
 
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
 
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
@@ -46,10 +48,12 @@ import com.hartwig.hmftools.common.sigs.SignatureAllocationFile;
 import com.hartwig.hmftools.cup.CuppaConfig;
 import com.hartwig.hmftools.cup.common.CategoryType;
 import com.hartwig.hmftools.cup.common.CuppaClassifier;
+import com.hartwig.hmftools.cup.common.RefSimilarities;
 import com.hartwig.hmftools.cup.common.SampleData;
 import com.hartwig.hmftools.cup.common.SampleDataCache;
 import com.hartwig.hmftools.cup.common.SampleResult;
 import com.hartwig.hmftools.cup.common.SampleSimilarity;
+import com.hartwig.hmftools.cup.common.TopSimilarities;
 
 public class SomaticClassifier implements CuppaClassifier
 {
@@ -58,11 +62,14 @@ public class SomaticClassifier implements CuppaClassifier
 
     private Matrix mRefSampleCounts;
     private final List<String> mRefSampleNames;
+    private double[] mRefSampleTotals;
+    private RefSimilarities mRefSampleSimilarities;
     private final Map<String,Map<String,double[]>> mRefCancerSigContribPercentiles;
     private final Map<String,double[]> mRefCancerSnvCountPercentiles;
 
     private Matrix mRefCancerSnvPosFrequencies;
     private final List<String> mRefSnvPosFreqCancerTypes;
+    private final List<double[]> mRefCancerPosFreqUnitVectors;
 
     private Matrix mRefSampleSnvPosFrequencies;
     private final Map<String,Integer> mRefSamplePosFreqIndex;
@@ -96,7 +103,10 @@ public class SomaticClassifier implements CuppaClassifier
         mRefCancerSigContribPercentiles = Maps.newHashMap();
         mRefCancerSnvCountPercentiles = Maps.newHashMap();
         mRefSnvPosFreqCancerTypes = Lists.newArrayList();
+        mRefCancerPosFreqUnitVectors = Lists.newArrayList();
         mRefSamplePosFreqIndex = Maps.newHashMap();
+        mRefSampleTotals = null;
+        mRefSampleSimilarities = null;
 
         mIsValid = true;
 
@@ -116,6 +126,31 @@ public class SomaticClassifier implements CuppaClassifier
 
         mIsValid &= loadSampleCounts();
         mIsValid &= loadSigContributions();
+
+        if(mIsValid)
+            prepareRefSimilarities();
+    }
+
+    private void prepareRefSimilarities()
+    {
+        // the reference data is fixed, so its totals and unit-length vectors are formed once rather than for each sample
+        mRefSampleTotals = new double[mRefSampleCounts.Cols];
+
+        for(int s = 0; s < mRefSampleCounts.Cols; ++s)
+        {
+            mRefSampleTotals[s] = sumVector(mRefSampleCounts.getCol(s));
+        }
+
+        final List<String> sampleOrder = mSampleDataCache.SpecificSample != null ?
+                Lists.newArrayList(mSampleDataCache.SpecificSample.Id)
+                : mSampleDataCache.SampleDataList.stream().map(x -> x.Id).collect(Collectors.toList());
+
+        mRefSampleSimilarities = new RefSimilarities(mRefSampleCounts, mSampleCounts, mSampleCountsIndex, sampleOrder);
+
+        for(int i = 0; i < mRefCancerSnvPosFrequencies.Cols; ++i)
+        {
+            mRefCancerPosFreqUnitVectors.add(unitVector(mRefCancerSnvPosFrequencies.getCol(i)));
+        }
     }
 
     public CategoryType categoryType() { return SNV; }
@@ -276,10 +311,13 @@ public class SomaticClassifier implements CuppaClassifier
     {
         int refSampleCount = mRefSampleCounts.Cols;
 
-        final List<SampleSimilarity> topMatches = Lists.newArrayList();
+        final TopSimilarities topMatches = new TopSimilarities(
+                sample.Id, SNV_96_PAIRWISE_SIMILARITY.toString(), CSS_SIMILARITY_MAX_MATCHES, CSS_SIMILARITY_CUTOFF);
 
         final Map<String,Double> cancerCssTotals = Maps.newHashMap();
 
+        final double[] refSimilarities = mRefSampleSimilarities.takeSimilarities(sample.Id);
+
         for(int s = 0; s < refSampleCount; ++s)
         {
             final String refSampleId = mRefSampleNames.get(s);
@@ -295,26 +333,20 @@ public class SomaticClassifier implements CuppaClassifier
             if(!checkIsValidCancerType(sample, refCancerType, cancerCssTotals))
                 continue;
 
-            final double[] otherSampleCounts = mRefSampleCounts.getCol(s);
-
-            double css = calcCosineSim(sampleCounts, otherSampleCounts);
+            double css = refSimilarities[s];
 
             if(css < SNV_CSS_THRESHOLD)
                 continue;
 
             if(mConfig.WriteSimilarities)
-            {
-                recordCssSimilarity(
-                        topMatches, sample.Id, refSampleId, css, SNV_96_PAIRWISE_SIMILARITY.toString(),
-                        CSS_SIMILARITY_MAX_MATCHES, CSS_SIMILARITY_CUTOFF);
-            }
+                topMatches.add(refSampleId, css);
 
             if(!isKnownCancerType(refCancerType))
                 continue;
 
             double cssWeight = pow(SNV_CSS_DIFF_EXPONENT, -100 * (1 - css));
 
-            double otherSnvTotal = sumVector(otherSampleCounts);
+            double otherSnvTotal = mRefSampleTotals[s];
             double mutLoadWeight = min(otherSnvTotal, snvTotal) / max(otherSnvTotal, snvTotal);
 
             int cancerTypeCount = mSampleDataCache.getCancerSampleCount(refCancerType);
@@ -353,16 +385,11 @@ public class SomaticClassifier implements CuppaClassifier
 
                 double css = calcCosineSim(sampleCounts, otherSampleCounts);
 
-                if(mConfig.WriteSimilarities)
-                {
-                    recordCssSimilarity(
-                            topMatches, sample.Id, nonRefSampleId, css, SNV_96_PAIRWISE_SIMILARITY.toString(),
-                            CSS_SIMILARITY_MAX_MATCHES, CSS_SIMILARITY_CUTOFF);
-                }
+                topMatches.add(nonRefSampleId, css);
             }
         }
 
-        similarities.addAll(topMatches);
+        similarities.addAll(topMatches.getMatches());
     }
 
     private void addPosFreqCssResults(
@@ -377,6 +404,7 @@ public class SomaticClassifier implements CuppaClassifier
         }
 
         final double[] sampleCounts = mSamplePosFrequencies.getCol(sampleCountsIndex);
+        final double[] sampleUnitVector = unitVector(sampleCounts);
         double sampleTotal = sumVector(sampleCounts);
 
         // first run CSS against cancer cohorts
@@ -396,10 +424,10 @@ public class SomaticClassifier implements CuppaClassifier
 
             boolean matchesCancerType = sample.CancerType.equals(refCancerType);
 
-            final double[] refPosFreqs = sample.isRefSample() && matchesCancerType ?
-                    adjustRefPosFreqCounts(mRefCancerSnvPosFrequencies.getCol(i), sampleCounts, sampleTotal) : mRefCancerSnvPosFrequencies.getCol(i);
-
-            double css = calcCosineSim(sampleCounts, refPosFreqs);
+            // a ref sample's own counts are first removed from its cancer type's frequencies
+            double css = sample.isRefSample() && matchesCancerType ?
+                    calcCosineSim(sampleCounts, adjustRefPosFreqCounts(mRefCancerSnvPosFrequencies.getCol(i), sampleCounts, sampleTotal))
+                    : calcUnitVectorCosineSim(sampleUnitVector, mRefCancerPosFreqUnitVectors.get(i));
 
             if(css < SNV_POS_FREQ_CSS_THRESHOLD)
                 continue;
@@ -448,7 +476,8 @@ public class SomaticClassifier implements CuppaClassifier
     {
         if(mRefSampleSnvPosFrequencies != null && mConfig.WriteSimilarities)
         {
-            final List<SampleSimilarity> topMatches = Lists.newArrayList();
+            final TopSimilarities topMatches = new TopSimilarities(
+                    sample.Id, GENOMIC_POSITION_SIMILARITY.toString(), CSS_SIMILARITY_MAX_MATCHES, CSS_SIMILARITY_CUTOFF);
 
             for(Map.Entry<String,Integer> entry : mRefSamplePosFreqIndex.entrySet())
             {
@@ -469,15 +498,10 @@ public class SomaticClassifier implements CuppaClassifier
                 if(css < SNV_CSS_THRESHOLD)
                     continue;
 
-                if(mConfig.WriteSimilarities)
-                {
-                    recordCssSimilarity(
-                            topMatches, sample.Id, refSampleId, css, GENOMIC_POSITION_SIMILARITY.toString(),
-                            CSS_SIMILARITY_MAX_MATCHES, CSS_SIMILARITY_CUTOFF);
-                }
+                topMatches.add(refSampleId, css);
             }
 
-            similarities.addAll(topMatches);
+            similarities.addAll(topMatches.getMatches());
         }
     }
 
@@ -0,0 +1,148 @@
+package com.hartwig.hmftools.cup.common;
+
+import static com.hartwig.hmftools.common.stats.CosineSimilarity.calcCosineSim;
+import static com.hartwig.hmftools.cup.common.RefSimilarities.SAMPLE_BATCH_SIZE;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.hartwig.hmftools.common.utils.Matrix;
+
+import org.junit.Test;
+
+public class RefSimilaritiesTest
+{
+    private static final int BUCKET_COUNT = 12;
+    private static final int REF_COUNT = 30;
+
+    @Test
+    public void testSimilaritiesMatchCosineSim()
+    {
+        final Random random = new Random(1);
+
+        // a zero reference and a zero sample, and more samples than fit in 2 batches
+        final Matrix refCounts = randomCounts(random, REF_COUNT);
+        refCounts.setCol(4, new double[BUCKET_COUNT]);
+
+        int sampleCount = 2 * SAMPLE_BATCH_SIZE + 10;
+        final Matrix sampleCounts = randomCounts(random, sampleCount + 1);
+        sampleCounts.setCol(7, new double[BUCKET_COUNT]);
+
+        final Map<String,Integer> sampleCountsIndex = Maps.newHashMap();
+        final List<String> sampleOrder = Lists.newArrayList();
+
+        for(int s = 0; s <= sampleCount; ++s)
+        {
+            sampleCountsIndex.put(sampleId(s), s);
+
+            // the last sample has counts but is outside the batch order
+            if(s < sampleCount)
+                sampleOrder.add(sampleId(s));
+        }
+
+        // a sample in the batch order without counts
+        sampleOrder.add(1, "NO_COUNTS");
+
+        final RefSimilarities refSimilarities = new RefSimilarities(refCounts, sampleCounts, sampleCountsIndex, sampleOrder);
+        assertEquals(REF_COUNT, refSimilarities.refCount());
+
+        assertNull(refSimilarities.takeSimilarities("NO_COUNTS"));
+        assertNull(refSimilarities.takeSimilarities("UNKNOWN"));
+
+        for(int s = 0; s <= sampleCount; ++s)
+        {
+            assertSimilarities(refCounts, sampleCounts, s, refSimilarities.takeSimilarities(sampleId(s)));
+        }
+
+        assertEquals(0, refSimilarities.heldSimilarityCount());
+
+        // a sample requested again is recalculated
+        assertSimilarities(refCounts, sampleCounts, 3, refSimilarities.takeSimilarities(sampleId(3)));
+        assertSimilarities(refCounts, sampleCounts, 7, refSimilarities.takeSimilarities(sampleId(7)));
+        assertEquals(0, refSimilarities.heldSimilarityCount());
+    }
+
+    @Test
+    public void testUntakenSimilaritiesDropped()
+    {
+        final Random random = new Random(2);
+
+        final Matrix refCounts = randomCounts(random, REF_COUNT);
+
+        int sampleCount = 4 * SAMPLE_BATCH_SIZE;
+        final Matrix sampleCounts = randomCounts(random, sampleCount);
+
+        final Map<String,Integer> sampleCountsIndex = Maps.newHashMap();
+        final List<String> sampleOrder = Lists.newArrayList();
+
+        for(int s = 0; s < sampleCount; ++s)
+        {
+            sampleCountsIndex.put(sampleId(s), s);
+            sampleOrder.add(sampleId(s));
+        }
+
+        final RefSimilarities refSimilarities = new RefSimilarities(refCounts, sampleCounts, sampleCountsIndex, sampleOrder);
+
+        // skip the first sample of each batch
+        refSimilarities.takeSimilarities(sampleId(1));
+        assertEquals(SAMPLE_BATCH_SIZE - 1, refSimilarities.heldSimilarityCount());
+
+        refSimilarities.takeSimilarities(sampleId(SAMPLE_BATCH_SIZE + 1));
+        assertEquals(2 * (SAMPLE_BATCH_SIZE - 1), refSimilarities.heldSimilarityCount());
+
+        // the first batch's untaken rows are dropped once a batch 2 further on is calculated
+        refSimilarities.takeSimilarities(sampleId(2 * SAMPLE_BATCH_SIZE + 1));
+        assertEquals(2 * (SAMPLE_BATCH_SIZE - 1), refSimilarities.heldSimilarityCount());
+
+        for(int s = 0; s < sampleCount; ++s)
+        {
+            if(s % SAMPLE_BATCH_SIZE == 1 && s < 3 * SAMPLE_BATCH_SIZE)
+                continue;
+
+            assertSimilarities(refCounts, sampleCounts, s, refSimilarities.takeSimilarities(sampleId(s)));
+        }
+
+        assertEquals(0, refSimilarities.heldSimilarityCount());
+    }
+
+    private static String sampleId(int index) { return String.format("SAMPLE_%03d", index); }
+
+    private static void assertSimilarities(final Matrix refCounts, final Matrix sampleCounts, int sampleIndex, final double[] similarities)
+    {
+        assertNotNull(similarities);
+        assertEquals(refCounts.Cols, similarities.length);
+
+        final double[] counts = sampleCounts.getCol(sampleIndex);
+
+        for(int r = 0; r < refCounts.Cols; ++r)
+        {
+            assertEquals(calcCosineSim(counts, refCounts.getCol(r)), similarities[r], 1e-12);
+        }
+    }
+
+    private static Matrix randomCounts(final Random random, int sampleCount)
+    {
+        final Matrix counts = new Matrix(BUCKET_COUNT, sampleCount);
+
+        for(int s = 0; s < sampleCount; ++s)
+        {
+            final double[] sampleCounts = new double[BUCKET_COUNT];
+
+            for(int b = 0; b < BUCKET_COUNT; ++b)
+            {
+                sampleCounts[b] = random.nextInt(4) == 0 ? 0 : random.nextInt(50);
+            }
+
+            counts.setCol(s, sampleCounts);
+        }
+
+        return counts;
+    }
+}
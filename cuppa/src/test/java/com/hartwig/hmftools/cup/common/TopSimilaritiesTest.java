@@ -0,0 +1,165 @@
+package com.hartwig.hmftools.cup.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import com.google.common.collect.Lists;
+
+import org.junit.Test;
+
+public class TopSimilaritiesTest
+{
+    private static final String SAMPLE_ID = "SAMPLE_01";
+    private static final String MATCH_TYPE = "SNV_96_PAIRWISE";
+
+    @Test
+    public void testOrderingCutoffAndTies()
+    {
+        final TopSimilarities topMatches = new TopSimilarities(SAMPLE_ID, MATCH_TYPE, 3, 0.8);
+
+        topMatches.add("REF_01", 0.85);
+        topMatches.add("REF_02", 0.79); // below the cutoff
+        topMatches.add("REF_03", 0.95);
+        topMatches.add("REF_04", 0.8); // at the cutoff
+        topMatches.add("REF_05", 0.85); // ties with an earlier match
+        topMatches.add("REF_06", 0.8); // ties with the lowest match, so the earlier is kept
+
+        assertMatches(topMatches.getMatches(), "REF_03", "REF_01", "REF_05");
+
+        final List<SampleSimilarity> matches = topMatches.getMatches();
+        assertEquals(SAMPLE_ID, matches.get(0).SampleId);
+        assertEquals(MATCH_TYPE, matches.get(0).MatchType);
+        assertEquals(0.95, matches.get(0).Score, 1e-10);
+
+        // a better match arriving after the list is full
+        topMatches.add("REF_07", 0.9);
+        assertMatches(topMatches.getMatches(), "REF_03", "REF_07", "REF_01");
+
+        assertTrue(new TopSimilarities(SAMPLE_ID, MATCH_TYPE, 0, 0.8).getMatches().isEmpty());
+    }
+
+    @Test
+    public void testMatchesPreviousSelection()
+    {
+        // the previous list insertion was only correct for candidates arriving in descending score order, in which case both agree;
+        // for any order the top matches are the highest scores at or above the cutoff, earlier first among ties
+        final Random random = new Random(1);
+
+        for(int test = 0; test < 50; ++test)
+        {
+            int maxMatches = 1 + random.nextInt(10);
+            double cutoff = 0.5 + random.nextInt(4) * 0.1;
+            int candidateCount = random.nextInt(60);
+
+            final List<SampleSimilarity> candidates = Lists.newArrayList();
+
+            for(int i = 0; i < candidateCount; ++i)
+            {
+                // rounded to produce ties
+                double css = random.nextInt(40) / 40.0;
+                candidates.add(new SampleSimilarity(SAMPLE_ID, String.format("REF_%02d", i), MATCH_TYPE, css));
+            }
+
+            final List<SampleSimilarity> expected = candidates.stream()
+                    .filter(x -> x.Score >= cutoff)
+                    .sorted(Comparator.comparingDouble((SampleSimilarity x) -> x.Score).reversed())
+                    .limit(maxMatches)
+                    .collect(Collectors.toList());
+
+            final TopSimilarities topMatches = new TopSimilarities(SAMPLE_ID, MATCH_TYPE, maxMatches, cutoff);
+            candidates.forEach(x -> topMatches.add(x.MatchedSampleId, x.Score));
+            assertMatches(expected, topMatches.getMatches());
+
+            final List<SampleSimilarity> sortedCandidates = candidates.stream()
+                    .sorted(Comparator.comparingDouble((SampleSimilarity x) -> x.Score).reversed())
+                    .collect(Collectors.toList());
+
+            final List<SampleSimilarity> previousMatches = Lists.newArrayList();
+            final TopSimilarities sortedTopMatches = new TopSimilarities(SAMPLE_ID, MATCH_TYPE, maxMatches, cutoff);
+
+            for(final SampleSimilarity candidate : sortedCandidates)
+            {
+                recordCssSimilarity(previousMatches, candidate.MatchedSampleId, candidate.Score, maxMatches, cutoff);
+                sortedTopMatches.add(candidate.MatchedSampleId, candidate.Score);
+            }
+
+            assertMatches(previousMatches, sortedTopMatches.getMatches());
+            assertMatches(expected, previousMatches);
+        }
+    }
+
+    @Test
+    public void testPreviousSelectionMissedBetterMatch()
+    {
+        final List<SampleSimilarity> previousMatches = Lists.newArrayList();
+        final TopSimilarities topMatches = new TopSimilarities(SAMPLE_ID, MATCH_TYPE, 2, 0.5);
+
+        final String[] refSampleIds = { "REF_01", "REF_02", "REF_03" };
+        final double[] cssValues = { 0.6, 0.9, 0.8 };
+
+        for(int i = 0; i < refSampleIds.length; ++i)
+        {
+            recordCssSimilarity(previousMatches, refSampleIds[i], cssValues[i], 2, 0.5);
+            topMatches.add(refSampleIds[i], cssValues[i]);
+        }
+
+        // the first matches were appended unsorted, so the 0.8 match was compared against the 0.9 and dropped
+        assertEquals(0.6, previousMatches.get(0).Score, 1e-10);
+        assertEquals(0.9, previousMatches.get(1).Score, 1e-10);
+
+        assertMatches(topMatches.getMatches(), "REF_02", "REF_03");
+    }
+
+    // the selection TopSimilarities replaced
+    private static void recordCssSimilarity(
+            final List<SampleSimilarity> topMatches, final String otherSampleId, double css, int maxMatches, double matchCssCutoff)
+    {
+        if(css < matchCssCutoff)
+            return;
+
+        if(topMatches.size() < maxMatches)
+        {
+            topMatches.add(new SampleSimilarity(SAMPLE_ID, otherSampleId, MATCH_TYPE, css));
+            return;
+        }
+
+        if(css < topMatches.get(topMatches.size() - 1).Score)
+            return;
+
+        for(int i = 0; i < topMatches.size(); ++i)
+        {
+            if(css > topMatches.get(i).Score)
+            {
+                topMatches.add(i, new SampleSimilarity(SAMPLE_ID, otherSampleId, MATCH_TYPE, css));
+                topMatches.remove(topMatches.size() - 1);
+                return;
+            }
+        }
+    }
+
+    private static void assertMatches(final List<SampleSimilarity> matches, final String... matchedSampleIds)
+    {
+        assertEquals(matchedSampleIds.length, matches.size());
+
+        for(int i = 0; i < matchedSampleIds.length; ++i)
+        {
+            assertEquals(matchedSampleIds[i], matches.get(i).MatchedSampleId);
+        }
+    }
+
+    private static void assertMatches(final List<SampleSimilarity> expected, final List<SampleSimilarity> matches)
+    {
+        assertEquals(expected.size(), matches.size());
+
+        for(int i = 0; i < expected.size(); ++i)
+        {
+            assertEquals(expected.get(i).MatchedSampleId, matches.get(i).MatchedSampleId);
+            assertEquals(expected.get(i).Score, matches.get(i).Score, 1e-10);
+        }
+    }
+}
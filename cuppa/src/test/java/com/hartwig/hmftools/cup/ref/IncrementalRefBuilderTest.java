@@ -0,0 +1,376 @@
+package com.hartwig.hmftools.cup.ref;
+
+import static com.hartwig.hmftools.common.sigs.PositionFrequencies.DEFAULT_POS_FREQ_BUCKET_SIZE;
+import static com.hartwig.hmftools.common.utils.io.FileWriterUtils.OUTPUT_DIR;
+import static com.hartwig.hmftools.cup.CuppaConfig.REF_SAMPLE_DATA_FILE;
+import static com.hartwig.hmftools.cup.CuppaConfig.REF_SNV_COUNTS_FILE;
+import static com.hartwig.hmftools.cup.CuppaConfig.REF_SNV_SAMPLE_POS_FREQ_FILE;
+import static com.hartwig.hmftools.cup.CuppaRefFiles.REF_FILE_SAMPLE_POS_FREQ_COUNTS;
+import static com.hartwig.hmftools.cup.CuppaRefFiles.REF_FILE_SNV_COUNTS;
+import static com.hartwig.hmftools.cup.common.CupConstants.POS_FREQ_BUCKET_SIZE;
+import static com.hartwig.hmftools.cup.ref.RefDataConfig.REF_SAMPLE_TRAITS_FILE;
+import static com.hartwig.hmftools.cup.ref.RefDataConfig.REF_SIG_CONTRIBS_FILE;
+import static com.hartwig.hmftools.cup.ref.RefDataConfig.REF_STATS_DIR;
+import static com.hartwig.hmftools.cup.ref.RefDataConfig.REF_SV_DATA_FILE;
+import static com.hartwig.hmftools.cup.ref.RefDataConfig.SAMPLE_CHANGES_FILE;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.StringJoiner;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.hartwig.hmftools.common.sigs.PositionFrequencies;
+import com.hartwig.hmftools.cup.svs.SvDataType;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.junit.Test;
+
+public class IncrementalRefBuilderTest
+{
+    private static final String[] CANCER_TYPES = { "Breast", "Lung", "Skin", "Other" };
+    private static final String[] SIG_NAMES = { "Sig1", "Sig2", "Sig4", "Sig7", "Sig13" };
+    private static final int SNV_BUCKETS = 96;
+
+    @Test
+    public void testMatchesFullBuild() throws IOException, ParseException
+    {
+        final String dataDir = Files.createTempDirectory("cuppa_incremental").toFile().getAbsolutePath() + File.separator;
+        final Random random = new Random(1);
+
+        final Map<String,String> initialCancerTypes = Maps.newLinkedHashMap();
+
+        for(int i = 0; i < 16; ++i)
+        {
+            initialCancerTypes.put(String.format("SAMPLE_%02d", i), CANCER_TYPES[i % CANCER_TYPES.length]);
+        }
+
+        // a removal, relabels between known cancer types and to and from an unknown one, and additions
+        final List<String[]> changes = Lists.newArrayList();
+        changes.add(new String[] { "SAMPLE_00", "REMOVE", "" });
+        changes.add(new String[] { "SAMPLE_01", "RELABEL", "Skin" });
+        changes.add(new String[] { "SAMPLE_03", "RELABEL", "Breast" });
+        changes.add(new String[] { "SAMPLE_05", "RELABEL", "Other" });
+        changes.add(new String[] { "NEW_00", "ADD", "Lung" });
+        changes.add(new String[] { "NEW_01", "ADD", "Skin" });
+
+        final Map<String,String> finalCancerTypes = Maps.newLinkedHashMap(initialCancerTypes);
+
+        for(String[] change : changes)
+        {
+            if(change[1].equals("REMOVE"))
+                finalCancerTypes.remove(change[0]);
+            else
+                finalCancerTypes.put(change[0], change[2]);
+        }
+
+        final List<String> allSampleIds = Lists.newArrayList(initialCancerTypes.keySet());
+        allSampleIds.add("NEW_00");
+        allSampleIds.add("NEW_01");
+
+        writeSampleData(dataDir + "initial_sample_data.csv", initialCancerTypes);
+        writeSampleData(dataDir + "final_sample_data.csv", finalCancerTypes);
+
+        final List<String> changeLines = Lists.newArrayList("SampleId,Change,CancerType");
+        changes.forEach(x -> changeLines.add(String.join(",", x)));
+        Files.write(new File(dataDir + "sample_changes.csv").toPath(), changeLines);
+
+        writeSampleInputs(dataDir, allSampleIds, random);
+
+        final Map<String,double[]> snvCounts = Maps.newHashMap();
+        final Map<String,double[]> posFreqCounts = Maps.newHashMap();
+        int posFreqBuckets = new PositionFrequencies(POS_FREQ_BUCKET_SIZE, DEFAULT_POS_FREQ_BUCKET_SIZE).getBucketCount();
+
+        for(String sampleId : allSampleIds)
+        {
+            final double[] counts = new double[SNV_BUCKETS];
+
+            for(int b = 0; b < SNV_BUCKETS; ++b)
+            {
+                counts[b] = random.nextInt(50);
+            }
+
+            snvCounts.put(sampleId, counts);
+
+            final double[] posCounts = new double[posFreqBuckets];
+
+            for(int b = 0; b < 200; ++b)
+            {
+                posCounts[random.nextInt(posFreqBuckets)] += random.nextInt(20);
+            }
+
+            posFreqCounts.put(sampleId, posCounts);
+        }
+
+        // twice the per-sample maximum, so scaled down by half, and then relabelled
+        posFreqCounts.get("SAMPLE_01")[0] = 2 * SampleRefDataLoader.maxPosFreqSampleCount();
+
+        final List<String> finalSampleIds = Lists.newArrayList(finalCancerTypes.keySet());
+
+        writeMatrix(dataDir + "snv_counts.csv", allSampleIds, snvCounts, SNV_BUCKETS);
+        writeMatrix(dataDir + "final_snv_counts.csv", finalSampleIds, snvCounts, SNV_BUCKETS);
+        writeMatrix(dataDir + "pos_freq_counts.csv", allSampleIds, posFreqCounts, posFreqBuckets);
+        writeMatrix(dataDir + "final_pos_freq_counts.csv", finalSampleIds, posFreqCounts, posFreqBuckets);
+
+        final String fullDir = createDir(dataDir + "full");
+
+        new RefDataBuilder(createCommandLine(
+                REF_SAMPLE_DATA_FILE, dataDir + "final_sample_data.csv",
+                REF_SNV_COUNTS_FILE, dataDir + "final_snv_counts.csv",
+                REF_SNV_SAMPLE_POS_FREQ_FILE, dataDir + "final_pos_freq_counts.csv",
+                REF_SAMPLE_TRAITS_FILE, dataDir + "traits.csv",
+                REF_SV_DATA_FILE, dataDir + "sv_data.csv",
+                REF_SIG_CONTRIBS_FILE, dataDir + "sig_contribs.csv",
+                OUTPUT_DIR, fullDir)).run();
+
+        // the changes are applied both in the same run as the cohort build and in a later run from the saved statistics
+        for(boolean separateRuns : new boolean[] { false, true })
+        {
+            final String incrementalDir = createDir(dataDir + (separateRuns ? "incremental_separate" : "incremental"));
+            final String statsDir = createDir(dataDir + (separateRuns ? "stats_separate" : "stats"));
+
+            final List<String> optionValues = Lists.newArrayList(
+                    REF_SAMPLE_DATA_FILE, dataDir + "initial_sample_data.csv",
+                    REF_SNV_COUNTS_FILE, dataDir + "snv_counts.csv",
+                    REF_SNV_SAMPLE_POS_FREQ_FILE, dataDir + "pos_freq_counts.csv",
+                    REF_SAMPLE_TRAITS_FILE, dataDir + "traits.csv",
+                    REF_SV_DATA_FILE, dataDir + "sv_data.csv",
+                    REF_SIG_CONTRIBS_FILE, dataDir + "sig_contribs.csv",
+                    REF_STATS_DIR, statsDir,
+                    OUTPUT_DIR, incrementalDir);
+
+            if(separateRuns)
+                new RefDataBuilder(createCommandLine(optionValues.toArray(new String[0]))).run();
+
+            optionValues.add(SAMPLE_CHANGES_FILE);
+            optionValues.add(dataDir + "sample_changes.csv");
+            new RefDataBuilder(createCommandLine(optionValues.toArray(new String[0]))).run();
+
+            // each file the incremental build writes matches the full build's, other than in the order of cancer types and
+            // samples, and the sample matrices hold exactly the final cohort's counts
+            final File[] incrementalFiles = new File(incrementalDir).listFiles();
+            assertEquals(7, incrementalFiles.length);
+
+            for(File incrementalFile : incrementalFiles)
+            {
+                if(incrementalFile.getName().equals(REF_FILE_SNV_COUNTS))
+                {
+                    assertEquals(readColumns(new File(dataDir + "final_snv_counts.csv")), readColumns(incrementalFile));
+                    continue;
+                }
+
+                if(incrementalFile.getName().equals(REF_FILE_SAMPLE_POS_FREQ_COUNTS))
+                {
+                    assertEquals(readColumns(new File(dataDir + "final_pos_freq_counts.csv")), readColumns(incrementalFile));
+                    continue;
+                }
+
+                final File fullFile = new File(fullDir + incrementalFile.getName());
+                assertTrue(fullFile.exists());
+
+                if(incrementalFile.getName().contains("pos_freq"))
+                    assertEquals(readColumns(fullFile), readColumns(incrementalFile));
+                else
+                    assertEquals(readSortedLines(fullFile), readSortedLines(incrementalFile));
+            }
+        }
+
+        deleteDir(new File(dataDir));
+    }
+
+    @Test
+    public void testRejectsInvalidChanges() throws IOException, ParseException
+    {
+        final String dataDir = Files.createTempDirectory("cuppa_incremental").toFile().getAbsolutePath() + File.separator;
+        final Random random = new Random(1);
+
+        final Map<String,String> cancerTypes = Maps.newLinkedHashMap();
+
+        for(int i = 0; i < 4; ++i)
+        {
+            cancerTypes.put(String.format("SAMPLE_%02d", i), CANCER_TYPES[i % CANCER_TYPES.length]);
+        }
+
+        final List<String> sampleIds = Lists.newArrayList(cancerTypes.keySet());
+        writeSampleData(dataDir + "sample_data.csv", cancerTypes);
+        writeSampleInputs(dataDir, sampleIds, random);
+
+        // a sample added twice, a sample both removed and relabelled, and an unknown change type
+        final List<List<String>> invalidChanges = Lists.newArrayList(
+                Lists.newArrayList("NEW_00,ADD,Lung", "NEW_00,ADD,Skin"),
+                Lists.newArrayList("SAMPLE_00,REMOVE,", "SAMPLE_00,RELABEL,Skin"),
+                Lists.newArrayList("SAMPLE_01,DELETE,"));
+
+        for(int i = 0; i < invalidChanges.size(); ++i)
+        {
+            final List<String> changeLines = Lists.newArrayList("SampleId,Change,CancerType");
+            changeLines.addAll(invalidChanges.get(i));
+            Files.write(new File(dataDir + "sample_changes.csv").toPath(), changeLines);
+
+            final String outputDir = createDir(dataDir + "output_" + i);
+            final String statsDir = createDir(dataDir + "stats_" + i);
+
+            new RefDataBuilder(createCommandLine(
+                    REF_SAMPLE_DATA_FILE, dataDir + "sample_data.csv",
+                    REF_SAMPLE_TRAITS_FILE, dataDir + "traits.csv",
+                    REF_SV_DATA_FILE, dataDir + "sv_data.csv",
+                    REF_SIG_CONTRIBS_FILE, dataDir + "sig_contribs.csv",
+                    REF_STATS_DIR, statsDir,
+                    SAMPLE_CHANGES_FILE, dataDir + "sample_changes.csv",
+                    OUTPUT_DIR, outputDir)).run();
+
+            // nothing is written, so the previous reference data and statistics are left as they were
+            assertEquals(0, new File(outputDir).listFiles().length);
+            assertEquals(0, new File(statsDir).listFiles().length);
+        }
+
+        deleteDir(new File(dataDir));
+    }
+
+    private static void deleteDir(final File dir)
+    {
+        for(File file : dir.listFiles())
+        {
+            if(file.isDirectory())
+                deleteDir(file);
+            else
+                file.delete();
+        }
+
+        dir.delete();
+    }
+
+    private static CommandLine createCommandLine(final String... optionValues) throws ParseException
+    {
+        final Options options = new Options();
+        RefDataConfig.addCmdLineArgs(options);
+
+        final List<String> args = Lists.newArrayList();
+
+        for(int i = 0; i < optionValues.length; i += 2)
+        {
+            args.add("-" + optionValues[i]);
+            args.add(optionValues[i + 1]);
+        }
+
+        return new DefaultParser().parse(options, args.toArray(new String[0]));
+    }
+
+    private static String createDir(final String dir)
+    {
+        new File(dir).mkdirs();
+        return dir + File.separator;
+    }
+
+    private static void writeSampleData(final String filename, final Map<String,String> cancerTypes) throws IOException
+    {
+        final List<String> lines = Lists.newArrayList("SampleId,CancerType,CancerSubtype");
+        cancerTypes.forEach((sampleId, cancerType) -> lines.add(String.format("%s,%s,Other", sampleId, cancerType)));
+        Files.write(new File(filename).toPath(), lines);
+    }
+
+    private static void writeSampleInputs(final String dataDir, final List<String> sampleIds, final Random random) throws IOException
+    {
+        final List<String> traitLines = Lists.newArrayList("SampleId,Gender,WholeGenomeDuplication,Purity,Ploidy,MsIndelsPerMb,ChordHrd");
+
+        final StringJoiner svHeader = new StringJoiner(",");
+        svHeader.add("SampleId");
+
+        for(SvDataType type : SvDataType.values())
+        {
+            svHeader.add(type.toString());
+        }
+
+        final List<String> svLines = Lists.newArrayList(svHeader.toString());
+        final List<String> sigLines = Lists.newArrayList("SampleId,SigName,SigContrib,SigPercent");
+
+        for(String sampleId : sampleIds)
+        {
+            traitLines.add(String.format("%s,%s,%d,%.3f,%.2f,%.4f,0",
+                    sampleId, random.nextBoolean() ? "FEMALE" : "MALE", random.nextInt(2), random.nextDouble(),
+                    1.5 + random.nextDouble() * 2.5, random.nextDouble() * 5));
+
+            final StringJoiner svCounts = new StringJoiner(",");
+            svCounts.add(sampleId);
+
+            for(int i = 0; i < SvDataType.values().length; ++i)
+            {
+                svCounts.add(String.valueOf(random.nextInt(20)));
+            }
+
+            svLines.add(svCounts.toString());
+
+            for(String sigName : SIG_NAMES)
+            {
+                if(random.nextInt(5) > 0)
+                    sigLines.add(String.format("%s,%s,%.1f,0.1", sampleId, sigName, random.nextDouble() * 1000));
+            }
+        }
+
+        Files.write(new File(dataDir + "traits.csv").toPath(), traitLines);
+        Files.write(new File(dataDir + "sv_data.csv").toPath(), svLines);
+        Files.write(new File(dataDir + "sig_contribs.csv").toPath(), sigLines);
+    }
+
+    private static void writeMatrix(
+            final String filename, final List<String> sampleIds, final Map<String,double[]> sampleCounts, int bucketCount)
+            throws IOException
+    {
+        final List<String> lines = Lists.newArrayList(String.join(",", sampleIds));
+
+        for(int b = 0; b < bucketCount; ++b)
+        {
+            final StringJoiner sj = new StringJoiner(",");
+
+            for(String sampleId : sampleIds)
+            {
+                sj.add(String.valueOf((int)sampleCounts.get(sampleId)[b]));
+            }
+
+            lines.add(sj.toString());
+        }
+
+        Files.write(new File(filename).toPath(), lines);
+    }
+
+    private static List<String> readSortedLines(final File file) throws IOException
+    {
+        final List<String> lines = Files.readAllLines(file.toPath());
+        Collections.sort(lines);
+        return lines;
+    }
+
+    // each cancer type's or sample's column of counts, since the column order follows the map order
+    private static Map<String,List<String>> readColumns(final File file) throws IOException
+    {
+        final List<String> lines = Files.readAllLines(file.toPath());
+        final String[] cancerTypes = lines.get(0).split(",", -1);
+
+        final Map<String,List<String>> columns = Maps.newHashMap();
+
+        for(int c = 0; c < cancerTypes.length; ++c)
+        {
+            final List<String> column = Lists.newArrayList();
+
+            for(int r = 1; r < lines.size(); ++r)
+            {
+                column.add(lines.get(r).split(",", -1)[c]);
+            }
+
+            columns.put(cancerTypes[c], column);
+        }
+
+        return columns;
+    }
+}
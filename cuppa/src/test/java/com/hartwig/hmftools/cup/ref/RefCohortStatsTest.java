@@ -0,0 +1,224 @@
+package com.hartwig.hmftools.cup.ref;
+
+import static com.hartwig.hmftools.cup.feature.FeatureType.DRIVER;
+import static com.hartwig.hmftools.cup.feature.FeatureType.FUSION;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.hartwig.hmftools.common.purple.gender.Gender;
+import com.hartwig.hmftools.cup.feature.SampleFeatureData;
+import com.hartwig.hmftools.cup.sample.SampleTraitsData;
+import com.hartwig.hmftools.cup.svs.SvData;
+import com.hartwig.hmftools.cup.svs.SvDataType;
+
+import org.junit.Test;
+
+public class RefCohortStatsTest
+{
+    private static final String[] CANCER_TYPES = { "Breast", "Lung", "Skin", "Other" };
+    private static final int POS_FREQ_BUCKETS = 20;
+    private static final int GENE_COUNT = 5;
+
+    // large enough that only samples built to exceed it have their SNV position counts scaled down, by a factor of 0.5
+    private static final int MAX_POS_FREQ_SAMPLE_COUNT = 1000;
+
+    @Test
+    public void testAddRemoveRelabelRoundTrip() throws IOException
+    {
+        final Random random = new Random(1);
+        RefCohortStats cohortStats = createCohortStats(random, 12);
+
+        final Map<String,List<String>> priorState = writeStats(cohortStats);
+
+        // an added sample removed again
+        SampleRefData newSample = createSample("NEW_01", "Lung", random);
+        cohortStats.addSample(newSample);
+        assertNotEquals(priorState, writeStats(cohortStats));
+
+        cohortStats.removeSample(newSample.SampleId);
+        assertEquals(priorState, writeStats(cohortStats));
+
+        // a removed sample added back, including one scaled down for its SNV position counts
+        for(String sampleId : new String[] { "SAMPLE_03", "SAMPLE_05" })
+        {
+            SampleRefData sample = cohortStats.removeSample(sampleId);
+            cohortStats.addSample(sample);
+            assertEquals(priorState, writeStats(cohortStats));
+        }
+
+        // a relabelled sample relabelled back, including to and from an unknown cancer type and the last sample of a cancer type
+        for(String cancerType : new String[] { "Breast", "Other", "Prostate" })
+        {
+            SampleRefData sample = cohortStats.removeSample("SAMPLE_02");
+            cohortStats.addSample(sample.copyWithCancerType(cancerType));
+            assertNotEquals(priorState, writeStats(cohortStats));
+
+            SampleRefData relabelledSample = cohortStats.removeSample("SAMPLE_02");
+            cohortStats.addSample(relabelledSample.copyWithCancerType(sample.CancerType));
+            assertEquals(priorState, writeStats(cohortStats));
+        }
+
+        assertTrue(cohortStats.isValid());
+    }
+
+    @Test
+    public void testStateRoundTrip() throws IOException
+    {
+        RefCohortStats cohortStats = createCohortStats(new Random(2), 10);
+        final Map<String,List<String>> priorState = writeStats(cohortStats);
+
+        final File stateDir = Files.createTempDirectory("cuppa_ref_state").toFile();
+        cohortStats.writeState(stateDir.getAbsolutePath() + File.separator);
+
+        // the reduction factor is restored with the sample rather than recalculated from the current maximum
+        RefCohortStats loadedStats = new RefCohortStats(MAX_POS_FREQ_SAMPLE_COUNT * 4);
+        assertTrue(loadedStats.loadState(stateDir.getAbsolutePath() + File.separator));
+
+        for(File file : stateDir.listFiles())
+        {
+            file.delete();
+        }
+
+        stateDir.delete();
+        assertEquals(priorState, writeStats(loadedStats));
+
+        SampleRefData sample = cohortStats.getSample("SAMPLE_05");
+        SampleRefData loadedSample = loadedStats.getSample("SAMPLE_05");
+        assertEquals(0.5, loadedSample.PosFreqFactor, 0);
+
+        // removal needs the sample's vectors, as loaded again from the sample data
+        loadedSample.PosFreqCounts = sample.PosFreqCounts;
+        loadedSample.GeneTpms = sample.GeneTpms;
+        loadedStats.removeSample(loadedSample.SampleId);
+        cohortStats.removeSample(sample.SampleId);
+
+        assertTrue(loadedStats.isValid());
+        assertEquals(writeStats(cohortStats), writeStats(loadedStats));
+    }
+
+    private static RefCohortStats createCohortStats(final Random random, int sampleCount)
+    {
+        RefCohortStats cohortStats = new RefCohortStats(MAX_POS_FREQ_SAMPLE_COUNT);
+
+        final List<String> geneIds = Lists.newArrayList();
+        final List<String> geneNames = Lists.newArrayList();
+
+        for(int i = 0; i < GENE_COUNT; ++i)
+        {
+            geneIds.add(String.format("ENSG%02d", i));
+            geneNames.add(String.format("GENE_%02d", i));
+        }
+
+        cohortStats.setGeneInfo(geneIds, geneNames);
+
+        for(int i = 0; i < sampleCount; ++i)
+        {
+            final String sampleId = String.format("SAMPLE_%02d", i);
+            SampleRefData sample = createSample(sampleId, CANCER_TYPES[i % CANCER_TYPES.length], random);
+
+            if(i == 5)
+                sample.PosFreqCounts[0] = MAX_POS_FREQ_SAMPLE_COUNT * 2 - sumCounts(sample.PosFreqCounts) + sample.PosFreqCounts[0];
+
+            cohortStats.addSample(sample);
+        }
+
+        return cohortStats;
+    }
+
+    // values which sum exactly, so adding and then removing a sample leaves the totals unchanged
+    private static SampleRefData createSample(final String sampleId, final String cancerType, final Random random)
+    {
+        SampleRefData sample = new SampleRefData(sampleId, cancerType);
+
+        sample.SnvCount = random.nextInt(5000);
+
+        sample.SigContribs = Maps.newHashMap();
+        sample.SigContribs.put("Sig1", (double)random.nextInt(200));
+        sample.SigContribs.put("Sig2", (double)random.nextInt(200));
+
+        sample.Traits = new SampleTraitsData(
+                sampleId, random.nextBoolean() ? Gender.FEMALE : Gender.MALE, random.nextBoolean(),
+                random.nextInt(100) * 0.01, 1.5 + random.nextInt(5) * 0.5, random.nextInt(20) * 0.25, 0);
+
+        sample.SvCounts = new SvData(sampleId);
+
+        for(SvDataType type : SvDataType.values())
+        {
+            sample.SvCounts.setCount(type, random.nextInt(20));
+        }
+
+        final List<SampleFeatureData> features = Lists.newArrayList();
+        features.add(new SampleFeatureData(sampleId, "TP53", DRIVER, random.nextInt(3) * 0.5));
+        features.add(new SampleFeatureData(sampleId, "TP53", DRIVER, 0.5));
+
+        if(random.nextBoolean())
+            features.add(new SampleFeatureData(sampleId, "TMPRSS2_ERG", FUSION, 1));
+
+        sample.setFeatures(features);
+
+        sample.HasPosFreqCounts = true;
+        sample.PosFreqCounts = new double[POS_FREQ_BUCKETS];
+
+        for(int b = 0; b < POS_FREQ_BUCKETS; ++b)
+        {
+            sample.PosFreqCounts[b] = random.nextInt(40);
+        }
+
+        sample.HasGeneExpression = true;
+        sample.GeneTpms = new double[GENE_COUNT];
+
+        for(int i = 0; i < GENE_COUNT; ++i)
+        {
+            sample.GeneTpms[i] = random.nextInt(100) * 0.25;
+        }
+
+        return sample;
+    }
+
+    private static double sumCounts(final double[] counts)
+    {
+        double total = 0;
+
+        for(double count : counts)
+        {
+            total += count;
+        }
+
+        return total;
+    }
+
+    // every reference and state file, with lines sorted since cancer types and samples are written in map order
+    private static Map<String,List<String>> writeStats(final RefCohortStats cohortStats) throws IOException
+    {
+        final File outputDir = Files.createTempDirectory("cuppa_ref_stats").toFile();
+        final String outputPath = outputDir.getAbsolutePath() + File.separator;
+
+        cohortStats.writeRefFiles(outputPath);
+        cohortStats.writeState(outputPath);
+
+        final Map<String,List<String>> fileLines = Maps.newHashMap();
+
+        for(File file : outputDir.listFiles())
+        {
+            final List<String> lines = Files.readAllLines(file.toPath());
+            Collections.sort(lines);
+            fileLines.put(file.getName(), lines);
+            file.delete();
+        }
+
+        outputDir.delete();
+        return fileLines;
+    }
+}
@@ -0,0 +1,82 @@
+package com.hartwig.hmftools.cup.ref;
+
+import static com.hartwig.hmftools.common.stats.Percentiles.PERCENTILE_COUNT;
+import static com.hartwig.hmftools.common.stats.Percentiles.calcPercentileValues;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class ValueHistogramTest
+{
+    @Test
+    public void testPercentilesMatchSortedValues()
+    {
+        // single and 2 values, ties, and counts above and below the number of percentiles
+        assertPercentilesMatch(new double[] { 3.5 });
+        assertPercentilesMatch(new double[] { 2, 1 });
+        assertPercentilesMatch(new double[] { 4, 4 });
+        assertPercentilesMatch(new double[] { 0, 5, 5, 5, 1, 0, 5 });
+
+        final Random random = new Random(1);
+
+        for(int valueCount : new int[] { 3, 50, 101, 102, 250 })
+        {
+            final double[] values = new double[valueCount];
+
+            for(int i = 0; i < valueCount; ++i)
+            {
+                values[i] = random.nextInt(4) == 0 ? 0 : random.nextInt(10) * 0.5;
+            }
+
+            assertPercentilesMatch(values);
+        }
+    }
+
+    @Test
+    public void testAddRemove()
+    {
+        ValueHistogram histogram = new ValueHistogram();
+        histogram.add(1);
+        histogram.add(2);
+        histogram.add(2);
+        histogram.add(7);
+
+        assertTrue(histogram.remove(2));
+        assertTrue(histogram.remove(7));
+        assertFalse(histogram.remove(7));
+        assertFalse(histogram.remove(3));
+        assertEquals(2, histogram.count());
+
+        assertArrayEquals(buildPercentiles(new double[] { 1, 2 }), histogram.buildPercentiles(), 0);
+
+        histogram.remove(1);
+        histogram.remove(2);
+        assertTrue(histogram.isEmpty());
+    }
+
+    private static void assertPercentilesMatch(final double[] values)
+    {
+        ValueHistogram histogram = new ValueHistogram();
+        Arrays.stream(values).forEach(x -> histogram.add(x));
+
+        assertEquals(values.length, histogram.count());
+        assertArrayEquals(buildPercentiles(values), histogram.buildPercentiles(), 0);
+    }
+
+    private static double[] buildPercentiles(final double[] values)
+    {
+        final double[] sortedValues = Arrays.copyOf(values, values.length);
+        Arrays.sort(sortedValues);
+
+        final double[] percentiles = new double[PERCENTILE_COUNT];
+        calcPercentileValues(sortedValues, percentiles);
+        return percentiles;
+    }
+}
@@ -20,13 +20,20 @@ import static com.hartwig.hmftools.common.utils.sv.SvRegion.positionWithin;
 import java.io.File;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.hartwig.hmftools.common.fusion.GeneAnnotation;
 import com.hartwig.hmftools.common.fusion.Transcript;
 import com.hartwig.hmftools.common.genome.refgenome.RefGenomeVersion;
+import com.hartwig.hmftools.common.utils.PerformanceCounter;
+import com.hartwig.hmftools.common.utils.collection.IntervalIndex;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 
 public class EnsemblDataCache
 {
@@ -47,10 +54,22 @@ public class EnsemblDataCache
     private boolean mCanonicalTranscriptsOnly;
     private boolean mRequireGeneSynonyms;
 
+    private final Map<String,IntervalIndex<EnsemblGeneData>> mChrGeneIndexMap; // gene bounds index keyed by chromosome
+
     private final Map<EnsemblGeneData,Integer> mDownstreamGeneAnnotations;
+    private final Map<String,Map<EnsemblGeneData,Integer>> mChrDownstreamGeneAnnotations;
     private final List<EnsemblGeneData> mAlternativeGeneData;
     private final List<String> mRestrictedGeneIdList = Lists.newArrayList();
 
+    // when loaded from a binary snapshot, each gene's transcripts are only materialised when first requested
+    private boolean mUseSnapshot;
+    private EnsemblDataSnapshot mSnapshot;
+
+    // read without the lock, so volatile to publish the transcripts materialised before it is cleared
+    private volatile boolean mLazyTranscripts;
+
+    private static final Logger LOGGER = LogManager.getLogger(EnsemblDataCache.class);
+
     public EnsemblDataCache(final String dataPath, final RefGenomeVersion refGenomeVersion)
     {
         mDataPath = dataPath.endsWith(File.separator) ? dataPath : dataPath + File.separator;
@@ -67,8 +86,13 @@ public class EnsemblDataCache
         mRequireSplicePositions = false;
         mCanonicalTranscriptsOnly = false;
         mRequireGeneSynonyms = false;
+        mChrGeneIndexMap = Maps.newHashMap();
         mDownstreamGeneAnnotations = Maps.newHashMap();
+        mChrDownstreamGeneAnnotations = Maps.newHashMap();
         mAlternativeGeneData = Lists.newArrayList();
+        mUseSnapshot = true;
+        mSnapshot = null;
+        mLazyTranscripts = false;
     }
 
     public void setRestrictedGeneIdList(final List<String> geneIds)
@@ -80,6 +104,16 @@ public class EnsemblDataCache
     public void addDownstreamGeneAnnotations(final EnsemblGeneData geneData, int distance)
     {
         mDownstreamGeneAnnotations.put(geneData, distance);
+
+        Map<EnsemblGeneData,Integer> chrAnnotations = mChrDownstreamGeneAnnotations.get(geneData.Chromosome);
+
+        if(chrAnnotations == null)
+        {
+            chrAnnotations = Maps.newLinkedHashMap();
+            mChrDownstreamGeneAnnotations.put(geneData.Chromosome, chrAnnotations);
+        }
+
+        chrAnnotations.put(geneData, distance);
     }
 
     public final List<EnsemblGeneData> getAlternativeGeneData() { return mAlternativeGeneData; }
@@ -94,7 +128,18 @@ public class EnsemblDataCache
 
     public void setRequireGeneSynonyms() { mRequireGeneSynonyms = true; }
 
-    public final Map<String, List<TranscriptData>> getTranscriptDataMap() { return mTranscriptDataMap; }
+    public void setUseSnapshot(boolean useSnapshot) { mUseSnapshot = useSnapshot; }
+    public boolean loadedFromSnapshot() { return mSnapshot != null; }
+
+    public final Map<String, List<TranscriptData>> getTranscriptDataMap()
+    {
+        // callers of the full map need every gene's transcripts
+        if(mLazyTranscripts)
+            materialiseAllTranscripts();
+
+        return mTranscriptDataMap;
+    }
+
     public final Map<String, List<EnsemblGeneData>> getChrGeneDataMap() { return mChrGeneDataMap; }
     public Map<Integer, List<TranscriptProteinData>> getTranscriptProteinDataMap() { return mEnsemblProteinDataMap; }
     public Map<Integer,Integer> getTransSpliceAcceptorPosDataMap() { return mTransSpliceAcceptorPosDataMap; }
@@ -168,7 +213,39 @@ public class EnsemblDataCache
 
     public List<TranscriptData> getTranscripts(final String geneId)
     {
-        return mTranscriptDataMap.get(geneId);
+        if(!mLazyTranscripts)
+            return mTranscriptDataMap.get(geneId);
+
+        synchronized(mTranscriptDataMap)
+        {
+            List<TranscriptData> transDataList = mTranscriptDataMap.get(geneId);
+
+            if(transDataList != null)
+                return transDataList;
+
+            if(!mRestrictedGeneIdList.isEmpty() && !mRestrictedGeneIdList.contains(geneId))
+                return null;
+
+            transDataList = mSnapshot.loadTranscripts(geneId, mRequireExons, mCanonicalTranscriptsOnly);
+
+            if(transDataList != null)
+                mTranscriptDataMap.put(geneId, transDataList);
+
+            return transDataList;
+        }
+    }
+
+    private void materialiseAllTranscripts()
+    {
+        synchronized(mTranscriptDataMap)
+        {
+            for(final String geneId : mSnapshot.transcriptGeneIds())
+            {
+                getTranscripts(geneId);
+            }
+
+            mLazyTranscripts = false;
+        }
     }
 
     public void populateGeneIdList(final List<String> uniqueGeneIds, final String chromosome, int position, int upstreamDistance)
@@ -193,7 +270,7 @@ public class EnsemblDataCache
         // now look up relevant transcript and exon information
         for(final EnsemblGeneData geneData : matchedGenes)
         {
-            final List<TranscriptData> transcriptDataList = mTranscriptDataMap.get(geneData.GeneId);
+            final List<TranscriptData> transcriptDataList = getTranscripts(geneData.GeneId);
 
             if (transcriptDataList == null || transcriptDataList.isEmpty())
                 continue;
@@ -259,7 +336,7 @@ public class EnsemblDataCache
 
         for(final EnsemblGeneData altGeneData : altMappingGenes)
         {
-            final List<TranscriptData> transcriptDataList = mTranscriptDataMap.get(altGeneData.GeneId);
+            final List<TranscriptData> transcriptDataList = getTranscripts(altGeneData.GeneId);
 
             if (transcriptDataList == null || transcriptDataList.isEmpty())
                 continue;
@@ -305,12 +382,12 @@ public class EnsemblDataCache
         // create gene and transcript data for any gene fully overlapped by the SV
         List<GeneAnnotation> geneAnnotations = Lists.newArrayList();
 
-        final List<EnsemblGeneData> chrGeneList = mChrGeneDataMap.get(chromosome);
+        final IntervalIndex<EnsemblGeneData> geneIndex = getGeneIndex(chromosome);
 
-        if(chrGeneList == null)
+        if(geneIndex == null)
             return geneAnnotations;
 
-        for(final EnsemblGeneData geneData : chrGeneList)
+        for(final EnsemblGeneData geneData : geneIndex.findOverlapping(posStart, posEnd))
         {
             if(!(posStart < geneData.GeneStart && posEnd > geneData.GeneEnd))
                 continue;
@@ -320,7 +397,7 @@ public class EnsemblDataCache
 
             currentGene.setGeneData(geneData);
 
-            final TranscriptData transcriptData = mTranscriptDataMap.get(geneData.GeneId).stream()
+            final TranscriptData transcriptData = getTranscripts(geneData.GeneId).stream()
                     .filter(x -> x.IsCanonical)
                     .findFirst().orElse(null);
 
@@ -356,7 +433,7 @@ public class EnsemblDataCache
 
     public final TranscriptData getTranscriptData(final String geneId, final String transcriptId)
     {
-        final List<TranscriptData> transDataList = mTranscriptDataMap.get(geneId);
+        final List<TranscriptData> transDataList = getTranscripts(geneId);
 
         if (transDataList == null || transDataList.isEmpty())
             return null;
@@ -377,14 +454,14 @@ public class EnsemblDataCache
         // find genes if any of their transcripts are within this position
         List<EnsemblGeneData> genesList = Lists.newArrayList();
 
-        final List<EnsemblGeneData> geneDataList = mChrGeneDataMap.get(chromosome);
+        final IntervalIndex<EnsemblGeneData> geneIndex = getGeneIndex(chromosome);
 
-        for(final EnsemblGeneData geneData : geneDataList)
-        {
-            if(posStart > geneData.GeneEnd || posEnd < geneData.GeneStart)
-                continue;
+        if(geneIndex == null)
+            return genesList;
 
-            final List<TranscriptData> transList = mTranscriptDataMap.get(geneData.GeneId);
+        for(final EnsemblGeneData geneData : geneIndex.findOverlapping(posStart, posEnd))
+        {
+            final List<TranscriptData> transList = getTranscripts(geneData.GeneId);
 
             if(transList == null || transList.isEmpty())
                 continue;
@@ -402,16 +479,17 @@ public class EnsemblDataCache
         return genesList;
     }
 
-    private List<EnsemblGeneData> findGeneRegions(final String chromosome, int position, int upstreamDistance)
+    public List<EnsemblGeneData> findGeneRegions(final String chromosome, int position, int upstreamDistance)
     {
         final List<EnsemblGeneData> matchedGenes = Lists.newArrayList();
 
-        final List<EnsemblGeneData> geneDataList = mChrGeneDataMap.get(chromosome);
+        final IntervalIndex<EnsemblGeneData> geneIndex = getGeneIndex(chromosome);
 
-        if(geneDataList == null)
+        if(geneIndex == null)
             return matchedGenes;
 
-        for(final EnsemblGeneData geneData : geneDataList)
+        // widen the search by the upstream distance on both sides, then apply the strand-specific window to each candidate
+        for(final EnsemblGeneData geneData : geneIndex.findOverlapping(position - upstreamDistance, position + upstreamDistance))
         {
             int geneStartRange = geneData.Strand == 1 ? geneData.GeneStart - upstreamDistance : geneData.GeneStart;
             int geneEndRange = geneData.Strand == 1 ? geneData.GeneEnd : geneData.GeneEnd + upstreamDistance;
@@ -422,11 +500,16 @@ public class EnsemblDataCache
             }
         }
 
-        for(Map.Entry<EnsemblGeneData,Integer> entry : mDownstreamGeneAnnotations.entrySet())
+        final Map<EnsemblGeneData,Integer> chrDownstreamAnnotations = mChrDownstreamGeneAnnotations.get(chromosome);
+
+        if(chrDownstreamAnnotations == null)
+            return matchedGenes;
+
+        for(Map.Entry<EnsemblGeneData,Integer> entry : chrDownstreamAnnotations.entrySet())
         {
             final EnsemblGeneData geneData = entry.getKey();
 
-            if(matchedGenes.contains(geneData) || !geneData.Chromosome.equals(chromosome))
+            if(matchedGenes.contains(geneData))
                 continue;
 
             if((geneData.Strand == POS_STRAND && position >= geneData.GeneEnd && position <= geneData.GeneEnd + entry.getValue())
@@ -439,6 +522,31 @@ public class EnsemblDataCache
         return matchedGenes;
     }
 
+    private IntervalIndex<EnsemblGeneData> getGeneIndex(final String chromosome)
+    {
+        final List<EnsemblGeneData> geneDataList = mChrGeneDataMap.get(chromosome);
+
+        if(geneDataList == null)
+            return null;
+
+        // rebuild if genes have been added since the index was built, as happens in unit tests
+        IntervalIndex<EnsemblGeneData> geneIndex = mChrGeneIndexMap.get(chromosome);
+
+        if(geneIndex == null || !geneIndex.isIndexOf(geneDataList))
+        {
+            geneIndex = new IntervalIndex<>(geneDataList, x -> x.GeneStart, x -> x.GeneEnd);
+            mChrGeneIndexMap.put(chromosome, geneIndex);
+        }
+
+        return geneIndex;
+    }
+
+    private void buildGeneIndices()
+    {
+        mChrGeneIndexMap.clear();
+        mChrGeneDataMap.keySet().forEach(this::getGeneIndex);
+    }
+
     public int findPrecedingGeneSpliceAcceptorPosition(int transId)
     {
         if(mTransSpliceAcceptorPosDataMap.isEmpty())
@@ -795,9 +903,26 @@ public class EnsemblDataCache
 
     public boolean load(boolean delayTranscriptLoading)
     {
+        PerformanceCounter pc = new PerformanceCounter("EnsemblLoad");
+        pc.start();
+
+        mSnapshot = mUseSnapshot ? EnsemblDataSnapshot.open(mDataPath) : null;
+
+        if(mSnapshot != null)
+        {
+            if(!loadFromSnapshot(delayTranscriptLoading))
+                return false;
+
+            pc.stop();
+            LOGGER.debug("loaded Ensembl data from snapshot in {}ms", String.format("%.0f", pc.getTotalTime() * 1000));
+            return true;
+        }
+
         if(!loadEnsemblGeneData(mDataPath, mRestrictedGeneIdList, mChrGeneDataMap, mRefGenomeVersion, mRequireGeneSynonyms))
             return false;
 
+        buildGeneIndices();
+
         if(!delayTranscriptLoading)
         {
             if(!EnsemblDataLoader.loadTranscriptData(mDataPath, mTranscriptDataMap, mRestrictedGeneIdList, mRequireExons, mCanonicalTranscriptsOnly))
@@ -810,11 +935,36 @@ public class EnsemblDataCache
                 return false;
         }
 
+        pc.stop();
+        LOGGER.debug("loaded Ensembl data from CSV files in {}ms", String.format("%.0f", pc.getTotalTime() * 1000));
+        return true;
+    }
+
+    private boolean loadFromSnapshot(boolean delayTranscriptLoading)
+    {
+        mSnapshot.loadGeneData(mChrGeneDataMap, mRestrictedGeneIdList, mRefGenomeVersion, mRequireGeneSynonyms);
+
+        buildGeneIndices();
+
+        if(delayTranscriptLoading)
+            return true;
+
+        mLazyTranscripts = true;
+
+        if(mRequireProteinDomains && !mSnapshot.loadProteinData(mEnsemblProteinDataMap, Sets.newHashSet()))
+            return false;
+
+        if(mRequireSplicePositions && !mSnapshot.loadSpliceAcceptorData(mTransSpliceAcceptorPosDataMap, Sets.newHashSet()))
+            return false;
+
         return true;
     }
 
     public boolean loadTranscriptData(final List<String> restrictedGeneIds)
     {
+        if(mSnapshot != null)
+            return loadSnapshotTranscriptData(restrictedGeneIds);
+
         if(!EnsemblDataLoader.loadTranscriptData(mDataPath, mTranscriptDataMap, restrictedGeneIds, mRequireExons, mCanonicalTranscriptsOnly))
             return false;
 
@@ -838,6 +988,32 @@ public class EnsemblDataCache
         return true;
     }
 
+    private boolean loadSnapshotTranscriptData(final List<String> restrictedGeneIds)
+    {
+        final Set<Integer> uniqueTransIds = Sets.newHashSet();
+
+        final Iterable<String> geneIds = restrictedGeneIds.isEmpty() ? mSnapshot.transcriptGeneIds() : restrictedGeneIds;
+
+        for(final String geneId : geneIds)
+        {
+            final List<TranscriptData> transDataList = mSnapshot.loadTranscripts(geneId, mRequireExons, mCanonicalTranscriptsOnly);
+
+            if(transDataList == null)
+                continue;
+
+            mTranscriptDataMap.put(geneId, transDataList);
+            transDataList.forEach(x -> uniqueTransIds.add(x.TransId));
+        }
+
+        if(mRequireProteinDomains && !mSnapshot.loadProteinData(mEnsemblProteinDataMap, uniqueTransIds))
+            return false;
+
+        if(mRequireSplicePositions && !mSnapshot.loadSpliceAcceptorData(mTransSpliceAcceptorPosDataMap, uniqueTransIds))
+            return false;
+
+        return true;
+    }
+
     public static Integer[] getProteinDomainPositions(final TranscriptProteinData proteinData, final TranscriptData transData)
     {
         Integer[] domainPositions = {null, null};
@@ -92,7 +92,8 @@ public class EnsemblDataLoader
                         geneId, items[geneNameIndex], chromosome, Byte.parseByte(items[strandIndex]),
                         Integer.parseInt(items[geneStartIndex]), Integer.parseInt(items[geneEndIndex]), items[karyotypeBandIndex]);
 
-                if(loadSynonyms)
+                // genes without synonyms have no trailing field
+                if(loadSynonyms && synonymIndex < items.length)
                     geneData.addSynonyms(items[synonymIndex]);
 
                 if(!currentChr.equals(chromosome))
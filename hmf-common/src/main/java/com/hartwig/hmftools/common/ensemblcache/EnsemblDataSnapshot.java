@@ -0,0 +1,513 @@
+package com.hartwig.hmftools.common.ensemblcache;
+
+import static com.hartwig.hmftools.common.ensemblcache.EnsemblDataLoader.ENSEMBL_GENE_DATA_FILE;
+import static com.hartwig.hmftools.common.ensemblcache.EnsemblDataLoader.ENSEMBL_PROTEIN_FEATURE_DATA_FILE;
+import static com.hartwig.hmftools.common.ensemblcache.EnsemblDataLoader.ENSEMBL_TRANS_EXON_DATA_FILE;
+import static com.hartwig.hmftools.common.ensemblcache.EnsemblDataLoader.ENSEMBL_TRANS_SPLICE_DATA_FILE;
+import static com.hartwig.hmftools.common.ensemblcache.EnsemblDataLoader.loadEnsemblGeneData;
+import static com.hartwig.hmftools.common.ensemblcache.EnsemblDataLoader.loadTranscriptData;
+import static com.hartwig.hmftools.common.ensemblcache.EnsemblDataLoader.loadTranscriptProteinData;
+import static com.hartwig.hmftools.common.ensemblcache.EnsemblDataLoader.loadTranscriptSpliceAcceptorData;
+import static com.hartwig.hmftools.common.genome.refgenome.RefGenomeVersion.refGenomeChromosome;
+import static com.hartwig.hmftools.common.utils.io.BinaryCacheUtils.HEADER_BYTES;
+import static com.hartwig.hmftools.common.utils.io.BinaryCacheUtils.hasHeader;
+import static com.hartwig.hmftools.common.utils.io.BinaryCacheUtils.isCurrent;
+import static com.hartwig.hmftools.common.utils.io.BinaryCacheUtils.mapFile;
+import static com.hartwig.hmftools.common.utils.io.BinaryCacheUtils.readString;
+import static com.hartwig.hmftools.common.utils.io.BinaryCacheUtils.writeHeader;
+import static com.hartwig.hmftools.common.utils.io.BinaryCacheUtils.writeString;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.hartwig.hmftools.common.genome.refgenome.RefGenomeVersion;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.Nullable;
+
+// a versioned binary copy of the Ensembl data cache CSV files, memory-mapped on load so that genes, proteins and splice positions
+// are decoded straight into their cache maps and each gene's transcripts are only materialised when first requested
+public class EnsemblDataSnapshot
+{
+    public static final String ENSEMBL_DATA_SNAPSHOT_FILE = "ensembl_data_cache.bin";
+
+    private static final int MAGIC = 0x454E5343; // 'ENSC'
+    private static final int FORMAT_VERSION = 1;
+
+    private static final int NULL_CODING_POSITION = Integer.MIN_VALUE;
+
+    private static final Logger LOGGER = LogManager.getLogger(EnsemblDataSnapshot.class);
+
+    private final ByteBuffer mBuffer;
+
+    // low-cardinality strings such as chromosomes, karyotype bands, biotypes and protein descriptions are held once
+    private final String[] mStringTable;
+
+    private final int mGenesOffset;
+    private final int mProteinsOffset;
+    private final int mSpliceOffset;
+    private final boolean mHasProteinData;
+    private final boolean mHasSpliceData;
+
+    // offset of each gene's transcript records, in the order they were written
+    private final Map<String,Integer> mGeneTranscriptOffsets;
+
+    private EnsemblDataSnapshot(final ByteBuffer buffer)
+    {
+        mBuffer = buffer;
+
+        ByteBuffer reader = mBuffer.duplicate();
+        reader.position(HEADER_BYTES);
+
+        mHasProteinData = reader.get() == 1;
+        mHasSpliceData = reader.get() == 1;
+
+        int stringCount = reader.getInt();
+        mStringTable = new String[stringCount];
+
+        for(int i = 0; i < stringCount; ++i)
+        {
+            mStringTable[i] = readString(reader);
+        }
+
+        mGenesOffset = reader.getInt();
+        int transcriptsOffset = reader.getInt();
+        mProteinsOffset = reader.getInt();
+        mSpliceOffset = reader.getInt();
+
+        // scan the per-gene transcript headers to index each gene's records
+        reader.position(transcriptsOffset);
+        int geneCount = reader.getInt();
+        mGeneTranscriptOffsets = Maps.newLinkedHashMap();
+
+        for(int i = 0; i < geneCount; ++i)
+        {
+            final String geneId = readString(reader);
+            int recordsLength = reader.getInt();
+            mGeneTranscriptOffsets.put(geneId, reader.position());
+            reader.position(reader.position() + recordsLength);
+        }
+    }
+
+    public static String snapshotFilename(final String dataPath) { return dataPath + ENSEMBL_DATA_SNAPSHOT_FILE; }
+
+    @Nullable
+    public static EnsemblDataSnapshot open(final String dataPath)
+    {
+        // returns null if there is no usable snapshot, in which case the cache falls back to the CSV files
+        final File snapshotFile = new File(snapshotFilename(dataPath));
+
+        if(!snapshotFile.exists())
+            return null;
+
+        if(!isCurrent(snapshotFile.getPath(), dataPath + ENSEMBL_GENE_DATA_FILE, dataPath + ENSEMBL_TRANS_EXON_DATA_FILE,
+                dataPath + ENSEMBL_PROTEIN_FEATURE_DATA_FILE, dataPath + ENSEMBL_TRANS_SPLICE_DATA_FILE))
+        {
+            LOGGER.warn("Ensembl data snapshot({}) is older than its CSV files, using CSV files", snapshotFile);
+            return null;
+        }
+
+        try
+        {
+            ByteBuffer buffer = mapFile(snapshotFile);
+
+            if(!hasHeader(buffer, MAGIC, FORMAT_VERSION))
+            {
+                LOGGER.warn("Ensembl data snapshot({}) has an unsupported format, using CSV files", snapshotFile);
+                return null;
+            }
+
+            return new EnsemblDataSnapshot(buffer);
+        }
+        catch(IOException e)
+        {
+            LOGGER.warn("failed to open Ensembl data snapshot({}): {}", snapshotFile, e.toString());
+            return null;
+        }
+    }
+
+    public boolean hasProteinData() { return mHasProteinData; }
+    public boolean hasSpliceData() { return mHasSpliceData; }
+
+    public Collection<String> transcriptGeneIds() { return mGeneTranscriptOffsets.keySet(); }
+
+    public void loadGeneData(
+            final Map<String,List<EnsemblGeneData>> chrGeneDataMap, final List<String> restrictedGeneIds,
+            final RefGenomeVersion version, boolean loadSynonyms)
+    {
+        ByteBuffer reader = mBuffer.duplicate();
+        reader.position(mGenesOffset);
+
+        int chromosomeCount = reader.getInt();
+        int geneCount = 0;
+
+        for(int c = 0; c < chromosomeCount; ++c)
+        {
+            final String chromosome = refGenomeChromosome(mStringTable[reader.getInt()], version);
+            int chrGeneCount = reader.getInt();
+
+            List<EnsemblGeneData> geneList = chrGeneDataMap.get(chromosome);
+
+            for(int i = 0; i < chrGeneCount; ++i)
+            {
+                final String geneId = readString(reader);
+                final String geneName = readString(reader);
+                byte strand = reader.get();
+                int geneStart = reader.getInt();
+                int geneEnd = reader.getInt();
+                final String karyotypeBand = mStringTable[reader.getInt()];
+                final String synonyms = readString(reader);
+
+                if(!restrictedGeneIds.isEmpty() && !restrictedGeneIds.contains(geneId))
+                    continue;
+
+                EnsemblGeneData geneData = new EnsemblGeneData(geneId, geneName, chromosome, strand, geneStart, geneEnd, karyotypeBand);
+
+                if(loadSynonyms)
+                    geneData.addSynonyms(synonyms);
+
+                if(geneList == null)
+                {
+                    geneList = Lists.newArrayList();
+                    chrGeneDataMap.put(chromosome, geneList);
+                }
+
+                geneList.add(geneData);
+                ++geneCount;
+            }
+        }
+
+        LOGGER.debug("loaded {} gene records from snapshot", geneCount);
+    }
+
+    @Nullable
+    public List<TranscriptData> loadTranscripts(final String geneId, boolean cacheExons, boolean canonicalOnly)
+    {
+        // decodes one gene's transcripts with the same filtering as the CSV loader
+        Integer offset = mGeneTranscriptOffsets.get(geneId);
+
+        if(offset == null)
+            return null;
+
+        ByteBuffer reader = mBuffer.duplicate();
+        reader.position(offset);
+
+        int transCount = reader.getInt();
+        List<TranscriptData> transDataList = Lists.newArrayListWithCapacity(transCount);
+
+        for(int t = 0; t < transCount; ++t)
+        {
+            int transId = reader.getInt();
+            final String transName = readString(reader);
+            boolean isCanonical = reader.get() == 1;
+            byte strand = reader.get();
+            int transStart = reader.getInt();
+            int transEnd = reader.getInt();
+            int codingStart = reader.getInt();
+            int codingEnd = reader.getInt();
+            final String bioType = mStringTable[reader.getInt()];
+            int exonCount = reader.getInt();
+
+            if(!isCanonical && canonicalOnly)
+            {
+                reader.position(reader.position() + exonCount * 5 * Integer.BYTES);
+                continue;
+            }
+
+            TranscriptData transData = new TranscriptData(
+                    transId, transName, geneId, isCanonical, strand, transStart, transEnd,
+                    codingStart != NULL_CODING_POSITION ? codingStart : null,
+                    codingEnd != NULL_CODING_POSITION ? codingEnd : null, bioType);
+
+            List<ExonData> exonDataList = Lists.newArrayList();
+
+            if(cacheExons || isCanonical)
+            {
+                for(int e = 0; e < exonCount; ++e)
+                {
+                    int exonStart = reader.getInt();
+                    int exonEnd = reader.getInt();
+                    int exonRank = reader.getInt();
+                    int exonPhase = reader.getInt();
+                    int exonEndPhase = reader.getInt();
+                    exonDataList.add(new ExonData(transId, exonStart, exonEnd, exonRank, exonPhase, exonEndPhase));
+                }
+            }
+            else
+            {
+                reader.position(reader.position() + exonCount * 5 * Integer.BYTES);
+            }
+
+            transData.setExons(exonDataList);
+            transDataList.add(transData);
+        }
+
+        return transDataList;
+    }
+
+    public boolean loadProteinData(final Map<Integer,List<TranscriptProteinData>> proteinDataMap, final Set<Integer> restrictedTransIds)
+    {
+        if(!mHasProteinData)
+            return false;
+
+        ByteBuffer reader = mBuffer.duplicate();
+        reader.position(mProteinsOffset);
+
+        int transCount = reader.getInt();
+        int proteinCount = 0;
+
+        for(int t = 0; t < transCount; ++t)
+        {
+            int transId = reader.getInt();
+            int featureCount = reader.getInt();
+
+            boolean skip = !restrictedTransIds.isEmpty() && !restrictedTransIds.contains(transId);
+            List<TranscriptProteinData> transProteinDataList = skip ? null : Lists.newArrayListWithCapacity(featureCount);
+
+            for(int i = 0; i < featureCount; ++i)
+            {
+                int translationId = reader.getInt();
+                int pfId = reader.getInt();
+                int seqStart = reader.getInt();
+                int seqEnd = reader.getInt();
+                final String description = mStringTable[reader.getInt()];
+
+                if(!skip)
+                    transProteinDataList.add(new TranscriptProteinData(transId, translationId, pfId, seqStart, seqEnd, description));
+            }
+
+            if(!skip)
+            {
+                proteinDataMap.put(transId, transProteinDataList);
+                proteinCount += featureCount;
+            }
+        }
+
+        LOGGER.debug("loaded {} protein trans records with {} locations from snapshot", proteinDataMap.size(), proteinCount);
+        return true;
+    }
+
+    public boolean loadSpliceAcceptorData(final Map<Integer,Integer> transSaPositionDataMap, final Set<Integer> restrictedTransIds)
+    {
+        if(!mHasSpliceData)
+            return false;
+
+        ByteBuffer reader = mBuffer.duplicate();
+        reader.position(mSpliceOffset);
+
+        int count = reader.getInt();
+
+        for(int i = 0; i < count; ++i)
+        {
+            int transId = reader.getInt();
+            int saPosition = reader.getInt();
+
+            if(restrictedTransIds.isEmpty() || restrictedTransIds.contains(transId))
+                transSaPositionDataMap.put(transId, saPosition);
+        }
+
+        LOGGER.debug("loaded {} trans splice-acceptor position records from snapshot", transSaPositionDataMap.size());
+        return true;
+    }
+
+    public static boolean writeSnapshot(final String dataPath)
+    {
+        // loads the full set of CSV data, regardless of what any one tool requires, and writes it to a single snapshot file
+        final List<String> noRestrictions = Lists.newArrayList();
+
+        // chromosomes are stored without a 'chr' prefix and converted to the required ref genome version when loaded
+        final Map<String,List<EnsemblGeneData>> chrGeneDataMap = Maps.newLinkedHashMap();
+
+        if(!loadEnsemblGeneData(dataPath, noRestrictions, chrGeneDataMap, RefGenomeVersion.HG37, true))
+            return false;
+
+        final Map<String,List<TranscriptData>> transcriptDataMap = Maps.newLinkedHashMap();
+
+        if(!loadTranscriptData(dataPath, transcriptDataMap, noRestrictions, true, false))
+            return false;
+
+        final Map<Integer,List<TranscriptProteinData>> proteinDataMap = Maps.newLinkedHashMap();
+        boolean hasProteinData = loadTranscriptProteinData(dataPath, proteinDataMap, Lists.newArrayList());
+
+        final Map<Integer,Integer> spliceDataMap = Maps.newLinkedHashMap();
+        boolean hasSpliceData = loadTranscriptSpliceAcceptorData(dataPath, spliceDataMap, Lists.newArrayList());
+
+        final String filename = snapshotFilename(dataPath);
+
+        try
+        {
+            final StringTable stringTable = new StringTable();
+
+            final SectionWriter genes = new SectionWriter();
+            genes.Out.writeInt(chrGeneDataMap.size());
+
+            for(Map.Entry<String,List<EnsemblGeneData>> entry : chrGeneDataMap.entrySet())
+            {
+                genes.Out.writeInt(stringTable.index(entry.getKey()));
+                genes.Out.writeInt(entry.getValue().size());
+
+                for(final EnsemblGeneData geneData : entry.getValue())
+                {
+                    writeString(genes.Out, geneData.GeneId);
+                    writeString(genes.Out, geneData.GeneName);
+                    genes.Out.writeByte(geneData.Strand);
+                    genes.Out.writeInt(geneData.GeneStart);
+                    genes.Out.writeInt(geneData.GeneEnd);
+                    genes.Out.writeInt(stringTable.index(geneData.KaryotypeBand));
+                    writeString(genes.Out, geneData.getSynonyms());
+                }
+            }
+
+            final SectionWriter transcripts = new SectionWriter();
+            transcripts.Out.writeInt(transcriptDataMap.size());
+
+            for(Map.Entry<String,List<TranscriptData>> entry : transcriptDataMap.entrySet())
+            {
+                final SectionWriter geneRecords = new SectionWriter();
+                geneRecords.Out.writeInt(entry.getValue().size());
+
+                for(final TranscriptData transData : entry.getValue())
+                {
+                    geneRecords.Out.writeInt(transData.TransId);
+                    writeString(geneRecords.Out, transData.TransName);
+                    geneRecords.Out.writeByte(transData.IsCanonical ? 1 : 0);
+                    geneRecords.Out.writeByte(transData.Strand);
+                    geneRecords.Out.writeInt(transData.TransStart);
+                    geneRecords.Out.writeInt(transData.TransEnd);
+                    geneRecords.Out.writeInt(transData.CodingStart != null ? transData.CodingStart : NULL_CODING_POSITION);
+                    geneRecords.Out.writeInt(transData.CodingEnd != null ? transData.CodingEnd : NULL_CODING_POSITION);
+                    geneRecords.Out.writeInt(stringTable.index(transData.BioType));
+                    geneRecords.Out.writeInt(transData.exons().size());
+
+                    for(final ExonData exonData : transData.exons())
+                    {
+                        geneRecords.Out.writeInt(exonData.ExonStart);
+                        geneRecords.Out.writeInt(exonData.ExonEnd);
+                        geneRecords.Out.writeInt(exonData.ExonRank);
+                        geneRecords.Out.writeInt(exonData.ExonPhase);
+                        geneRecords.Out.writeInt(exonData.ExonPhaseEnd);
+                    }
+                }
+
+                writeString(transcripts.Out, entry.getKey());
+                transcripts.Out.writeInt(geneRecords.size());
+                geneRecords.writeTo(transcripts.Out);
+            }
+
+            final SectionWriter proteins = new SectionWriter();
+            proteins.Out.writeInt(proteinDataMap.size());
+
+            for(Map.Entry<Integer,List<TranscriptProteinData>> entry : proteinDataMap.entrySet())
+            {
+                proteins.Out.writeInt(entry.getKey());
+                proteins.Out.writeInt(entry.getValue().size());
+
+                for(final TranscriptProteinData proteinData : entry.getValue())
+                {
+                    proteins.Out.writeInt(proteinData.TranslationId);
+                    proteins.Out.writeInt(proteinData.ProteinFeatureId);
+                    proteins.Out.writeInt(proteinData.SeqStart);
+                    proteins.Out.writeInt(proteinData.SeqEnd);
+                    proteins.Out.writeInt(stringTable.index(proteinData.HitDescription));
+                }
+            }
+
+            final SectionWriter spliceData = new SectionWriter();
+            spliceData.Out.writeInt(spliceDataMap.size());
+
+            for(Map.Entry<Integer,Integer> entry : spliceDataMap.entrySet())
+            {
+                spliceData.Out.writeInt(entry.getKey());
+                spliceData.Out.writeInt(entry.getValue());
+            }
+
+            // header, string table and section offsets, followed by the sections themselves
+            final SectionWriter header = new SectionWriter();
+            writeHeader(header.Out, MAGIC, FORMAT_VERSION);
+            header.Out.writeByte(hasProteinData ? 1 : 0);
+            header.Out.writeByte(hasSpliceData ? 1 : 0);
+            header.Out.writeInt(stringTable.Strings.size());
+
+            for(final String value : stringTable.Strings)
+            {
+                writeString(header.Out, value);
+            }
+
+            int genesOffset = header.size() + 4 * Integer.BYTES;
+            int transcriptsOffset = genesOffset + genes.size();
+            int proteinsOffset = transcriptsOffset + transcripts.size();
+            int spliceOffset = proteinsOffset + proteins.size();
+
+            header.Out.writeInt(genesOffset);
+            header.Out.writeInt(transcriptsOffset);
+            header.Out.writeInt(proteinsOffset);
+            header.Out.writeInt(spliceOffset);
+
+            try(DataOutputStream writer = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filename))))
+            {
+                header.writeTo(writer);
+                genes.writeTo(writer);
+                transcripts.writeTo(writer);
+                proteins.writeTo(writer);
+                spliceData.writeTo(writer);
+            }
+
+            LOGGER.info("wrote Ensembl data snapshot({}) genes({}) transcripts({}) proteins({}) splice positions({})",
+                    filename, chrGeneDataMap.values().stream().mapToInt(List::size).sum(), transcriptDataMap.size(),
+                    proteinDataMap.size(), spliceDataMap.size());
+        }
+        catch(IOException e)
+        {
+            LOGGER.error("failed to write Ensembl data snapshot({}): {}", filename, e.toString());
+            return false;
+        }
+
+        return true;
+    }
+
+    private static class StringTable
+    {
+        public final List<String> Strings = Lists.newArrayList();
+        private final Map<String,Integer> mIndices = Maps.newHashMap();
+
+        public int index(final String value)
+        {
+            Integer index = mIndices.get(value);
+
+            if(index == null)
+            {
+                index = Strings.size();
+                Strings.add(value);
+                mIndices.put(value, index);
+            }
+
+            return index;
+        }
+    }
+
+    private static class SectionWriter
+    {
+        private final ByteArrayOutputStream mBytes = new ByteArrayOutputStream();
+        public final DataOutputStream Out = new DataOutputStream(mBytes);
+
+        public int size() { return Out.size(); }
+
+        public void writeTo(final DataOutputStream writer) throws IOException
+        {
+            Out.flush();
+            mBytes.writeTo(writer);
+        }
+    }
+}
@@ -0,0 +1,305 @@
+package com.hartwig.hmftools.common.sigs;
+
+import static java.lang.Math.abs;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.lang.Math.sqrt;
+
+import static com.hartwig.hmftools.common.sigs.VectorUtils.sumVector;
+
+import com.hartwig.hmftools.common.utils.Matrix;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+// expectation-maximisation fit of counts to a fixed set of definitions (signatures or transcripts), which are held in compressed
+// form by definition since most categories are zero for any one definition, with working arrays allocated once and reused across fits
+public class ExpectationMaxFitter
+{
+    private final int mCategoryCount;
+    private final int mDefinitionCount;
+
+    // the non-zero ratios of each definition, with their category indices
+    private final int[] mDefinitionStarts;
+    private final int[] mCategoryIndices;
+    private final double[] mRatios;
+
+    // optional SQUAREM acceleration, which extrapolates from 2 EM steps at a time
+    private boolean mAccelerate;
+
+    private final double[] mAllocations;
+    private final double[] mNewAllocations;
+    private final double[] mAllocFactors;
+    private final double[] mFittedCounts;
+    private final double[] mStepAllocations;
+    private final double[] mStepDiffs;
+    private final double[] mStepDiffChanges;
+
+    private int mIterations;
+    private double mResidualsPerc;
+
+    public static final int DEFAULT_MAX_ITERATIONS = 20;
+    public static final double DEFAULT_RESIDUALS_EXIT_PERC = 0.001;
+
+    private static final Logger LOGGER = LogManager.getLogger(ExpectationMaxFitter.class);
+
+    public ExpectationMaxFitter(final Matrix definitions)
+    {
+        mCategoryCount = definitions.Rows;
+        mDefinitionCount = definitions.Cols;
+
+        final double[][] data = definitions.getData();
+
+        int nonZeroCount = 0;
+
+        for(int catId = 0; catId < mCategoryCount; ++catId)
+        {
+            for(int defId = 0; defId < mDefinitionCount; ++defId)
+            {
+                if(data[catId][defId] != 0)
+                    ++nonZeroCount;
+            }
+        }
+
+        mDefinitionStarts = new int[mDefinitionCount + 1];
+        mCategoryIndices = new int[nonZeroCount];
+        mRatios = new double[nonZeroCount];
+
+        int index = 0;
+
+        for(int defId = 0; defId < mDefinitionCount; ++defId)
+        {
+            mDefinitionStarts[defId] = index;
+
+            for(int catId = 0; catId < mCategoryCount; ++catId)
+            {
+                if(data[catId][defId] != 0)
+                {
+                    mCategoryIndices[index] = catId;
+                    mRatios[index] = data[catId][defId];
+                    ++index;
+                }
+            }
+        }
+
+        mDefinitionStarts[mDefinitionCount] = index;
+
+        mAccelerate = false;
+
+        mAllocations = new double[mDefinitionCount];
+        mNewAllocations = new double[mDefinitionCount];
+        mAllocFactors = new double[mCategoryCount];
+        mFittedCounts = new double[mCategoryCount];
+        mStepAllocations = new double[mDefinitionCount];
+        mStepDiffs = new double[mDefinitionCount];
+        mStepDiffChanges = new double[mDefinitionCount];
+
+        mIterations = 0;
+        mResidualsPerc = 0;
+    }
+
+    public void setAcceleration(boolean accelerate) { mAccelerate = accelerate; }
+
+    public int categoryCount() { return mCategoryCount; }
+    public int definitionCount() { return mDefinitionCount; }
+    public int nonZeroCount() { return mRatios.length; }
+
+    // EM steps taken by the last fit, and its final residuals as a percentage of total counts
+    public int iterations() { return mIterations; }
+    public double residualsPercent() { return mResidualsPerc; }
+
+    public double[] fit(final double[] counts)
+    {
+        return fit(counts, DEFAULT_RESIDUALS_EXIT_PERC, DEFAULT_MAX_ITERATIONS);
+    }
+
+    public double[] fit(final double[] counts, double minResidualsPerc, int maxIterations)
+    {
+        // returns the allocated counts for each definition
+        double totalCounts = sumVector(counts);
+        double initialAlloc = 1 / (double)mDefinitionCount;
+
+        for(int defId = 0; defId < mDefinitionCount; ++defId)
+        {
+            mAllocations[defId] = initialAlloc;
+        }
+
+        mIterations = 0;
+
+        if(mAccelerate)
+            fitAccelerated(counts, totalCounts, minResidualsPerc, maxIterations);
+        else
+            fitStandard(counts, totalCounts, minResidualsPerc, maxIterations);
+
+        return mNewAllocations.clone();
+    }
+
+    private void fitStandard(final double[] counts, double totalCounts, double minResidualsPerc, int maxIterations)
+    {
+        while(mIterations < maxIterations)
+        {
+            expectationMaxStep(counts, mAllocations, mNewAllocations);
+
+            if(calcResidualsPerc(counts, totalCounts) < minResidualsPerc)
+                break;
+
+            for(int defId = 0; defId < mDefinitionCount; ++defId)
+            {
+                mAllocations[defId] = mNewAllocations[defId] / totalCounts;
+            }
+
+            ++mIterations;
+        }
+    }
+
+    private void fitAccelerated(final double[] counts, double totalCounts, double minResidualsPerc, int maxIterations)
+    {
+        // SQUAREM (Varadhan & Roland 2008) with the SqS3 step length, applied to the allocation proportions
+        while(mIterations < maxIterations)
+        {
+            // first EM step from the current allocations
+            expectationMaxStep(counts, mAllocations, mNewAllocations);
+            ++mIterations;
+
+            if(calcResidualsPerc(counts, totalCounts) < minResidualsPerc)
+                return;
+
+            for(int defId = 0; defId < mDefinitionCount; ++defId)
+            {
+                mStepAllocations[defId] = mNewAllocations[defId] / totalCounts;
+                mStepDiffs[defId] = mStepAllocations[defId] - mAllocations[defId];
+            }
+
+            // second EM step
+            expectationMaxStep(counts, mStepAllocations, mNewAllocations);
+            ++mIterations;
+
+            if(calcResidualsPerc(counts, totalCounts) < minResidualsPerc || mIterations >= maxIterations)
+                return;
+
+            double diffTotal = 0;
+            double changeTotal = 0;
+
+            for(int defId = 0; defId < mDefinitionCount; ++defId)
+            {
+                mStepDiffChanges[defId] = mNewAllocations[defId] / totalCounts - mStepAllocations[defId] - mStepDiffs[defId];
+                diffTotal += mStepDiffs[defId] * mStepDiffs[defId];
+                changeTotal += mStepDiffChanges[defId] * mStepDiffChanges[defId];
+            }
+
+            if(changeTotal == 0)
+            {
+                // already at a fixed point
+                for(int defId = 0; defId < mDefinitionCount; ++defId)
+                {
+                    mAllocations[defId] = mNewAllocations[defId] / totalCounts;
+                }
+
+                continue;
+            }
+
+            // a step length of -1 reduces to the plain EM step
+            double stepLength = min(-sqrt(diffTotal / changeTotal), -1);
+            double allocTotal = 0;
+
+            for(int defId = 0; defId < mDefinitionCount; ++defId)
+            {
+                double alloc = mAllocations[defId] - 2 * stepLength * mStepDiffs[defId] + stepLength * stepLength * mStepDiffChanges[defId];
+                mAllocations[defId] = max(alloc, 0);
+                allocTotal += mAllocations[defId];
+            }
+
+            if(allocTotal <= 0)
+            {
+                // extrapolation failed so fall back to the second EM step
+                for(int defId = 0; defId < mDefinitionCount; ++defId)
+                {
+                    mAllocations[defId] = mNewAllocations[defId] / totalCounts;
+                }
+            }
+            else
+            {
+                for(int defId = 0; defId < mDefinitionCount; ++defId)
+                {
+                    mAllocations[defId] /= allocTotal;
+                }
+            }
+        }
+
+        // the extrapolated allocations are stabilised by a final EM step
+        expectationMaxStep(counts, mAllocations, mNewAllocations);
+        calcResidualsPerc(counts, totalCounts);
+    }
+
+    private void expectationMaxStep(final double[] counts, final double[] allocations, final double[] newAllocations)
+    {
+        for(int catId = 0; catId < mCategoryCount; ++catId)
+        {
+            mAllocFactors[catId] = 0;
+        }
+
+        for(int defId = 0; defId < mDefinitionCount; ++defId)
+        {
+            double alloc = allocations[defId];
+
+            for(int i = mDefinitionStarts[defId]; i < mDefinitionStarts[defId + 1]; ++i)
+            {
+                mAllocFactors[mCategoryIndices[i]] += alloc * mRatios[i];
+            }
+        }
+
+        for(int defId = 0; defId < mDefinitionCount; ++defId)
+        {
+            double alloc = allocations[defId];
+            double newAlloc = 0;
+
+            for(int i = mDefinitionStarts[defId]; i < mDefinitionStarts[defId + 1]; ++i)
+            {
+                int catId = mCategoryIndices[i];
+
+                if(mAllocFactors[catId] == 0)
+                    continue;
+
+                newAlloc += counts[catId] * mRatios[i] * alloc / mAllocFactors[catId];
+            }
+
+            newAllocations[defId] = newAlloc;
+        }
+    }
+
+    private double calcResidualsPerc(final double[] counts, double totalCounts)
+    {
+        // residuals of the counts fitted from the new allocations
+        for(int catId = 0; catId < mCategoryCount; ++catId)
+        {
+            mFittedCounts[catId] = 0;
+        }
+
+        for(int defId = 0; defId < mDefinitionCount; ++defId)
+        {
+            double alloc = mNewAllocations[defId];
+
+            for(int i = mDefinitionStarts[defId]; i < mDefinitionStarts[defId + 1]; ++i)
+            {
+                mFittedCounts[mCategoryIndices[i]] += alloc * mRatios[i];
+            }
+        }
+
+        double residualsTotal = 0;
+
+        for(int catId = 0; catId < mCategoryCount; ++catId)
+        {
+            residualsTotal += abs(mFittedCounts[catId] - counts[catId]);
+        }
+
+        mResidualsPerc = residualsTotal / totalCounts;
+
+        if(LOGGER.isTraceEnabled())
+        {
+            LOGGER.trace(String.format("totalCount(%.0f) residuals(%.0f perc=%.3f) iteration(%d)",
+                    totalCounts, residualsTotal, mResidualsPerc, mIterations));
+        }
+
+        return mResidualsPerc;
+    }
+}
@@ -84,4 +84,40 @@ public final class CosineSimilarity
         return min(abTotal / (sqrt(aaTotal) * sqrt(bbTotal)), 1.0);
     }
 
+    public static double[] unitVector(final double[] values)
+    {
+        // scaled to a length of 1 so the cosine similarity of 2 such vectors is their dot product - an all-zero vector stays as zeros
+        double[] unitValues = new double[values.length];
+
+        double total = 0;
+
+        for(int i = 0; i < values.length; ++i)
+        {
+            total += values[i] * values[i];
+        }
+
+        if(total <= 0)
+            return unitValues;
+
+        double length = sqrt(total);
+
+        for(int i = 0; i < values.length; ++i)
+        {
+            unitValues[i] = values[i] / length;
+        }
+
+        return unitValues;
+    }
+
+    public static double calcUnitVectorCosineSim(final double[] unitValues1, final double[] unitValues2)
+    {
+        double abTotal = 0;
+
+        for(int i = 0; i < unitValues1.length; ++i)
+        {
+            abTotal += unitValues1[i] * unitValues2[i];
+        }
+
+        return min(abTotal, 1.0);
+    }
 }
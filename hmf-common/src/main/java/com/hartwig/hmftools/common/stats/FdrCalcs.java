@@ -1,5 +1,6 @@
 package com.hartwig.hmftools.common.stats;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
@@ -18,4 +19,29 @@ public class FdrCalcs
             pValue.QValue = pValue.PValue * testCount / pValue.Rank;
         }
     }
+
+    // as above for a large set of tests held as primitives, with ties ranked in their original order
+    public static double[] calculateQValues(final double[] pValues)
+    {
+        int testCount = pValues.length;
+
+        final Integer[] rankedIndices = new Integer[testCount];
+
+        for(int i = 0; i < testCount; ++i)
+        {
+            rankedIndices[i] = i;
+        }
+
+        Arrays.sort(rankedIndices, (first, second) -> Double.compare(pValues[first], pValues[second]));
+
+        final double[] qValues = new double[testCount];
+
+        for(int i = 0; i < testCount; ++i)
+        {
+            int index = rankedIndices[i];
+            qValues[index] = pValues[index] * testCount / (i + 1);
+        }
+
+        return qValues;
+    }
 }
@@ -11,19 +11,31 @@ public class FisherExactTest
         mCountMax = 0;
     }
 
+    // the log-factorial table only grows, so one instance can be initialised for each data set tested and then shared, including
+    // across threads once initialised
     public void initialise(int maxSize)
     {
-        mCalcs = new double[maxSize+1];
-        mCountMax = maxSize;
+        if(mCalcs != null && maxSize <= mCountMax)
+            return;
+
+        int existingMax = mCalcs != null ? mCountMax : 0;
+
+        double[] calcs = new double[maxSize+1];
 
-        mCalcs[0] = 0.0;
+        if(mCalcs != null)
+            System.arraycopy(mCalcs, 0, calcs, 0, existingMax + 1);
 
-        for (int i = 1; i <= mCountMax; i++)
+        for (int i = existingMax + 1; i <= maxSize; i++)
         {
-            mCalcs[i] = mCalcs[i - 1] + Math.log(i);
+            calcs[i] = calcs[i - 1] + Math.log(i);
         }
+
+        mCalcs = calcs;
+        mCountMax = maxSize;
     }
 
+    public int maxCount() { return mCountMax; }
+
     public double calc(int withAwithB, int withANoB, int noAWithB, int noAnoB, double expectedCount)
     {
         if(withAwithB > expectedCount)
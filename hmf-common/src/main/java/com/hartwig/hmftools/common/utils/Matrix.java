@@ -18,6 +18,9 @@ public class Matrix
 
     private static final Logger LOGGER = LogManager.getLogger(Matrix.class);
 
+    // multiplies are blocked so the rows of each operand being combined stay in cache
+    private static final int BLOCK_SIZE = 64;
+
     public Matrix(int r, int c)
     {
         Rows = r;
@@ -199,17 +202,113 @@ public class Matrix
         if(initialiseDest)
             dest.initialise(0);
 
-        double[][] destData = dest.getData();
+        final double[][] destData = dest.getData();
 
-        for(int i = 0; i < Rows; i++)
+        multiplyRows(mData, otherData, destData, Rows, Cols, other.Cols);
+    }
+
+    public Matrix transposeMultiply(final Matrix other)
+    {
+        // multiply by the other matrix without forming this one's transpose: c[i][j] = sum_k a[k][i] * b[k][j]
+        Matrix newMatrix = new Matrix(Cols, other.Cols);
+
+        if(Rows != other.Rows)
         {
-            for(int j = 0; j < other.Cols; j++)
+            LOGGER.error("incorrect row or column");
+            return newMatrix;
+        }
+
+        final double[][] otherData = other.getData();
+        final double[][] destData = newMatrix.getData();
+
+        for(int jBlock = 0; jBlock < other.Cols; jBlock += BLOCK_SIZE)
+        {
+            int jEnd = min(jBlock + BLOCK_SIZE, other.Cols);
+
+            for(int k = 0; k < Rows; ++k)
             {
-                int commonColCount = Cols; // also = other.rowCount()
+                final double[] aRow = mData[k];
+                final double[] bRow = otherData[k];
 
-                for(int c = 0; c < commonColCount; c++)
+                for(int i = 0; i < Cols; ++i)
                 {
-                    destData[i][j] += mData[i][c] * otherData[c][j];
+                    final double a = aRow[i];
+                    final double[] destRow = destData[i];
+
+                    for(int j = jBlock; j < jEnd; ++j)
+                    {
+                        destRow[j] += a * bRow[j];
+                    }
+                }
+            }
+        }
+
+        return newMatrix;
+    }
+
+    public Matrix multiplyTranspose(final Matrix other)
+    {
+        // multiply by the other matrix's transpose without forming it, as dot products of rows: c[i][j] = sum_k a[i][k] * b[j][k]
+        Matrix newMatrix = new Matrix(Rows, other.Rows);
+
+        if(Cols != other.Cols)
+        {
+            LOGGER.error("incorrect row or column");
+            return newMatrix;
+        }
+
+        final double[][] otherData = other.getData();
+        final double[][] destData = newMatrix.getData();
+
+        for(int i = 0; i < Rows; ++i)
+        {
+            final double[] aRow = mData[i];
+            final double[] destRow = destData[i];
+
+            for(int j = 0; j < other.Rows; ++j)
+            {
+                final double[] bRow = otherData[j];
+                double total = 0;
+
+                for(int k = 0; k < Cols; ++k)
+                {
+                    total += aRow[k] * bRow[k];
+                }
+
+                destRow[j] = total;
+            }
+        }
+
+        return newMatrix;
+    }
+
+    private static void multiplyRows(
+            final double[][] aData, final double[][] bData, final double[][] destData, int rowCount, int commonCount, int destCols)
+    {
+        // blocks are taken in ascending order of the common index, so each value is summed in the same order as a plain loop
+        for(int kBlock = 0; kBlock < commonCount; kBlock += BLOCK_SIZE)
+        {
+            int kEnd = min(kBlock + BLOCK_SIZE, commonCount);
+
+            for(int jBlock = 0; jBlock < destCols; jBlock += BLOCK_SIZE)
+            {
+                int jEnd = min(jBlock + BLOCK_SIZE, destCols);
+
+                for(int i = 0; i < rowCount; ++i)
+                {
+                    final double[] aRow = aData[i];
+                    final double[] destRow = destData[i];
+
+                    for(int k = kBlock; k < kEnd; ++k)
+                    {
+                        final double a = aRow[k];
+                        final double[] bRow = bData[k];
+
+                        for(int j = jBlock; j < jEnd; ++j)
+                        {
+                            destRow[j] += a * bRow[j];
+                        }
+                    }
                 }
             }
         }
@@ -229,6 +328,29 @@ public class Matrix
         }
     }
 
+    public void scalarMultiplyRatio(final Matrix numerator, final Matrix denominator)
+    {
+        // this *= numerator / denominator in one pass, as for multiplicative updates - as with a division allowing zeros,
+        // the numerator is applied as is where the denominator is zero
+        final double[][] numData = numerator.getData();
+        final double[][] denomData = denominator.getData();
+
+        for(int i = 0; i < Rows; i++)
+        {
+            final double[] row = mData[i];
+            final double[] numRow = numData[i];
+            final double[] denomRow = denomData[i];
+
+            for(int j = 0; j < Cols; j++)
+            {
+                if(denomRow[j] == 0)
+                    row[j] *= numRow[j];
+                else
+                    row[j] *= numRow[j] / denomRow[j];
+            }
+        }
+    }
+
     public void scalarMultiplyRateAdjusted(Matrix other, double rateAdjust, int adjustColLimit)
     {
         // apply the scalar multiplication, but dampen the first X columns for the ref signatures
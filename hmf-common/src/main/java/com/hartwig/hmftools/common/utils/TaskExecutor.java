@@ -0,0 +1,86 @@
+package com.hartwig.hmftools.common.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+public class TaskExecutor
+{
+    private static final Logger LOGGER = LogManager.getLogger(TaskExecutor.class);
+
+    // runs the tasks on a pool of threads named from the prefix, or in turn on the calling thread if only one is needed, and
+    // returns false if any task fails
+    public static boolean executeTasks(final List<Callable> tasks, int threadCount, final String threadNamePrefix)
+    {
+        if(threadCount <= 1 || tasks.size() <= 1)
+        {
+            for(Callable task : tasks)
+            {
+                try
+                {
+                    task.call();
+                }
+                catch(Exception e)
+                {
+                    LOGGER.error("task execution error: {}", e.toString());
+                    e.printStackTrace();
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        final ThreadFactory namedThreadFactory = new ThreadFactoryBuilder().setNameFormat(threadNamePrefix + "-%d").build();
+
+        ExecutorService executorService = Executors.newFixedThreadPool(threadCount, namedThreadFactory);
+        List<FutureTask> threadTaskList = new ArrayList<FutureTask>();
+
+        for(Callable task : tasks)
+        {
+            FutureTask futureTask = new FutureTask(task);
+
+            threadTaskList.add(futureTask);
+            executorService.execute(futureTask);
+        }
+
+        if(!checkThreadCompletion(threadTaskList))
+        {
+            LOGGER.info("shutting down remaining tasks");
+            threadTaskList.forEach(x -> x.cancel(true));
+            executorService.shutdown();
+            return false;
+        }
+
+        executorService.shutdown();
+        return true;
+    }
+
+    private static boolean checkThreadCompletion(final List<FutureTask> taskList)
+    {
+        try
+        {
+            for(FutureTask futureTask : taskList)
+            {
+                futureTask.get();
+            }
+        }
+        catch(Exception e)
+        {
+            LOGGER.error("task execution error: {}", e.toString());
+            e.printStackTrace();
+            return false;
+        }
+
+        return true;
+    }
+}
@@ -0,0 +1,220 @@
+package com.hartwig.hmftools.common.utils.collection;
+
+import static java.lang.Math.max;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.ToIntFunction;
+
+import com.google.common.collect.Lists;
+
+// static augmented interval tree over items with inclusive start and end positions, implicitly laid out in an array sorted by start
+// position, with each internal node holding the maximum end position of its subtree - overlap queries are O(log n + k)
+public class IntervalIndex<T>
+{
+    private final List<T> mSource;
+    private final int mSourceSize;
+
+    private final Object[] mItems; // sorted by start position
+    private final int[] mSourceIndex; // index of each sorted item in the source list, used to return matches in source order
+    private final int[] mSortedIndex; // the reverse mapping from source list index to sorted index
+    private final int[] mStarts;
+    private final int[] mEnds;
+    private final int[] mMaxEnds;
+    private final int mMaxLevel;
+
+    // subtrees of this depth or less are scanned linearly
+    private static final int LINEAR_SCAN_LEVEL = 3;
+
+    public IntervalIndex(final List<T> items, final ToIntFunction<T> startFunc, final ToIntFunction<T> endFunc)
+    {
+        mSource = items;
+        mSourceSize = items.size();
+
+        int count = items.size();
+
+        Integer[] order = new Integer[count];
+
+        for(int i = 0; i < count; ++i)
+        {
+            order[i] = i;
+        }
+
+        Arrays.sort(order, Comparator.comparingInt(i -> startFunc.applyAsInt(items.get(i))));
+
+        mItems = new Object[count];
+        mSourceIndex = new int[count];
+        mSortedIndex = new int[count];
+        mStarts = new int[count];
+        mEnds = new int[count];
+        mMaxEnds = new int[count];
+
+        for(int i = 0; i < count; ++i)
+        {
+            T item = items.get(order[i]);
+            mItems[i] = item;
+            mSourceIndex[i] = order[i];
+            mSortedIndex[order[i]] = i;
+            mStarts[i] = startFunc.applyAsInt(item);
+            mEnds[i] = endFunc.applyAsInt(item);
+        }
+
+        mMaxLevel = buildIndex();
+    }
+
+    public int size() { return mItems.length; }
+
+    // checks whether the index was built from this list and it has not since been added to or removed from
+    public boolean isIndexOf(final List<T> items) { return items == mSource && items.size() == mSourceSize; }
+
+    private int buildIndex()
+    {
+        int count = mItems.length;
+
+        if(count == 0)
+            return -1;
+
+        int lastIndex = 0;
+        int lastMax = 0;
+
+        // leaves sit at even indices
+        for(int i = 0; i < count; i += 2)
+        {
+            lastIndex = i;
+            lastMax = mMaxEnds[i] = mEnds[i];
+        }
+
+        int level = 1;
+
+        for(; 1 << level <= count; ++level)
+        {
+            int halfStep = 1 << (level - 1);
+            int step = halfStep << 2;
+
+            for(int i = (halfStep << 1) - 1; i < count; i += step)
+            {
+                int leftMax = mMaxEnds[i - halfStep];
+                int rightMax = i + halfStep < count ? mMaxEnds[i + halfStep] : lastMax;
+                mMaxEnds[i] = max(mEnds[i], max(leftMax, rightMax));
+            }
+
+            // track the max of the right-most node at this level, since it may be missing from an incomplete tree
+            lastIndex = ((lastIndex >> level) & 1) == 1 ? lastIndex - halfStep : lastIndex + halfStep;
+
+            if(lastIndex < count && mMaxEnds[lastIndex] > lastMax)
+                lastMax = mMaxEnds[lastIndex];
+        }
+
+        return level - 1;
+    }
+
+    @SuppressWarnings("unchecked")
+    public List<T> findOverlapping(int posStart, int posEnd)
+    {
+        // return all items overlapping the inclusive range, in the order of the source list
+        List<T> results = Lists.newArrayList();
+
+        int[] matches = findOverlappingIndices(posStart, posEnd);
+
+        for(int index : matches)
+        {
+            results.add((T)mItems[index]);
+        }
+
+        return results;
+    }
+
+    private int[] findOverlappingIndices(int posStart, int posEnd)
+    {
+        int count = mItems.length;
+
+        if(count == 0)
+            return new int[0];
+
+        int[] matches = new int[8];
+        int matchCount = 0;
+
+        // stack entries hold node index, level and whether the left child has been processed
+        int[] stackNode = new int[64];
+        int[] stackLevel = new int[64];
+        boolean[] stackLeftDone = new boolean[64];
+        int stackSize = 0;
+
+        stackNode[stackSize] = (1 << mMaxLevel) - 1;
+        stackLevel[stackSize] = mMaxLevel;
+        stackLeftDone[stackSize++] = false;
+
+        while(stackSize > 0)
+        {
+            --stackSize;
+            int node = stackNode[stackSize];
+            int level = stackLevel[stackSize];
+            boolean leftDone = stackLeftDone[stackSize];
+
+            if(level <= LINEAR_SCAN_LEVEL)
+            {
+                int startIndex = node >> level << level;
+                int endIndex = Math.min(startIndex + (1 << (level + 1)) - 1, count);
+
+                for(int i = startIndex; i < endIndex && mStarts[i] <= posEnd; ++i)
+                {
+                    if(mEnds[i] >= posStart)
+                    {
+                        if(matchCount == matches.length)
+                            matches = Arrays.copyOf(matches, matchCount * 2);
+
+                        matches[matchCount++] = i;
+                    }
+                }
+            }
+            else if(!leftDone)
+            {
+                int leftChild = node - (1 << (level - 1));
+
+                // revisit this node once its left subtree has been searched
+                stackNode[stackSize] = node;
+                stackLevel[stackSize] = level;
+                stackLeftDone[stackSize++] = true;
+
+                if(leftChild >= count || mMaxEnds[leftChild] >= posStart)
+                {
+                    stackNode[stackSize] = leftChild;
+                    stackLevel[stackSize] = level - 1;
+                    stackLeftDone[stackSize++] = false;
+                }
+            }
+            else if(node < count && mStarts[node] <= posEnd)
+            {
+                if(mEnds[node] >= posStart)
+                {
+                    if(matchCount == matches.length)
+                        matches = Arrays.copyOf(matches, matchCount * 2);
+
+                    matches[matchCount++] = node;
+                }
+
+                stackNode[stackSize] = node + (1 << (level - 1));
+                stackLevel[stackSize] = level - 1;
+                stackLeftDone[stackSize++] = false;
+            }
+        }
+
+        // return in source order
+        int[] sourceIndices = new int[matchCount];
+
+        for(int i = 0; i < matchCount; ++i)
+        {
+            sourceIndices[i] = mSourceIndex[matches[i]];
+        }
+
+        Arrays.sort(sourceIndices);
+
+        for(int i = 0; i < matchCount; ++i)
+        {
+            sourceIndices[i] = mSortedIndex[sourceIndices[i]];
+        }
+
+        return sourceIndices;
+    }
+}
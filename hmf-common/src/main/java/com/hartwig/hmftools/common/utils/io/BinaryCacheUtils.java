@@ -0,0 +1,96 @@
+package com.hartwig.hmftools.common.utils.io;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.jetbrains.annotations.NotNull;
+
+// common handling for binary caches written alongside CSV files: each starts with a magic number identifying the file type and
+// a format version, strings are held as an unsigned short byte length then UTF-8 bytes, and a cache is only used while it is at
+// least as recent as the files it was written from
+public final class BinaryCacheUtils
+{
+    public static final String BINARY_FILE_EXTENSION = ".bin";
+
+    public static final int HEADER_BYTES = 2 * Integer.BYTES;
+
+    public static String binaryFilename(@NotNull final String sourceFile)
+    {
+        if(sourceFile.endsWith(BINARY_FILE_EXTENSION))
+            return sourceFile;
+
+        int extensionIndex = sourceFile.lastIndexOf('.');
+        return (extensionIndex > 0 ? sourceFile.substring(0, extensionIndex) : sourceFile) + BINARY_FILE_EXTENSION;
+    }
+
+    public static boolean isCurrent(@NotNull final String binaryFile, final String... sourceFiles)
+    {
+        // source files which no longer exist don't invalidate the cache
+        final File file = new File(binaryFile);
+
+        if(!file.exists())
+            return false;
+
+        for(final String sourceFile : sourceFiles)
+        {
+            final File source = new File(sourceFile);
+
+            if(source.exists() && source.lastModified() > file.lastModified())
+                return false;
+        }
+
+        return true;
+    }
+
+    public static void writeHeader(@NotNull final DataOutputStream output, int magic, int formatVersion) throws IOException
+    {
+        output.writeInt(magic);
+        output.writeInt(formatVersion);
+    }
+
+    public static boolean hasHeader(@NotNull final ByteBuffer buffer, int magic, int formatVersion)
+    {
+        // reads from the start of the buffer without moving its position
+        return buffer.limit() >= HEADER_BYTES && buffer.getInt(0) == magic && buffer.getInt(Integer.BYTES) == formatVersion;
+    }
+
+    @NotNull
+    public static ByteBuffer mapFile(@NotNull final File file) throws IOException
+    {
+        // the mapping remains valid once the file is closed
+        try(RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r"); FileChannel channel = randomAccessFile.getChannel())
+        {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    public static void writeString(@NotNull final DataOutputStream output, @NotNull final String str) throws IOException
+    {
+        byte[] bytes = str.getBytes(UTF_8);
+
+        if(bytes.length > 0xFFFF)
+            throw new IOException("string exceeds maximum length: " + str.substring(0, 50));
+
+        output.writeShort(bytes.length);
+        output.write(bytes);
+    }
+
+    @NotNull
+    public static String readString(@NotNull final ByteBuffer reader)
+    {
+        int length = reader.getShort() & 0xFFFF;
+
+        if(length == 0)
+            return "";
+
+        byte[] bytes = new byte[length];
+        reader.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+}
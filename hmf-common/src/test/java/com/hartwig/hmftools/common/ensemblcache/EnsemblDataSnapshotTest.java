@@ -0,0 +1,149 @@
+package com.hartwig.hmftools.common.ensemblcache;
+
+import static com.hartwig.hmftools.common.ensemblcache.EnsemblDataLoader.ENSEMBL_GENE_DATA_FILE;
+import static com.hartwig.hmftools.common.ensemblcache.EnsemblDataLoader.ENSEMBL_PROTEIN_FEATURE_DATA_FILE;
+import static com.hartwig.hmftools.common.ensemblcache.EnsemblDataLoader.ENSEMBL_TRANS_EXON_DATA_FILE;
+import static com.hartwig.hmftools.common.ensemblcache.EnsemblDataLoader.ENSEMBL_TRANS_SPLICE_DATA_FILE;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+
+import com.google.common.collect.Lists;
+import com.hartwig.hmftools.common.genome.refgenome.RefGenomeVersion;
+
+import org.junit.Test;
+
+public class EnsemblDataSnapshotTest
+{
+    @Test
+    public void testSnapshotMatchesCsvData() throws IOException
+    {
+        final File dataDir = Files.createTempDirectory("ensembl_cache").toFile();
+        final String dataPath = dataDir.getAbsolutePath() + File.separator;
+
+        try
+        {
+            writeTestCsvFiles(dataPath);
+
+            assertTrue(EnsemblDataSnapshot.writeSnapshot(dataPath));
+
+            EnsemblDataCache csvCache = new EnsemblDataCache(dataPath, RefGenomeVersion.HG19);
+            csvCache.setUseSnapshot(false);
+            csvCache.setRequiredData(true, true, true, false);
+            csvCache.setRequireGeneSynonyms();
+            assertTrue(csvCache.load(false));
+            assertFalse(csvCache.loadedFromSnapshot());
+
+            EnsemblDataCache snapshotCache = new EnsemblDataCache(dataPath, RefGenomeVersion.HG19);
+            snapshotCache.setRequiredData(true, true, true, false);
+            snapshotCache.setRequireGeneSynonyms();
+            assertTrue(snapshotCache.load(false));
+            assertTrue(snapshotCache.loadedFromSnapshot());
+
+            // genes are loaded with the same chromosome naming and order
+            assertEquals(csvCache.getChrGeneDataMap().keySet(), snapshotCache.getChrGeneDataMap().keySet());
+            assertEquals(2, snapshotCache.getChrGeneDataMap().get("chr1").size());
+
+            EnsemblGeneData gene1 = snapshotCache.getChrGeneDataMap().get("chr1").get(0);
+            assertEquals("GENE1", gene1.GeneName);
+            assertEquals("p36.33", gene1.KaryotypeBand);
+            assertTrue(gene1.hasSynonym("ALIAS1"));
+
+            // transcripts are materialised on request
+            List<TranscriptData> transcripts = snapshotCache.getTranscripts("ENSG01");
+            assertNotNull(transcripts);
+            assertEquals(2, transcripts.size());
+
+            List<TranscriptData> csvTranscripts = csvCache.getTranscripts("ENSG01");
+
+            for(int i = 0; i < transcripts.size(); ++i)
+            {
+                TranscriptData trans = transcripts.get(i);
+                TranscriptData csvTrans = csvTranscripts.get(i);
+
+                assertEquals(csvTrans.TransId, trans.TransId);
+                assertEquals(csvTrans.TransName, trans.TransName);
+                assertEquals(csvTrans.IsCanonical, trans.IsCanonical);
+                assertEquals(csvTrans.CodingStart, trans.CodingStart);
+                assertEquals(csvTrans.CodingEnd, trans.CodingEnd);
+                assertEquals(csvTrans.BioType, trans.BioType);
+                assertEquals(csvTrans.exons().size(), trans.exons().size());
+
+                for(int e = 0; e < trans.exons().size(); ++e)
+                {
+                    assertEquals(csvTrans.exons().get(e).ExonStart, trans.exons().get(e).ExonStart);
+                    assertEquals(csvTrans.exons().get(e).ExonEnd, trans.exons().get(e).ExonEnd);
+                    assertEquals(csvTrans.exons().get(e).ExonPhaseEnd, trans.exons().get(e).ExonPhaseEnd);
+                }
+            }
+
+            // a non-coding transcript
+            assertNull(snapshotCache.getTranscripts("ENSG02").get(0).CodingStart);
+
+            assertEquals(csvCache.getTranscriptProteinDataMap().keySet(), snapshotCache.getTranscriptProteinDataMap().keySet());
+            assertEquals("Pkinase", snapshotCache.getTranscriptProteinDataMap().get(1).get(0).HitDescription);
+            assertEquals(csvCache.getTransSpliceAcceptorPosDataMap(), snapshotCache.getTransSpliceAcceptorPosDataMap());
+
+            assertEquals(csvCache.getTranscriptDataMap().keySet(), snapshotCache.getTranscriptDataMap().keySet());
+
+            // canonical-only loading and a restricted gene list follow the CSV loader's rules
+            EnsemblDataCache canonicalCache = new EnsemblDataCache(dataPath, RefGenomeVersion.HG37);
+            canonicalCache.setRequiredData(true, false, false, true);
+            canonicalCache.setRestrictedGeneIdList(Lists.newArrayList("ENSG01"));
+            assertTrue(canonicalCache.load(false));
+
+            assertTrue(canonicalCache.getChrGeneDataMap().containsKey("1"));
+            assertEquals(1, canonicalCache.getTranscripts("ENSG01").size());
+            assertTrue(canonicalCache.getTranscripts("ENSG01").get(0).IsCanonical);
+            assertNull(canonicalCache.getTranscripts("ENSG02"));
+
+            // a CSV file written after the snapshot invalidates it
+            assertTrue(new File(dataPath + ENSEMBL_GENE_DATA_FILE).setLastModified(System.currentTimeMillis() + 10000));
+            assertNull(EnsemblDataSnapshot.open(dataPath));
+        }
+        finally
+        {
+            for(File file : dataDir.listFiles())
+            {
+                file.delete();
+            }
+
+            dataDir.delete();
+        }
+    }
+
+    private static void writeTestCsvFiles(final String dataPath) throws IOException
+    {
+        Files.write(new File(dataPath + ENSEMBL_GENE_DATA_FILE).toPath(), Lists.newArrayList(
+                "GeneId,GeneName,Chromosome,Strand,GeneStart,GeneEnd,KaryotypeBand,Synonyms",
+                "ENSG01,GENE1,1,1,1000,5000,p36.33,ALIAS1;ALIAS2",
+                "ENSG02,GENE2,1,-1,8000,9000,p36.33,",
+                "ENSG03,GENE3,2,1,1000,2000,q11.1,ALIAS3"));
+
+        Files.write(new File(dataPath + ENSEMBL_TRANS_EXON_DATA_FILE).toPath(), Lists.newArrayList(
+                "GeneId,CanonicalTranscriptId,Strand,TransId,TransName,BioType,TransStart,TransEnd,ExonRank,ExonStart,ExonEnd,ExonPhase,ExonEndPhase,CodingStart,CodingEnd",
+                "ENSG01,1,1,1,ENST01,protein_coding,1000,5000,1,1000,1200,-1,1,1100,4500",
+                "ENSG01,1,1,1,ENST01,protein_coding,1000,5000,2,3000,5000,1,-1,1100,4500",
+                "ENSG01,1,1,2,ENST02,retained_intron,1500,4000,1,1500,4000,-1,-1,NULL,NULL",
+                "ENSG02,3,-1,3,ENST03,lincRNA,8000,9000,1,8000,9000,-1,-1,NULL,NULL",
+                "ENSG03,4,1,4,ENST04,protein_coding,1000,2000,1,1000,2000,-1,-1,1200,1800"));
+
+        Files.write(new File(dataPath + ENSEMBL_PROTEIN_FEATURE_DATA_FILE).toPath(), Lists.newArrayList(
+                "TranscriptId,TranslationId,ProteinFeatureId,SeqStart,SeqEnd,HitDescription",
+                "1,11,101,10,50,Pkinase",
+                "1,11,102,60,90,SH2",
+                "4,14,103,5,25,Pkinase"));
+
+        Files.write(new File(dataPath + ENSEMBL_TRANS_SPLICE_DATA_FILE).toPath(), Lists.newArrayList(
+                "GeneId,TransId,TransName,TransStartPos,PreSpliceAcceptorPosition,Distance",
+                "ENSG01,1,ENST01,1000,800,200"));
+    }
+}
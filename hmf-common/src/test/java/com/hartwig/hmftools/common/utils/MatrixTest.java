@@ -0,0 +1,94 @@
+package com.hartwig.hmftools.common.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class MatrixTest
+{
+    @Test
+    public void testBlockedMultiply()
+    {
+        Random random = new Random(1);
+
+        // spans several blocks with partial ones at the edges
+        Matrix a = randomMatrix(random, 150, 70);
+        Matrix b = randomMatrix(random, 70, 130);
+
+        Matrix expected = naiveMultiply(a, b);
+        assertMatricesEqual(expected, a.multiply(b));
+
+        // transpose-aware forms match multiplying by an explicit transpose exactly
+        Matrix at = a.transpose();
+        assertMatricesEqual(expected, at.transposeMultiply(b));
+
+        Matrix bt = b.transpose();
+        assertMatricesEqual(expected, a.multiplyTranspose(bt));
+    }
+
+    @Test
+    public void testScalarMultiplyRatio()
+    {
+        Matrix values = new Matrix(1, 3);
+        values.setRow(0, new double[] { 2, 3, 4 });
+
+        Matrix numerator = new Matrix(1, 3);
+        numerator.setRow(0, new double[] { 1, 6, 5 });
+
+        Matrix denominator = new Matrix(1, 3);
+        denominator.setRow(0, new double[] { 4, 2, 0 });
+
+        values.scalarMultiplyRatio(numerator, denominator);
+
+        // a zero denominator applies the numerator alone
+        assertArrayEquals(new double[] { 0.5, 9, 20 }, values.getRow(0), 1e-10);
+    }
+
+    private static Matrix randomMatrix(final Random random, int rows, int cols)
+    {
+        Matrix matrix = new Matrix(rows, cols);
+
+        for(int i = 0; i < rows; ++i)
+        {
+            for(int j = 0; j < cols; ++j)
+            {
+                matrix.set(i, j, random.nextDouble());
+            }
+        }
+
+        return matrix;
+    }
+
+    private static Matrix naiveMultiply(final Matrix a, final Matrix b)
+    {
+        Matrix result = new Matrix(a.Rows, b.Cols);
+        double[][] resultData = result.getData();
+
+        for(int i = 0; i < a.Rows; ++i)
+        {
+            for(int j = 0; j < b.Cols; ++j)
+            {
+                for(int k = 0; k < a.Cols; ++k)
+                {
+                    resultData[i][j] += a.get(i, k) * b.get(k, j);
+                }
+            }
+        }
+
+        return result;
+    }
+
+    private static void assertMatricesEqual(final Matrix expected, final Matrix actual)
+    {
+        assertEquals(expected.Rows, actual.Rows);
+        assertEquals(expected.Cols, actual.Cols);
+
+        for(int i = 0; i < expected.Rows; ++i)
+        {
+            assertArrayEquals(expected.getRow(i), actual.getRow(i), 0);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.hartwig.hmftools.common.utils.collection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import com.google.common.collect.Lists;
+
+import org.junit.Test;
+
+public class IntervalIndexTest
+{
+    @Test
+    public void testEmptyAndSingleIntervals()
+    {
+        List<int[]> intervals = Lists.newArrayList();
+        IntervalIndex<int[]> index = new IntervalIndex<>(intervals, x -> x[0], x -> x[1]);
+        assertTrue(index.findOverlapping(0, 100).isEmpty());
+
+        intervals.add(new int[] { 100, 200 });
+        assertTrue(!index.isIndexOf(intervals));
+
+        index = new IntervalIndex<>(intervals, x -> x[0], x -> x[1]);
+        assertTrue(index.isIndexOf(intervals));
+        assertEquals(1, index.findOverlapping(200, 300).size());
+        assertEquals(1, index.findOverlapping(50, 100).size());
+        assertEquals(0, index.findOverlapping(201, 300).size());
+        assertEquals(0, index.findOverlapping(50, 99).size());
+    }
+
+    @Test
+    public void testMatchesExhaustiveSearch()
+    {
+        Random random = new Random(123);
+
+        for(int count : new int[] { 2, 7, 16, 33, 100, 1000 })
+        {
+            List<int[]> intervals = Lists.newArrayList();
+
+            for(int i = 0; i < count; ++i)
+            {
+                int start = random.nextInt(100000);
+                int length = random.nextInt(10) == 0 ? random.nextInt(50000) : random.nextInt(500);
+                intervals.add(new int[] { start, start + length });
+            }
+
+            IntervalIndex<int[]> index = new IntervalIndex<>(intervals, x -> x[0], x -> x[1]);
+
+            for(int i = 0; i < 500; ++i)
+            {
+                int posStart = random.nextInt(110000) - 5000;
+                int posEnd = posStart + random.nextInt(2000);
+
+                List<int[]> expected = intervals.stream()
+                        .filter(x -> x[0] <= posEnd && x[1] >= posStart)
+                        .collect(Collectors.toList());
+
+                List<int[]> matches = index.findOverlapping(posStart, posEnd);
+
+                // matches are returned in the original list order
+                assertEquals(expected.size(), matches.size());
+
+                for(int j = 0; j < expected.size(); ++j)
+                {
+                    assertTrue(expected.get(j) == matches.get(j));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.hartwig.hmftools.common.utils.io;
+
+import static com.hartwig.hmftools.common.utils.io.BinaryCacheUtils.binaryFilename;
+import static com.hartwig.hmftools.common.utils.io.BinaryCacheUtils.hasHeader;
+import static com.hartwig.hmftools.common.utils.io.BinaryCacheUtils.isCurrent;
+import static com.hartwig.hmftools.common.utils.io.BinaryCacheUtils.mapFile;
+import static com.hartwig.hmftools.common.utils.io.BinaryCacheUtils.readString;
+import static com.hartwig.hmftools.common.utils.io.BinaryCacheUtils.writeHeader;
+import static com.hartwig.hmftools.common.utils.io.BinaryCacheUtils.writeString;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+public class BinaryCacheUtilsTest
+{
+    private static final int MAGIC = 0x54455354; // 'TEST'
+
+    @Test
+    public void testBinaryFilename()
+    {
+        assertEquals("/data/counts.bin", binaryFilename("/data/counts.csv"));
+        assertEquals("/data/counts.bin", binaryFilename("/data/counts.bin"));
+        assertEquals("counts.bin", binaryFilename("counts"));
+    }
+
+    @Test
+    public void testHeaderAndStrings() throws IOException
+    {
+        final File file = File.createTempFile("binary_cache", BinaryCacheUtils.BINARY_FILE_EXTENSION);
+        file.deleteOnExit();
+
+        try(DataOutputStream output = new DataOutputStream(new FileOutputStream(file)))
+        {
+            writeHeader(output, MAGIC, 3);
+            writeString(output, "ENSG00000141510");
+            writeString(output, "");
+            writeString(output, "TP53\u00e9");
+        }
+
+        final ByteBuffer buffer = mapFile(file);
+
+        assertTrue(hasHeader(buffer, MAGIC, 3));
+        assertFalse(hasHeader(buffer, MAGIC, 2));
+        assertFalse(hasHeader(buffer, MAGIC + 1, 3));
+        assertFalse(hasHeader(ByteBuffer.allocate(Integer.BYTES), MAGIC, 3));
+        assertEquals(0, buffer.position());
+
+        buffer.position(BinaryCacheUtils.HEADER_BYTES);
+        assertEquals("ENSG00000141510", readString(buffer));
+        assertEquals("", readString(buffer));
+        assertEquals("TP53\u00e9", readString(buffer));
+        assertEquals(buffer.limit(), buffer.position());
+    }
+
+    @Test
+    public void testIsCurrent() throws IOException
+    {
+        final File csvFile = File.createTempFile("binary_cache", ".csv");
+        final File binaryFile = new File(binaryFilename(csvFile.getPath()));
+        csvFile.deleteOnExit();
+        binaryFile.deleteOnExit();
+
+        assertFalse(isCurrent(binaryFile.getPath(), csvFile.getPath()));
+
+        assertTrue(binaryFile.createNewFile());
+        assertTrue(binaryFile.setLastModified(csvFile.lastModified()));
+        assertTrue(isCurrent(binaryFile.getPath(), csvFile.getPath()));
+
+        assertTrue(csvFile.setLastModified(binaryFile.lastModified() + 2000));
+        assertFalse(isCurrent(binaryFile.getPath(), csvFile.getPath()));
+
+        // a missing source file doesn't invalidate the cache
+        assertTrue(csvFile.delete());
+        assertTrue(isCurrent(binaryFile.getPath(), csvFile.getPath()));
+    }
+}
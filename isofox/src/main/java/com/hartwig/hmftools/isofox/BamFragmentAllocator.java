@@ -56,6 +56,7 @@ import com.hartwig.hmftools.common.ensemblcache.ExonData;
 import com.hartwig.hmftools.common.ensemblcache.TranscriptData;
 import com.hartwig.hmftools.common.fusion.KnownFusionData;
 import com.hartwig.hmftools.common.utils.sv.SvRegion;
+import com.hartwig.hmftools.isofox.common.BamRegionScanner;
 import com.hartwig.hmftools.isofox.common.BamSlicer;
 import com.hartwig.hmftools.isofox.common.BaseDepth;
 import com.hartwig.hmftools.isofox.common.DuplicateReadTracker;
@@ -69,6 +70,7 @@ import com.hartwig.hmftools.isofox.common.RegionMatchType;
 import com.hartwig.hmftools.isofox.common.RegionReadData;
 import com.hartwig.hmftools.isofox.common.TransMatchType;
 import com.hartwig.hmftools.isofox.expression.CategoryCountsData;
+import com.hartwig.hmftools.isofox.adjusts.FragmentSizeCalcs;
 import com.hartwig.hmftools.isofox.adjusts.GcRatioCounts;
 import com.hartwig.hmftools.isofox.fusion.ChimericReadTracker;
 import com.hartwig.hmftools.isofox.novel.AltSpliceJunctionFinder;
@@ -87,7 +89,7 @@ public class BamFragmentAllocator
 {
     private final IsofoxConfig mConfig;
     private final SamReader mSamReader;
-    private final BamSlicer mBamSlicer;
+    private final BamRegionScanner mBamScanner;
 
     // state relating to the current gene
     private GeneCollection mCurrentGenes;
@@ -116,6 +118,8 @@ public class BamFragmentAllocator
     private final DuplicateReadTracker mDuplicateTracker;
     private final List<String[]> mKnownPairGeneIds;
     private SvRegion mExcludedRegion;
+    private FragmentSizeCalcs mFragmentSizeCalcs; // optionally samples fragment lengths from this pass
+    private boolean mSampleFragmentLengths;
 
     public BamFragmentAllocator(final IsofoxConfig config, final ResultsWriter resultsWriter)
     {
@@ -134,6 +138,8 @@ public class BamFragmentAllocator
         mNextGeneCountLog = 0;
         mEnrichedGeneFragments = 0;
         mExcludedRegion = null;
+        mFragmentSizeCalcs = null;
+        mSampleFragmentLengths = false;
         mValidReadStartRegion = new int[SE_PAIR];
 
         mSamReader = mConfig.BamFile != null ?
@@ -146,7 +152,7 @@ public class BamFragmentAllocator
         boolean keepSecondaries = mConfig.ApplyMapQualityAdjust;
         int minMapQuality = keepSecondaries ? 0 : SINGLE_MAP_QUALITY;
 
-        mBamSlicer = new BamSlicer(minMapQuality, keepDuplicates, keepSupplementaries, keepSecondaries);
+        mBamScanner = new BamRegionScanner(mSamReader, new BamSlicer(minMapQuality, keepDuplicates, keepSupplementaries, keepSecondaries));
 
         mDuplicateTracker = new DuplicateReadTracker(mConfig.MarkDuplicates);
 
@@ -171,6 +177,8 @@ public class BamFragmentAllocator
     public final ChimericReadTracker getChimericReadTracker() { return mChimericReads; }
     public final SpliceSiteCounter getSpliceSiteCounter() { return mSpliceSiteCounter; }
 
+    public void setFragmentSizeCalcs(final FragmentSizeCalcs fragmentSizeCalcs) { mFragmentSizeCalcs = fragmentSizeCalcs; }
+
     private static int GENE_LOG_COUNT = 100000;
 
     public void clearCache()
@@ -191,6 +199,13 @@ public class BamFragmentAllocator
         mExcludedRegion = null;
     }
 
+    public void closeBamScan()
+    {
+        // release the BAM iterator once a chromosome's gene collections are complete
+        ISF_LOGGER.debug("BAM queries({})", mBamScanner.queryCount());
+        mBamScanner.close();
+    }
+
     private static final int NON_GENIC_BASE_DEPTH_WIDTH = 250000;
 
     public void produceBamCounts(final GeneCollection geneCollection, final SvRegion geneRegion)
@@ -220,18 +235,22 @@ public class BamFragmentAllocator
         mValidReadStartRegion[SE_START] = geneRegion.start();
         mValidReadStartRegion[SE_END] = geneRegion.end();
 
+        mSampleFragmentLengths = mFragmentSizeCalcs != null && !mFragmentSizeCalcs.samplingComplete()
+                && mFragmentSizeCalcs.setCurrentGenes(geneCollection.genes().stream().map(x -> x.GeneData).collect(Collectors.toList()));
+
         if(mConfig.ExcludedRegion != null && geneRegion.overlaps(mConfig.ExcludedRegion))
         {
             // special handling to avoid any specified enriched region (in this case LINC00486's poly-G sequence)
             mExcludedRegion = mConfig.ExcludedRegion;
             final SvRegion preRegion = new SvRegion(geneRegion.Chromosome, geneRegion.start(), mExcludedRegion.start() - 100);
             final SvRegion postRegion = new SvRegion(geneRegion.Chromosome, mExcludedRegion.end() + 100, geneRegion.end());
-            mBamSlicer.slice(mSamReader, Lists.newArrayList(preRegion), this::processSamRecord);
-            mBamSlicer.slice(mSamReader, Lists.newArrayList(postRegion), this::processSamRecord);
+            mBamScanner.slice(preRegion, this::processSamRecord);
+            mBamScanner.close(); // seek past rather than read through the excluded region
+            mBamScanner.slice(postRegion, this::processSamRecord);
         }
         else
         {
-            mBamSlicer.slice(mSamReader, Lists.newArrayList(geneRegion), this::processSamRecord);
+            mBamScanner.slice(geneRegion, this::processSamRecord);
         }
 
         if(mEnrichedGeneFragments > 0)
@@ -313,6 +332,9 @@ public class BamFragmentAllocator
         if(excludeRegion(record))
             return;
 
+        if(mSampleFragmentLengths)
+            mFragmentSizeCalcs.processMainPassRead(record);
+
         if(mDuplicateTracker.checkDuplicates(record))
         {
             if(mConfig.DropDuplicates)
@@ -361,7 +383,7 @@ public class BamFragmentAllocator
         {
             if(mGeneReadCount >= mConfig.GeneReadLimit)
             {
-                mBamSlicer.haltProcessing();
+                mBamScanner.haltProcessing();
                 ISF_LOGGER.warn("genes({}) readCount({}) exceeds max read count", mCurrentGenes.geneNames(), mGeneReadCount);
             }
 
@@ -1,5 +1,7 @@
 package com.hartwig.hmftools.isofox;
 
+import static java.lang.Math.max;
+
 import static com.hartwig.hmftools.common.utils.sv.SvRegion.positionsOverlap;
 import static com.hartwig.hmftools.isofox.IsofoxConfig.ISF_LOGGER;
 import static com.hartwig.hmftools.isofox.IsofoxFunction.FUSIONS;
@@ -15,10 +17,14 @@ import static com.hartwig.hmftools.common.utils.sv.StartEndIterator.SE_END;
 import static com.hartwig.hmftools.common.utils.sv.StartEndIterator.SE_START;
 
 import java.io.BufferedWriter;
+import java.lang.management.ManagementFactory;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.hartwig.hmftools.common.ensemblcache.EnsemblDataCache;
@@ -35,6 +41,7 @@ import com.hartwig.hmftools.isofox.expression.ExpectedRatesData;
 import com.hartwig.hmftools.isofox.expression.ExpectedRatesGenerator;
 import com.hartwig.hmftools.isofox.expression.TranscriptExpression;
 import com.hartwig.hmftools.isofox.expression.GeneCollectionSummary;
+import com.hartwig.hmftools.isofox.adjusts.FragmentSizeCalcs;
 import com.hartwig.hmftools.isofox.adjusts.GcRatioCounts;
 import com.hartwig.hmftools.isofox.adjusts.GcTranscriptCalculator;
 import com.hartwig.hmftools.isofox.fusion.ChimericStats;
@@ -55,7 +62,7 @@ public class BamFragmentReader implements Callable
     private final ResultsWriter mResultsWriter;
 
     private final BamFragmentAllocator mBamFragmentAllocator;
-    private final TranscriptExpression mExpTransRates;
+    private TranscriptExpression mExpTransRates;
     private final ExpectedRatesGenerator mExpRatesGenerator;
     private final GcTranscriptCalculator mTranscriptGcRatios;
     private final ExpectedCountsCache mExpectedCountsCache;
@@ -65,6 +72,17 @@ public class BamFragmentReader implements Callable
     private int mCurrentGeneIndex;
     private int mGenesProcessed;
 
+    // the batch of the chromosome's genes processed by this task
+    private int mGeneIndexStart;
+    private int mGeneIndexEnd;
+    private int mPreviousCollectionEnd; // end of the gene collection preceding this batch
+    private int mNextLogCount;
+
+    // fragment lengths sampled from this task's reads, in which case the transcript fit may wait for the merged distribution
+    private FragmentSizeCalcs mFragmentSizeCalcs;
+    private boolean mDeferTranscriptFit;
+    private final List<Integer> mDeferredCollectionIds;
+
     // fusion state cached across all gene collections
     private final FusionTaskManager mFusionTaskManager;
     private final FusionFinder mFusionFinder;
@@ -76,6 +94,7 @@ public class BamFragmentReader implements Callable
     private final int[] mCombinedFragmentCounts;
     private final GcRatioCounts mNonEnrichedGcRatioCounts;
     private int mTotalReadsProcessed;
+    private long mPeakHeapUsage; // sampled after each gene collection
     private final GcRatioCounts mGcRatioCounts;
 
     private TaskType mCurrentTaskType;
@@ -103,6 +122,9 @@ public class BamFragmentReader implements Callable
 
         mGeneDataList = geneDataList;
         mCollectionId = 0;
+        mGeneIndexStart = 0;
+        mGeneIndexEnd = geneDataList.size();
+        mPreviousCollectionEnd = 0;
 
         mCurrentGeneIndex = 0;
         mCurrentTaskType = null;
@@ -120,9 +142,14 @@ public class BamFragmentReader implements Callable
 
         mTranscriptGcRatios = transcriptGcCalcs;
 
+        mFragmentSizeCalcs = null;
+        mDeferTranscriptFit = false;
+        mDeferredCollectionIds = Lists.newArrayList();
+
         mGeneCollectionSummaryData = Lists.newArrayList();
         mEnrichedGenesFragmentCount = 0;
         mTotalReadsProcessed = 0;
+        mPeakHeapUsage = 0;
         mCombinedFragmentCounts = new int[typeAsInt(FragmentType.MAX)];
         mNonEnrichedGcRatioCounts = new GcRatioCounts();
         mChimericStats = new ChimericStats();
@@ -151,9 +178,33 @@ public class BamFragmentReader implements Callable
     public final ChimericStats getChimericStats() { return mChimericStats; }
     public boolean isValid() { return mIsValid; }
     public int totalReadCount() { return mTotalReadsProcessed; }
+    public long peakHeapUsage() { return mPeakHeapUsage; }
 
     public void setTaskType(TaskType taskType) { mCurrentTaskType = taskType; }
 
+    public void setGeneBatch(int geneIndexStart, int geneIndexEnd, int collectionIdStart, int previousCollectionEnd)
+    {
+        mGeneIndexStart = geneIndexStart;
+        mGeneIndexEnd = geneIndexEnd;
+        mCollectionId = collectionIdStart;
+        mPreviousCollectionEnd = previousCollectionEnd;
+    }
+
+    public int geneCount() { return mGeneIndexEnd - mGeneIndexStart; }
+
+    public void sampleFragmentLengths(int requiredFragCount)
+    {
+        mFragmentSizeCalcs = new FragmentSizeCalcs(mConfig, mGeneTransCache, null);
+        mFragmentSizeCalcs.initialise(mChromosome, mGeneDataList, requiredFragCount);
+        mBamFragmentAllocator.setFragmentSizeCalcs(mFragmentSizeCalcs);
+
+        // expected rates depend on the fragment length distribution, so fitting waits until it is merged across all tasks
+        mDeferTranscriptFit = mExpTransRates != null && mConfig.ApplyFragmentLengthAdjust;
+    }
+
+    public final FragmentSizeCalcs getFragmentSizeCalcs() { return mFragmentSizeCalcs; }
+    public boolean deferTranscriptFit() { return mDeferTranscriptFit; }
+
     @Override
     public Long call()
     {
@@ -169,6 +220,10 @@ public class BamFragmentReader implements Callable
                 assignTranscriptCounts();
                 break;
 
+            case TRANSCRIPT_FIT:
+                fitTranscripts();
+                break;
+
             case APPLY_GC_ADJUSTMENT:
                 applyGcAdjustToTranscriptAllocations();
                 break;
@@ -180,21 +235,17 @@ public class BamFragmentReader implements Callable
         return (long)1; // return value not used
     }
 
-    public void assignTranscriptCounts()
+    // forms each of the batch's gene collections in turn, numbering them and setting the non-genic region preceding the next one
+    @VisibleForTesting
+    void forEachGeneCollection(final Consumer<GeneCollection> processor)
     {
-        if(mGeneDataList.size() > 10)
-        {
-            ISF_LOGGER.info("processing {} genes for chromosome({})", mGeneDataList.size(), mChromosome);
-        }
-
-        mCurrentGeneIndex = 0;
+        mCurrentGeneIndex = mGeneIndexStart;
         final List<EnsemblGeneData> overlappingGenes = Lists.newArrayList();
-        int nextLogCount = 100;
-        int lastGeneCollectionEndPosition = 1;
+        int lastGeneCollectionEndPosition = mPreviousCollectionEnd + 1;
 
         boolean genesFiltered = !mConfig.RestrictedGeneIds.isEmpty() || !mConfig.SpecificRegions.isEmpty();
 
-        while(mCurrentGeneIndex < mGeneDataList.size())
+        while(mCurrentGeneIndex < mGeneIndexEnd)
         {
             mCurrentGeneIndex = findNextOverlappingGenes(mGeneDataList, mCurrentGeneIndex, overlappingGenes);
 
@@ -228,41 +279,70 @@ public class BamFragmentReader implements Callable
                 geneCollection.setNonGenicPosition(SE_END, geneCollection.regionBounds()[SE_END] + 10000);
             }
 
-            if(geneCollection.containsExcludedGene() || (mConfig.runFusionsOnly() && geneCollection.containsEnrichedRegion()))
-            {
-                // skip past this gene collection - enriched regions are not used for fusion calling
-                lastGeneCollectionEndPosition = geneCollection.regionBounds()[SE_END] + 1;
-                continue;
-            }
+            processor.accept(geneCollection);
 
-            mPerfCounters[PERF_TOTAL].start();
+            lastGeneCollectionEndPosition = geneCollection.regionBounds()[SE_END] + 1;
+        }
+    }
 
-            // at the moment it is one or the other
-            analyseBamReads(geneCollection);
+    private void processGeneCollection(final GeneCollection geneCollection)
+    {
+        if(geneCollection.containsExcludedGene() || (mConfig.runFusionsOnly() && geneCollection.containsEnrichedRegion()))
+        {
+            // skip past this gene collection - enriched regions are not used for fusion calling
+            return;
+        }
 
-            mPerfCounters[PERF_TOTAL].stop();
+        mPerfCounters[PERF_TOTAL].start();
 
-            ISF_LOGGER.debug("chr({}) gene({}) processed({} of {})",
-                    mChromosome, geneCollection.geneNames(10), mCurrentGeneIndex, mGeneDataList.size());
+        // at the moment it is one or the other
+        analyseBamReads(geneCollection);
 
-            mGenesProcessed += geneCollection.genes().size();
-            mTotalReadsProcessed = mBamFragmentAllocator.totalReadCount();
+        mPerfCounters[PERF_TOTAL].stop();
 
-            lastGeneCollectionEndPosition = geneCollection.regionBounds()[SE_END] + 1;
+        // the collection's reads have not been collected yet, so current usage is close to the peak for this collection
+        mPeakHeapUsage = max(mPeakHeapUsage, ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed());
 
-            if (mGenesProcessed >= nextLogCount)
-            {
-                nextLogCount += 100;
-                ISF_LOGGER.info("chr({}) processed {} of {} genes", mChromosome, mGenesProcessed, mGeneDataList.size());
+        ISF_LOGGER.debug("chr({}) gene({}) processed({} of {})",
+                mChromosome, geneCollection.geneNames(10), mCurrentGeneIndex - mGeneIndexStart, geneCount());
+
+        mGenesProcessed += geneCollection.genes().size();
+        mTotalReadsProcessed = mBamFragmentAllocator.totalReadCount();
+
+        if (mGenesProcessed >= mNextLogCount)
+        {
+            mNextLogCount += 100;
+            ISF_LOGGER.info("chr({}) processed {} of {} genes", mChromosome, mGenesProcessed, geneCount());
 
-                if(mConfig.runFunction(FUSIONS))
-                    ISF_LOGGER.debug("chr({}) chimeric data: {}", mChromosome, mChimericStats);
+            if(mConfig.runFunction(FUSIONS))
+                ISF_LOGGER.debug("chr({}) chimeric data: {}", mChromosome, mChimericStats);
+        }
+    }
+
+    public void assignTranscriptCounts()
+    {
+        if(geneCount() > 10)
+        {
+            if(geneCount() < mGeneDataList.size())
+            {
+                ISF_LOGGER.info("processing {} genes for chromosome({}) batch({} -> {})",
+                        geneCount(), mChromosome, mGeneIndexStart, mGeneIndexEnd - 1);
+            }
+            else
+            {
+                ISF_LOGGER.info("processing {} genes for chromosome({})", geneCount(), mChromosome);
             }
         }
 
+        mNextLogCount = 100;
+
+        forEachGeneCollection(this::processGeneCollection);
+
+        mBamFragmentAllocator.closeBamScan();
+
         if(mConfig.runFunction(FUSIONS))
         {
-            if(nextLogCount > 100)
+            if(mNextLogCount > 100)
             {
                 ISF_LOGGER.info("chr({}) chimeric data: {}", mChromosome, mChimericStats);
             }
@@ -386,6 +466,9 @@ public class BamFragmentReader implements Callable
 
         mGeneCollectionSummaryData.add(geneCollectionSummary);
 
+        if(mDeferTranscriptFit)
+            mDeferredCollectionIds.add(geneCollection.id());
+
         if (ISF_LOGGER.isDebugEnabled())
         {
             double allCategoryTotals = mBamFragmentAllocator.getTransComboData().stream()
@@ -402,7 +485,7 @@ public class BamFragmentReader implements Callable
             }
         }
 
-        if (mExpTransRates != null)
+        if (mExpTransRates != null && !mDeferTranscriptFit)
         {
             ExpectedRatesData expRatesData = null;
 
@@ -462,10 +545,57 @@ public class BamFragmentReader implements Callable
         geneCollectionSummary.allocateResidualsToGenes();
         mResultsWriter.writeGeneCollectionData(geneCollection);
 
-        if(!mConfig.ApplyGcBiasAdjust)
+        if(!mConfig.ApplyGcBiasAdjust && !mDeferTranscriptFit)
             geneCollectionSummary.TransCategoryCounts.clear();
     }
 
+    private void fitTranscripts()
+    {
+        // fit the category counts cached from the BAM pass now that the fragment length distribution is set
+        mExpTransRates = new TranscriptExpression(mConfig, mExpectedCountsCache, mResultsWriter);
+
+        for(int i = 0; i < mGeneCollectionSummaryData.size(); ++i)
+        {
+            final GeneCollectionSummary geneSummaryData = mGeneCollectionSummaryData.get(i);
+
+            mPerfCounters[PERF_FIT].start();
+
+            ExpectedRatesData expRatesData = null;
+
+            if(mExpRatesGenerator != null)
+            {
+                // rebuild the gene collection's transcript and exon data, which isn't retained after the BAM pass
+                final List<EnsemblGeneData> geneDataList = geneSummaryData.GeneIds.stream()
+                        .map(x -> mGeneTransCache.getGeneDataById(x)).collect(Collectors.toList());
+
+                GeneCollection geneCollection = new GeneCollection(
+                        mDeferredCollectionIds.get(i), createGeneReadData(geneDataList, mGeneTransCache));
+
+                geneCollection.markEnrichedAndExcludedGenes(mConfig, mGeneTransCache);
+
+                mExpRatesGenerator.generateExpectedRates(geneCollection);
+                expRatesData = mExpRatesGenerator.getExpectedRatesData();
+            }
+
+            final Map<Integer,String> transIdMap = Maps.newHashMap();
+            geneSummaryData.TranscriptResults.forEach(x -> transIdMap.put(x.Trans.TransId, x.Trans.TransName));
+            mExpTransRates.runTranscriptEstimation(transIdMap, geneSummaryData, expRatesData, false);
+
+            mPerfCounters[PERF_FIT].stop();
+
+            geneSummaryData.TranscriptResults.forEach(x -> x.setEffectiveLength(mConfig.FragmentSizeData));
+            geneSummaryData.setFitAllocations();
+            geneSummaryData.assignLowMapQualityFragments();
+            geneSummaryData.TranscriptResults.forEach(x -> x.setPreGcFitAllocation(x.getFitAllocation()));
+            geneSummaryData.allocateResidualsToGenes();
+
+            if(!mConfig.ApplyGcBiasAdjust)
+                geneSummaryData.TransCategoryCounts.clear();
+        }
+
+        mDeferredCollectionIds.clear();
+    }
+
     private void postBamReadNovelLocations(final GeneCollection geneCollection)
     {
         if(!mConfig.runFunction(NOVEL_LOCATIONS))
@@ -1,20 +1,25 @@
 package com.hartwig.hmftools.isofox;
 
+import static java.lang.Math.ceil;
 import static java.lang.Math.max;
 
 import static com.hartwig.hmftools.common.sigs.SigUtils.convertToPercentages;
 import static com.hartwig.hmftools.common.sigs.VectorUtils.copyVector;
 import static com.hartwig.hmftools.common.utils.sv.SvRegion.positionsOverlap;
 import static com.hartwig.hmftools.isofox.BamFragmentReader.PERF_FIT;
+import static com.hartwig.hmftools.isofox.BamFragmentReader.findNextOverlappingGenes;
 import static com.hartwig.hmftools.isofox.IsofoxConfig.GENE_TRANSCRIPTS_DIR;
 import static com.hartwig.hmftools.isofox.IsofoxConfig.LOG_DEBUG;
 import static com.hartwig.hmftools.isofox.IsofoxConfig.ISF_LOGGER;
 import static com.hartwig.hmftools.isofox.IsofoxConfig.LOG_LEVEL;
 import static com.hartwig.hmftools.isofox.IsofoxConfig.createCmdLineOptions;
 import static com.hartwig.hmftools.isofox.IsofoxConfig.validConfigPaths;
+import static com.hartwig.hmftools.isofox.IsofoxConstants.GENE_BATCHES_PER_THREAD;
+import static com.hartwig.hmftools.isofox.IsofoxConstants.MIN_GENES_PER_BATCH;
 import static com.hartwig.hmftools.isofox.IsofoxFunction.READ_COUNTS;
 import static com.hartwig.hmftools.isofox.TaskType.APPLY_GC_ADJUSTMENT;
 import static com.hartwig.hmftools.isofox.TaskType.TRANSCRIPT_COUNTS;
+import static com.hartwig.hmftools.isofox.TaskType.TRANSCRIPT_FIT;
 import static com.hartwig.hmftools.isofox.adjusts.FragmentSizeCalcs.setConfigFragmentLengthData;
 import static com.hartwig.hmftools.isofox.common.FragmentType.typeAsInt;
 import static com.hartwig.hmftools.isofox.IsofoxFunction.EXPECTED_GC_COUNTS;
@@ -25,15 +30,21 @@ import static com.hartwig.hmftools.isofox.expression.TranscriptExpression.setTra
 import static com.hartwig.hmftools.isofox.adjusts.GcRatioCounts.writeReadGcRatioCounts;
 import static com.hartwig.hmftools.isofox.results.SummaryStats.createSummaryStats;
 
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.hartwig.hmftools.common.ensemblcache.EnsemblDataCache;
+import com.hartwig.hmftools.common.genome.chromosome.HumanChromosome;
 import com.hartwig.hmftools.common.utils.PerformanceCounter;
 import com.hartwig.hmftools.common.utils.sv.SvRegion;
 import com.hartwig.hmftools.common.utils.version.VersionInfo;
@@ -155,7 +166,16 @@ public class Isofox
             return false;
         }
 
-        if(mConfig.requireFragmentLengthCalcs())
+        if(mGcTranscriptCalcs != null && !mGcTranscriptCalcs.isValid())
+        {
+            ISF_LOGGER.warn("invalid expected GC ratios");
+            return false;
+        }
+
+        // fragment lengths are either sampled in a separate pass or from the main pass's reads
+        boolean mainPassFragLengths = mConfig.FragmentLengthsInMainPass && mConfig.requireFragmentLengthCalcs();
+
+        if(mConfig.requireFragmentLengthCalcs() && !mainPassFragLengths)
         {
             calcFragmentLengths(chrGeneMap);
 
@@ -166,17 +186,17 @@ public class Isofox
             }
         }
 
-        final List<BamFragmentReader> chrTasks = Lists.newArrayList();
-        final List<Callable> callableList = Lists.newArrayList();
+        // tasks are kept in genomic order for merging and writing results, and submitted largest first
+        final List<BamFragmentReader> chrTasks = createBamFragmentReaders(chrGeneMap);
 
-        for(Map.Entry<String,List<EnsemblGeneData>> entry : chrGeneMap.entrySet())
-        {
-            BamFragmentReader bamReaderTask = new BamFragmentReader(
-                    mConfig, entry.getKey(), entry.getValue(), mGeneTransCache, mResultsWriter,
-                    mFusionTaskManager, mExpectedCountsCache, mGcTranscriptCalcs);
+        final List<Callable> callableList = chrTasks.stream()
+                .sorted(Comparator.comparingInt(BamFragmentReader::geneCount).reversed())
+                .collect(Collectors.toList());
 
-            chrTasks.add(bamReaderTask);
-            callableList.add(bamReaderTask);
+        if(mainPassFragLengths)
+        {
+            int requiredFragCount = (int)ceil(mConfig.FragmentLengthSamplingCount / (double)chrTasks.size()); // split evenly amongst tasks
+            chrTasks.forEach(x -> x.sampleFragmentLengths(requiredFragCount));
         }
 
         chrTasks.forEach(x -> x.setTaskType(TRANSCRIPT_COUNTS));
@@ -184,6 +204,21 @@ public class Isofox
         if(!TaskExecutor.executeChromosomeTask(callableList, mConfig.Threads))
             return false;
 
+        if(mainPassFragLengths)
+        {
+            setFragmentLengths(chrTasks.stream().map(x -> x.getFragmentSizeCalcs()).collect(Collectors.toList()));
+
+            if(chrTasks.stream().anyMatch(x -> x.deferTranscriptFit()))
+            {
+                ISF_LOGGER.info("fitting transcript expression from the sampled fragment length distribution");
+
+                chrTasks.forEach(x -> x.setTaskType(TRANSCRIPT_FIT));
+
+                if(!TaskExecutor.executeChromosomeTask(callableList, mConfig.Threads))
+                    return false;
+            }
+        }
+
         int totalReadsProcessed = chrTasks.stream().mapToInt(x -> x.totalReadCount()).sum();
         ISF_LOGGER.info("read {} total BAM records", totalReadsProcessed);
 
@@ -203,12 +238,102 @@ public class Isofox
         }
 
         final List<PerformanceCounter[]> perfCounters = chrTasks.stream().map(x -> x.getPerfCounters()).collect(Collectors.toList());
+        long peakHeapUsage = chrTasks.stream().mapToLong(x -> x.peakHeapUsage()).max().orElse(0);
         chrTasks.clear();
 
-        logPerformanceStats(perfCounters);
+        logPerformanceStats(perfCounters, peakHeapUsage);
         return true;
     }
 
+    private List<BamFragmentReader> createBamFragmentReaders(final Map<String,List<EnsemblGeneData>> chrGeneMap)
+    {
+        final List<BamFragmentReader> readerTasks = Lists.newArrayList();
+
+        final List<String> chromosomes = chrGeneMap.keySet().stream()
+                .sorted(Comparator.comparingInt(Isofox::chromosomeRank).thenComparing(x -> x))
+                .collect(Collectors.toList());
+
+        // fusion calling links chimeric reads across all of a chromosome's gene collections, so requires a task per chromosome
+        boolean splitChromosomes = mConfig.Threads > 1 && !mConfig.runFunction(FUSIONS);
+
+        int totalGenes = chrGeneMap.values().stream().mapToInt(x -> x.size()).sum();
+        int batchGeneCount = max(totalGenes / max(mConfig.Threads * GENE_BATCHES_PER_THREAD, 1), MIN_GENES_PER_BATCH);
+
+        for(final String chromosome : chromosomes)
+        {
+            final List<EnsemblGeneData> geneDataList = chrGeneMap.get(chromosome);
+
+            if(!splitChromosomes || geneDataList.size() <= batchGeneCount)
+            {
+                readerTasks.add(createBamFragmentReader(chromosome, geneDataList));
+                continue;
+            }
+
+            readerTasks.addAll(formGeneBatches(
+                    geneDataList, batchGeneCount, mConfig.ExcludedGeneIds, () -> createBamFragmentReader(chromosome, geneDataList)));
+        }
+
+        ISF_LOGGER.debug("created {} BAM reader tasks for {} chromosomes", readerTasks.size(), chromosomes.size());
+
+        return readerTasks;
+    }
+
+    // forms batches from whole gene collections, each starting from the collection ID and previous collection end that the
+    // reader would have reached in a single pass over the chromosome
+    @VisibleForTesting
+    static List<BamFragmentReader> formGeneBatches(
+            final List<EnsemblGeneData> geneDataList, int batchGeneCount, final List<String> excludedGeneIds,
+            final Supplier<BamFragmentReader> readerSupplier)
+    {
+        final List<BamFragmentReader> readerTasks = Lists.newArrayList();
+        final List<EnsemblGeneData> overlappingGenes = Lists.newArrayList();
+
+        int geneIndex = 0;
+        int collectionId = 0;
+        int collectionEnd = 0;
+
+        int batchGeneIndex = 0;
+        int batchCollectionId = 0;
+        int batchPreviousEnd = 0;
+
+        while(geneIndex < geneDataList.size())
+        {
+            geneIndex = findNextOverlappingGenes(geneDataList, geneIndex, overlappingGenes);
+
+            // the reader skips collections with an excluded gene entirely, so they neither take an ID nor set the previous end
+            if(excludedGeneIds.isEmpty() || overlappingGenes.stream().noneMatch(x -> excludedGeneIds.contains(x.GeneId)))
+            {
+                ++collectionId;
+                collectionEnd = overlappingGenes.stream().mapToInt(x -> x.GeneEnd).max().orElse(collectionEnd);
+            }
+
+            if(geneIndex - batchGeneIndex >= batchGeneCount || geneIndex >= geneDataList.size())
+            {
+                BamFragmentReader readerTask = readerSupplier.get();
+                readerTask.setGeneBatch(batchGeneIndex, geneIndex, batchCollectionId, batchPreviousEnd);
+                readerTasks.add(readerTask);
+
+                batchGeneIndex = geneIndex;
+                batchCollectionId = collectionId;
+                batchPreviousEnd = collectionEnd;
+            }
+        }
+
+        return readerTasks;
+    }
+
+    private BamFragmentReader createBamFragmentReader(final String chromosome, final List<EnsemblGeneData> geneDataList)
+    {
+        return new BamFragmentReader(
+                mConfig, chromosome, geneDataList, mGeneTransCache, mResultsWriter,
+                mFusionTaskManager, mExpectedCountsCache, mGcTranscriptCalcs);
+    }
+
+    private static int chromosomeRank(final String chromosome)
+    {
+        return HumanChromosome.contains(chromosome) ? HumanChromosome.fromString(chromosome).ordinal() : HumanChromosome.values().length;
+    }
+
     private void processBamFragments(final List<BamFragmentReader> chrTasks, final List<Callable> callableList)
     {
         int[] totalCounts = new int[typeAsInt(FragmentType.MAX)];
@@ -329,7 +454,7 @@ public class Isofox
 
     private void calcFragmentLengths(final Map<String,List<EnsemblGeneData>> chrGeneMap)
     {
-        int requiredFragCount = mConfig.FragmentLengthSamplingCount / chrGeneMap.size(); // split evenly amongst chromosomes
+        int requiredFragCount = (int)ceil(mConfig.FragmentLengthSamplingCount / (double)chrGeneMap.size()); // split evenly amongst chromosomes
 
         final List<FragmentSizeCalcs> fragSizeCalcs = Lists.newArrayList();
 
@@ -346,7 +471,12 @@ public class Isofox
         if(!validExecution)
             return;
 
-        // merge results from all chromosomes
+        setFragmentLengths(fragSizeCalcs);
+    }
+
+    private void setFragmentLengths(final List<FragmentSizeCalcs> fragSizeCalcs)
+    {
+        // merge results from all tasks
         for(final FragmentSizeCalcs fragSizeCalc : fragSizeCalcs)
         {
             mMaxObservedReadLength = max(mMaxObservedReadLength, fragSizeCalc.getMaxReadLength());
@@ -382,12 +512,18 @@ public class Isofox
         final List<GcTranscriptCalculator> taskList = Lists.newArrayList();
         final List<Callable> callableList = Lists.newArrayList();
 
+        if(mGcTranscriptCalcs.hasValidCache())
+        {
+            ISF_LOGGER.info("expected GC ratios for read length({}) already cached, skipping ref genome pass", mConfig.ReadLength);
+            return true;
+        }
+
         mGcTranscriptCalcs.initialiseWriter();
 
         for(Map.Entry<String,List<EnsemblGeneData>> entry : chrGeneMap.entrySet())
         {
             GcTranscriptCalculator gcCalcs = new GcTranscriptCalculator(mConfig, mGeneTransCache);
-            gcCalcs.initialise(entry.getKey(), entry.getValue(), mGcTranscriptCalcs.getWriter());
+            gcCalcs.initialise(entry.getKey(), entry.getValue(), mGcTranscriptCalcs.getWriter(), mGcTranscriptCalcs.getCacheWriter());
             taskList.add(gcCalcs);
             callableList.add(gcCalcs);
         }
@@ -481,7 +617,7 @@ public class Isofox
         return parser.parse(options, args);
     }
 
-    private void logPerformanceStats(final List<PerformanceCounter[]> perfCounters)
+    private void logPerformanceStats(final List<PerformanceCounter[]> perfCounters, long peakHeapUsage)
     {
         final PerformanceCounter[] combinedPc = perfCounters.get(0);
 
@@ -497,6 +633,8 @@ public class Isofox
 
         Arrays.stream(combinedPc).forEach(x -> x.logStats());
 
+        logMemoryStats(peakHeapUsage);
+
         if(mConfig.RunPerfChecks)
         {
             // log 10 slowest times and their interval names
@@ -513,4 +651,21 @@ public class Isofox
         }
     }
 
+    private static void logMemoryStats(long peakHeapUsage)
+    {
+        // the highest heap usage sampled by the BAM reader tasks and the total time spent in garbage collection, since read
+        // allocation dominates both - the heap pools peak at different times, so summing their peaks would overstate it
+        long gcCount = 0;
+        long gcTime = 0;
+
+        for(GarbageCollectorMXBean gcBean : ManagementFactory.getGarbageCollectorMXBeans())
+        {
+            gcCount += max(gcBean.getCollectionCount(), 0);
+            gcTime += max(gcBean.getCollectionTime(), 0);
+        }
+
+        ISF_LOGGER.info(String.format("memory: peak heap(%.0fMB) garbage collections(%d) time(%.3fs)",
+                peakHeapUsage / 1048576.0, gcCount, gcTime / 1000.0));
+    }
+
 }
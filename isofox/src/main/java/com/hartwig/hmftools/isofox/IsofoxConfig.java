@@ -75,6 +75,7 @@ public class IsofoxConfig
     private static final String WRITE_FRAG_LENGTHS = "write_frag_lengths";
     private static final String FRAG_LENGTH_MIN_COUNT = "frag_length_min_count";
     private static final String FRAG_LENGTHS_BY_GENE = "frag_length_by_gene";
+    private static final String FRAG_LENGTH_MAIN_PASS = "frag_length_main_pass";
 
     private static final String WRITE_GC_DATA = "write_gc_data";
     private static final String GC_RATIO_BUCKET_SIZE = "gc_ratio_bucket";
@@ -139,6 +140,7 @@ public class IsofoxConfig
     public final boolean WriteFragmentLengths;
     public final int FragmentLengthSamplingCount;
     public final boolean WriteFragmentLengthsByGene;
+    public final boolean FragmentLengthsInMainPass; // sample fragment lengths while counting rather than in a separate BAM pass
 
     public final boolean WriteGcData;
     public static double GC_RATIO_BUCKET = DEFAULT_GC_RATIO_BUCKET;
@@ -244,6 +246,7 @@ public class IsofoxConfig
         WriteExonData = cmd.hasOption(WRITE_EXON_DATA);
         WriteFragmentLengths = cmd.hasOption(WRITE_FRAG_LENGTHS);
         WriteFragmentLengthsByGene = cmd.hasOption(FRAG_LENGTHS_BY_GENE);
+        FragmentLengthsInMainPass = cmd.hasOption(FRAG_LENGTH_MAIN_PASS) && !WriteFragmentLengthsByGene;
         WriteReadData = cmd.hasOption(WRITE_READ_DATA);
         WriteSpliceSiteData = cmd.hasOption(WRITE_SPLICE_SITE_DATA);
         WriteTransComboData = cmd.hasOption(WRITE_TRANS_COMBO_DATA);
@@ -522,6 +525,7 @@ public class IsofoxConfig
         ApplyGcBiasAdjust = false;
         OutputIdentifier = null;
         WriteFragmentLengthsByGene = false;
+        FragmentLengthsInMainPass = false;
         FragmentLengthSamplingCount = 0;
 
         SpecificChromosomes = Lists.newArrayList();
@@ -554,6 +558,7 @@ public class IsofoxConfig
         options.addOption(MARK_DUPLICATES, false, "Manually identify duplicate fragments");
         options.addOption(FRAG_LENGTH_MIN_COUNT, true, "Fragment length measurement - min read fragments required");
         options.addOption(FRAG_LENGTHS_BY_GENE, false, "Write fragment lengths by gene");
+        options.addOption(FRAG_LENGTH_MAIN_PASS, false, "Sample fragment lengths during transcript counting instead of a separate BAM pass");
         options.addOption(BAM_FILE, true, "RNA BAM file location");
         options.addOption(WRITE_EXON_DATA, false, "Exon region data");
         options.addOption(WRITE_READ_DATA, false, "BAM read data");
@@ -22,6 +22,10 @@ public class IsofoxConstants
 
     public static final int MAX_NOVEL_SJ_DISTANCE = 500000; // beyond which a fragment will be considered chimeric
 
+    // BAM fragment allocation splits each chromosome into batches of adjacent gene collections, several per thread to balance load
+    public static final int GENE_BATCHES_PER_THREAD = 4;
+    public static final int MIN_GENES_PER_BATCH = 100;
+
     // LINC00486
     public static final SvRegion EXCLUDED_REGION_1_HG19 = new SvRegion("2", 33141260, 33141700);
     public static final SvRegion EXCLUDED_REGION_1_HG38 = new SvRegion("2", 32916190, 32916630);
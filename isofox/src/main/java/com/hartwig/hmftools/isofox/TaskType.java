@@ -4,6 +4,7 @@ public enum TaskType
 {
     FRAGMENT_LENGTHS,
     TRANSCRIPT_COUNTS,
+    TRANSCRIPT_FIT,
     GENERATE_GC_COUNTS,
     GENERATE_EXPECTED_COUNTS,
     APPLY_GC_ADJUSTMENT,
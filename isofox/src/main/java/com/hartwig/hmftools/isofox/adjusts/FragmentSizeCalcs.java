@@ -53,7 +53,7 @@ public class FragmentSizeCalcs implements Callable
     private final List<EnsemblGeneData> mGeneDataList;
     private int mRequiredFragCount;
 
-    private final SamReader mSamReader;
+    private SamReader mSamReader; // not required when reads are passed in from the main BAM pass
     private final BamSlicer mBamSlicer;
     private final List<FragmentSize> mFragmentLengths;
     private final List<FragmentSize> mFragmentLengthsByGene;
@@ -61,8 +61,11 @@ public class FragmentSizeCalcs implements Callable
 
     private BufferedWriter mGeneWriter;
 
+    private final List<int[]> mExcludedRegions;
+
     private String mCurrentGenes;
     private final int[] mCurrentGenesRange;
+    private boolean mCurrentGenesSampled;
     private List<TranscriptData> mCurrentTransDataList;
     private int mCurrentFragmentCount;
     private int mTotalFragmentCount;
@@ -83,13 +86,14 @@ public class FragmentSizeCalcs implements Callable
         mConfig = config;
         mGeneTransCache = geneTransCache;
 
-        mSamReader = mConfig.BamFile != null ?
-                SamReaderFactory.makeDefault().referenceSequence(mConfig.RefGenomeFile).open(new File(mConfig.BamFile)) : null;
+        mSamReader = null;
 
         mBamSlicer = new BamSlicer(SINGLE_MAP_QUALITY, false, false, false);
 
+        mExcludedRegions = Lists.newArrayList();
         mCurrentGenes = "";
         mCurrentGenesRange = new int[SE_PAIR];
+        mCurrentGenesSampled = false;
         mCurrentTransDataList = Lists.newArrayList();
         mCurrentFragmentCount = 0;
         mTotalFragmentCount = 0;
@@ -119,8 +123,13 @@ public class FragmentSizeCalcs implements Callable
         mGeneDataList.clear();
         mGeneDataList.addAll(geneDataList);
         mRequiredFragCount = requiredFragCount;
+
+        mExcludedRegions.clear();
+        mExcludedRegions.addAll(generateExcludedRegions());
     }
 
+    public boolean samplingComplete() { return mProcessedFragments >= mRequiredFragCount; }
+
     @Override
     public Long call()
     {
@@ -141,7 +150,8 @@ public class FragmentSizeCalcs implements Callable
         // walk through each chromosome, taking groups of overlapping genes together
         ISF_LOGGER.info("calculating fragment size for chromosome({}) geneCount({})", mChromosome, mGeneDataList.size());
 
-        List<int[]> excludedRegions = generateExcludedRegions();
+        if(mSamReader == null && mConfig.BamFile != null)
+            mSamReader = SamReaderFactory.makeDefault().referenceSequence(mConfig.RefGenomeFile).open(new File(mConfig.BamFile));
 
         final List<EnsemblGeneData> overlappingGenes = Lists.newArrayList();
         int currentGeneIndex = 0;
@@ -151,34 +161,7 @@ public class FragmentSizeCalcs implements Callable
         {
             currentGeneIndex = findNextOverlappingGenes(mGeneDataList, currentGeneIndex, overlappingGenes);
 
-            if(overlappingGenes.stream().anyMatch(x -> mConfig.containsExcludedEnrichedGene(x.GeneId)))
-                continue;
-
-            mCurrentTransDataList.clear();
-
-            mFragmentTracker.clear();
-            mCurrentGenesRange[SE_START] = 0;
-            mCurrentGenesRange[SE_END] = 0;
-
-            for (int i = 0; i < overlappingGenes.size(); ++i)
-            {
-                EnsemblGeneData geneData = overlappingGenes.get(i);
-
-                mCurrentGenesRange[SE_START] = i == 0 ? geneData.GeneStart : min(geneData.GeneStart, mCurrentGenesRange[SE_START]);
-                mCurrentGenesRange[SE_END] = i == 0 ? geneData.GeneEnd : max(geneData.GeneEnd, mCurrentGenesRange[SE_END]);
-
-                mCurrentTransDataList.addAll(mGeneTransCache.getTranscripts(geneData.GeneId));
-            }
-
-            if (mCurrentTransDataList.isEmpty() || mCurrentTransDataList.size() > MAX_GENE_TRANS)
-                continue;
-
-            int geneLength = mCurrentGenesRange[SE_END] - mCurrentGenesRange[SE_START];
-
-            if (geneLength < MIN_GENE_LENGTH || geneLength > MAX_GENE_LENGTH)
-                continue;
-
-            if(excludedRegions.stream().anyMatch(x -> positionsOverlap(x[SE_START], x[SE_END], mCurrentGenesRange[SE_START], mCurrentGenesRange[SE_END])))
+            if(!setCurrentGenes(overlappingGenes))
                 continue;
 
             if(currentGeneIndex >= nextLogCount)
@@ -190,9 +173,6 @@ public class FragmentSizeCalcs implements Callable
 
             mPerfCounter.start();
 
-            mCurrentFragmentCount = 0;
-            mCurrentGenes = overlappingGenes.get(0).GeneName;
-
             final List<SvRegion> regions = Lists.newArrayList(new SvRegion(mChromosome, mCurrentGenesRange));
 
             ISF_LOGGER.trace("chromosome({}) gene({} index={}) fragCount({}) nextRegion({})",
@@ -244,6 +224,59 @@ public class FragmentSizeCalcs implements Callable
         }
     }
 
+    public boolean setCurrentGenes(final List<EnsemblGeneData> overlappingGenes)
+    {
+        // take fragment lengths only from genes of moderate length and transcript count, away from any enriched genes
+        mCurrentGenesSampled = false;
+
+        if(overlappingGenes.stream().anyMatch(x -> mConfig.containsExcludedEnrichedGene(x.GeneId)))
+            return false;
+
+        mCurrentTransDataList.clear();
+
+        mFragmentTracker.clear();
+        mCurrentGenesRange[SE_START] = 0;
+        mCurrentGenesRange[SE_END] = 0;
+
+        for (int i = 0; i < overlappingGenes.size(); ++i)
+        {
+            EnsemblGeneData geneData = overlappingGenes.get(i);
+
+            mCurrentGenesRange[SE_START] = i == 0 ? geneData.GeneStart : min(geneData.GeneStart, mCurrentGenesRange[SE_START]);
+            mCurrentGenesRange[SE_END] = i == 0 ? geneData.GeneEnd : max(geneData.GeneEnd, mCurrentGenesRange[SE_END]);
+
+            mCurrentTransDataList.addAll(mGeneTransCache.getTranscripts(geneData.GeneId));
+        }
+
+        if (mCurrentTransDataList.isEmpty() || mCurrentTransDataList.size() > MAX_GENE_TRANS)
+            return false;
+
+        int geneLength = mCurrentGenesRange[SE_END] - mCurrentGenesRange[SE_START];
+
+        if (geneLength < MIN_GENE_LENGTH || geneLength > MAX_GENE_LENGTH)
+            return false;
+
+        if(mExcludedRegions.stream().anyMatch(x -> positionsOverlap(x[SE_START], x[SE_END], mCurrentGenesRange[SE_START], mCurrentGenesRange[SE_END])))
+            return false;
+
+        mCurrentFragmentCount = 0;
+        mCurrentGenes = overlappingGenes.get(0).GeneName;
+        mCurrentGenesSampled = true;
+        return true;
+    }
+
+    public void processMainPassRead(final SAMRecord read)
+    {
+        // apply the same filters as this class's own BAM slice, since the main pass keeps duplicates and other reads
+        if(!mCurrentGenesSampled || samplingComplete() || !mBamSlicer.passesFilters(read))
+            return;
+
+        if(!positionsOverlap(read.getStart(), read.getEnd(), mCurrentGenesRange[SE_START], mCurrentGenesRange[SE_END]))
+            return;
+
+        processBamRead(read);
+    }
+
     private List<int[]> generateExcludedRegions()
     {
         // create a buffer around the enriched gene to avoid excessive reads in this vicinity
@@ -276,6 +309,7 @@ public class FragmentSizeCalcs implements Callable
         {
             ISF_LOGGER.debug("currentGenes({}) reached max fragment count", mCurrentGenes);
             mBamSlicer.haltProcessing();
+            mCurrentGenesSampled = false;
             return;
         }
 
@@ -0,0 +1,289 @@
+package com.hartwig.hmftools.isofox.adjusts;
+
+import static com.hartwig.hmftools.common.utils.io.BinaryCacheUtils.HEADER_BYTES;
+import static com.hartwig.hmftools.common.utils.io.BinaryCacheUtils.hasHeader;
+import static com.hartwig.hmftools.common.utils.io.BinaryCacheUtils.mapFile;
+import static com.hartwig.hmftools.common.utils.io.BinaryCacheUtils.readString;
+import static com.hartwig.hmftools.common.utils.io.BinaryCacheUtils.writeHeader;
+import static com.hartwig.hmftools.common.utils.io.BinaryCacheUtils.writeString;
+import static com.hartwig.hmftools.isofox.IsofoxConfig.ISF_LOGGER;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+
+import com.hartwig.hmftools.common.ensemblcache.EnsemblDataCache;
+import com.hartwig.hmftools.common.ensemblcache.TranscriptData;
+
+import htsjdk.samtools.reference.FastaSequenceIndex;
+import htsjdk.samtools.reference.FastaSequenceIndexEntry;
+
+// binary form of the expected GC ratio frequencies per gene and transcript, versioned by the read length and GC ratio buckets
+// they were generated with and by fingerprints of the Ensembl transcripts and the ref genome, so a matching cache can be loaded
+// directly and an unchanged one need not be regenerated from the ref genome
+public class GcRatioCacheFile
+{
+    private static final int MAGIC = 0x49534743; // 'ISGC'
+    private static final int FORMAT_VERSION = 2;
+
+    // file layout: magic, version, read length, GC ratio bucket count, Ensembl and ref genome fingerprints, then each item's
+    // name and frequencies, and finally an empty name to mark the file as complete
+
+    private final String mFilename;
+    private final int mBucketCount;
+    private DataOutputStream mOutput;
+
+    public GcRatioCacheFile(final String filename, int readLength, long ensemblFingerprint, long refGenomeFingerprint)
+    {
+        mFilename = filename;
+        mBucketCount = new GcRatioCounts().size();
+
+        try
+        {
+            mOutput = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filename)));
+            writeHeader(mOutput, MAGIC, FORMAT_VERSION);
+            mOutput.writeInt(readLength);
+            mOutput.writeInt(mBucketCount);
+            mOutput.writeLong(ensemblFingerprint);
+            mOutput.writeLong(refGenomeFingerprint);
+        }
+        catch(IOException e)
+        {
+            ISF_LOGGER.error("failed to create expected GC ratios cache file({}): {}", filename, e.toString());
+            mOutput = null;
+        }
+    }
+
+    public static long ensemblFingerprint(final EnsemblDataCache geneTransCache)
+    {
+        // summed so it doesn't depend on the order in which the cache holds its genes
+        long fingerprint = 0;
+
+        for(final List<TranscriptData> transDataList : geneTransCache.getTranscriptDataMap().values())
+        {
+            for(final TranscriptData transData : transDataList)
+            {
+                long transHash = transData.TransName.hashCode();
+                transHash = transHash * 31 + transData.TransStart;
+                transHash = transHash * 31 + transData.TransEnd;
+
+                for(int i = 0; i < transData.exons().size(); ++i)
+                {
+                    transHash = transHash * 31 + transData.exons().get(i).ExonStart;
+                    transHash = transHash * 31 + transData.exons().get(i).ExonEnd;
+                }
+
+                fingerprint += transHash;
+            }
+        }
+
+        return fingerprint;
+    }
+
+    public static long refGenomeFingerprint(final File refGenomeFile)
+    {
+        // the FASTA's name and size and its contigs' names and lengths - not its path or modified time, so a copied ref genome
+        // still matches, and not the sequence dictionary's MD5s, since they ignore the soft-masking which affects GC counts
+        if(refGenomeFile == null)
+            return 0;
+
+        long fingerprint = refGenomeFile.getName().hashCode();
+        fingerprint = fingerprint * 31 + refGenomeFile.length();
+
+        final File indexFile = new File(refGenomeFile.getPath() + ".fai");
+
+        if(!indexFile.exists())
+            return fingerprint;
+
+        for(final FastaSequenceIndexEntry entry : new FastaSequenceIndex(indexFile))
+        {
+            fingerprint = fingerprint * 31 + entry.getContig().hashCode();
+            fingerprint = fingerprint * 31 + entry.getSize();
+        }
+
+        return fingerprint;
+    }
+
+    public synchronized void write(final String name, final double[] frequencies)
+    {
+        if(mOutput == null)
+            return;
+
+        try
+        {
+            writeString(mOutput, name);
+
+            for(double frequency : frequencies)
+            {
+                mOutput.writeDouble(frequency);
+            }
+        }
+        catch(IOException e)
+        {
+            ISF_LOGGER.error("failed to write expected GC ratios cache file({}): {}", mFilename, e.toString());
+            mOutput = null;
+        }
+    }
+
+    public void close()
+    {
+        if(mOutput == null)
+            return;
+
+        try
+        {
+            writeString(mOutput, "");
+            mOutput.close();
+        }
+        catch(IOException e)
+        {
+            ISF_LOGGER.error("failed to close expected GC ratios cache file({}): {}", mFilename, e.toString());
+        }
+
+        mOutput = null;
+    }
+
+    public static boolean isValid(final String filename, int readLength, long ensemblFingerprint, long refGenomeFingerprint)
+    {
+        // a complete cache generated with the same read length, Ensembl transcripts and ref genome
+        final ByteBuffer buffer = mapCacheFile(filename, readLength);
+
+        if(buffer == null || buffer.getLong() != ensemblFingerprint || buffer.getLong() != refGenomeFingerprint)
+            return false;
+
+        int recordBytes = new GcRatioCounts().size() * Double.BYTES;
+
+        try
+        {
+            while(!readString(buffer).isEmpty())
+            {
+                buffer.position(buffer.position() + recordBytes);
+            }
+
+            return true;
+        }
+        catch(BufferUnderflowException | IllegalArgumentException e)
+        {
+            return false;
+        }
+    }
+
+    public static boolean load(
+            final String filename, int readLength, long refGenomeFingerprint, final Map<String,GcRatioCounts> gcRatioCache)
+    {
+        // a read length of zero accepts the cache's own, as does a ref genome fingerprint of zero
+        final ByteBuffer buffer = mapCacheFile(filename, readLength);
+
+        if(buffer == null)
+            return false;
+
+        buffer.getLong(); // the Ensembl fingerprint isn't checked since sample runs may only load some transcripts
+
+        long cacheRefGenomeFingerprint = buffer.getLong();
+
+        if(refGenomeFingerprint != 0 && cacheRefGenomeFingerprint != refGenomeFingerprint)
+        {
+            ISF_LOGGER.error("expected GC ratios cache file({}) was generated from a different ref genome", filename);
+            return false;
+        }
+
+        try
+        {
+            while(true)
+            {
+                final String name = readString(buffer);
+
+                if(name.isEmpty())
+                    break;
+
+                GcRatioCounts gcRatioCounts = new GcRatioCounts();
+                final double[] frequencies = gcRatioCounts.getCounts();
+
+                for(int i = 0; i < frequencies.length; ++i)
+                {
+                    frequencies[i] = buffer.getDouble();
+                }
+
+                gcRatioCache.put(name, gcRatioCounts);
+            }
+        }
+        catch(BufferUnderflowException e)
+        {
+            ISF_LOGGER.warn("expected GC ratios cache file({}) is incomplete", filename);
+            gcRatioCache.clear();
+            return false;
+        }
+
+        ISF_LOGGER.info("loaded {} transcript expected GC ratios from cache file({})", gcRatioCache.size(), filename);
+        return true;
+    }
+
+    public static boolean matchesRefGenome(final String filename, long refGenomeFingerprint)
+    {
+        // true unless the cache is readable and records a different ref genome
+        final ByteBuffer buffer = mapCacheFile(filename, 0);
+
+        if(buffer == null || refGenomeFingerprint == 0)
+            return true;
+
+        buffer.getLong();
+        return buffer.getLong() == refGenomeFingerprint;
+    }
+
+    private static ByteBuffer mapCacheFile(final String filename, int readLength)
+    {
+        final File binaryFile = new File(filename);
+
+        if(!binaryFile.exists())
+            return null;
+
+        try
+        {
+            ByteBuffer buffer = mapFile(binaryFile);
+
+            if(!hasHeader(buffer, MAGIC, FORMAT_VERSION))
+            {
+                ISF_LOGGER.warn("expected GC ratios cache file({}) has an unsupported format", filename);
+                return null;
+            }
+
+            if(buffer.limit() < HEADER_BYTES + 2 * Integer.BYTES + 2 * Long.BYTES + Short.BYTES)
+            {
+                ISF_LOGGER.warn("expected GC ratios cache file({}) is incomplete", filename);
+                return null;
+            }
+
+            buffer.position(HEADER_BYTES);
+
+            int cacheReadLength = buffer.getInt();
+            int bucketCount = buffer.getInt();
+
+            if(bucketCount != new GcRatioCounts().size())
+            {
+                ISF_LOGGER.warn("expected GC ratios cache file({}) buckets({}) differ from current({})",
+                        filename, bucketCount, new GcRatioCounts().size());
+                return null;
+            }
+
+            if(readLength > 0 && cacheReadLength != readLength)
+            {
+                ISF_LOGGER.warn("expected GC ratios cache file({}) read length({}) differs from configured({})",
+                        filename, cacheReadLength, readLength);
+                return null;
+            }
+
+            return buffer;
+        }
+        catch(IOException e)
+        {
+            ISF_LOGGER.warn("failed to open expected GC ratios cache file({}): {}", filename, e.toString());
+            return null;
+        }
+    }
+}
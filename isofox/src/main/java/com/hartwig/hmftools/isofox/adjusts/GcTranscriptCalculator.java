@@ -5,6 +5,8 @@ import static java.lang.Math.min;
 
 import static com.hartwig.hmftools.common.sigs.VectorUtils.sumVector;
 import static com.hartwig.hmftools.common.sigs.VectorUtils.sumVectors;
+import static com.hartwig.hmftools.common.utils.io.BinaryCacheUtils.binaryFilename;
+import static com.hartwig.hmftools.common.utils.io.BinaryCacheUtils.isCurrent;
 import static com.hartwig.hmftools.common.utils.io.FileWriterUtils.closeBufferedWriter;
 import static com.hartwig.hmftools.common.utils.io.FileWriterUtils.createBufferedWriter;
 import static com.hartwig.hmftools.isofox.IsofoxConfig.ISF_LOGGER;
@@ -50,8 +52,10 @@ public class GcTranscriptCalculator implements Callable
     private final double[] mGcRatioAdjustments;
 
     private BufferedWriter mWriter;
+    private GcRatioCacheFile mCacheWriter;
 
     private final double[] mTotalExpectedCounts;
+    private boolean mValidData;
 
     public GcTranscriptCalculator(final IsofoxConfig config, final EnsemblDataCache geneTransCache)
     {
@@ -64,19 +68,25 @@ public class GcTranscriptCalculator implements Callable
 
         mTranscriptFitGcCounts = new GcRatioCounts();
         mGcRatioAdjustments = new double[mTranscriptFitGcCounts.size()];
+        mValidData = true;
 
-        if(config.ExpGcRatiosFile != null)
+        // expected ratios are only needed when applying them to a sample
+        if(config.ExpGcRatiosFile != null && !config.runFunction(EXPECTED_GC_COUNTS))
             loadExpectedData();
 
         mWriter = null;
+        mCacheWriter = null;
 
         mTotalExpectedCounts = mConfig.runFunction(EXPECTED_GC_COUNTS) ? new double[mTranscriptFitGcCounts.size()] : null;
     }
 
-    public void initialise(final String chromosome, final List<EnsemblGeneData> geneDataList, final BufferedWriter writer)
+    public void initialise(
+            final String chromosome, final List<EnsemblGeneData> geneDataList, final BufferedWriter writer,
+            final GcRatioCacheFile cacheWriter)
     {
         mChromosome = chromosome;
         mWriter = writer;
+        mCacheWriter = cacheWriter;
         mGeneDataList.clear();
         mGeneDataList.addAll(geneDataList);
     }
@@ -88,8 +98,16 @@ public class GcTranscriptCalculator implements Callable
         return (long)0;
     }
 
-    public void close() { closeBufferedWriter(mWriter); }
+    public void close()
+    {
+        closeBufferedWriter(mWriter);
+
+        if(mCacheWriter != null)
+            mCacheWriter.close();
+    }
+
     public BufferedWriter getWriter() { return mWriter; }
+    public GcRatioCacheFile getCacheWriter() { return mCacheWriter; }
 
     public final double[] getGcRatioAdjustments() { return mGcRatioAdjustments; }
     public final GcRatioCounts getTranscriptFitGcCounts() { return mTranscriptFitGcCounts; }
@@ -155,7 +173,7 @@ public class GcTranscriptCalculator implements Callable
             }
         }
 
-        writeExpectedGcRatios(mWriter, String.format("CHR_%s", mChromosome), mTotalExpectedCounts);
+        writeExpectedGcRatios(String.format("CHR_%s", mChromosome), mTotalExpectedCounts);
 
         ISF_LOGGER.info("chromosome({}) GC ratio generation complete", mChromosome);
     }
@@ -204,7 +222,7 @@ public class GcTranscriptCalculator implements Callable
 
         sumVectors(gcRatioCounts.getCounts(), mTotalExpectedCounts);
 
-        writeExpectedGcRatios(mWriter, geneData.GeneId, gcRatioCounts.getCounts());
+        writeExpectedGcRatios(geneData.GeneId, gcRatioCounts.getCounts());
     }
 
     private String getRefBaseString(final EnsemblGeneData geneData)
@@ -250,7 +268,7 @@ public class GcTranscriptCalculator implements Callable
 
         sumVectors(gcRatioCounts.getCounts(), mTotalExpectedCounts);
 
-        writeExpectedGcRatios(mWriter, transData.TransName, gcRatioCounts.getCounts());
+        writeExpectedGcRatios(transData.TransName, gcRatioCounts.getCounts());
     }
 
     public List<int[]> generateReadRegions(final TranscriptData transData, int startPos, int readLength)
@@ -343,14 +361,40 @@ public class GcTranscriptCalculator implements Callable
         }
     }
 
+    public boolean isValid() { return mValidData; }
+
     private void loadExpectedData()
     {
+        mValidData = false;
+
         if(!Files.exists(Paths.get(mConfig.ExpGcRatiosFile)))
         {
             ISF_LOGGER.error("invalid expected GC ratios file");
             return;
         }
 
+        // use the binary form if configured or written with the CSV file and not older than it
+        final String binaryFilename = binaryFilename(mConfig.ExpGcRatiosFile);
+
+        long refGenomeFingerprint = GcRatioCacheFile.refGenomeFingerprint(mConfig.RefGenomeFile);
+
+        if(isCurrent(binaryFilename, mConfig.ExpGcRatiosFile))
+        {
+            if(GcRatioCacheFile.load(binaryFilename, mConfig.ReadLength, refGenomeFingerprint, mTranscriptGcRatioCache))
+            {
+                mValidData = true;
+                return;
+            }
+
+            // the CSV written alongside it came from the same other ref genome, so is no fallback - the cache must be regenerated
+            if(binaryFilename.equals(mConfig.ExpGcRatiosFile) || !GcRatioCacheFile.matchesRefGenome(binaryFilename, refGenomeFingerprint))
+            {
+                ISF_LOGGER.error("invalid expected GC ratios cache file({}), regenerate it for this ref genome and read length",
+                        binaryFilename);
+                return;
+            }
+        }
+
         try
         {
             BufferedReader fileReader = new BufferedReader(new FileReader(mConfig.ExpGcRatiosFile));
@@ -392,6 +436,8 @@ public class GcTranscriptCalculator implements Callable
 
             ISF_LOGGER.info("loaded {} transcript expected GC ratios from file({})",
                     mTranscriptGcRatioCache.size(), mConfig.ExpGcRatiosFile);
+
+            mValidData = true;
         }
         catch (IOException e)
         {
@@ -399,14 +445,33 @@ public class GcTranscriptCalculator implements Callable
         }
     }
 
+    private String outputFilename()
+    {
+        return String.format("%sread_%d_%s", mConfig.OutputDir, mConfig.ReadLength, "exp_gc_ratios.csv");
+    }
+
+    public boolean hasValidCache()
+    {
+        // an existing cache for this read length, the same Ensembl transcripts and the same ref genome needs no regeneration
+        final String outputFileName = outputFilename();
+
+        return Files.exists(Paths.get(outputFileName))
+            && GcRatioCacheFile.isValid(binaryFilename(outputFileName), mConfig.ReadLength,
+                GcRatioCacheFile.ensemblFingerprint(mGeneTransCache), GcRatioCacheFile.refGenomeFingerprint(mConfig.RefGenomeFile));
+    }
+
     public void initialiseWriter()
     {
         try
         {
-            String outputFileName = String.format("%sread_%d_%s", mConfig.OutputDir, mConfig.ReadLength, "exp_gc_ratios.csv");
+            String outputFileName = outputFilename();
 
             mWriter = createBufferedWriter(outputFileName, false);
 
+            mCacheWriter = new GcRatioCacheFile(
+                    binaryFilename(outputFileName), mConfig.ReadLength,
+                    GcRatioCacheFile.ensemblFingerprint(mGeneTransCache), GcRatioCacheFile.refGenomeFingerprint(mConfig.RefGenomeFile));
+
             mWriter.write("TransName");
 
             GcRatioCounts tmp = new GcRatioCounts();
@@ -424,7 +489,41 @@ public class GcTranscriptCalculator implements Callable
         }
     }
 
-    private synchronized static void writeExpectedGcRatios(final BufferedWriter writer, final String transName, final double[] counts)
+    private void writeExpectedGcRatios(final String transName, final double[] counts)
+    {
+        // both forms hold the percentages as rounded for the CSV, so a sample run loads the same values from either
+        final String[] percentages = formatPercentages(counts);
+
+        writeExpectedGcRatios(mWriter, transName, percentages);
+
+        if(mCacheWriter != null)
+        {
+            final double[] frequencies = new double[percentages.length];
+
+            for(int i = 0; i < percentages.length; ++i)
+            {
+                frequencies[i] = Double.parseDouble(percentages[i]);
+            }
+
+            mCacheWriter.write(transName, frequencies);
+        }
+    }
+
+    public static String[] formatPercentages(final double[] counts)
+    {
+        double frequencyTotal = sumVector(counts);
+
+        final String[] percentages = new String[counts.length];
+
+        for(int i = 0; i < counts.length; ++i)
+        {
+            percentages[i] = counts[i] == 0 ? "0" : String.format("%.6f", counts[i]/frequencyTotal);
+        }
+
+        return percentages;
+    }
+
+    private synchronized static void writeExpectedGcRatios(final BufferedWriter writer, final String transName, final String[] percentages)
     {
         if(writer == null)
             return;
@@ -433,15 +532,9 @@ public class GcTranscriptCalculator implements Callable
         {
             writer.write(String.format("%s", transName));
 
-            // convert to percentages before writing
-            double frequencyTotal = sumVector(counts);
-
-            for(Double frequency : counts)
+            for(String percentage : percentages)
             {
-                if(frequency == 0)
-                    writer.write(",0");
-                else
-                    writer.write(String.format(",%.6f", frequency/frequencyTotal));
+                writer.write("," + percentage);
             }
 
             writer.newLine();
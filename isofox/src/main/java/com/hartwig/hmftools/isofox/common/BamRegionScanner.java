@@ -0,0 +1,157 @@
+package com.hartwig.hmftools.isofox.common;
+
+import static java.lang.Math.max;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+import com.google.common.collect.Lists;
+import com.hartwig.hmftools.common.utils.sv.SvRegion;
+
+import org.jetbrains.annotations.NotNull;
+
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SamReader;
+import htsjdk.samtools.util.CloseableIterator;
+
+// reads a chromosome's gene collection regions, which are requested in coordinate order, from a single forward-only BAM
+// iterator rather than a new indexed query per region - records overlapping the end of one region are held back for the next,
+// and a new query is only made when a region starts too far ahead of the last, goes backwards or changes chromosome
+public class BamRegionScanner
+{
+    public interface RegionQuery
+    {
+        CloseableIterator<SAMRecord> queryFrom(final String chromosome, int start);
+    }
+
+    private final BamSlicer mBamSlicer; // applies the record filters
+    private final RegionQuery mRegionQuery;
+
+    private CloseableIterator<SAMRecord> mIterator;
+    private String mChromosome;
+    private int mLastRegionEnd;
+    private int mRetainedFrom; // records ending at or after this position are kept for the next region
+
+    // records read past the last region, or overlapping its end, in the order they were read
+    private List<SAMRecord> mPendingRecords;
+
+    private boolean mConsumerHalt;
+    private int mQueryCount;
+
+    // further apart than this, seeking via the index is assumed to be cheaper than reading through the gap
+    public static final int MAX_SCAN_GAP = 100000;
+
+    // consecutive regions may overlap by their buffers around each gene collection
+    public static final int MAX_REGION_OVERLAP = 200;
+
+    public BamRegionScanner(final SamReader samReader, final BamSlicer bamSlicer)
+    {
+        this(bamSlicer, (chromosome, start) -> samReader.queryOverlapping(chromosome, start, 0));
+    }
+
+    public BamRegionScanner(final BamSlicer bamSlicer, final RegionQuery regionQuery)
+    {
+        mBamSlicer = bamSlicer;
+        mRegionQuery = regionQuery;
+        mIterator = null;
+        mChromosome = "";
+        mLastRegionEnd = 0;
+        mRetainedFrom = 0;
+        mPendingRecords = Lists.newArrayList();
+        mConsumerHalt = false;
+        mQueryCount = 0;
+    }
+
+    public void haltProcessing() { mConsumerHalt = true; }
+
+    public int queryCount() { return mQueryCount; }
+
+    public void slice(final SvRegion region, @NotNull final Consumer<SAMRecord> consumer)
+    {
+        mConsumerHalt = false;
+
+        if(mIterator == null || !region.Chromosome.equals(mChromosome)
+        || region.start() < mRetainedFrom || region.start() > mLastRegionEnd + MAX_SCAN_GAP)
+        {
+            close();
+            mIterator = mRegionQuery.queryFrom(region.Chromosome, region.start());
+            mChromosome = region.Chromosome;
+            ++mQueryCount;
+        }
+
+        int regionStart = region.start();
+        int regionEnd = region.end();
+        int retainedFrom = max(regionStart, regionEnd - MAX_REGION_OVERLAP + 1);
+
+        final List<SAMRecord> pendingRecords = mPendingRecords;
+        mPendingRecords = Lists.newArrayList();
+
+        boolean pastRegion = false;
+
+        for(final SAMRecord record : pendingRecords)
+        {
+            if(pastRegion || record.getAlignmentStart() > regionEnd)
+            {
+                pastRegion = true;
+                mPendingRecords.add(record);
+                continue;
+            }
+
+            if(record.getAlignmentEnd() < regionStart)
+                continue;
+
+            consumer.accept(record);
+
+            if(mConsumerHalt)
+            {
+                close();
+                return;
+            }
+
+            if(record.getAlignmentEnd() >= retainedFrom)
+                mPendingRecords.add(record);
+        }
+
+        while(!pastRegion && mIterator.hasNext())
+        {
+            final SAMRecord record = mIterator.next();
+
+            if(!mBamSlicer.passesFilters(record))
+                continue;
+
+            if(record.getAlignmentStart() > regionEnd)
+            {
+                mPendingRecords.add(record);
+                break;
+            }
+
+            if(record.getAlignmentEnd() < regionStart)
+                continue;
+
+            consumer.accept(record);
+
+            if(mConsumerHalt)
+            {
+                close();
+                return;
+            }
+
+            if(record.getAlignmentEnd() >= retainedFrom)
+                mPendingRecords.add(record);
+        }
+
+        mLastRegionEnd = regionEnd;
+        mRetainedFrom = retainedFrom;
+    }
+
+    public void close()
+    {
+        if(mIterator != null)
+        {
+            mIterator.close();
+            mIterator = null;
+        }
+
+        mPendingRecords.clear();
+    }
+}
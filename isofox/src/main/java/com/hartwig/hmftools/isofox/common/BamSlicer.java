@@ -92,7 +92,7 @@ public class BamSlicer
         return queryIntervals;
     }
 
-    private boolean passesFilters(@NotNull final SAMRecord record)
+    public boolean passesFilters(@NotNull final SAMRecord record)
     {
         if(record.getMappingQuality() < mMinMappingQuality || record.getReadUnmappedFlag())
             return false;
@@ -9,28 +9,37 @@ import static com.hartwig.hmftools.common.utils.sv.StartEndIterator.SE_START;
 import static com.hartwig.hmftools.common.utils.sv.SvRegion.positionWithin;
 import static com.hartwig.hmftools.isofox.IsofoxConfig.ISF_LOGGER;
 
+import java.util.ArrayDeque;
 import java.util.Arrays;
+import java.util.Deque;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 import com.google.common.collect.Maps;
 
+// read depth per base across a gene collection and its surrounding non-genic region, held in fixed-size blocks which are only
+// allocated where reads fall, so long genes and sparse collections don't require (or clear) an array covering their whole range
 public class BaseDepth
 {
     private final int[] mBaseRange;
 
-    private int[] mDepth;
+    private int[][] mDepthBlocks; // indexed by offset from the range start divided by the block size
+    private final Deque<int[]> mFreeBlocks; // cleared blocks kept for reuse by the next gene collection
     private Map<Integer,Integer> mDepthMap;
 
     private static final int MIN_DEPTH_COUNT = 2;
     private static final int MAX_MAP_SIZE = 100000;
-    private static final int DEFAULT_SIZE = 3000000; // largest observed gene collection range
+
+    private static final int BLOCK_SHIFT = 12;
+    private static final int BLOCK_SIZE = 1 << BLOCK_SHIFT;
+    private static final int BLOCK_MASK = BLOCK_SIZE - 1;
 
     public BaseDepth()
     {
         mBaseRange = new int[SE_PAIR];
-        mDepth = new int[DEFAULT_SIZE];
+        mDepthBlocks = new int[0][];
+        mFreeBlocks = new ArrayDeque<>();
         mDepthMap = null;
     }
 
@@ -39,33 +48,42 @@ public class BaseDepth
         mBaseRange[SE_START] = baseRange[SE_START];
         mBaseRange[SE_END] = baseRange[SE_END];
 
-        if(length() > mDepth.length)
-        {
-            ISF_LOGGER.info("growing base depth: old({}) new({}) range({}-{})",
-                    mDepth.length, length(), mBaseRange[SE_START], mBaseRange[SE_END]);
+        if(mDepthBlocks == null)
+            mDepthBlocks = new int[0][];
 
-            mDepth = new int[length()];
-        }
-        else
+        // clear previous depth state, keeping its blocks for reuse
+        for(int i = 0; i < mDepthBlocks.length; ++i)
         {
-            // clear previous depth state
-            for(int i = 0; i < mDepth.length; ++i)
-                mDepth[i] = 0;
+            if(mDepthBlocks[i] != null)
+            {
+                Arrays.fill(mDepthBlocks[i], 0);
+                mFreeBlocks.push(mDepthBlocks[i]);
+            }
         }
+
+        int blockCount = (length() + BLOCK_SIZE - 1) >> BLOCK_SHIFT;
+
+        if(blockCount > mDepthBlocks.length)
+            mDepthBlocks = new int[blockCount][];
+        else
+            Arrays.fill(mDepthBlocks, null);
     }
 
     public BaseDepth(final BaseDepth other, final Map<Integer,Integer> depthMap)
     {
         mBaseRange = new int[] { other.mBaseRange[SE_START], other.mBaseRange[SE_END] };
         mDepthMap = depthMap;
-        mDepth = null;
+        mDepthBlocks = null;
+        mFreeBlocks = null;
     }
 
     public int length() { return mBaseRange[SE_END] - mBaseRange[SE_START] + 1; }
 
+    private int blockCount() { return (length() + BLOCK_SIZE - 1) >> BLOCK_SHIFT; }
+
     public void processRead(final List<int[]> readCoords)
     {
-        if(mDepth == null)
+        if(mDepthBlocks == null)
             return;
 
         for(final int[] readSection : readCoords)
@@ -87,13 +105,41 @@ public class BaseDepth
                 return;
             }
 
-            for(int j = regionBaseIndex; j < regionBaseIndex + overlap; ++j)
+            int index = regionBaseIndex;
+            int endIndex = regionBaseIndex + overlap;
+
+            while(index < endIndex)
             {
-                ++mDepth[j];
+                final int[] block = getOrCreateBlock(index >> BLOCK_SHIFT);
+                int blockEnd = min(endIndex, (index | BLOCK_MASK) + 1);
+
+                for(int j = index & BLOCK_MASK; index < blockEnd; ++j, ++index)
+                {
+                    ++block[j];
+                }
             }
         }
     }
 
+    private int[] getOrCreateBlock(int blockIndex)
+    {
+        int[] block = mDepthBlocks[blockIndex];
+
+        if(block == null)
+        {
+            block = !mFreeBlocks.isEmpty() ? mFreeBlocks.pop() : new int[BLOCK_SIZE];
+            mDepthBlocks[blockIndex] = block;
+        }
+
+        return block;
+    }
+
+    private int depthAtIndex(int index)
+    {
+        final int[] block = mDepthBlocks[index >> BLOCK_SHIFT];
+        return block != null ? block[index & BLOCK_MASK] : 0;
+    }
+
     public Map<Integer,Integer> createPositionMap(final Set<Integer> candidateJunctions)
     {
         final Map<Integer,Integer> depthMap = Maps.newHashMap();
@@ -103,10 +149,10 @@ public class BaseDepth
             if(!positionWithin(position, mBaseRange[SE_START], mBaseRange[SE_END]))
                 continue;
 
-            int index = position - mBaseRange[SE_START];
+            int depth = depthAtIndex(position - mBaseRange[SE_START]);
 
-            if(mDepth[index] >= MIN_DEPTH_COUNT)
-                depthMap.put(position, mDepth[index]);
+            if(depth >= MIN_DEPTH_COUNT)
+                depthMap.put(position, depth);
         }
 
         return depthMap;
@@ -125,29 +171,50 @@ public class BaseDepth
             return depth != null ? depth : 0;
         }
 
-        int index = position - mBaseRange[SE_START];
-        return mDepth[index];
+        return depthAtIndex(position - mBaseRange[SE_START]);
     }
 
     public int basesWithDepth()
     {
-        if(mDepth != null)
-            return (int)Arrays.stream(mDepth).filter(x -> x >= MIN_DEPTH_COUNT).count();
-        else
+        if(mDepthMap != null)
             return mDepthMap.size();
+
+        int count = 0;
+
+        for(int i = 0; i < blockCount(); ++i)
+        {
+            if(mDepthBlocks[i] == null)
+                continue;
+
+            for(int depth : mDepthBlocks[i])
+            {
+                if(depth >= MIN_DEPTH_COUNT)
+                    ++count;
+            }
+        }
+
+        return count;
     }
 
     public double basesWithDepthPerc()
     {
-        return basesWithDepth() / (double) mDepth.length;
+        return basesWithDepth() / (double)length();
     }
 
     public int maxDepth()
     {
-        if(mDepth != null)
-            return Arrays.stream(mDepth).max().orElse(0);
-        else
+        if(mDepthMap != null)
             return mDepthMap.values().stream().mapToInt(x -> x).max().orElse(0);
+
+        int maxDepth = 0;
+
+        for(int i = 0; i < blockCount(); ++i)
+        {
+            if(mDepthBlocks[i] != null)
+                maxDepth = max(maxDepth, Arrays.stream(mDepthBlocks[i]).max().orElse(0));
+        }
+
+        return maxDepth;
     }
 
     public String toString()
@@ -160,13 +227,12 @@ public class BaseDepth
         // move depth into a map if the coverage is relatively small over a large range
         mDepthMap = Maps.newHashMap();
 
-        int index = 0;
-        for(int pos = mBaseRange[SE_START]; pos <= mBaseRange[SE_END]; ++pos)
+        for(int index = 0; index < length(); ++index)
         {
-            if(mDepth[index] >= MIN_DEPTH_COUNT)
-                mDepthMap.put(pos, mDepth[index]);
+            int depth = depthAtIndex(index);
 
-            ++index;
+            if(depth >= MIN_DEPTH_COUNT)
+                mDepthMap.put(mBaseRange[SE_START] + index, depth);
         }
 
         if(mDepthMap.size() > MAX_MAP_SIZE)
@@ -175,6 +241,6 @@ public class BaseDepth
                     mDepthMap.size(), length(), String.format("%.2f", mDepthMap.size()/(double)length()), toString());
         }
 
-        mDepth = null;
+        mDepthBlocks = null;
     }
 }
@@ -68,14 +68,15 @@ public class ReadRecord
     private boolean mHasInterGeneSplit;
     private short mMapQuality;
 
-    private final Map<Integer,Integer> mJunctionDepth;
-
     private static final String SUPPLEMENTARY_ATTRIBUTE = "SA";
 
-    private final Map<RegionReadData,RegionMatchType> mMappedRegions; // regions related to this read and their match type
-    private final Map<Integer,TransMatchType> mTranscriptClassification;
-    private final Map<RegionMatchType,List<TransExonRef>> mTransExonRefs;
-    private final Map<RegionMatchType,List<TransExonRef>> mUpperTransExonRefs; // TE refs for upper coords if a spanning read
+    // the maps below are only created once needed, since most reads in highly expressed genes only ever use the first 2,
+    // and the transcript-exon refs and junction depth are only required for chimeric reads
+    private Map<RegionReadData,RegionMatchType> mMappedRegions; // regions related to this read and their match type
+    private Map<Integer,TransMatchType> mTranscriptClassification;
+    private Map<RegionMatchType,List<TransExonRef>> mTransExonRefs;
+    private Map<RegionMatchType,List<TransExonRef>> mUpperTransExonRefs; // TE refs for upper coords if a spanning read
+    private Map<Integer,Integer> mJunctionDepth;
 
     public static final int NO_GENE_ID = -1;
 
@@ -113,14 +114,12 @@ public class ReadRecord
         mGeneCollections = new int[] { NO_GENE_ID, NO_GENE_ID };
         mIsGenicRegion = new boolean[] { false, false };
 
-        List<int[]> mappedCoords = generateMappedCoords(Cigar, PosStart);
-        mMappedCoords = Lists.newArrayListWithCapacity(mappedCoords.size());
-        mMappedCoords.addAll(mappedCoords);
+        mMappedCoords = generateMappedCoords(Cigar, PosStart);
 
-        mMappedRegions = Maps.newHashMap();
-        mTransExonRefs = Maps.newHashMap();
-        mUpperTransExonRefs = Maps.newHashMap();
-        mTranscriptClassification = Maps.newHashMap();
+        mMappedRegions = null;
+        mTransExonRefs = null;
+        mUpperTransExonRefs = null;
+        mTranscriptClassification = null;
         mLowerInferredAdded = false;
         mUpperInferredAdded = false;
         mSoftClipRegionsMatched = new int[] {0, 0};
@@ -128,7 +127,7 @@ public class ReadRecord
         mSupplementaryAlignment = null;
         mHasInterGeneSplit = false;
         mMapQuality = 0;
-        mJunctionDepth = Maps.newHashMap();
+        mJunctionDepth = null;
     }
 
     public int range() { return PosEnd - PosStart; }
@@ -211,13 +210,25 @@ public class ReadRecord
         setFlag(SAMFlag.MATE_REVERSE_STRAND, mateReadReversed);
     }
 
-    public final Map<RegionMatchType,List<TransExonRef>> getTransExonRefs() { return mTransExonRefs; }
+    public final Map<RegionMatchType,List<TransExonRef>> getTransExonRefs()
+    {
+        if(mTransExonRefs == null)
+            mTransExonRefs = Maps.newHashMap();
+
+        return mTransExonRefs;
+    }
+
     public final Map<RegionMatchType,List<TransExonRef>> getTransExonRefs(int se)
     {
-        if(spansGeneCollections())
-            return se == SE_START ? mTransExonRefs : mUpperTransExonRefs;
-        else
-            return mTransExonRefs;
+        if(spansGeneCollections() && se == SE_END)
+        {
+            if(mUpperTransExonRefs == null)
+                mUpperTransExonRefs = Maps.newHashMap();
+
+            return mUpperTransExonRefs;
+        }
+
+        return getTransExonRefs();
     }
 
     public boolean isChimeric()
@@ -316,6 +327,12 @@ public class ReadRecord
         // process all regions for each transcript as a group to look for inconsistencies with the transcript definition
         Set<Integer> transcripts = Sets.newHashSet();
 
+        if(mMappedRegions == null)
+            mMappedRegions = Maps.newHashMapWithExpectedSize(regions.size());
+
+        if(mTranscriptClassification == null)
+            mTranscriptClassification = Maps.newHashMap();
+
         for(RegionReadData region : regions)
         {
             for(final TransExonRef ref : region.getTransExonRefs())
@@ -471,13 +488,15 @@ public class ReadRecord
     public void captureGeneInfo(boolean purgeRegions)
     {
         // converts the more details view of transcript mapping data to a stream-lined data set for chimeric read processing
-        for(Map.Entry<RegionReadData,RegionMatchType> entry : mMappedRegions.entrySet())
+        final Map<RegionMatchType,List<TransExonRef>> transExonRefs = getTransExonRefs();
+
+        for(Map.Entry<RegionReadData,RegionMatchType> entry : getMappedRegions().entrySet())
         {
-            List<TransExonRef> transRefList = mTransExonRefs.get(entry.getValue());
+            List<TransExonRef> transRefList = transExonRefs.get(entry.getValue());
 
             if(transRefList == null)
             {
-                mTransExonRefs.put(entry.getValue(), Lists.newArrayList(entry.getKey().getTransExonRefs()));
+                transExonRefs.put(entry.getValue(), Lists.newArrayList(entry.getKey().getTransExonRefs()));
             }
             else
             {
@@ -487,8 +506,8 @@ public class ReadRecord
 
         if(purgeRegions)
         {
-            mMappedRegions.clear();
-            mTranscriptClassification.clear();
+            mMappedRegions = null;
+            mTranscriptClassification = null;
         }
     }
 
@@ -818,7 +837,10 @@ public class ReadRecord
         }
     }
 
-    public final Map<RegionReadData,RegionMatchType> getMappedRegions() { return mMappedRegions; }
+    public final Map<RegionReadData,RegionMatchType> getMappedRegions()
+    {
+        return mMappedRegions != null ? mMappedRegions : Collections.emptyMap();
+    }
 
     public static List<RegionReadData> findOverlappingRegions(final List<RegionReadData> regions, final ReadRecord read)
     {
@@ -851,14 +873,14 @@ public class ReadRecord
         }
 
         if(!transRefList.isEmpty())
-            mTransExonRefs.put(INTRON, transRefList);
+            getTransExonRefs().put(INTRON, transRefList);
     }
 
     public final List<TransExonRef> getJunctionMatchingTransRefs(int junctionPosition, boolean isJunctionStart)
     {
         final List<TransExonRef> matchedTransRefs = Lists.newArrayList();
 
-        mMappedRegions.entrySet().stream()
+        getMappedRegions().entrySet().stream()
                 .filter(x -> exonBoundary(x.getValue()))
                 .filter(x -> (isJunctionStart && x.getKey().end() == junctionPosition)
                         || (!isJunctionStart && x.getKey().start() == junctionPosition))
@@ -867,18 +889,27 @@ public class ReadRecord
         return matchedTransRefs;
     }
 
-    public final Map<Integer,TransMatchType> getTranscriptClassifications() { return mTranscriptClassification; }
+    public final Map<Integer,TransMatchType> getTranscriptClassifications()
+    {
+        return mTranscriptClassification != null ? mTranscriptClassification : Collections.emptyMap();
+    }
 
     public TransMatchType getTranscriptClassification(int transId)
     {
-        TransMatchType transType = mTranscriptClassification.get(transId);
+        TransMatchType transType = getTranscriptClassifications().get(transId);
         return transType != null ? transType : UNKNOWN;
     }
 
-    public Map<Integer,Integer> getJunctionDepth() { return mJunctionDepth; }
+    public Map<Integer,Integer> getJunctionDepth()
+    {
+        return mJunctionDepth != null ? mJunctionDepth : Collections.emptyMap();
+    }
 
     public void setReadJunctionDepth(final BaseDepth baseDepth)
     {
+        if(mJunctionDepth == null)
+            mJunctionDepth = Maps.newHashMapWithExpectedSize(mMappedCoords.size() * 2);
+
         for(final int[] mappedCoords : mMappedCoords)
         {
             mJunctionDepth.put(mappedCoords[SE_START], baseDepth.depthAtBase(mappedCoords[SE_START]));
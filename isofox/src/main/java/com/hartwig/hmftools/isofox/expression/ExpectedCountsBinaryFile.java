@@ -0,0 +1,152 @@
+package com.hartwig.hmftools.isofox.expression;
+
+import static com.hartwig.hmftools.common.utils.io.BinaryCacheUtils.HEADER_BYTES;
+import static com.hartwig.hmftools.common.utils.io.BinaryCacheUtils.hasHeader;
+import static com.hartwig.hmftools.common.utils.io.BinaryCacheUtils.mapFile;
+import static com.hartwig.hmftools.common.utils.io.BinaryCacheUtils.readString;
+import static com.hartwig.hmftools.isofox.IsofoxConfig.ISF_LOGGER;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import org.jetbrains.annotations.Nullable;
+
+// binary form of the expected counts file, memory-mapped so that each gene collection's category counts are only decoded
+// when a task requests them, using an index of gene collection ID to record offset and the collection's genes
+public class ExpectedCountsBinaryFile
+{
+    protected static final int MAGIC = 0x49534543; // 'ISEC'
+    protected static final int FORMAT_VERSION = 1;
+
+    // file layout: magic, version, fragment lengths, gene collection records, index, then the index offset and magic again
+
+    private final ByteBuffer mBuffer;
+    private final int[] mFragmentLengths;
+
+    private final Map<String,Integer> mGeneSetOffsets;
+    private final Map<String,Set<String>> mGeneSetGeneIds;
+
+    private ExpectedCountsBinaryFile(final ByteBuffer buffer)
+    {
+        mBuffer = buffer;
+
+        ByteBuffer reader = mBuffer.duplicate();
+        reader.position(HEADER_BYTES);
+
+        mFragmentLengths = new int[reader.getInt()];
+
+        for(int i = 0; i < mFragmentLengths.length; ++i)
+        {
+            mFragmentLengths[i] = reader.getInt();
+        }
+
+        reader.position(mBuffer.getInt(mBuffer.limit() - 2 * Integer.BYTES));
+
+        int geneSetCount = reader.getInt();
+        mGeneSetOffsets = Maps.newHashMapWithExpectedSize(geneSetCount);
+        mGeneSetGeneIds = Maps.newLinkedHashMap();
+
+        for(int i = 0; i < geneSetCount; ++i)
+        {
+            final String geneSetId = readString(reader);
+            mGeneSetOffsets.put(geneSetId, reader.getInt());
+
+            int geneCount = reader.getInt();
+            final Set<String> geneIds = Sets.newHashSetWithExpectedSize(geneCount);
+
+            for(int j = 0; j < geneCount; ++j)
+            {
+                geneIds.add(readString(reader));
+            }
+
+            mGeneSetGeneIds.put(geneSetId, geneIds);
+        }
+    }
+
+    @Nullable
+    public static ExpectedCountsBinaryFile open(final String filename)
+    {
+        final File binaryFile = new File(filename);
+
+        if(!binaryFile.exists())
+            return null;
+
+        try
+        {
+            ByteBuffer buffer = mapFile(binaryFile);
+
+            if(buffer.limit() < HEADER_BYTES + 2 * Integer.BYTES || !hasHeader(buffer, MAGIC, FORMAT_VERSION)
+            || buffer.getInt(buffer.limit() - Integer.BYTES) != MAGIC)
+            {
+                ISF_LOGGER.warn("expected counts file({}) has an unsupported or incomplete format", filename);
+                return null;
+            }
+
+            return new ExpectedCountsBinaryFile(buffer);
+        }
+        catch(IOException e)
+        {
+            ISF_LOGGER.warn("failed to open expected counts file({}): {}", filename, e.toString());
+            return null;
+        }
+    }
+
+    public final int[] fragmentLengths() { return mFragmentLengths; }
+    public int geneSetCount() { return mGeneSetOffsets.size(); }
+    public final Set<String> geneSetIds() { return mGeneSetGeneIds.keySet(); }
+    public final Set<String> geneSetGeneIds(final String geneSetId) { return mGeneSetGeneIds.get(geneSetId); }
+
+    @Nullable
+    public List<CategoryCountsData> getGeneSetCounts(final String geneSetId, final List<String> geneIds)
+    {
+        String matchedGeneSetId = geneSetId;
+
+        if(!mGeneSetOffsets.containsKey(geneSetId) || !geneSetMatches(geneSetId, geneIds))
+        {
+            // gene collection IDs can differ if the genes differ from those used to generate the file, so find the genes' entry
+            matchedGeneSetId = mGeneSetGeneIds.keySet().stream().filter(x -> geneSetMatches(x, geneIds)).findFirst().orElse(null);
+
+            if(matchedGeneSetId == null)
+                return null;
+        }
+
+        return readGeneSetCounts(mGeneSetOffsets.get(matchedGeneSetId));
+    }
+
+    private boolean geneSetMatches(final String geneSetId, final List<String> geneIds)
+    {
+        final Set<String> geneSetGeneIds = mGeneSetGeneIds.get(geneSetId);
+        return geneIds.stream().allMatch(x -> geneSetGeneIds.contains(x));
+    }
+
+    private List<CategoryCountsData> readGeneSetCounts(int offset)
+    {
+        ByteBuffer reader = mBuffer.duplicate();
+        reader.position(offset);
+
+        int categoryCount = reader.getInt();
+        final List<CategoryCountsData> categoryCounts = Lists.newArrayListWithCapacity(categoryCount);
+
+        for(int i = 0; i < categoryCount; ++i)
+        {
+            CategoryCountsData catCounts = new CategoryCountsData(readString(reader), mFragmentLengths.length);
+
+            for(int j = 0; j < mFragmentLengths.length; ++j)
+            {
+                catCounts.addFragLengthCounts(reader.getInt(), j);
+            }
+
+            categoryCounts.add(catCounts);
+        }
+
+        return categoryCounts;
+    }
+}
@@ -0,0 +1,131 @@
+package com.hartwig.hmftools.isofox.expression;
+
+import static java.lang.Math.round;
+
+import static com.hartwig.hmftools.common.utils.io.BinaryCacheUtils.writeHeader;
+import static com.hartwig.hmftools.common.utils.io.BinaryCacheUtils.writeString;
+import static com.hartwig.hmftools.isofox.IsofoxConfig.ISF_LOGGER;
+import static com.hartwig.hmftools.isofox.expression.ExpectedCountsBinaryFile.FORMAT_VERSION;
+import static com.hartwig.hmftools.isofox.expression.ExpectedCountsBinaryFile.MAGIC;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.hartwig.hmftools.isofox.adjusts.FragmentSize;
+
+// writes the expected counts for each gene collection as they are generated, and the index of them on close
+public class ExpectedCountsBinaryWriter
+{
+    private final String mFilename;
+    private DataOutputStream mOutput;
+    private final int mFragmentLengthCount;
+
+    private final Map<String,Integer> mGeneSetOffsets;
+    private final Map<String,Set<String>> mGeneSetGeneIds;
+
+    public ExpectedCountsBinaryWriter(final String filename, final List<FragmentSize> fragmentLengths)
+    {
+        mFilename = filename;
+        mFragmentLengthCount = fragmentLengths.size();
+        mGeneSetOffsets = Maps.newLinkedHashMap();
+        mGeneSetGeneIds = Maps.newHashMap();
+
+        try
+        {
+            mOutput = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filename)));
+
+            writeHeader(mOutput, MAGIC, FORMAT_VERSION);
+            mOutput.writeInt(fragmentLengths.size());
+
+            for(final FragmentSize fragLength : fragmentLengths)
+            {
+                mOutput.writeInt(fragLength.Length);
+            }
+        }
+        catch(IOException e)
+        {
+            ISF_LOGGER.error("failed to create expected counts file({}): {}", filename, e.toString());
+            mOutput = null;
+        }
+    }
+
+    public synchronized void writeGeneSetCounts(final String geneSetId, final List<CategoryCountsData> categoryCounts)
+    {
+        if(mOutput == null)
+            return;
+
+        try
+        {
+            mGeneSetOffsets.put(geneSetId, mOutput.size());
+
+            final Set<String> geneIds = Sets.newLinkedHashSet();
+            categoryCounts.forEach(x -> geneIds.addAll(x.unsplicedGeneIds()));
+            mGeneSetGeneIds.put(geneSetId, geneIds);
+
+            mOutput.writeInt(categoryCounts.size());
+
+            for(final CategoryCountsData catCounts : categoryCounts)
+            {
+                writeString(mOutput, catCounts.combinedKey());
+
+                final double[] lengthCounts = catCounts.fragmentCountsByLength();
+
+                for(int i = 0; i < mFragmentLengthCount; ++i)
+                {
+                    mOutput.writeInt((int)round(lengthCounts[i]));
+                }
+            }
+        }
+        catch(IOException e)
+        {
+            ISF_LOGGER.error("failed to write expected counts file({}): {}", mFilename, e.toString());
+            mOutput = null;
+        }
+    }
+
+    public synchronized void close()
+    {
+        if(mOutput == null)
+            return;
+
+        try
+        {
+            int indexOffset = mOutput.size();
+
+            mOutput.writeInt(mGeneSetOffsets.size());
+
+            for(Map.Entry<String,Integer> entry : mGeneSetOffsets.entrySet())
+            {
+                writeString(mOutput, entry.getKey());
+                mOutput.writeInt(entry.getValue());
+
+                final Set<String> geneIds = mGeneSetGeneIds.get(entry.getKey());
+                mOutput.writeInt(geneIds.size());
+
+                for(final String geneId : geneIds)
+                {
+                    writeString(mOutput, geneId);
+                }
+            }
+
+            mOutput.writeInt(indexOffset);
+            mOutput.writeInt(MAGIC);
+            mOutput.close();
+
+            ISF_LOGGER.info("wrote {} gene collection expected counts to file({})", mGeneSetOffsets.size(), mFilename);
+        }
+        catch(IOException e)
+        {
+            ISF_LOGGER.error("failed to close expected counts file({}): {}", mFilename, e.toString());
+        }
+
+        mOutput = null;
+    }
+}
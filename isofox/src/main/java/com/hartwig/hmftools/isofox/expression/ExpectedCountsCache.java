@@ -1,5 +1,7 @@
 package com.hartwig.hmftools.isofox.expression;
 
+import static com.hartwig.hmftools.common.utils.io.BinaryCacheUtils.binaryFilename;
+import static com.hartwig.hmftools.common.utils.io.BinaryCacheUtils.isCurrent;
 import static com.hartwig.hmftools.common.utils.io.FileWriterUtils.createFieldsIndexMap;
 import static com.hartwig.hmftools.isofox.IsofoxConfig.ISF_LOGGER;
 import static com.hartwig.hmftools.isofox.expression.ExpectedRatesGenerator.EXP_COUNT_LENGTH_HEADER;
@@ -27,17 +29,26 @@ public class ExpectedCountsCache
     // map of chrGeneSetId to category counts data
     private final Map<String,List<CategoryCountsData>> mGeneSetCategoryDataMap;
 
+    // used in place of the map when the counts are available in binary form
+    private ExpectedCountsBinaryFile mBinaryFile;
+
     private boolean mValidData;
 
     public ExpectedCountsCache(final IsofoxConfig config)
     {
         mConfig = config;
         mGeneSetCategoryDataMap = Maps.newHashMap();
+        mBinaryFile = null;
         mValidData = true;
 
         if(config.ExpCountsFile != null && Files.exists(Paths.get(mConfig.ExpCountsFile)))
         {
-            mValidData = loadExpCountsFile();
+            mBinaryFile = openBinaryFile();
+
+            if(mBinaryFile != null)
+                mValidData = setFragmentLengths(mBinaryFile.fragmentLengths());
+            else
+                mValidData = loadExpCountsFile();
         }
     }
 
@@ -45,6 +56,9 @@ public class ExpectedCountsCache
 
     public List<CategoryCountsData> getGeneExpectedRatesData(final String chrId, final List<String> geneIds)
     {
+        if(mBinaryFile != null)
+            return mBinaryFile.getGeneSetCounts(chrId, geneIds);
+
         List<CategoryCountsData> geneSetCountsData = mGeneSetCategoryDataMap.get(chrId);
 
         if (geneSetCountsData == null || !geneSetCountsDataMatches(geneIds, geneSetCountsData))
@@ -76,6 +90,44 @@ public class ExpectedCountsCache
         return null;
     }
 
+    private ExpectedCountsBinaryFile openBinaryFile()
+    {
+        // use the binary form of the counts if configured or written with the CSV file and not older than it
+        final String binaryFilename = binaryFilename(mConfig.ExpCountsFile);
+
+        if(!isCurrent(binaryFilename, mConfig.ExpCountsFile))
+            return null;
+
+        ExpectedCountsBinaryFile binaryFile = ExpectedCountsBinaryFile.open(binaryFilename);
+
+        if(binaryFile != null)
+        {
+            ISF_LOGGER.info("indexed {} gene expected counts from file({})", binaryFile.geneSetCount(), binaryFilename);
+        }
+
+        return binaryFile;
+    }
+
+    private boolean setFragmentLengths(final int[] fragmentLengths)
+    {
+        // take the binary file's fragment lengths if not already populated (in which case they must match)
+        if(mConfig.FragmentSizeData.size() == 0)
+        {
+            for(int fragmentLength : fragmentLengths)
+            {
+                mConfig.FragmentSizeData.add(new FragmentSize(fragmentLength, 0));
+            }
+        }
+        else if(mConfig.FragmentSizeData.size() != fragmentLengths.length)
+        {
+            ISF_LOGGER.error("expected counts file has {} fragment lengths vs configuredCount({})",
+                    fragmentLengths.length, mConfig.FragmentSizeData.size());
+            return false;
+        }
+
+        return true;
+    }
+
     // GeneSetId,TransId,Category,Counts for each fragment length
     private boolean loadExpCountsFile()
     {
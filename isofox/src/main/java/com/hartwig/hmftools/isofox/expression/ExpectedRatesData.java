@@ -3,6 +3,7 @@ package com.hartwig.hmftools.isofox.expression;
 import java.util.List;
 
 import com.google.common.collect.Lists;
+import com.hartwig.hmftools.common.sigs.ExpectationMaxFitter;
 import com.hartwig.hmftools.common.utils.Matrix;
 
 public class ExpectedRatesData
@@ -17,16 +18,28 @@ public class ExpectedRatesData
 
     private Matrix mTranscriptDefinitions;
 
+    // built from the completed definitions on first use, and kept for the re-fit after GC adjustment
+    private ExpectationMaxFitter mFitter;
+
     public ExpectedRatesData(final String id)
     {
         Id = id;
         Categories = Lists.newArrayList();
         TranscriptIds = Lists.newArrayList();
         mTranscriptDefinitions = null;
+        mFitter = null;
     }
 
     public Matrix getTranscriptDefinitions() { return mTranscriptDefinitions; }
 
+    public ExpectationMaxFitter getFitter()
+    {
+        if(mFitter == null)
+            mFitter = new ExpectationMaxFitter(mTranscriptDefinitions);
+
+        return mFitter;
+    }
+
     public boolean validData()
     {
         if(Categories.isEmpty() || mTranscriptDefinitions == null)
@@ -47,6 +60,7 @@ public class ExpectedRatesData
             return;
 
         mTranscriptDefinitions = new Matrix(Categories.size(), TranscriptIds.size());
+        mFitter = null;
     }
 
     public int getTranscriptIndex(final String trans)
@@ -3,6 +3,7 @@ package com.hartwig.hmftools.isofox.expression;
 import static java.lang.Math.min;
 
 import static com.hartwig.hmftools.common.sigs.SigUtils.convertToPercentages;
+import static com.hartwig.hmftools.common.utils.io.BinaryCacheUtils.binaryFilename;
 import static com.hartwig.hmftools.common.utils.io.FileWriterUtils.createBufferedWriter;
 import static com.hartwig.hmftools.common.utils.sv.SvRegion.positionsOverlap;
 import static com.hartwig.hmftools.common.utils.sv.SvRegion.positionsWithin;
@@ -56,6 +57,7 @@ public class ExpectedRatesGenerator
     private int mReadLength;
 
     private final BufferedWriter mExpRateWriter;
+    private final ExpectedCountsBinaryWriter mExpCountsBinaryWriter;
 
     public static final int FL_LENGTH = 0;
     public static final int FL_FREQUENCY = 1;
@@ -74,6 +76,7 @@ public class ExpectedRatesGenerator
         mGeneCollection = null;
 
         mExpRateWriter = resultsWriter != null ? resultsWriter.getExpRatesWriter() : null;
+        mExpCountsBinaryWriter = resultsWriter != null ? resultsWriter.getExpCountsBinaryWriter() : null;
     }
 
     public static ExpectedRatesGenerator from(final IsofoxConfig config)
@@ -211,14 +214,14 @@ public class ExpectedRatesGenerator
         if(mConfig.runFunction(EXPECTED_TRANS_COUNTS))
         {
             writeExpectedCounts(mExpRateWriter, geneCollection.chrId(), mTransCategoryCounts);
+
+            if(mExpCountsBinaryWriter != null)
+                mExpCountsBinaryWriter.writeGeneSetCounts(geneCollection.chrId(), mTransCategoryCounts);
         }
         else
         {
             formTranscriptDefinitions(mTransCategoryCounts, mCurrentExpRatesData);
 
-            if(mConfig.ApplyExpectedRates)
-                mCurrentExpRatesData.getTranscriptDefinitions().cacheTranspose();
-
             if(mConfig.WriteExpectedRates)
             {
                 writeExpectedRates(mExpRateWriter, mCurrentExpRatesData);
@@ -741,7 +744,7 @@ public class ExpectedRatesGenerator
 
             if(config.runFunction(EXPECTED_TRANS_COUNTS))
             {
-                outputFileName = String.format("%sread_%d_%s", config.OutputDir, config.ReadLength, "exp_counts.csv");
+                outputFileName = expectedCountsFilename(config);
             }
             else
             {
@@ -774,6 +777,17 @@ public class ExpectedRatesGenerator
         }
     }
 
+    private static String expectedCountsFilename(final IsofoxConfig config)
+    {
+        return String.format("%sread_%d_%s", config.OutputDir, config.ReadLength, "exp_counts.csv");
+    }
+
+    public static ExpectedCountsBinaryWriter createBinaryWriter(final IsofoxConfig config)
+    {
+        // written alongside the CSV file and preferred to it when loading expected counts
+        return new ExpectedCountsBinaryWriter(binaryFilename(expectedCountsFilename(config)), config.FragmentSizeData);
+    }
+
     private synchronized static void writeExpectedCounts(
             final BufferedWriter writer, final String collectionId, final List<CategoryCountsData> categoryCounts)
     {
@@ -2,6 +2,8 @@ package com.hartwig.hmftools.isofox.expression.cohort;
 
 import static com.hartwig.hmftools.common.utils.MatrixUtils.loadMatrixDataFile;
 import static com.hartwig.hmftools.common.stats.FdrCalcs.calculateFDRs;
+import static com.hartwig.hmftools.common.utils.io.BinaryCacheUtils.binaryFilename;
+import static com.hartwig.hmftools.common.utils.io.BinaryCacheUtils.isCurrent;
 import static com.hartwig.hmftools.common.utils.io.FileWriterUtils.closeBufferedWriter;
 import static com.hartwig.hmftools.common.utils.io.FileWriterUtils.createBufferedWriter;
 import static com.hartwig.hmftools.common.utils.io.FileWriterUtils.createFieldsIndexMap;
@@ -28,6 +30,7 @@ public class ExpressionCohortCompare
     private final CohortConfig mConfig;
 
     private Matrix mGeneExpressionMatrix;
+    private ExpressionMatrixFile mMatrixFile; // memory-mapped in place of the CSV matrix if its binary form is present
     private final Map<String,Integer> mSampleIndexMap;
     private final List<String> mGeneIds;
     private final Map<String,String> mGeneIdNameMap;
@@ -40,6 +43,7 @@ public class ExpressionCohortCompare
 
         mSampleIndexMap = Maps.newHashMap();
         mGeneExpressionMatrix = null;
+        mMatrixFile = null;
 
         mGeneIds = Lists.newArrayList();
         mGeneIdNameMap = Maps.newHashMap();
@@ -52,6 +56,9 @@ public class ExpressionCohortCompare
 
     private void loadGeneExpression()
     {
+        if(loadBinaryMatrix())
+            return;
+
         final List<String> ignoreFields = Lists.newArrayList("GeneId", "GeneName");
         mGeneExpressionMatrix = loadMatrixDataFile(mConfig.Expression.GeneExpMatrixFile, mSampleIndexMap, ignoreFields);
         mGeneExpressionMatrix.cacheTranspose();
@@ -88,6 +95,37 @@ public class ExpressionCohortCompare
         ISF_LOGGER.debug("loaded genes({}) and {} samples({}) expression matrix data", mGeneIds.size(), mGeneExpressionMatrix.Cols);
     }
 
+    private boolean loadBinaryMatrix()
+    {
+        final String matrixFile = mConfig.Expression.GeneExpMatrixFile;
+        final String binaryFile = binaryFilename(matrixFile);
+
+        // only use a binary file written from the same or a later CSV matrix
+        if(!isCurrent(binaryFile, matrixFile))
+            return false;
+
+        mMatrixFile = ExpressionMatrixFile.open(binaryFile);
+
+        if(mMatrixFile == null)
+            return false;
+
+        for(int i = 0; i < mMatrixFile.sampleCount(); ++i)
+        {
+            mSampleIndexMap.put(mMatrixFile.SampleIds.get(i), i);
+        }
+
+        for(int i = 0; i < mMatrixFile.rowCount(); ++i)
+        {
+            mGeneIds.add(mMatrixFile.GeneIds.get(i));
+            mGeneIdNameMap.put(mMatrixFile.GeneIds.get(i), mMatrixFile.GeneNames.get(i));
+        }
+
+        ISF_LOGGER.debug("loaded genes({}) and {} samples expression matrix data from binary file({})",
+                mGeneIds.size(), mMatrixFile.sampleCount(), binaryFile);
+
+        return true;
+    }
+
     public void runAnalysis()
     {
         if(mConfig.SampleData.CohortNames.size() != 2)
@@ -152,6 +190,17 @@ public class ExpressionCohortCompare
 
     private void populateCohortValues(final double[] cohortValues, int geneIndex, final List<Integer> cohortSampleIndices)
     {
+        if(mMatrixFile != null)
+        {
+            int index = 0;
+            for(Integer sampleIndex : cohortSampleIndices)
+            {
+                cohortValues[index++] = mMatrixFile.value(geneIndex, sampleIndex);
+            }
+
+            return;
+        }
+
         final double[][] matrixData = mGeneExpressionMatrix.getData();
         int index = 0;
         for(Integer sampleIndex : cohortSampleIndices)
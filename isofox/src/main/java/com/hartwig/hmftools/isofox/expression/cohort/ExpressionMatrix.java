@@ -1,7 +1,9 @@
 package com.hartwig.hmftools.isofox.expression.cohort;
 
-import static java.lang.Math.log;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
 
+import static com.hartwig.hmftools.common.utils.io.BinaryCacheUtils.binaryFilename;
 import static com.hartwig.hmftools.common.utils.io.FileWriterUtils.closeBufferedWriter;
 import static com.hartwig.hmftools.common.utils.io.FileWriterUtils.createBufferedWriter;
 import static com.hartwig.hmftools.common.utils.io.FileWriterUtils.createFieldsIndexMap;
@@ -13,27 +15,29 @@ import static com.hartwig.hmftools.isofox.results.ResultsWriter.DELIMITER;
 import static com.hartwig.hmftools.isofox.results.ResultsWriter.FLD_GENE_ID;
 import static com.hartwig.hmftools.isofox.results.ResultsWriter.FLD_GENE_NAME;
 import static com.hartwig.hmftools.isofox.results.ResultsWriter.FLD_TRANS_NAME;
-import static com.hartwig.hmftools.isofox.results.TranscriptResult.FLD_TPM;
 
+import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.stream.Collectors;
 
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
-import com.hartwig.hmftools.common.utils.Matrix;
 import com.hartwig.hmftools.isofox.cohort.AnalysisType;
 import com.hartwig.hmftools.isofox.cohort.CohortConfig;
+import com.hartwig.hmftools.isofox.common.TaskExecutor;
 
 public class ExpressionMatrix
 {
     private final AnalysisType mType;
     private final CohortConfig mConfig;
-    
-    private Matrix mExpressionMatrix;
+
+    private double[][] mSampleColumns; // the matrix is held by sample column, as each sample's file is loaded
     private final List<String> mGeneIds;
     private final List<String> mGeneNames;
     private final List<String> mTranscriptNames;
@@ -43,7 +47,7 @@ public class ExpressionMatrix
         mType = type;
         mConfig = config;
 
-        mExpressionMatrix = null;
+        mSampleColumns = null;
         mGeneIds = Lists.newArrayList();
         mGeneNames = Lists.newArrayList();
         mTranscriptNames = Lists.newArrayList();
@@ -57,156 +61,97 @@ public class ExpressionMatrix
             return;
 
         final String typeStr = mType == GENE_EXPRESSION_MATRIX ? "gene" : "transcript";
+        boolean isTranscriptLevel = mType == TRANSCRIPT_EXPRESSION_MATRIX;
 
-        ISF_LOGGER.info("processing {} samples {} files", mConfig.SampleData.SampleIds.size(), typeStr);
-
-        Map<String,Integer> fieldsMap = Maps.newHashMap();
+        int sampleCount = mConfig.SampleData.SampleIds.size();
 
-        // load each sample's alt SJs and consolidate into a single list
-        for(int i = 0; i < mConfig.SampleData.SampleIds.size(); ++i)
-        {
-            final String sampleId = mConfig.SampleData.SampleIds.get(i);
-            final Path sampleFile = filenames.get(i);
+        ISF_LOGGER.info("processing {} samples {} files", sampleCount, typeStr);
 
-            processSampleFile(i, sampleFile, fieldsMap);
-            ISF_LOGGER.debug("{}: sample({}) processed {} file", i, sampleId, typeStr);
-        }
+        // the first sample's file sets the genes or transcripts and their order
+        if(!loadItemIndex(filenames.get(0), isTranscriptLevel))
+            return;
 
-        ISF_LOGGER.info("processed {} samples {} files", mConfig.SampleData.SampleIds.size(), typeStr);
+        final List<String> itemIds = isTranscriptLevel ? mTranscriptNames : mGeneIds;
+        final Map<String,Integer> itemIndexMap = Maps.newHashMapWithExpectedSize(itemIds.size());
 
-        writeMatrixData();
-    }
-
-    private void processSampleFile(int sampleIndex, final Path filename, final Map<String,Integer> fieldsMap)
-    {
-        try
+        for(int i = 0; i < itemIds.size(); ++i)
         {
-            final List<String> lines = Files.readAllLines(filename);
-
-            if(fieldsMap.isEmpty())
-                fieldsMap.putAll(createFieldsIndexMap(lines.get(0), DELIMITER));
-
-            lines.remove(0);
+            itemIndexMap.putIfAbsent(itemIds.get(i), i);
+        }
 
-            boolean isTranscriptLevel = mType == TRANSCRIPT_EXPRESSION_MATRIX;
+        ISF_LOGGER.debug("building {} expression matrix: items({}) samples({})", typeStr, itemIds.size(), sampleCount);
 
-            int geneIdIndex = fieldsMap.get(FLD_GENE_ID);
-            int geneNameIndex = fieldsMap.get(FLD_GENE_NAME);
+        mSampleColumns = new double[sampleCount][];
 
-            int transNameIndex = isTranscriptLevel ? fieldsMap.get(FLD_TRANS_NAME) : -1;
-            int tpmIndex = fieldsMap.get(FLD_TPM);
+        // samples are loaded in parallel, each task filling its own samples' columns
+        final List<ExpressionSampleLoader> sampleLoaders = Lists.newArrayList();
+        int taskCount = max(mConfig.Threads, 1);
 
-            int itemIndex = 0;
-            List<String> itemCache = isTranscriptLevel ? mTranscriptNames : mGeneIds;
-            int manualLookupCount = 0;
+        for(int i = 0; i < min(taskCount, sampleCount); ++i)
+        {
+            sampleLoaders.add(new ExpressionSampleLoader(mConfig, isTranscriptLevel, itemIds, itemIndexMap, mSampleColumns));
+        }
 
-            double[][] sampleMatrixData = null;
+        for(int i = 0; i < sampleCount; ++i)
+        {
+            sampleLoaders.get(i % sampleLoaders.size()).addSample(i, filenames.get(i));
+        }
 
-            if(mExpressionMatrix == null)
-            {
-                int samplesCount = mConfig.SampleData.SampleIds.size();
-                int expressionItemCount = lines.size();
+        final List<Callable> callableList = sampleLoaders.stream().collect(Collectors.toList());
 
-                // cull rows based on any restrictions in place
-                if(!mConfig.RestrictedGeneIds.isEmpty())
-                {
-                    long itemCount = lines.stream().map(x -> x.split(DELIMITER, -1)[geneIdIndex])
-                            .filter(x -> mConfig.RestrictedGeneIds.contains(x))
-                            .count();
+        if(!TaskExecutor.executeChromosomeTask(callableList, mConfig.Threads))
+            return;
 
-                    expressionItemCount = (int)itemCount;
-                }
+        ISF_LOGGER.info("processed {} samples {} files", sampleCount, typeStr);
 
-                ISF_LOGGER.debug("building gene expression matrix: genes({}) samples({})", expressionItemCount, samplesCount);
+        writeMatrixData();
+    }
 
-                mExpressionMatrix = new Matrix(expressionItemCount, samplesCount);
-            }
+    private boolean loadItemIndex(final Path filename, boolean isTranscriptLevel)
+    {
+        try(BufferedReader fileReader = Files.newBufferedReader(filename))
+        {
+            final Map<String,Integer> fieldsMap = createFieldsIndexMap(fileReader.readLine(), DELIMITER);
 
-            sampleMatrixData = mExpressionMatrix.getData();
+            int geneIdIndex = fieldsMap.get(FLD_GENE_ID);
+            int geneNameIndex = fieldsMap.get(FLD_GENE_NAME);
+            int transNameIndex = isTranscriptLevel ? fieldsMap.get(FLD_TRANS_NAME) : -1;
 
-            boolean buildIndexes = itemCache.isEmpty();
+            String line = fileReader.readLine();
 
-            for(final String data : lines)
+            for(; line != null; line = fileReader.readLine())
             {
-                final String[] items = data.split(DELIMITER);
+                final String[] items = line.split(DELIMITER);
 
                 final String geneId = items[geneIdIndex];
-                final String transName = transNameIndex >= 0 ? items[transNameIndex] : "";
 
+                // cull rows based on any restrictions in place
                 if(!mConfig.RestrictedGeneIds.isEmpty() && !mConfig.RestrictedGeneIds.contains(geneId))
                     continue;
 
-                if(buildIndexes)
-                {
-                    mGeneIds.add(itemIndex, geneId);
-                    mGeneNames.add(itemIndex, items[geneNameIndex]);
-
-                    if(transNameIndex >= 0)
-                    {
-                        mTranscriptNames.add(itemIndex, transName);
-                    }
-                }
-                else
-                {
-                    final String itemId = isTranscriptLevel ? transName : geneId;
-
-                    if(!itemCache.get(itemIndex).equals(itemId))
-                    {
-                        ++manualLookupCount;
-
-                        // locate manually
-                        boolean found = false;
-                        for(itemIndex = 0; itemIndex < itemCache.size(); ++itemIndex)
-                        {
-                            if(itemCache.get(itemIndex).equals(itemId))
-                            {
-                                found = true;
-                                break;
-                            }
-                        }
-
-                        if(!found)
-                        {
-                            ISF_LOGGER.error("item({}) not present in item cache samples", itemId);
-                            return;
-                        }
-                    }
-                }
-
-                double tpm = Double.parseDouble(items[tpmIndex]);
-
-                if(mConfig.Expression.TpmThreshold > 0 && tpm < mConfig.Expression.TpmThreshold)
-                {
-                    ++itemIndex;
-                    continue;
-                }
-
-                if(mConfig.Expression.UseLogTpm)
-                    tpm = log(tpm + 1);
+                mGeneIds.add(geneId);
+                mGeneNames.add(items[geneNameIndex]);
 
-                sampleMatrixData[itemIndex][sampleIndex] = tpm;
-                ++itemIndex;
+                if(transNameIndex >= 0)
+                    mTranscriptNames.add(items[transNameIndex]);
             }
 
-            if(manualLookupCount > 0)
-            {
-                ISF_LOGGER.info("required {} manual gene look-ups", manualLookupCount);
-            }
+            return true;
         }
         catch(IOException e)
         {
             ISF_LOGGER.error("failed to load gene data file({}): {}", filename.toString(), e.toString());
-            return;
+            return false;
         }
     }
 
     private void writeMatrixData()
     {
+        final String fileType = (mType == TRANSCRIPT_EXPRESSION_MATRIX ? "transcript" : "gene") + "_expression_matrix.csv";
+        final String filename = mConfig.formCohortFilename(fileType);
+
         try
         {
-            final String fileType = (mType == TRANSCRIPT_EXPRESSION_MATRIX ? "transcript" : "gene") + "_expression_matrix.csv";
-            final String filename = mConfig.formCohortFilename(fileType);
-
             BufferedWriter writer = createBufferedWriter(filename, false);
 
             writer.write("GeneId,GeneName");
@@ -221,18 +166,16 @@ public class ExpressionMatrix
 
             writer.newLine();
 
-            final double[][] matrixData = mExpressionMatrix.getData();
-
-            for(int i = 0; i < mExpressionMatrix.Rows; ++i)
+            for(int i = 0; i < mGeneIds.size(); ++i)
             {
                 writer.write(String.format("%s,%s", mGeneIds.get(i), mGeneNames.get(i)));
 
                 if(mType == TRANSCRIPT_EXPRESSION_MATRIX)
                     writer.write(String.format(",%s", mTranscriptNames.get(i)));
 
-                for(int j = 0; j < mExpressionMatrix.Cols; ++j)
+                for(int j = 0; j < mSampleColumns.length; ++j)
                 {
-                    writer.write(String.format(",%.4f", matrixData[i][j]));
+                    writer.write(String.format(",%.4f", mSampleColumns[j][i]));
                 }
 
                 writer.newLine();
@@ -244,5 +187,9 @@ public class ExpressionMatrix
         {
             ISF_LOGGER.error("failed to write expression matrix output: {}", e.toString());
         }
+
+        // and the binary form for later cohort analyses to memory-map
+        ExpressionMatrixFile.write(
+                binaryFilename(filename), mConfig.SampleData.SampleIds, mGeneIds, mGeneNames, mTranscriptNames, mSampleColumns);
     }
 }
@@ -0,0 +1,186 @@
+package com.hartwig.hmftools.isofox.expression.cohort;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+import static com.hartwig.hmftools.common.utils.io.BinaryCacheUtils.HEADER_BYTES;
+import static com.hartwig.hmftools.common.utils.io.BinaryCacheUtils.hasHeader;
+import static com.hartwig.hmftools.common.utils.io.BinaryCacheUtils.readString;
+import static com.hartwig.hmftools.common.utils.io.BinaryCacheUtils.writeHeader;
+import static com.hartwig.hmftools.common.utils.io.BinaryCacheUtils.writeString;
+import static com.hartwig.hmftools.isofox.IsofoxConfig.ISF_LOGGER;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import org.jetbrains.annotations.Nullable;
+
+// binary columnar form of the cohort expression matrix, with the sample and gene or transcript indexes held in its header,
+// so later cohort analyses can memory-map it rather than parse the CSV matrix or each sample's files again
+public class ExpressionMatrixFile
+{
+    private static final int MAGIC = 0x4953454D; // 'ISEM'
+    private static final int FORMAT_VERSION = 1;
+
+    // file layout: magic, version, row and sample counts, whether transcript names are present, sample IDs, then each row's
+    // gene ID, gene name and transcript name, padding to 8 bytes, then the values one sample column at a time
+
+    public final List<String> SampleIds;
+    public final List<String> GeneIds;
+    public final List<String> GeneNames;
+    public final List<String> TranscriptNames; // empty for a gene-level matrix
+
+    private final Map<String,Integer> mSampleIndexMap;
+
+    // columns are split across buffers since each mapping is limited to 2GB
+    private final List<ByteBuffer> mColumnBuffers;
+    private final int mColumnsPerBuffer;
+
+    private ExpressionMatrixFile(final FileChannel channel) throws IOException
+    {
+        ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, min(channel.size(), Integer.MAX_VALUE));
+        header.position(HEADER_BYTES);
+
+        int rowCount = header.getInt();
+        int sampleCount = header.getInt();
+        boolean hasTransNames = header.get() != 0;
+
+        SampleIds = Lists.newArrayListWithCapacity(sampleCount);
+        mSampleIndexMap = Maps.newHashMapWithExpectedSize(sampleCount);
+
+        for(int i = 0; i < sampleCount; ++i)
+        {
+            final String sampleId = readString(header);
+            SampleIds.add(sampleId);
+            mSampleIndexMap.put(sampleId, i);
+        }
+
+        GeneIds = Lists.newArrayListWithCapacity(rowCount);
+        GeneNames = Lists.newArrayListWithCapacity(rowCount);
+        TranscriptNames = Lists.newArrayListWithCapacity(hasTransNames ? rowCount : 0);
+
+        for(int i = 0; i < rowCount; ++i)
+        {
+            GeneIds.add(readString(header));
+            GeneNames.add(readString(header));
+
+            if(hasTransNames)
+                TranscriptNames.add(readString(header));
+        }
+
+        long dataOffset = alignedOffset(header.position());
+        long columnBytes = (long)rowCount * Double.BYTES;
+
+        mColumnsPerBuffer = columnBytes > 0 ? (int)max(Integer.MAX_VALUE / columnBytes, 1) : max(sampleCount, 1);
+        mColumnBuffers = Lists.newArrayList();
+
+        for(int startColumn = 0; startColumn < sampleCount; startColumn += mColumnsPerBuffer)
+        {
+            int columnCount = min(mColumnsPerBuffer, sampleCount - startColumn);
+
+            mColumnBuffers.add(channel.map(
+                    FileChannel.MapMode.READ_ONLY, dataOffset + startColumn * columnBytes, columnCount * columnBytes));
+        }
+    }
+
+    @Nullable
+    public static ExpressionMatrixFile open(final String filename)
+    {
+        final File binaryFile = new File(filename);
+
+        if(!binaryFile.exists())
+            return null;
+
+        try(RandomAccessFile file = new RandomAccessFile(binaryFile, "r"); FileChannel channel = file.getChannel())
+        {
+            ByteBuffer check = ByteBuffer.allocate(HEADER_BYTES);
+
+            if(channel.read(check, 0) != check.capacity() || !hasHeader(check, MAGIC, FORMAT_VERSION))
+            {
+                ISF_LOGGER.warn("expression matrix file({}) has an unsupported format", filename);
+                return null;
+            }
+
+            return new ExpressionMatrixFile(channel);
+        }
+        catch(IOException e)
+        {
+            ISF_LOGGER.warn("failed to open expression matrix file({}): {}", filename, e.toString());
+            return null;
+        }
+    }
+
+    public int rowCount() { return GeneIds.size(); }
+    public int sampleCount() { return SampleIds.size(); }
+
+    public Integer getSampleIndex(final String sampleId) { return mSampleIndexMap.get(sampleId); }
+
+    public double value(int rowIndex, int sampleIndex)
+    {
+        final ByteBuffer buffer = mColumnBuffers.get(sampleIndex / mColumnsPerBuffer);
+        int columnOffset = (sampleIndex % mColumnsPerBuffer) * rowCount();
+        return buffer.getDouble((columnOffset + rowIndex) * Double.BYTES);
+    }
+
+    public static void write(
+            final String filename, final List<String> sampleIds, final List<String> geneIds, final List<String> geneNames,
+            final List<String> transNames, final double[][] sampleColumns)
+    {
+        try(DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filename))))
+        {
+            writeHeader(output, MAGIC, FORMAT_VERSION);
+            output.writeInt(geneIds.size());
+            output.writeInt(sampleIds.size());
+            output.writeByte(transNames.isEmpty() ? 0 : 1);
+
+            for(final String sampleId : sampleIds)
+            {
+                writeString(output, sampleId);
+            }
+
+            for(int i = 0; i < geneIds.size(); ++i)
+            {
+                writeString(output, geneIds.get(i));
+                writeString(output, geneNames.get(i));
+
+                if(!transNames.isEmpty())
+                    writeString(output, transNames.get(i));
+            }
+
+            while(output.size() < alignedOffset(output.size()))
+            {
+                output.writeByte(0);
+            }
+
+            for(final double[] sampleColumn : sampleColumns)
+            {
+                for(double value : sampleColumn)
+                {
+                    output.writeDouble(value);
+                }
+            }
+
+            ISF_LOGGER.info("wrote expression matrix rows({}) samples({}) to binary file({})", geneIds.size(), sampleIds.size(), filename);
+        }
+        catch(IOException e)
+        {
+            ISF_LOGGER.error("failed to write expression matrix file({}): {}", filename, e.toString());
+        }
+    }
+
+    private static long alignedOffset(long offset)
+    {
+        return (offset + Double.BYTES - 1) / Double.BYTES * Double.BYTES;
+    }
+}
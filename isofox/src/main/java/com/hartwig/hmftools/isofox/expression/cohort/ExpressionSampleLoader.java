@@ -0,0 +1,139 @@
+package com.hartwig.hmftools.isofox.expression.cohort;
+
+import static java.lang.Math.log;
+
+import static com.hartwig.hmftools.common.utils.io.FileWriterUtils.createFieldsIndexMap;
+import static com.hartwig.hmftools.isofox.IsofoxConfig.ISF_LOGGER;
+import static com.hartwig.hmftools.isofox.results.ResultsWriter.DELIMITER;
+import static com.hartwig.hmftools.isofox.results.ResultsWriter.FLD_GENE_ID;
+import static com.hartwig.hmftools.isofox.results.ResultsWriter.FLD_TRANS_NAME;
+import static com.hartwig.hmftools.isofox.results.TranscriptResult.FLD_TPM;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import com.google.common.collect.Lists;
+import com.hartwig.hmftools.isofox.cohort.CohortConfig;
+
+// streams a set of samples' gene or transcript files into their columns of the cohort expression matrix
+public class ExpressionSampleLoader implements Callable
+{
+    private final CohortConfig mConfig;
+    private final boolean mIsTranscriptLevel;
+    private final Map<String,Integer> mItemIndexMap; // gene ID or transcript name to matrix row
+    private final List<String> mItemIds;
+    private final double[][] mSampleColumns;
+
+    private final List<Integer> mSampleIndices;
+    private final List<Path> mSampleFiles;
+
+    public ExpressionSampleLoader(
+            final CohortConfig config, boolean isTranscriptLevel, final List<String> itemIds, final Map<String,Integer> itemIndexMap,
+            final double[][] sampleColumns)
+    {
+        mConfig = config;
+        mIsTranscriptLevel = isTranscriptLevel;
+        mItemIds = itemIds;
+        mItemIndexMap = itemIndexMap;
+        mSampleColumns = sampleColumns;
+
+        mSampleIndices = Lists.newArrayList();
+        mSampleFiles = Lists.newArrayList();
+    }
+
+    public void addSample(int sampleIndex, final Path sampleFile)
+    {
+        mSampleIndices.add(sampleIndex);
+        mSampleFiles.add(sampleFile);
+    }
+
+    @Override
+    public Long call()
+    {
+        for(int i = 0; i < mSampleIndices.size(); ++i)
+        {
+            int sampleIndex = mSampleIndices.get(i);
+            mSampleColumns[sampleIndex] = loadSampleFile(mSampleFiles.get(i));
+
+            ISF_LOGGER.debug("{}: sample({}) processed file", sampleIndex, mConfig.SampleData.SampleIds.get(sampleIndex));
+        }
+
+        return (long)0;
+    }
+
+    private double[] loadSampleFile(final Path filename)
+    {
+        final double[] sampleColumn = new double[mItemIds.size()];
+
+        try(BufferedReader fileReader = Files.newBufferedReader(filename))
+        {
+            final Map<String,Integer> fieldsMap = createFieldsIndexMap(fileReader.readLine(), DELIMITER);
+
+            int geneIdIndex = fieldsMap.get(FLD_GENE_ID);
+            int transNameIndex = mIsTranscriptLevel ? fieldsMap.get(FLD_TRANS_NAME) : -1;
+            int tpmIndex = fieldsMap.get(FLD_TPM);
+            int itemIdIndex = mIsTranscriptLevel ? transNameIndex : geneIdIndex;
+
+            int itemIndex = 0;
+            int manualLookupCount = 0;
+
+            String line = fileReader.readLine();
+
+            for(; line != null; line = fileReader.readLine())
+            {
+                final String[] items = line.split(DELIMITER);
+
+                if(!mConfig.RestrictedGeneIds.isEmpty() && !mConfig.RestrictedGeneIds.contains(items[geneIdIndex]))
+                    continue;
+
+                final String itemId = items[itemIdIndex];
+
+                // rows are usually in the same order as the first sample's, so only look them up when not
+                if(itemIndex >= mItemIds.size() || !mItemIds.get(itemIndex).equals(itemId))
+                {
+                    ++manualLookupCount;
+
+                    Integer matrixIndex = mItemIndexMap.get(itemId);
+
+                    if(matrixIndex == null)
+                    {
+                        ISF_LOGGER.error("item({}) not present in item cache samples", itemId);
+                        return sampleColumn;
+                    }
+
+                    itemIndex = matrixIndex;
+                }
+
+                double tpm = Double.parseDouble(items[tpmIndex]);
+
+                if(mConfig.Expression.TpmThreshold > 0 && tpm < mConfig.Expression.TpmThreshold)
+                {
+                    ++itemIndex;
+                    continue;
+                }
+
+                if(mConfig.Expression.UseLogTpm)
+                    tpm = log(tpm + 1);
+
+                sampleColumn[itemIndex] = tpm;
+                ++itemIndex;
+            }
+
+            if(manualLookupCount > 0)
+            {
+                ISF_LOGGER.info("required {} manual gene look-ups", manualLookupCount);
+            }
+        }
+        catch(IOException e)
+        {
+            ISF_LOGGER.error("failed to load gene data file({}): {}", filename.toString(), e.toString());
+        }
+
+        return sampleColumn;
+    }
+}
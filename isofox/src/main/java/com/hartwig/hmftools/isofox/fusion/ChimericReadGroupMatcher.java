@@ -0,0 +1,54 @@
+package com.hartwig.hmftools.isofox.fusion;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.google.common.collect.Lists;
+
+// matches the incomplete chimeric read groups left by each chromosome task with those from other chromosomes by read ID,
+// without serialising the tasks - the map locks each hash bin separately, so a group is merged under its own bin's lock
+// only, and is completed as soon as its last read arrives and returned to the task which supplied that read
+public class ChimericReadGroupMatcher
+{
+    private final ConcurrentHashMap<String,ReadGroup> mIncompleteGroups;
+
+    private static final int INITIAL_CAPACITY = 4096;
+
+    public ChimericReadGroupMatcher()
+    {
+        mIncompleteGroups = new ConcurrentHashMap<>(INITIAL_CAPACITY);
+    }
+
+    public List<ReadGroup> addReadGroups(final Collection<ReadGroup> readGroups)
+    {
+        final List<ReadGroup> completeGroups = Lists.newArrayList();
+
+        for(final ReadGroup readGroup : readGroups)
+        {
+            if(readGroup.isComplete())
+            {
+                completeGroups.add(readGroup);
+                continue;
+            }
+
+            mIncompleteGroups.compute(readGroup.id(), (readId, existingGroup) ->
+            {
+                if(existingGroup == null)
+                    return readGroup;
+
+                existingGroup.merge(readGroup);
+
+                if(!existingGroup.isComplete())
+                    return existingGroup;
+
+                completeGroups.add(existingGroup);
+                return null;
+            });
+        }
+
+        return completeGroups;
+    }
+
+    public int incompleteGroupCount() { return mIncompleteGroups.size(); }
+}
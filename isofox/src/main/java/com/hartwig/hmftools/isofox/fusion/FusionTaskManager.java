@@ -7,12 +7,12 @@ import static com.hartwig.hmftools.common.utils.sv.StartEndIterator.SE_START;
 import static com.hartwig.hmftools.isofox.IsofoxConfig.ISF_LOGGER;
 import static com.hartwig.hmftools.isofox.fusion.FusionConfig.LOG_READ_ID;
 import static com.hartwig.hmftools.isofox.fusion.FusionUtils.formChromosomePair;
-import static com.hartwig.hmftools.isofox.fusion.ReadGroup.mergeChimericReadMaps;
 
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 import com.google.common.collect.Lists;
@@ -33,7 +33,7 @@ public class FusionTaskManager
     private final FusionGeneFilters mGeneFilters;
 
     private final Map<String,List<FusionFragment>> mRealignCandidateMap;
-    private final Map<String,Map<String,ReadGroup>> mIncompleteReadGroups; // keyed by chromosome then readId
+    private final ChimericReadGroupMatcher mReadGroupMatcher; // incomplete inter-chromosomal groups, matched across chromosome tasks
 
     private final PerformanceCounter mPerfCounter;
 
@@ -46,8 +46,8 @@ public class FusionTaskManager
 
         mGeneFilters = new FusionGeneFilters(config, geneTransCache);
 
-        mRealignCandidateMap = Maps.newHashMap();
-        mIncompleteReadGroups = Maps.newHashMap();
+        mRealignCandidateMap = new ConcurrentHashMap<>();
+        mReadGroupMatcher = new ChimericReadGroupMatcher();
 
         mPerfCounter = new PerformanceCounter("Fusions");
         mFusionWriter = new FusionWriter(mConfig);
@@ -58,67 +58,42 @@ public class FusionTaskManager
         return new FusionFinder(id, mConfig, mGeneTransCache, mGeneFilters, mFusionWriter);
     }
 
-    public synchronized List<ReadGroup> addIncompleteReadGroup(
+    public List<ReadGroup> addIncompleteReadGroup(
             final String chromosome, final Map<String,Map<String,ReadGroup>> chrIncompleteGroups,
             final Map<String,List<FusionFragment>> racFragments)
     {
-        int prevIncomplete = mIncompleteReadGroups.values().stream().mapToInt(x -> x.size()).sum();
+        // called by each chromosome task as it completes, with its incomplete groups keyed by the other chromosome they link to
+        int newIncomplete = chrIncompleteGroups.values().stream().mapToInt(x -> x.size()).sum();
 
         List<ReadGroup> completeGroups = Lists.newArrayList();
 
-        for(Map.Entry<String,Map<String,ReadGroup>> entry : chrIncompleteGroups.entrySet())
+        for(Map<String,ReadGroup> newGroups : chrIncompleteGroups.values())
         {
-            String otherChromosome = entry.getKey();
-            Map<String,ReadGroup> newGroups = entry.getValue();
-
-            Map<String,ReadGroup> existingGroups = mIncompleteReadGroups.get(otherChromosome);
-
-            if(existingGroups == null)
-            {
-                Map<String,ReadGroup> chromosomeGroups = mIncompleteReadGroups.get(chromosome);
-                if(chromosomeGroups == null)
-                {
-                    chromosomeGroups = Maps.newHashMap();
-                    mIncompleteReadGroups.put(chromosome, chromosomeGroups);
-                }
-
-                chromosomeGroups.putAll(newGroups);
-
-                ISF_LOGGER.debug("added chromosomes({} & {}) newGroups({})",
-                        chromosome, otherChromosome, newGroups.size());
-            }
-            else
-            {
-                mergeChimericReadMaps(existingGroups, completeGroups, newGroups);
-
-                ISF_LOGGER.debug("combined chromosomes({} & {}) existing({}) new({}) complete({})",
-                        chromosome, otherChromosome, existingGroups.size(), newGroups.size(), completeGroups.size());
-            }
+            completeGroups.addAll(mReadGroupMatcher.addReadGroups(newGroups.values()));
         }
 
         mRealignCandidateMap.putAll(racFragments);
         int totalRacFrags = mRealignCandidateMap.values().stream().mapToInt(x -> x.size()).sum();
         int newRacFrags = racFragments.values().stream().mapToInt(x -> x.size()).sum();
-        int newIncomplete = mIncompleteReadGroups.values().stream().mapToInt(x -> x.size()).sum();
 
         // exclude duplicate reads now that group is known (since not all reads are marked as duplicates)
         completeGroups = completeGroups.stream().filter(x -> !x.isDuplicate()).collect(Collectors.toList());
 
-        ISF_LOGGER.info("chr({}) chimeric groups(partial={} complete={}) total incomplete({} -> {}) racFrags({} new={})",
-                chromosome, chrIncompleteGroups.size(), completeGroups.size(), prevIncomplete, newIncomplete,
+        ISF_LOGGER.info("chr({}) chimeric groups(partial={} complete={}) total incomplete({}) racFrags({} new={})",
+                chromosome, newIncomplete, completeGroups.size(), mReadGroupMatcher.incompleteGroupCount(),
                 totalRacFrags, newRacFrags);
 
         return completeGroups;
     }
 
-    public synchronized final Map<String,List<FusionFragment>> getRealignCandidateMap() { return mRealignCandidateMap; }
+    public final Map<String,List<FusionFragment>> getRealignCandidateMap() { return mRealignCandidateMap; }
 
     public void close()
     {
         long unfusedRacFrags = mRealignCandidateMap.values().stream()
                 .mapToLong(x -> x.stream().filter(y -> y.assignedFusions().isEmpty()).count()).sum();
 
-        int incompleteGroups = mIncompleteReadGroups.values().stream().mapToInt(x -> x.size()).sum();
+        int incompleteGroups = mReadGroupMatcher.incompleteGroupCount();
 
         ISF_LOGGER.info("all fusion tasks complete - unfused RAC frags({}) incompleteGroups({})", unfusedRacFrags, incompleteGroups);
 
@@ -33,6 +33,7 @@ import com.hartwig.hmftools.isofox.adjusts.FragmentSizeCalcs;
 import com.hartwig.hmftools.isofox.common.GeneCollection;
 import com.hartwig.hmftools.isofox.common.GeneReadData;
 import com.hartwig.hmftools.isofox.common.RegionReadData;
+import com.hartwig.hmftools.isofox.expression.ExpectedCountsBinaryWriter;
 import com.hartwig.hmftools.isofox.expression.ExpectedRatesGenerator;
 import com.hartwig.hmftools.isofox.expression.TranscriptExpression;
 import com.hartwig.hmftools.isofox.adjusts.GcRatioCounts;
@@ -63,6 +64,7 @@ public class ResultsWriter
     private BufferedWriter mReadGcRatioWriter;
     private BufferedWriter mRetainedIntronWriter;
     private BufferedWriter mSpliceSiteWriter;
+    private ExpectedCountsBinaryWriter mExpCountsBinaryWriter;
 
     public static final String ISOFOX_ID = ".isf.";
     public static final String DELIMITER = ",";
@@ -92,6 +94,7 @@ public class ResultsWriter
         mReadGcRatioWriter = null;
         mRetainedIntronWriter = null;
         mSpliceSiteWriter = null;
+        mExpCountsBinaryWriter = null;
 
         if(mConfig.runFunction(TRANSCRIPT_COUNTS))
             initialiseGeneCollectionWriter();
@@ -116,6 +119,9 @@ public class ResultsWriter
         closeBufferedWriter(mReadGcRatioWriter);
         closeBufferedWriter(mRetainedIntronWriter);
         closeBufferedWriter(mSpliceSiteWriter);
+
+        if(mExpCountsBinaryWriter != null)
+            mExpCountsBinaryWriter.close();
     }
 
     private void initialiseExternalWriters()
@@ -128,6 +134,9 @@ public class ResultsWriter
             mExpRateWriter = ExpectedRatesGenerator.createWriter(mConfig);
         }
 
+        if(mConfig.runFunction(EXPECTED_TRANS_COUNTS))
+            mExpCountsBinaryWriter = ExpectedRatesGenerator.createBinaryWriter(mConfig);
+
         if(mConfig.WriteFragmentLengthsByGene)
         {
             mGeneFragLengthWriter = FragmentSizeCalcs.createGeneFragmentLengthWriter(mConfig);
@@ -157,6 +166,7 @@ public class ResultsWriter
     }
 
     public BufferedWriter getExpRatesWriter() { return mExpRateWriter;}
+    public ExpectedCountsBinaryWriter getExpCountsBinaryWriter() { return mExpCountsBinaryWriter; }
     public BufferedWriter getCategoryCountsWriter() { return mCategoryCountsWriter;}
     public BufferedWriter getAltSpliceJunctionWriter() { return mAltSpliceJunctionWriter;}
     public BufferedWriter getRetainedIntronWriter() { return mRetainedIntronWriter;}
@@ -35,8 +35,8 @@ public class TranscriptResult
     public final int UniqueSpliceJunctionFragments;
     public final int UniqueNonSJFragments;
     public final int DiscordantFragments;
-    public final double EffectiveLength;
 
+    private double mEffectiveLength;
     private double mFitAllocation;
     private double mRawFitAllocation;
     private double mRawTpm;
@@ -97,7 +97,7 @@ public class TranscriptResult
         UniqueNonSJFragments = supportingFragments[FragmentMatchType.typeAsInt(FragmentMatchType.LONG)][UNIQUE_TRANS_COUNT];
         DiscordantFragments = supportingFragments[FragmentMatchType.typeAsInt(FragmentMatchType.DISCORDANT)][TRANS_COUNT];
 
-        EffectiveLength = calcEffectiveLength(exonicBases, expRateFragmentLengths);
+        mEffectiveLength = calcEffectiveLength(exonicBases, expRateFragmentLengths);
 
         mFitAllocation = 0;
         mRawFitAllocation = 0;
@@ -110,6 +110,11 @@ public class TranscriptResult
     public void setPreGcFitAllocation(double alloc) { mRawFitAllocation = alloc; }
     public void setLowMapQualsAllocation(double alloc) { mLowMapQualsAllocation = alloc; }
 
+    public void setEffectiveLength(final List<FragmentSize> fragmentLengthData)
+    {
+        mEffectiveLength = calcEffectiveLength(ExonicBases, fragmentLengthData);
+    }
+
     public void setTPM(double raw, double adjusted)
     {
         mRawTpm = raw;
@@ -147,7 +152,7 @@ public class TranscriptResult
 
     public double fragmentsPerKb()
     {
-        return EffectiveLength > 0 ? mFitAllocation / (EffectiveLength / 1000.0) : 0;
+        return mEffectiveLength > 0 ? mFitAllocation / (mEffectiveLength / 1000.0) : 0;
     }
 
     private static boolean isSpliceJunctionUnique(final String transId, final List<TranscriptData> transDataList, long exonEnd, long exonStart)
@@ -205,7 +210,7 @@ public class TranscriptResult
                 .add(Trans.TransName)
                 .add(String.valueOf(Trans.exons().size()))
                 .add(String.valueOf(ExonicBases))
-                .add(String.format("%.0f", EffectiveLength))
+                .add(String.format("%.0f", mEffectiveLength))
                 .add(String.format("%.1f", mFitAllocation))
                 .add(String.format("%.1f", mRawFitAllocation))
                 .add(String.format("%6.3e", mAdjustedTpm))
@@ -1,5 +1,6 @@
 package com.hartwig.hmftools.isofox;
 
+import static com.hartwig.hmftools.common.utils.io.BinaryCacheUtils.BINARY_FILE_EXTENSION;
 import static com.hartwig.hmftools.isofox.TestUtils.GENE_NAME_1;
 import static com.hartwig.hmftools.isofox.TestUtils.POS_STRAND;
 import static com.hartwig.hmftools.isofox.common.FragmentMatchType.LONG;
@@ -12,8 +13,12 @@ import static com.hartwig.hmftools.isofox.expression.ExpectedRatesGenerator.crea
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.List;
 import java.util.Map;
 
@@ -26,7 +31,10 @@ import com.hartwig.hmftools.isofox.common.FragmentMatchType;
 import com.hartwig.hmftools.isofox.common.GeneCollection;
 import com.hartwig.hmftools.isofox.common.GeneReadData;
 import com.hartwig.hmftools.isofox.expression.CategoryCountsData;
+import com.hartwig.hmftools.isofox.expression.ExpectedCountsBinaryFile;
+import com.hartwig.hmftools.isofox.expression.ExpectedCountsBinaryWriter;
 import com.hartwig.hmftools.common.sigs.ExpectationMaxFit;
+import com.hartwig.hmftools.common.sigs.ExpectationMaxFitter;
 import com.hartwig.hmftools.isofox.expression.ExpectedRatesData;
 import com.hartwig.hmftools.isofox.expression.ExpectedRatesGenerator;
 import com.hartwig.hmftools.common.utils.Matrix;
@@ -700,6 +708,76 @@ public class ExpectedRatesTest
         assertEquals(4.905, allocations[0], 0.001);
         assertEquals(11.095, allocations[1], 0.001);
 
+        // a fitter reused across fits matches the single fit, and with acceleration converges to the same allocations
+        ExpectationMaxFitter fitter = new ExpectationMaxFitter(sigs);
+        assertEquals(4, fitter.nonZeroCount());
+
+        double[] fitterAllocations = fitter.fit(transCounts);
+        assertEquals(allocations[0], fitterAllocations[0], 1e-10);
+        assertEquals(allocations[1], fitterAllocations[1], 1e-10);
+
+        transCounts[2] = 6;
+        fitter.fit(transCounts, 1e-6, 100);
+        int standardIterations = fitter.iterations();
+
+        fitter.setAcceleration(true);
+        fitterAllocations = fitter.fit(transCounts, 1e-6, 100);
+        assertTrue(fitter.iterations() < standardIterations);
+        assertEquals(5.0, fitterAllocations[0], 0.0001);
+        assertEquals(10.0, fitterAllocations[1], 0.0001);
     }
 
+    @Test
+    public void testExpectedCountsBinaryFile() throws IOException
+    {
+        final List<FragmentSize> fragmentLengths = Lists.newArrayList(new FragmentSize(100, 0), new FragmentSize(250, 0));
+
+        CategoryCountsData catCounts1 = new CategoryCountsData(Lists.newArrayList(1, 2), Lists.newArrayList("ENSG0001"));
+        catCounts1.initialiseLengthCounts(fragmentLengths.size());
+        catCounts1.addFragLengthCounts(10, 0);
+        catCounts1.addFragLengthCounts(4, 1);
+
+        CategoryCountsData catCounts2 = new CategoryCountsData(Lists.newArrayList(3), Lists.newArrayList());
+        catCounts2.initialiseLengthCounts(fragmentLengths.size());
+        catCounts2.addFragLengthCounts(7, 1);
+
+        CategoryCountsData catCounts3 = new CategoryCountsData(Lists.newArrayList(), Lists.newArrayList("ENSG0002", "ENSG0003"));
+        catCounts3.initialiseLengthCounts(fragmentLengths.size());
+        catCounts3.addFragLengthCounts(5, 0);
+
+        final File file = File.createTempFile("exp_counts", BINARY_FILE_EXTENSION);
+
+        try
+        {
+            ExpectedCountsBinaryWriter writer = new ExpectedCountsBinaryWriter(file.getAbsolutePath(), fragmentLengths);
+            writer.writeGeneSetCounts("1_0", Lists.newArrayList(catCounts1, catCounts2));
+            writer.writeGeneSetCounts("1_1", Lists.newArrayList(catCounts3));
+            writer.close();
+
+            ExpectedCountsBinaryFile binaryFile = ExpectedCountsBinaryFile.open(file.getAbsolutePath());
+            assertNotNull(binaryFile);
+            assertEquals(2, binaryFile.geneSetCount());
+            assertEquals(2, binaryFile.fragmentLengths().length);
+            assertEquals(250, binaryFile.fragmentLengths()[1]);
+
+            List<CategoryCountsData> geneSetCounts = binaryFile.getGeneSetCounts("1_0", Lists.newArrayList("ENSG0001"));
+            assertNotNull(geneSetCounts);
+            assertEquals(2, geneSetCounts.size());
+            assertEquals(catCounts1.combinedKey(), geneSetCounts.get(0).combinedKey());
+            assertEquals(14, geneSetCounts.get(0).fragmentCount(), 0.001);
+            assertEquals(4, geneSetCounts.get(0).fragmentCountsByLength()[1], 0.001);
+            assertEquals(3, (int)geneSetCounts.get(1).transcriptIds().get(0));
+
+            // a gene collection ID which doesn't match the genes falls back to a search by gene
+            geneSetCounts = binaryFile.getGeneSetCounts("1_0", Lists.newArrayList("ENSG0003", "ENSG0002"));
+            assertNotNull(geneSetCounts);
+            assertEquals(catCounts3.combinedKey(), geneSetCounts.get(0).combinedKey());
+
+            assertNull(binaryFile.getGeneSetCounts("1_5", Lists.newArrayList("ENSG0004")));
+        }
+        finally
+        {
+            file.delete();
+        }
+    }
 }
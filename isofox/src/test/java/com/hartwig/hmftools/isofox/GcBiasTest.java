@@ -1,8 +1,22 @@
 package com.hartwig.hmftools.isofox;
 
+import static com.hartwig.hmftools.common.utils.io.BinaryCacheUtils.BINARY_FILE_EXTENSION;
+
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Map;
 
+import com.google.common.collect.Maps;
+import com.hartwig.hmftools.isofox.adjusts.GcRatioCacheFile;
 import com.hartwig.hmftools.isofox.adjusts.GcRatioCounts;
+import com.hartwig.hmftools.isofox.adjusts.GcTranscriptCalculator;
 
 import org.junit.Test;
 
@@ -43,5 +57,79 @@ public class GcBiasTest
         assertEquals(1, counts[0], 0.001);
     }
 
+    @Test
+    public void testGcRatioCacheFile() throws IOException
+    {
+        final File file = File.createTempFile("read_76_exp_gc_ratios", BINARY_FILE_EXTENSION);
+        file.deleteOnExit();
+
+        int readLength = 76;
+        long fingerprint = 12345;
+        long refGenomeFingerprint = 678;
+
+        GcRatioCounts transCounts = new GcRatioCounts();
+        transCounts.getCounts()[40] = 2;
+        transCounts.getCounts()[60] = 1;
+
+        // the cache holds the percentages as rounded for the CSV
+        final String[] percentages = GcTranscriptCalculator.formatPercentages(transCounts.getCounts());
+        final double[] csvFrequencies = new double[percentages.length];
+
+        for(int i = 0; i < percentages.length; ++i)
+        {
+            csvFrequencies[i] = Double.parseDouble(percentages[i]);
+        }
+
+        assertEquals("0", percentages[0]);
+        assertEquals(0.666667, csvFrequencies[40], 0);
+
+        GcRatioCacheFile cacheWriter = new GcRatioCacheFile(file.getAbsolutePath(), readLength, fingerprint, refGenomeFingerprint);
+        cacheWriter.write("TRANS_01", csvFrequencies);
+
+        // incomplete until closed
+        assertFalse(GcRatioCacheFile.isValid(file.getAbsolutePath(), readLength, fingerprint, refGenomeFingerprint));
+
+        cacheWriter.close();
+
+        assertTrue(GcRatioCacheFile.isValid(file.getAbsolutePath(), readLength, fingerprint, refGenomeFingerprint));
+        assertFalse(GcRatioCacheFile.isValid(file.getAbsolutePath(), 151, fingerprint, refGenomeFingerprint));
+        assertFalse(GcRatioCacheFile.isValid(file.getAbsolutePath(), readLength, fingerprint + 1, refGenomeFingerprint));
+        assertFalse(GcRatioCacheFile.isValid(file.getAbsolutePath(), readLength, fingerprint, refGenomeFingerprint + 1));
+
+        assertTrue(GcRatioCacheFile.matchesRefGenome(file.getAbsolutePath(), refGenomeFingerprint));
+        assertFalse(GcRatioCacheFile.matchesRefGenome(file.getAbsolutePath(), refGenomeFingerprint + 1));
+
+        final Map<String,GcRatioCounts> gcRatioCache = Maps.newHashMap();
+        assertFalse(GcRatioCacheFile.load(file.getAbsolutePath(), 151, refGenomeFingerprint, gcRatioCache));
+        assertFalse(GcRatioCacheFile.load(file.getAbsolutePath(), readLength, refGenomeFingerprint + 1, gcRatioCache));
+        assertTrue(GcRatioCacheFile.load(file.getAbsolutePath(), readLength, refGenomeFingerprint, gcRatioCache));
+
+        assertEquals(1, gcRatioCache.size());
+        assertArrayEquals(csvFrequencies, gcRatioCache.get("TRANS_01").getCounts(), 0);
+
+        // no ref genome configured accepts the cache's own
+        gcRatioCache.clear();
+        assertTrue(GcRatioCacheFile.load(file.getAbsolutePath(), 0, 0, gcRatioCache));
+        assertEquals(1, gcRatioCache.size());
+    }
+
+    @Test
+    public void testRefGenomeFingerprint() throws IOException
+    {
+        final File refGenomeFile = File.createTempFile("ref_genome", ".fasta");
+        final File indexFile = new File(refGenomeFile.getPath() + ".fai");
+        refGenomeFile.deleteOnExit();
+        indexFile.deleteOnExit();
+
+        Files.write(refGenomeFile.toPath(), ">1\nACGTACGT\n>2\nACGT\n".getBytes());
+        Files.write(indexFile.toPath(), "1\t8\t3\t8\t9\n2\t4\t15\t4\t5\n".getBytes());
+
+        long fingerprint = GcRatioCacheFile.refGenomeFingerprint(refGenomeFile);
+        assertEquals(fingerprint, GcRatioCacheFile.refGenomeFingerprint(new File(refGenomeFile.getPath())));
+        assertEquals(0, GcRatioCacheFile.refGenomeFingerprint(null));
 
+        // same size but a different contig length
+        Files.write(indexFile.toPath(), "1\t8\t3\t8\t9\n2\t3\t15\t4\t5\n".getBytes());
+        assertNotEquals(fingerprint, GcRatioCacheFile.refGenomeFingerprint(refGenomeFile));
+    }
 }
@@ -1,23 +1,53 @@
 package com.hartwig.hmftools.isofox;
 
+import static com.hartwig.hmftools.common.ensemblcache.GeneTestUtils.addGeneData;
+import static com.hartwig.hmftools.common.ensemblcache.GeneTestUtils.addTransExonData;
+import static com.hartwig.hmftools.common.ensemblcache.GeneTestUtils.createEnsemblGeneData;
+import static com.hartwig.hmftools.common.ensemblcache.GeneTestUtils.createGeneDataCache;
+import static com.hartwig.hmftools.common.ensemblcache.GeneTestUtils.createTransExons;
+import static com.hartwig.hmftools.common.ensemblcache.GeneTestUtils.generateExonStarts;
+import static com.hartwig.hmftools.common.ensemblcache.TranscriptProteinData.BIOTYPE_PROTEIN_CODING;
+import static com.hartwig.hmftools.common.utils.io.BinaryCacheUtils.BINARY_FILE_EXTENSION;
 import static com.hartwig.hmftools.common.utils.sv.StartEndIterator.SE_END;
 import static com.hartwig.hmftools.common.utils.sv.StartEndIterator.SE_PAIR;
 import static com.hartwig.hmftools.common.utils.sv.StartEndIterator.SE_START;
+import static com.hartwig.hmftools.isofox.IsofoxConstants.SINGLE_MAP_QUALITY;
+import static com.hartwig.hmftools.isofox.TestUtils.CHR_1;
+import static com.hartwig.hmftools.isofox.TestUtils.POS_STRAND;
 import static com.hartwig.hmftools.isofox.results.TranscriptResult.calcEffectiveLength;
 
 import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertFalse;
+import static junit.framework.TestCase.assertTrue;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
+import com.hartwig.hmftools.common.ensemblcache.EnsemblDataCache;
+import com.hartwig.hmftools.common.ensemblcache.EnsemblGeneData;
+import com.hartwig.hmftools.common.utils.sv.SvRegion;
 import com.hartwig.hmftools.isofox.adjusts.FragmentSize;
+import com.hartwig.hmftools.isofox.adjusts.FragmentSizeCalcs;
+import com.hartwig.hmftools.isofox.common.BamRegionScanner;
+import com.hartwig.hmftools.isofox.common.BamSlicer;
 import com.hartwig.hmftools.isofox.common.BaseDepth;
+import com.hartwig.hmftools.isofox.common.GeneCollection;
+import com.hartwig.hmftools.isofox.expression.cohort.ExpressionMatrixFile;
+import com.hartwig.hmftools.isofox.results.ResultsWriter;
 
 import org.junit.Test;
 
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMSequenceRecord;
+import htsjdk.samtools.util.CloseableIterator;
+
 public class MiscTest
 {
     @Test
@@ -34,6 +64,39 @@ public class MiscTest
         assertEquals(83.33, calcEffectiveLength(250, fragmentLengthData), 0.1);
     }
 
+    @Test
+    public void testExpressionMatrixFile() throws IOException
+    {
+        final List<String> sampleIds = Lists.newArrayList("SAMPLE_01", "SAMPLE_02", "SAMPLE_03");
+        final List<String> geneIds = Lists.newArrayList("ENSG0001", "ENSG0002");
+        final List<String> geneNames = Lists.newArrayList("GENE1", "GENE2");
+
+        final double[][] sampleColumns = { { 1.5, 0 }, { 2.5, 10.25 }, { 0, 3.75 } };
+
+        final File file = File.createTempFile("gene_expression_matrix", BINARY_FILE_EXTENSION);
+        file.deleteOnExit();
+
+        ExpressionMatrixFile.write(file.getAbsolutePath(), sampleIds, geneIds, geneNames, Lists.newArrayList(), sampleColumns);
+
+        ExpressionMatrixFile matrixFile = ExpressionMatrixFile.open(file.getAbsolutePath());
+        assertTrue(matrixFile != null);
+
+        assertEquals(2, matrixFile.rowCount());
+        assertEquals(3, matrixFile.sampleCount());
+        assertEquals(geneIds, matrixFile.GeneIds);
+        assertEquals(geneNames, matrixFile.GeneNames);
+        assertTrue(matrixFile.TranscriptNames.isEmpty());
+        assertEquals(1, matrixFile.getSampleIndex("SAMPLE_02").intValue());
+
+        for(int s = 0; s < sampleColumns.length; ++s)
+        {
+            for(int r = 0; r < geneIds.size(); ++r)
+            {
+                assertEquals(sampleColumns[s][r], matrixFile.value(r, s), 1e-10);
+            }
+        }
+    }
+
     @Test
     public void testBaseDepth()
     {
@@ -86,5 +149,235 @@ public class MiscTest
         assertEquals(0, mapDepth.depthAtBase(101));
         assertEquals(2, mapDepth.depthAtBase(115));
         assertEquals(0, mapDepth.depthAtBase(200)); // below the threshold for inclusion
+
+        // a large range with reads crossing depth blocks, and re-initialisation clearing previous depth
+        baseRange[SE_START] = 1000;
+        baseRange[SE_END] = 2001000;
+        baseDepth.initialise(baseRange);
+
+        assertEquals(0, baseDepth.depthAtBase(100));
+        assertEquals(0, baseDepth.basesWithDepth());
+
+        readCoords.clear();
+        readCoords.add(new int[] {5000, 15000});
+        readCoords.add(new int[] {1990000, 2001500});
+        baseDepth.processRead(readCoords);
+        baseDepth.processRead(readCoords);
+
+        assertEquals(2, baseDepth.depthAtBase(5000));
+        assertEquals(2, baseDepth.depthAtBase(9096));
+        assertEquals(2, baseDepth.depthAtBase(15000));
+        assertEquals(0, baseDepth.depthAtBase(15001));
+        assertEquals(2, baseDepth.depthAtBase(2001000));
+        assertEquals(10001 + 11001, baseDepth.basesWithDepth());
+        assertEquals(2, baseDepth.maxDepth());
+    }
+
+    @Test
+    public void testMainPassFragmentLengthSampling()
+    {
+        IsofoxConfig config = new IsofoxConfig();
+        EnsemblDataCache geneTransCache = createGeneDataCache();
+
+        // a gene long enough to be sampled, with a large intron for unspliced fragments, and another too short
+        String geneId = "ENSG0010";
+        int geneStart = 100000;
+
+        EnsemblGeneData longGene = createEnsemblGeneData(geneId, "GENE10", CHR_1, POS_STRAND, geneStart, geneStart + 2000);
+        EnsemblGeneData shortGene = createEnsemblGeneData("ENSG0011", "GENE11", CHR_1, POS_STRAND, 110000, 110500);
+        addGeneData(geneTransCache, CHR_1, Lists.newArrayList(longGene, shortGene));
+
+        addTransExonData(geneTransCache, geneId, Lists.newArrayList(createTransExons(
+                geneId, 10, POS_STRAND, generateExonStarts(geneStart, 2, 100, 1800),
+                100, null, null, true, BIOTYPE_PROTEIN_CODING)));
+
+        addTransExonData(geneTransCache, shortGene.GeneId, Lists.newArrayList(createTransExons(
+                shortGene.GeneId, 11, POS_STRAND, generateExonStarts(shortGene.GeneStart, 2, 100, 300),
+                100, null, null, true, BIOTYPE_PROTEIN_CODING)));
+
+        FragmentSizeCalcs fragSizeCalcs = new FragmentSizeCalcs(config, geneTransCache, null);
+        fragSizeCalcs.initialise(CHR_1, Lists.newArrayList(longGene, shortGene), 2);
+
+        assertFalse(fragSizeCalcs.setCurrentGenes(Lists.newArrayList(shortGene)));
+        assertTrue(fragSizeCalcs.setCurrentGenes(Lists.newArrayList(longGene)));
+
+        // reads marked as duplicates are ignored, as they would be by a separate fragment length pass
+        addReadPair(fragSizeCalcs, "READ_DUP", geneStart + 500, 200, true);
+        assertTrue(fragSizeCalcs.getFragmentLengths().isEmpty());
+
+        addReadPair(fragSizeCalcs, "READ_01", geneStart + 500, 250, false);
+        assertFalse(fragSizeCalcs.samplingComplete());
+
+        addReadPair(fragSizeCalcs, "READ_02", geneStart + 600, 300, false);
+        assertTrue(fragSizeCalcs.samplingComplete());
+
+        // further reads are ignored once the required sample is taken
+        addReadPair(fragSizeCalcs, "READ_03", geneStart + 700, 300, false);
+
+        final List<FragmentSize> fragmentLengths = fragSizeCalcs.getFragmentLengths();
+        assertEquals(2, fragmentLengths.size());
+        assertEquals(250, fragmentLengths.get(0).Length);
+        assertEquals(1, fragmentLengths.get(0).Frequency);
+        assertEquals(300, fragmentLengths.get(1).Length);
+        assertEquals(1, fragmentLengths.get(1).Frequency);
+    }
+
+    @Test
+    public void testGeneBatchCollections()
+    {
+        IsofoxConfig config = new IsofoxConfig();
+        EnsemblDataCache geneTransCache = createGeneDataCache();
+
+        // single genes and pairs of overlapping genes, each with a transcript spanning the whole gene
+        final List<EnsemblGeneData> geneDataList = Lists.newArrayList();
+        int geneStart = 10000;
+
+        for(int i = 0; i < 30; ++i)
+        {
+            String geneId = String.format("ENSG%04d", i);
+            int geneEnd = geneStart + 500;
+            geneDataList.add(createEnsemblGeneData(geneId, "GENE" + i, CHR_1, POS_STRAND, geneStart, geneEnd));
+
+            addTransExonData(geneTransCache, geneId, Lists.newArrayList(createTransExons(
+                    geneId, i, POS_STRAND, generateExonStarts(geneStart, 2, 100, 300),
+                    100, null, null, true, BIOTYPE_PROTEIN_CODING)));
+
+            geneStart += (i % 3 == 0) ? 300 : 10000;
+        }
+
+        addGeneData(geneTransCache, CHR_1, geneDataList);
+
+        assertEquals(singleBatchCollections(config, geneTransCache, geneDataList),
+                batchedCollections(config, geneTransCache, geneDataList));
+
+        // collections containing an excluded gene are skipped, including at the end of a batch
+        config.ExcludedGeneIds.add("ENSG0003"); // overlaps the next gene
+        config.ExcludedGeneIds.add("ENSG0008");
+        config.ExcludedGeneIds.add("ENSG0014");
+
+        final List<String> collections = singleBatchCollections(config, geneTransCache, geneDataList);
+        assertEquals(collections, batchedCollections(config, geneTransCache, geneDataList));
+        assertTrue(collections.stream().noneMatch(x -> x.contains("ENSG0003") || x.contains("ENSG0004")));
+    }
+
+    private static List<String> singleBatchCollections(
+            final IsofoxConfig config, final EnsemblDataCache geneTransCache, final List<EnsemblGeneData> geneDataList)
+    {
+        final List<String> collections = Lists.newArrayList();
+        BamFragmentReader reader = new BamFragmentReader(config, CHR_1, geneDataList, geneTransCache, new ResultsWriter(config), null, null, null);
+        reader.forEachGeneCollection(x -> collections.add(collectionInfo(x)));
+        return collections;
+    }
+
+    private static List<String> batchedCollections(
+            final IsofoxConfig config, final EnsemblDataCache geneTransCache, final List<EnsemblGeneData> geneDataList)
+    {
+        final List<BamFragmentReader> readers = Isofox.formGeneBatches(geneDataList, 4, config.ExcludedGeneIds,
+                () -> new BamFragmentReader(config, CHR_1, geneDataList, geneTransCache, new ResultsWriter(config), null, null, null));
+
+        assertTrue(readers.size() > 1);
+
+        final List<String> collections = Lists.newArrayList();
+        readers.forEach(x -> x.forEachGeneCollection(y -> collections.add(collectionInfo(y))));
+        return collections;
+    }
+
+    private static String collectionInfo(final GeneCollection geneCollection)
+    {
+        return String.format("%d: genes(%s) nonGenic(%d - %d) bounds(%d - %d)",
+                geneCollection.id(), geneCollection.geneIds(),
+                geneCollection.getNonGenicPositions()[SE_START], geneCollection.getNonGenicPositions()[SE_END],
+                geneCollection.regionBounds()[SE_START], geneCollection.regionBounds()[SE_END]);
+    }
+
+    @Test
+    public void testBamRegionScanner()
+    {
+        final List<SAMRecord> records = Lists.newArrayList();
+        records.add(createRead("READ_01", 100, 1000, 950, true, false));
+        records.add(createRead("READ_02", 280, 1000, 770, true, false)); // spans the first 2 regions
+        records.add(createRead("READ_03", 400, 1000, 650, true, false));
+        records.add(createRead("READ_04", 700, 1000, 350, true, false)); // between regions
+        records.add(createRead("READ_05", 1000, 100, -950, false, false));
+        records.add(createRead("READ_06", 500000, 500100, 150, true, false));
+
+        final int[] queryCount = {0};
+
+        BamRegionScanner.RegionQuery regionQuery = (chromosome, start) ->
+        {
+            ++queryCount[0];
+            final Iterator<SAMRecord> iter = records.stream().filter(x -> x.getAlignmentEnd() >= start).iterator();
+
+            return new CloseableIterator<SAMRecord>()
+            {
+                public void close() {}
+                public boolean hasNext() { return iter.hasNext(); }
+                public SAMRecord next() { return iter.next(); }
+            };
+        };
+
+        BamRegionScanner scanner = new BamRegionScanner(new BamSlicer(0, true, true, true), regionQuery);
+
+        final List<String> readIds = Lists.newArrayList();
+        scanner.slice(new SvRegion(CHR_1, 50, 300), x -> readIds.add(x.getReadName()));
+        assertEquals(Lists.newArrayList("READ_01", "READ_02"), readIds);
+
+        // the next region follows on without a new query, and still receives the read spanning both
+        readIds.clear();
+        scanner.slice(new SvRegion(CHR_1, 301, 600), x -> readIds.add(x.getReadName()));
+        assertEquals(Lists.newArrayList("READ_02", "READ_03"), readIds);
+
+        readIds.clear();
+        scanner.slice(new SvRegion(CHR_1, 900, 1100), x -> readIds.add(x.getReadName()));
+        assertEquals(Lists.newArrayList("READ_05"), readIds);
+        assertEquals(1, scanner.queryCount());
+
+        // a distant region is queried directly
+        readIds.clear();
+        scanner.slice(new SvRegion(CHR_1, 400000, 600000), x -> readIds.add(x.getReadName()));
+        assertEquals(Lists.newArrayList("READ_06"), readIds);
+        assertEquals(2, scanner.queryCount());
+
+        // as is one going backwards
+        readIds.clear();
+        scanner.slice(new SvRegion(CHR_1, 350, 450), x -> readIds.add(x.getReadName()));
+        assertEquals(Lists.newArrayList("READ_03"), readIds);
+        assertEquals(3, queryCount[0]);
+
+        scanner.close();
+    }
+
+    private static void addReadPair(
+            final FragmentSizeCalcs fragSizeCalcs, final String readId, int posStart, int fragmentLength, boolean isDuplicate)
+    {
+        int readLength = 50;
+        int mateStart = posStart + fragmentLength - readLength;
+
+        fragSizeCalcs.processMainPassRead(createRead(readId, posStart, mateStart, fragmentLength, true, isDuplicate));
+        fragSizeCalcs.processMainPassRead(createRead(readId, mateStart, posStart, -fragmentLength, false, isDuplicate));
+    }
+
+    private static SAMRecord createRead(
+            final String readId, int posStart, int mateStart, int insertSize, boolean isFirst, boolean isDuplicate)
+    {
+        SAMFileHeader header = new SAMFileHeader();
+        header.addSequence(new SAMSequenceRecord(CHR_1, 1000000));
+
+        SAMRecord record = new SAMRecord(header);
+        record.setReadName(readId);
+        record.setReferenceName(CHR_1);
+        record.setAlignmentStart(posStart);
+        record.setCigarString("50M");
+        record.setMappingQuality(SINGLE_MAP_QUALITY);
+        record.setReadPairedFlag(true);
+        record.setFirstOfPairFlag(isFirst);
+        record.setSecondOfPairFlag(!isFirst);
+        record.setReadNegativeStrandFlag(!isFirst);
+        record.setMateNegativeStrandFlag(isFirst);
+        record.setMateReferenceName(CHR_1);
+        record.setMateAlignmentStart(mateStart);
+        record.setInferredInsertSize(insertSize);
+        record.setDuplicateReadFlag(isDuplicate);
+        return record;
     }
 }
@@ -482,4 +482,62 @@ public class ChimericReadTest
         assertTrue(setHasMultipleKnownSpliceGenes(Lists.newArrayList(read), knownPairGeneIds));
     }
 
+    @Test
+    public void testInterChromosomalGroupMatching() throws InterruptedException
+    {
+        ChimericReadGroupMatcher matcher = new ChimericReadGroupMatcher();
+
+        // each chromosome task supplies one read of each pair, concurrently and in the opposite order to the other
+        int groupCount = 1000;
+        final List<ReadGroup> chr1Groups = Lists.newArrayList();
+        final List<ReadGroup> chr2Groups = Lists.newArrayList();
+
+        for(int readId = 0; readId < groupCount; ++readId)
+        {
+            chr1Groups.add(new ReadGroup(createReadRecord(readId, CHR_1, 1000, 1039, "", null, 0, "2", 2000)));
+            chr2Groups.add(0, new ReadGroup(createReadRecord(readId, "2", 2000, 2039, "", null, 0, CHR_1, 1000)));
+        }
+
+        final List<ReadGroup> completeGroups = Lists.newArrayList();
+
+        Thread chr2Task = new Thread(() ->
+        {
+            List<ReadGroup> groups = matcher.addReadGroups(chr2Groups);
+
+            synchronized(completeGroups)
+            {
+                completeGroups.addAll(groups);
+            }
+        });
+
+        chr2Task.start();
+
+        List<ReadGroup> groups = matcher.addReadGroups(chr1Groups);
+
+        synchronized(completeGroups)
+        {
+            completeGroups.addAll(groups);
+        }
+
+        chr2Task.join();
+
+        assertEquals(groupCount, completeGroups.size());
+        assertTrue(completeGroups.stream().allMatch(x -> x.size() == 2));
+        assertEquals(0, matcher.incompleteGroupCount());
+
+        // a group with a supplementary read needs its third read before it is complete
+        ReadRecord read1 = createReadRecord(groupCount, CHR_1, 1000, 1039, "", null, 0, "2", 2000);
+        read1.setSuppAlignment("3;5000;+;20M20S;255;0");
+        ReadRecord read2 = createReadRecord(groupCount, "2", 2000, 2039, "", null, 0, CHR_1, 1000);
+        ReadRecord read3 = createReadRecord(groupCount, "3", 5000, 5019, "", null, 0, CHR_1, 1000);
+
+        assertTrue(matcher.addReadGroups(Lists.newArrayList(new ReadGroup(read1))).isEmpty());
+        assertTrue(matcher.addReadGroups(Lists.newArrayList(new ReadGroup(read2))).isEmpty());
+        assertEquals(1, matcher.incompleteGroupCount());
+
+        groups = matcher.addReadGroups(Lists.newArrayList(new ReadGroup(read3)));
+        assertEquals(1, groups.size());
+        assertEquals(3, groups.get(0).size());
+        assertEquals(0, matcher.incompleteGroupCount());
+    }
 }
@@ -23,6 +23,7 @@ import static com.hartwig.hmftools.sig_analyser.common.CommonUtils.SAMPLE_COUNTS
 import static com.hartwig.hmftools.sig_analyser.common.CommonUtils.LOG_DEBUG;
 import static com.hartwig.hmftools.sig_analyser.common.CommonUtils.SAMPLE_IDS;
 import static com.hartwig.hmftools.sig_analyser.common.CommonUtils.SIG_LOGGER;
+import static com.hartwig.hmftools.sig_analyser.common.CommonUtils.THREADS;
 import static com.hartwig.hmftools.sig_analyser.common.CommonUtils.formOutputFilename;
 
 import java.io.BufferedWriter;
@@ -33,13 +34,12 @@ import java.util.Map;
 import java.util.stream.Collectors;
 
 import com.google.common.collect.Maps;
-import com.hartwig.hmftools.common.sigs.ExpectationMaxFit;
-import com.hartwig.hmftools.common.sigs.LeastSquaresFit;
 import com.hartwig.hmftools.common.utils.Matrix;
 import com.hartwig.hmftools.common.sigs.SigResiduals;
 import com.hartwig.hmftools.sig_analyser.buckets.BaSampleFitter;
 import com.hartwig.hmftools.sig_analyser.common.CommonUtils;
 import com.hartwig.hmftools.sig_analyser.fitter.FitMethod;
+import com.hartwig.hmftools.sig_analyser.fitter.SampleFitTask;
 import com.hartwig.hmftools.sig_analyser.nmf.NmfConfig;
 import com.hartwig.hmftools.sig_analyser.nmf.NmfSampleFitter;
 
@@ -68,6 +68,7 @@ public class FitAnalyser
 
     private final Map<Integer,Integer> mNoiseRangeMap;
     private final double mNoiseProbability;
+    private final int mThreads;
 
     private BufferedWriter mSampleResultsWriter;
     private BufferedWriter mResidualsWriter;
@@ -119,6 +120,7 @@ public class FitAnalyser
 
         mNoiseRangeMap = Maps.newHashMap();
         mNoiseProbability = Double.parseDouble(cmd.getOptionValue(NOISE_PROB, String.valueOf(DEFAULT_NOISE_PROB)));
+        mThreads = Integer.parseInt(cmd.getOptionValue(THREADS, "1"));
 
         mSampleResultsWriter = null;
         mResidualsWriter = null;
@@ -158,6 +160,12 @@ public class FitAnalyser
                     break;
             }
 
+            if(sampleContribs == null)
+            {
+                SIG_LOGGER.error("method({}) sample fit failed", fitMethod);
+                continue;
+            }
+
             processFitResults(fitMethod, sampleContribs);
             writeSigContributions(fitMethod, sampleContribs);
         }
@@ -168,35 +176,12 @@ public class FitAnalyser
 
     private Matrix fitWithLeastSquares()
     {
-        final Matrix sampleContribs = new Matrix(mSignatures.Cols, mSampleCounts.Cols);
-
-        LeastSquaresFit lsqFit = new LeastSquaresFit(mSignatures.Rows, mSignatures.Cols);
-
-        for(int i = 0; i < mSampleCounts.Cols; ++i)
-        {
-            final double[] sampleCounts = mSampleCounts.getCol(i);
-            lsqFit.initialise(mSignatures.getData(), sampleCounts);
-            lsqFit.solve();
-
-            final double[] sigAllocs = lsqFit.getContribs();
-            sampleContribs.setCol(i, sigAllocs);
-        }
-
-        return sampleContribs;
+        return SampleFitTask.fitSamples(FitMethod.LEAST_SQUARES, mSignatures, mSampleCounts, mThreads);
     }
 
     private Matrix fitWithExpectationsMax()
     {
-        final Matrix sampleContribs = new Matrix(mSignatures.Cols, mSampleCounts.Cols);
-
-        for(int i = 0; i < mSampleCounts.Cols; ++i)
-        {
-            final double[] sampleCounts = mSampleCounts.getCol(i);
-            final double[] sigAllocs = ExpectationMaxFit.performFit(sampleCounts, mSignatures, 0.001, 100);
-            sampleContribs.setCol(i, sigAllocs);
-        }
-
-        return sampleContribs;
+        return SampleFitTask.fitSamples(FitMethod.EXPECTATIONS_MAX, mSignatures, mSampleCounts, mThreads);
     }
 
     private Matrix fitWithSigOptimiser()
@@ -204,7 +189,10 @@ public class FitAnalyser
         final Matrix sampleContribs = new Matrix(mSignatures.Cols, mSampleCounts.Cols);
 
         BaSampleFitter sampleFitter = new BaSampleFitter(mSampleCounts, mSampleIds, mSignatures, mCmdLineArgs);
-        sampleFitter.fitAllSamples();
+
+        if(!sampleFitter.fitAllSamples(mThreads))
+            return null;
+
         sampleContribs.setData(sampleFitter.getContributions().getData());
 
         return sampleContribs;
@@ -1,5 +1,7 @@
 package com.hartwig.hmftools.sig_analyser.buckets;
 
+import static com.hartwig.hmftools.sig_analyser.common.CommonUtils.THREADS;
+
 import java.util.Arrays;
 import java.util.List;
 import java.util.stream.Collectors;
@@ -101,6 +103,7 @@ public class BaConfig
 
     // performance related
     public static final int MAX_CANDIDATE_GROUPS = 1500; // in place for speed and memory considerations
+    public final int Threads; // for assessing samples against candidate groups
 
     // logging and debug
     public final List<Integer> SampleWatchList;
@@ -144,6 +147,8 @@ public class BaConfig
         SpecificCancer = cmd.getOptionValue(BA_SPECIFIC_CANCER, "");
         MsiFilter = cmd.getOptionValue(BA_MSI_FILTER, "");
 
+        Threads = Integer.parseInt(cmd.getOptionValue(THREADS, "1"));
+
         SampleWatchList = Lists.newArrayList();
 
         if(cmd.hasOption(BA_LOG_SPEC_SAMPLES))
@@ -187,6 +192,7 @@ public class BaConfig
         options.addOption(BA_MIN_GROUP_ALLOC_PERCENT, true, "Only allocate to a group if exceeds this percent (background excepted)");
         options.addOption(BA_MIN_GROUP_ALLOC_PERCENT_LOWER, true, "Lower threshold for group allocation");
         options.addOption(BA_LOG_SPEC_SAMPLES, true, "Set of samples IDs to log, separated by ';'");
+        options.addOption(THREADS, true, "Number of threads for assessing candidate groups, default 1");
     }
 
 }
@@ -4,9 +4,11 @@ import static com.hartwig.hmftools.common.sigs.NoiseCalcs.calcRangeValue;
 import static com.hartwig.hmftools.common.sigs.VectorUtils.sumVector;
 import static com.hartwig.hmftools.sig_analyser.buckets.BaConfig.BA_MAX_NOISE_ALLOC_PERCENT;
 import static com.hartwig.hmftools.sig_analyser.buckets.BaConfig.MAX_NOISE_ALLOC_PERCENT;
+import static com.hartwig.hmftools.common.utils.TaskExecutor.executeTasks;
 
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
@@ -27,8 +29,6 @@ public class BaSampleFitter
     private final double mMinSigPercent;
     private final double mNoiseProbability;
 
-    private final SampleSigContribOptimiser mSigContribOptimiser;
-
     private static final double DEFAULT_MIN_SIG_PERCENT = 0.01;
     private static final String MIN_SIG_PERCENT = "min_sig_percent";
 
@@ -55,8 +55,6 @@ public class BaSampleFitter
 
         // set the max of a sample's total which can be allocated to noise, effecively setting a cap on
         MAX_NOISE_ALLOC_PERCENT = Double.parseDouble(cmd.getOptionValue(BA_MAX_NOISE_ALLOC_PERCENT, String.valueOf(MAX_NOISE_ALLOC_PERCENT)));
-
-        mSigContribOptimiser = new SampleSigContribOptimiser(signatures.Rows, false, 1.0);
     }
 
     public final Matrix getContributions() { return mContrbutions; }
@@ -68,7 +66,34 @@ public class BaSampleFitter
         options.addOption(BA_MAX_NOISE_ALLOC_PERCENT, true, "Max percent of sample's total count to allocate to noise");
     }
 
-    public void fitAllSamples()
+    public boolean fitAllSamples(int threadCount)
+    {
+        // samples are fitted independently, so are dealt in turn to each task, which has its own optimiser and noise-range cache
+        int taskCount = Math.max(1, Math.min(threadCount, mSampleCounts.Cols));
+
+        final List<List<Integer>> taskSampleIndices = Lists.newArrayList();
+
+        for(int t = 0; t < taskCount; ++t)
+        {
+            taskSampleIndices.add(Lists.newArrayList());
+        }
+
+        for(int s = 0; s < mSampleCounts.Cols; ++s)
+        {
+            taskSampleIndices.get(s % taskCount).add(s);
+        }
+
+        final List<Callable> tasks = Lists.newArrayList();
+
+        for(final List<Integer> sampleIndices : taskSampleIndices)
+        {
+            tasks.add(() -> fitSamples(sampleIndices));
+        }
+
+        return executeTasks(tasks, threadCount, "SigAnalyser");
+    }
+
+    private long fitSamples(final List<Integer> sampleIndices)
     {
         // test each signature against the sample and then perform an fit optimisation with any which could contribute a sufficient amount
         int bucketCount = mSampleCounts.Rows;
@@ -90,7 +115,9 @@ public class BaSampleFitter
 
         final Map<Integer,Integer> rangeCache = Maps.newHashMap();
 
-        for(int s = 0; s < mSampleCounts.Cols; ++s)
+        final SampleSigContribOptimiser sigContribOptimiser = new SampleSigContribOptimiser(bucketCount, false, 1.0);
+
+        for(Integer s : sampleIndices)
         {
             SampleData sample = new SampleData(s);
 
@@ -137,22 +164,19 @@ public class BaSampleFitter
                 sigIds.add(i);
             }
 
-            mSigContribOptimiser.initialise(sample, ratiosCollection, mMinSigPercent, 1);
-            mSigContribOptimiser.setSigIds(sigIds);
-            // mSigContribOptimiser.setLogVerbose(mConfig.logSample(sample.Id));
-
-            // LOGGER.debug("sample({}) fitting with {} sigs", sample.Id, sigIds.size());
+            sigContribOptimiser.initialise(sample, ratiosCollection, mMinSigPercent, 1);
+            sigContribOptimiser.setSigIds(sigIds);
 
-            boolean validCalc = mSigContribOptimiser.fitToSample();
+            boolean validCalc = sigContribOptimiser.fitToSample();
 
             if (!validCalc)
             {
                 LOGGER.error("sample({}) sig fit failed", sample.Id);
-                return;
+                continue;
             }
 
             // if all ok, allocate each contribution to the sample
-            double[] sigContribs = mSigContribOptimiser.getContribs();
+            double[] sigContribs = sigContribOptimiser.getContribs();
 
             for(int j = 0; j < sigIds.size(); ++j)
             {
@@ -160,5 +184,7 @@ public class BaSampleFitter
                 mContrbutions.set(sigIndex, s, sigContribs[j]);
             }
         }
+
+        return 0;
     }
 }
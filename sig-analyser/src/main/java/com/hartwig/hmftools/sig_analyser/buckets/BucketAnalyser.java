@@ -54,6 +54,7 @@ import static com.hartwig.hmftools.sig_analyser.common.CommonUtils.SIG_LOGGER;
 import static com.hartwig.hmftools.sig_analyser.common.CommonUtils.getDiffList;
 import static com.hartwig.hmftools.sig_analyser.common.CommonUtils.getMatchingList;
 import static com.hartwig.hmftools.sig_analyser.common.CommonUtils.getNewFile;
+import static com.hartwig.hmftools.common.utils.TaskExecutor.executeTasks;
 import static com.hartwig.hmftools.common.sigs.DataUtils.sizeToStr;
 import static com.hartwig.hmftools.common.utils.Matrix.redimension;
 import static com.hartwig.hmftools.sig_analyser.nmf.NmfConfig.NMF_REF_SIG_FILE;
@@ -63,8 +64,12 @@ import java.io.IOException;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 import com.hartwig.hmftools.common.utils.Doubles;
 import com.hartwig.hmftools.common.utils.GenericDataCollection;
 import com.hartwig.hmftools.common.utils.GenericDataLoader;
@@ -125,7 +130,7 @@ public class BucketAnalyser
     private final List<BucketGroup> mTopAllocBucketGroups;
     private final List<BucketGroup> mSkippedBucketGroups;
     private final List<Integer> mSkippedSamples;
-    private final List<Integer> mReassessSamples;
+    private final Set<Integer> mReassessSamples; // samples whose allocations changed with the last top group, so need refitting
     private int mLastRunGroupCount;
 
     private final Map<Integer, Integer> mNoiseRangeMap;
@@ -133,6 +138,9 @@ public class BucketAnalyser
     private BufferedWriter mBgInterimFileWriter;
     private BufferedWriter mBgRatioRangeFileWriter;
     private PerformanceCounter mPerfCounter;
+    private PerformanceCounter mGroupAssessPc;
+    private int mTotalSkippedRetries; // existing group allocations kept rather than refitted
+    private int mTotalOptimiserFits;
 
     // TEMP: improve sample external data loading
     private int SAMPLE_ID_COL_INDEX;
@@ -143,6 +151,9 @@ public class BucketAnalyser
     private String mOutputFileId;
 
     private int mRunId; // current run iteration
+    private boolean mOnFinalRun;
+    private boolean mRunDiscovery;
+    private boolean mLastGroupWasMajor;
 
     // external data file attributes
     private static int CATEGORY_COL_COUNT = 3;
@@ -232,17 +243,23 @@ public class BucketAnalyser
         mTopAllocBucketGroups = Lists.newArrayList();
         mFinalBucketGroups = Lists.newArrayList();
         mSkippedSamples = Lists.newArrayList();
-        mReassessSamples = Lists.newArrayList();
+        mReassessSamples = Sets.newHashSet();
         mSkippedBucketGroups = Lists.newArrayList();
         mBgInterimFileWriter = null;
         mBgRatioRangeFileWriter = null;
 
         mRunId = 0;
+        mOnFinalRun = false;
+        mRunDiscovery = true;
+        mLastGroupWasMajor = false;
         mLastRunGroupCount = 0;
         mFinalFitOnly = false;
         mUsingRefSigs = false;
 
         mPerfCounter = new PerformanceCounter("BucketAnalyser");
+        mGroupAssessPc = new PerformanceCounter("GroupAssessment");
+        mTotalSkippedRetries = 0;
+        mTotalOptimiserFits = 0;
 
         if(cmd.hasOption(NMF_REF_SIG_FILE))
         {
@@ -358,9 +375,11 @@ public class BucketAnalyser
     }
 
     public double getMinSampleAllocCount() { return mConfig.MinSampleAllocCount; }
-    public List<Integer> getReassessSamples() { return mReassessSamples; }
+    public Set<Integer> getReassessSamples() { return mReassessSamples; }
     public int getNextBucketId() { return mNextBucketId++; }
     public void addBucketGroup(BucketGroup bucketGroup) { mBucketGroups.add(bucketGroup); }
+    public int getOptimiserFitCount() { return mTotalOptimiserFits; }
+    public int getRetainedAllocationCount() { return mTotalSkippedRetries; }
 
     public static void addCmdLineArgs(Options options)
     {
@@ -399,12 +418,7 @@ public class BucketAnalyser
         if(mHasErrors)
             return;
 
-        splitSampleCounts();
-        calcCountsNoise();
-        collectElevatedSampleBuckets();
-
-        mReporter.setPreRunState(
-                mSampleTotals, mBackgroundSigDiscovery.getBackgroundCounts(), mElevatedCounts, mTotalCount, mElevatedCount, mActiveSampleCount);
+        prepareSampleCounts();
 
         mReporter.logOverallStats();
         perfCounter.stop();
@@ -415,102 +429,40 @@ public class BucketAnalyser
             mReporter.logOverallStats();
         }
 
-        boolean onFinalRun = false;
-        boolean runDiscovery = true;
-        boolean lastGroupWasMajor = false;
-
         for(mRunId = 0; mRunId < mConfig.RunCount; ++mRunId)
         {
             perfCounter.start(String.format("FindBucketGroup run %d", mRunId));
 
-            if(!onFinalRun && mRunId == mConfig.RunCount - 1)
-                onFinalRun = true;
-
-            if(runDiscovery)
-            {
-                if (!onFinalRun)
-                {
-                    clearBucketGroups(false);
-                }
-                else
-                {
-                    // clear all state and try again in case anything was missed (due to logical state bugs)
-                    mReassessSamples.clear();
-                    mBucketGroups.clear();
-                }
-            }
-            else
-            {
-                // keep the same groups, but clear recently allocated samples so they'll be reassessed
-                clearBucketGroups(true);
-            }
-
-            mLastRunGroupCount = mBucketGroups.size();
+            if(!mOnFinalRun && mRunId == mConfig.RunCount - 1)
+                mOnFinalRun = true;
 
-            // find candidate bucket groups via various methods
-            if(runDiscovery)
-            {
-                SIG_LOGGER.debug("run {}: running discovery to find new bucket groups", mRunId);
-
-                if (mConfig.ExcessDiscoveryRunId >= 0 && mRunId >= mConfig.ExcessDiscoveryRunId && !lastGroupWasMajor)
-                    mSigDiscovery.formExcessBucketGroups();
-
-                mSigDiscovery.formBucketGroupsFromSamplePairs();
-                runDiscovery = !mConfig.ThrottleDiscovery;
-            }
+            final List<BucketGroup> candidateGroups = assessCandidateGroups();
 
             if(mBucketGroups.isEmpty())
             {
                 SIG_LOGGER.debug("run {}: no groups found", mRunId);
 
-                if(onFinalRun)
+                if(mOnFinalRun)
                     break;
 
-                onFinalRun = true;
-                runDiscovery = true;
+                mOnFinalRun = true;
+                mRunDiscovery = true;
                 continue;
             }
 
             double prevAllocCount = mReporter.getTotalAllocatedCount();
 
-            populateTopBucketGroups();
-
             // uncomment to log interim group data
             // analyseGroupsVsExtData(mTopAllocBucketGroups, false);
             // writeInterimBucketGroups();
 
-            //if(mRunId > 0 && mUniqueDiscoveryRunId && !lastGroupWasMajor)
-            if(mRunId > 0 && mConfig.UniqueDiscoveryRunId >= 0 && (!lastGroupWasMajor || mRunId >= mConfig.UniqueDiscoveryRunId))
-            {
-                findUniqueBucketGroups();
-            }
-
-            BucketGroup nextBestGroup = null;
-            if(nextBestGroup == null && !mTopAllocBucketGroups.isEmpty())
-            {
-                nextBestGroup = mTopAllocBucketGroups.get(0);
-            }
+            BucketGroup nextBestGroup = !candidateGroups.isEmpty() ? candidateGroups.get(0) : null;
 
             // allocated sample counts to the best group
             if(nextBestGroup != null)
             {
-                allocateTopBucketGroup(nextBestGroup);
-
-                if(mFinalBucketGroups.contains(nextBestGroup))
-                {
-                    SIG_LOGGER.error("run {}: attempted to add bg({}) again", mRunId, nextBestGroup.getId());
-                    mHasErrors = true;
+                if(!allocateCandidateGroup(nextBestGroup))
                     break;
-                }
-
-                mReporter.logOverallStats();
-                mFinalBucketGroups.add(nextBestGroup);
-                updateGroupSimilarityData();
-
-                lastGroupWasMajor = isMajorGroup(nextBestGroup);
-
-                if(!lastGroupWasMajor && !runDiscovery)
-                    runDiscovery = true;
 
                 // assessSampleGroupAllocations(nextBestGroup);
             }
@@ -522,12 +474,12 @@ public class BucketAnalyser
 
             if (nextBestGroup == null)
             {
-                if(onFinalRun)
+                if(mOnFinalRun)
                     break;
 
                 SIG_LOGGER.debug("run {}: no top grounp found, starting final run", mRunId);
-                onFinalRun = true;
-                runDiscovery = true;
+                mOnFinalRun = true;
+                mRunDiscovery = true;
                 continue;
             }
 
@@ -536,11 +488,11 @@ public class BucketAnalyser
             {
                 SIG_LOGGER.debug(String.format("run %d: negligible allocPercChange(%s -> %s)", mRunId, doubleToStr(prevAllocCount), doubleToStr(newAllocCount)));
 
-                if(onFinalRun)
+                if(mOnFinalRun)
                     break;
 
-                onFinalRun = true;
-                runDiscovery = true;
+                mOnFinalRun = true;
+                mRunDiscovery = true;
                 continue;
             }
 
@@ -587,6 +539,10 @@ public class BucketAnalyser
 
         perfCounter.logStats();
 
+        SIG_LOGGER.info("group assessment: optimiserFits({}) retainedAllocations({}) threads({})",
+                mTotalOptimiserFits, mTotalSkippedRetries, mConfig.Threads);
+        mGroupAssessPc.logStats();
+
         finalise();
 
         mPerfCounter.stop();
@@ -839,6 +795,95 @@ public class BucketAnalyser
                 elevSampleCount, elevSampleCount/(double)mActiveSampleCount, totalCount, totalCount/(double)(mBucketCount * mActiveSampleCount)));
     }
 
+    @VisibleForTesting
+    public void prepareSampleCounts()
+    {
+        splitSampleCounts();
+        calcCountsNoise();
+        collectElevatedSampleBuckets();
+
+        mReporter.setPreRunState(
+                mSampleTotals, mBackgroundSigDiscovery.getBackgroundCounts(), mElevatedCounts, mTotalCount, mElevatedCount, mActiveSampleCount);
+    }
+
+    @VisibleForTesting
+    public List<BucketGroup> assessCandidateGroups()
+    {
+        // a run iteration's group discovery and assessment, returning the candidate groups ordered by potential allocation
+        if(mRunDiscovery)
+        {
+            if (!mOnFinalRun)
+            {
+                clearBucketGroups(false);
+            }
+            else
+            {
+                // clear all state and try again in case anything was missed (due to logical state bugs)
+                mReassessSamples.clear();
+                mBucketGroups.clear();
+            }
+        }
+        else
+        {
+            // keep the same groups, but clear recently allocated samples so they'll be reassessed
+            clearBucketGroups(true);
+        }
+
+        mLastRunGroupCount = mBucketGroups.size();
+
+        // find candidate bucket groups via various methods
+        if(mRunDiscovery)
+        {
+            SIG_LOGGER.debug("run {}: running discovery to find new bucket groups", mRunId);
+
+            if (mConfig.ExcessDiscoveryRunId >= 0 && mRunId >= mConfig.ExcessDiscoveryRunId && !mLastGroupWasMajor)
+                mSigDiscovery.formExcessBucketGroups();
+
+            mSigDiscovery.formBucketGroupsFromSamplePairs();
+            mRunDiscovery = !mConfig.ThrottleDiscovery;
+        }
+
+        if(mBucketGroups.isEmpty())
+        {
+            mTopAllocBucketGroups.clear();
+            return mTopAllocBucketGroups;
+        }
+
+        populateTopBucketGroups();
+
+        //if(mRunId > 0 && mUniqueDiscoveryRunId && !lastGroupWasMajor)
+        if(mRunId > 0 && mConfig.UniqueDiscoveryRunId >= 0 && (!mLastGroupWasMajor || mRunId >= mConfig.UniqueDiscoveryRunId))
+        {
+            findUniqueBucketGroups();
+        }
+
+        return mTopAllocBucketGroups;
+    }
+
+    @VisibleForTesting
+    public boolean allocateCandidateGroup(final BucketGroup bucketGroup)
+    {
+        allocateTopBucketGroup(bucketGroup);
+
+        if(mFinalBucketGroups.contains(bucketGroup))
+        {
+            SIG_LOGGER.error("run {}: attempted to add bg({}) again", mRunId, bucketGroup.getId());
+            mHasErrors = true;
+            return false;
+        }
+
+        mReporter.logOverallStats();
+        mFinalBucketGroups.add(bucketGroup);
+        updateGroupSimilarityData();
+
+        mLastGroupWasMajor = isMajorGroup(bucketGroup);
+
+        if(!mLastGroupWasMajor && !mRunDiscovery)
+            mRunDiscovery = true;
+
+        return true;
+    }
+
     private void populateTopBucketGroups()
     {
         mTopAllocBucketGroups.clear();
@@ -848,19 +893,157 @@ public class BucketAnalyser
 
         int maxCandidateGroups = MAX_CANDIDATE_GROUPS;
 
-        CountsSigContribOptimiser sigContribOptimiser = new CountsSigContribOptimiser(mBucketCount, false, SAMPLE_ALLOCATED_PERCENT);
+        // if there are bucket groups from before this last discovery phase, their sample allocations
+        // will be maintained (except for reassessed sample) to save recomputing the same allocations
+        // - a reassessed sample's fit against any group includes all the groups it is now allocated to, so it is refitted against
+        // every group, while new groups are assessed against every sample
+        boolean keepPreviousAllocs = mLastRunGroupCount > 0;
+
+        // each group's potential allocations only depend on the samples' current allocations, which are not changed until the
+        // top group is chosen, so groups are dealt in turn to each task, which has its own optimiser and stats
+        int taskCount = max(1, min(mConfig.Threads, mBucketGroups.size()));
+
+        final List<List<Integer>> taskGroupIndices = Lists.newArrayList();
+        final List<GroupAssessStats> taskStats = Lists.newArrayList();
+
+        for(int t = 0; t < taskCount; ++t)
+        {
+            taskGroupIndices.add(Lists.newArrayList());
+            taskStats.add(new GroupAssessStats(mBucketCount));
+        }
+
+        for(int bgIndex = 0; bgIndex < mBucketGroups.size(); ++bgIndex)
+        {
+            taskGroupIndices.get(bgIndex % taskCount).add(bgIndex);
+        }
+
+        final List<Callable> tasks = Lists.newArrayList();
+
+        for(int t = 0; t < taskCount; ++t)
+        {
+            final List<Integer> groupIndices = taskGroupIndices.get(t);
+            final GroupAssessStats stats = taskStats.get(t);
+            tasks.add(() -> assessGroupSamples(groupIndices, keepPreviousAllocs, stats));
+        }
+
+        mGroupAssessPc.start();
+
+        if(!executeTasks(tasks, mConfig.Threads, "SigAnalyser"))
+            mHasErrors = true;
+
+        mGroupAssessPc.stop();
 
         int exceededOnSoloAlloc = 0;
         int exceededOnUnalloc = 0;
         int exceededOnFit = 0;
         int skippedRetry = 0;
+        int optimiserFits = 0;
 
-        // if there are bucket groups from before this last discovery phase, their sample allocations
-        // will be maintained (except for reassessed sample) to save recomputing the same allocations
-        boolean keepPreviousAllocs = mLastRunGroupCount > 0;
+        for(final GroupAssessStats stats : taskStats)
+        {
+            exceededOnSoloAlloc += stats.ExceededOnSoloAlloc;
+            exceededOnUnalloc += stats.ExceededOnUnalloc;
+            exceededOnFit += stats.ExceededOnFit;
+            skippedRetry += stats.SkippedRetry;
+            optimiserFits += stats.Optimiser.getInstances();
+
+            if(stats.HasErrors)
+                mHasErrors = true;
+        }
+
+        mTotalSkippedRetries += skippedRetry;
+        mTotalOptimiserFits += optimiserFits;
+
+        SIG_LOGGER.debug("processed {} bucket groups, method(solo={} unalloc={} fit={} skipped={}) optimiserFits({})",
+                mBucketGroups.size(), exceededOnSoloAlloc, exceededOnUnalloc, exceededOnFit, skippedRetry, optimiserFits);
 
-        // first clear all existing allocations of samples to groups and vice versa
-        for (int bgIndex = 0; bgIndex < mBucketGroups.size(); ++bgIndex)
+        if(SIG_LOGGER.isTraceEnabled())
+        {
+            for(final GroupAssessStats stats : taskStats)
+            {
+                SIG_LOGGER.trace(String.format("sig-optim stats: instances(%d) avgIters(%.1f) avgImprovePerc(%.3f)",
+                        stats.Optimiser.getInstances(), stats.Optimiser.getAvgIterations(), stats.Optimiser.getAvgImprovePerc()));
+            }
+        }
+
+        // now that all samples have been tested and allocated, force a recalc of the ratios
+        // and then check for overlap with existing bucket groups
+        int bgIndex = 0;
+        int removedGroups = 0;
+        while(bgIndex < mBucketGroups.size())
+        {
+            BucketGroup bucketGroup = mBucketGroups.get(bgIndex);
+            bucketGroup.recalcBucketRatios(mConfig.MutLoadWeightFactor);
+
+            if (similarToExistingGroup(bucketGroup))
+            {
+                mBucketGroups.remove(bgIndex);
+                ++removedGroups;
+            }
+            else
+            {
+                ++bgIndex;
+            }
+        }
+
+        if(removedGroups > 0)
+        {
+            SIG_LOGGER.debug("removed {} bucket groups similar to existing selected groups", removedGroups);
+        }
+
+        removeSkippedAllocations(mBucketGroups);
+
+        // sort into order
+        for(BucketGroup bucketGroup : mBucketGroups)
+        {
+            int findBgIndex = 0;
+            while (findBgIndex < mTopAllocBucketGroups.size())
+            {
+                if (bucketGroup.getPotentialAdjAllocation() >= mTopAllocBucketGroups.get(findBgIndex).getPotentialAdjAllocation())
+                    break;
+
+                ++findBgIndex;
+            }
+
+            if (findBgIndex < maxCandidateGroups || maxCandidateGroups == 0)
+            {
+                mTopAllocBucketGroups.add(findBgIndex, bucketGroup);
+            }
+
+            if (maxCandidateGroups > 0 && mTopAllocBucketGroups.size() > maxCandidateGroups)
+            {
+                mTopAllocBucketGroups.remove(mTopAllocBucketGroups.size() - 1);
+            }
+        }
+    }
+
+    private static class GroupAssessStats
+    {
+        public final CountsSigContribOptimiser Optimiser;
+
+        public int ExceededOnSoloAlloc;
+        public int ExceededOnUnalloc;
+        public int ExceededOnFit;
+        public int SkippedRetry;
+        public boolean HasErrors;
+
+        public GroupAssessStats(int bucketCount)
+        {
+            Optimiser = new CountsSigContribOptimiser(bucketCount, false, SAMPLE_ALLOCATED_PERCENT);
+            ExceededOnSoloAlloc = 0;
+            ExceededOnUnalloc = 0;
+            ExceededOnFit = 0;
+            SkippedRetry = 0;
+            HasErrors = false;
+        }
+    }
+
+    private long assessGroupSamples(final List<Integer> groupIndices, boolean keepPreviousAllocs, final GroupAssessStats stats)
+    {
+        // test each sample against these groups, recording the potential allocation to each - only the groups themselves are changed
+        final CountsSigContribOptimiser sigContribOptimiser = stats.Optimiser;
+
+        for(Integer bgIndex : groupIndices)
         {
             BucketGroup bucketGroup = mBucketGroups.get(bgIndex);
 
@@ -914,7 +1097,7 @@ public class BucketAnalyser
                             {
                                 SIG_LOGGER.error(String.format("sample(%d) part of existing bg(%d) with alloc(%s perc=%.3f)",
                                         sampleId, bucketGroup.getId(), sizeToStr(allocCountTotal), allocCountTotal/sample.getElevatedCount()));
-                                mHasErrors = true;
+                                stats.HasErrors = true;
                             }
                         }
                         else
@@ -922,7 +1105,7 @@ public class BucketAnalyser
                             // no point trying again
                         }
 
-                        ++skippedRetry;
+                        ++stats.SkippedRetry;
                         continue;
                     }
                 }
@@ -954,7 +1137,7 @@ public class BucketAnalyser
 
                 if(exceedsMinAllocPerc)
                 {
-                    ++exceededOnUnalloc;
+                    ++stats.ExceededOnUnalloc;
                 }
                 else
                 {
@@ -963,7 +1146,7 @@ public class BucketAnalyser
                     // to be added to this candidate - but the counts still adjusting with the fit routine - for now too hard
                     if(maxPotentialPerc - sample.getAllocPercent() >= reqAllocPercent)
                     {
-                        ++exceededOnSoloAlloc;
+                        ++stats.ExceededOnSoloAlloc;
                     }
                 }
 
@@ -1002,7 +1185,7 @@ public class BucketAnalyser
                     if (!validCalc) // couldn't reach the required percent for this candidate sig
                     {
                         SIG_LOGGER.warn("sample({}) fit with existing sigs failed", sample.Id);
-                        mHasErrors = true;
+                        stats.HasErrors = true;
                         continue;
                     }
 
@@ -1026,7 +1209,7 @@ public class BucketAnalyser
                         allocCounts[b] = bgRatios[b] * candidateAlloc;
                     }
 
-                    ++exceededOnFit;
+                    ++stats.ExceededOnFit;
                 }
 
                 bucketGroup.addPotentialAllocation(allocCountTotal);
@@ -1035,61 +1218,7 @@ public class BucketAnalyser
             }
         }
 
-        SIG_LOGGER.debug("processed {} bucket groups, method(solo={} unalloc={} fit={} skipped={})",
-                mBucketGroups.size(), exceededOnSoloAlloc, exceededOnUnalloc, exceededOnFit, skippedRetry);
-
-        SIG_LOGGER.trace(String.format("sig-optim stats: instances(%d) avgIters(%.1f) avgImprovePerc(%.3f)",
-                sigContribOptimiser.getInstances(), sigContribOptimiser.getAvgIterations(), sigContribOptimiser.getAvgImprovePerc()));
-
-        // now that all samples have been tested and allocated, force a recalc of the ratios
-        // and then check for overlap with existing bucket groups
-        int bgIndex = 0;
-        int removedGroups = 0;
-        while(bgIndex < mBucketGroups.size())
-        {
-            BucketGroup bucketGroup = mBucketGroups.get(bgIndex);
-            bucketGroup.recalcBucketRatios(mConfig.MutLoadWeightFactor);
-
-            if (similarToExistingGroup(bucketGroup))
-            {
-                mBucketGroups.remove(bgIndex);
-                ++removedGroups;
-            }
-            else
-            {
-                ++bgIndex;
-            }
-        }
-
-        if(removedGroups > 0)
-        {
-            SIG_LOGGER.debug("removed {} bucket groups similar to existing selected groups", removedGroups);
-        }
-
-        removeSkippedAllocations(mBucketGroups);
-
-        // sort into order
-        for(BucketGroup bucketGroup : mBucketGroups)
-        {
-            int findBgIndex = 0;
-            while (findBgIndex < mTopAllocBucketGroups.size())
-            {
-                if (bucketGroup.getPotentialAdjAllocation() >= mTopAllocBucketGroups.get(findBgIndex).getPotentialAdjAllocation())
-                    break;
-
-                ++findBgIndex;
-            }
-
-            if (findBgIndex < maxCandidateGroups || maxCandidateGroups == 0)
-            {
-                mTopAllocBucketGroups.add(findBgIndex, bucketGroup);
-            }
-
-            if (maxCandidateGroups > 0 && mTopAllocBucketGroups.size() > maxCandidateGroups)
-            {
-                mTopAllocBucketGroups.remove(mTopAllocBucketGroups.size() - 1);
-            }
-        }
+        return (long)0;
     }
 
     private boolean similarToExistingGroup(BucketGroup bucketGroup)
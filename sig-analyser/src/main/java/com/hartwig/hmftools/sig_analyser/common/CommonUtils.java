@@ -7,6 +7,7 @@ import static java.lang.Math.round;
 import static com.hartwig.hmftools.common.sigs.SigUtils.calcAbsDiffs;
 import static com.hartwig.hmftools.common.sigs.SigUtils.calcLinearLeastSquares;
 import static com.hartwig.hmftools.common.sigs.VectorUtils.sumVector;
+import static com.hartwig.hmftools.common.utils.io.BinaryCacheUtils.binaryFilename;
 import static com.hartwig.hmftools.common.utils.io.FileWriterUtils.OUTPUT_DIR;
 import static com.hartwig.hmftools.common.utils.io.FileWriterUtils.createBufferedWriter;
 
@@ -30,6 +31,7 @@ public class CommonUtils
     public static final String SAMPLE_COUNTS_FILE = "sample_counts_file";
     public static final String SIGNATURES_FILE = "signatures_file";
     public static final String LOG_DEBUG = "log_debug";
+    public static final String THREADS = "threads";
 
     public static final String OUTPUT_FILE_ID = "output_file_id";
 
@@ -43,6 +45,7 @@ public class CommonUtils
         options.addOption(OUTPUT_DIR, true, "Path to output files");
         options.addOption(OUTPUT_FILE_ID, true, "Output file ID");
         options.addOption(LOG_DEBUG, false, "Sets log level to Debug, off by default");
+        options.addOption(THREADS, true, "Number of threads for sample fitting, default 1");
     }
 
     public static String formOutputFilename(final String outputDir, final String outputId, final String fileId)
@@ -63,6 +66,14 @@ public class CommonUtils
 
     public static Matrix loadSampleMatrixCounts(final String filename, final List<String> sampleIds)
     {
+        if(SampleCountsCacheFile.hasCurrentCache(filename))
+        {
+            final Matrix sampleCounts = SampleCountsCacheFile.load(binaryFilename(filename), sampleIds);
+
+            if(sampleCounts != null)
+                return sampleCounts;
+        }
+
         return MatrixUtils.loadMatrixDataFile(filename, sampleIds, Lists.newArrayList("BucketName"));
     }
 
@@ -0,0 +1,113 @@
+package com.hartwig.hmftools.sig_analyser.common;
+
+import static com.hartwig.hmftools.common.utils.io.BinaryCacheUtils.HEADER_BYTES;
+import static com.hartwig.hmftools.common.utils.io.BinaryCacheUtils.binaryFilename;
+import static com.hartwig.hmftools.common.utils.io.BinaryCacheUtils.hasHeader;
+import static com.hartwig.hmftools.common.utils.io.BinaryCacheUtils.isCurrent;
+import static com.hartwig.hmftools.common.utils.io.BinaryCacheUtils.mapFile;
+import static com.hartwig.hmftools.common.utils.io.BinaryCacheUtils.readString;
+import static com.hartwig.hmftools.common.utils.io.BinaryCacheUtils.writeHeader;
+import static com.hartwig.hmftools.common.utils.io.BinaryCacheUtils.writeString;
+import static com.hartwig.hmftools.sig_analyser.common.CommonUtils.SIG_LOGGER;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.util.List;
+
+import com.google.common.collect.Lists;
+import com.hartwig.hmftools.common.utils.Matrix;
+
+// binary form of a bucket-by-sample counts matrix, written alongside its CSV so later runs can map it in directly rather than
+// parse the text - it is only used while it is at least as recent as the CSV
+public class SampleCountsCacheFile
+{
+    private static final int MAGIC = 0x53475343; // 'SGSC'
+    private static final int FORMAT_VERSION = 1;
+
+    // file layout: magic, version, bucket count, sample count, each sample ID, then the counts row by row
+
+    public static boolean hasCurrentCache(final String countsFile)
+    {
+        return isCurrent(binaryFilename(countsFile), countsFile);
+    }
+
+    public static void write(final String filename, final List<String> sampleIds, final Matrix sampleCounts)
+    {
+        try(DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filename))))
+        {
+            writeHeader(output, MAGIC, FORMAT_VERSION);
+            output.writeInt(sampleCounts.Rows);
+            output.writeInt(sampleCounts.Cols);
+
+            for(final String sampleId : sampleIds)
+            {
+                writeString(output, sampleId);
+            }
+
+            final double[][] data = sampleCounts.getData();
+
+            for(int r = 0; r < sampleCounts.Rows; ++r)
+            {
+                for(int c = 0; c < sampleCounts.Cols; ++c)
+                {
+                    output.writeDouble(data[r][c]);
+                }
+            }
+        }
+        catch(IOException e)
+        {
+            SIG_LOGGER.error("failed to write sample counts cache file({}): {}", filename, e.toString());
+        }
+    }
+
+    public static Matrix load(final String filename, final List<String> sampleIds)
+    {
+        try
+        {
+            final ByteBuffer buffer = mapFile(new File(filename));
+
+            if(!hasHeader(buffer, MAGIC, FORMAT_VERSION))
+            {
+                SIG_LOGGER.warn("sample counts cache file({}) has an unsupported format", filename);
+                return null;
+            }
+
+            buffer.position(HEADER_BYTES);
+
+            int bucketCount = buffer.getInt();
+            int sampleCount = buffer.getInt();
+
+            final List<String> cacheSampleIds = Lists.newArrayListWithExpectedSize(sampleCount);
+
+            for(int i = 0; i < sampleCount; ++i)
+            {
+                cacheSampleIds.add(readString(buffer));
+            }
+
+            final Matrix sampleCounts = new Matrix(bucketCount, sampleCount);
+            final double[][] data = sampleCounts.getData();
+            final DoubleBuffer counts = buffer.slice().asDoubleBuffer();
+
+            for(int r = 0; r < bucketCount; ++r)
+            {
+                counts.get(data[r]);
+            }
+
+            sampleIds.addAll(cacheSampleIds);
+
+            SIG_LOGGER.debug("loaded {} samples' counts from cache file({})", sampleCount, filename);
+            return sampleCounts;
+        }
+        catch(IOException | BufferUnderflowException e)
+        {
+            SIG_LOGGER.warn("failed to read sample counts cache file({}): {}", filename, e.toString());
+            return null;
+        }
+    }
+}
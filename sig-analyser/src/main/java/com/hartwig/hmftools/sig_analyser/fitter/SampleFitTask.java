@@ -0,0 +1,129 @@
+package com.hartwig.hmftools.sig_analyser.fitter;
+
+import static com.hartwig.hmftools.common.sigs.VectorUtils.sumVector;
+import static com.hartwig.hmftools.sig_analyser.common.CommonUtils.SIG_LOGGER;
+import static com.hartwig.hmftools.common.utils.TaskExecutor.executeTasks;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import com.google.common.collect.Lists;
+import com.hartwig.hmftools.common.sigs.ExpectationMaxFitter;
+import com.hartwig.hmftools.common.sigs.LeastSquaresFit;
+import com.hartwig.hmftools.common.utils.Matrix;
+
+// fits a subset of samples to a fixed set of signatures, reusing a single fitter's working arrays across them - each sample's
+// contributions are written to its own column of the shared results, so their order doesn't depend on how samples were split
+public class SampleFitTask implements Callable
+{
+    private final FitMethod mFitMethod;
+    private final Matrix mSignatures;
+    private final Matrix mSampleCounts;
+    private final List<Integer> mSampleIndices;
+    private final Matrix mContributions;
+
+    private int mFittedCount;
+
+    public static final double EM_RESIDUALS_EXIT_PERC = 0.001;
+    public static final int EM_MAX_ITERATIONS = 100;
+
+    public SampleFitTask(
+            final FitMethod fitMethod, final Matrix signatures, final Matrix sampleCounts, final List<Integer> sampleIndices,
+            final Matrix contributions)
+    {
+        mFitMethod = fitMethod;
+        mSignatures = signatures;
+        mSampleCounts = sampleCounts;
+        mSampleIndices = sampleIndices;
+        mContributions = contributions;
+        mFittedCount = 0;
+    }
+
+    public static boolean supportsMethod(final FitMethod fitMethod)
+    {
+        return fitMethod == FitMethod.LEAST_SQUARES || fitMethod == FitMethod.EXPECTATIONS_MAX;
+    }
+
+    public int fittedCount() { return mFittedCount; }
+
+    // fits each sample's counts (a column each) across the specified threads, with samples dealt to tasks in turn to even out their costs
+    public static Matrix fitSamples(final FitMethod fitMethod, final Matrix signatures, final Matrix sampleCounts, int threadCount)
+    {
+        if(!supportsMethod(fitMethod))
+        {
+            SIG_LOGGER.error("fit method({}) not supported for sample fitting", fitMethod);
+            return null;
+        }
+
+        final Matrix contributions = new Matrix(signatures.Cols, sampleCounts.Cols);
+
+        // the counts are read by column, so cache them to avoid each task forming its own copies
+        sampleCounts.cacheTranspose();
+
+        int taskCount = Math.max(1, Math.min(threadCount, sampleCounts.Cols));
+
+        final List<List<Integer>> taskSampleIndices = Lists.newArrayList();
+
+        for(int t = 0; t < taskCount; ++t)
+        {
+            taskSampleIndices.add(Lists.newArrayList());
+        }
+
+        for(int i = 0; i < sampleCounts.Cols; ++i)
+        {
+            taskSampleIndices.get(i % taskCount).add(i);
+        }
+
+        final List<Callable> tasks = Lists.newArrayList();
+
+        for(final List<Integer> sampleIndices : taskSampleIndices)
+        {
+            tasks.add(new SampleFitTask(fitMethod, signatures, sampleCounts, sampleIndices, contributions));
+        }
+
+        if(!executeTasks(tasks, threadCount, "SigAnalyser"))
+            return null;
+
+        return contributions;
+    }
+
+    @Override
+    public Long call()
+    {
+        LeastSquaresFit lsqFit = null;
+        ExpectationMaxFitter emFitter = null;
+
+        if(mFitMethod == FitMethod.LEAST_SQUARES)
+            lsqFit = new LeastSquaresFit(mSignatures.Rows, mSignatures.Cols);
+        else
+            emFitter = new ExpectationMaxFitter(mSignatures);
+
+        final double[][] sigData = mSignatures.getData();
+
+        for(Integer sampleIndex : mSampleIndices)
+        {
+            final double[] sampleCounts = mSampleCounts.getCol(sampleIndex);
+
+            if(sumVector(sampleCounts) == 0)
+                continue;
+
+            final double[] sigAllocs;
+
+            if(lsqFit != null)
+            {
+                lsqFit.initialise(sigData, sampleCounts);
+                lsqFit.solve();
+                sigAllocs = lsqFit.getContribs();
+            }
+            else
+            {
+                sigAllocs = emFitter.fit(sampleCounts, EM_RESIDUALS_EXIT_PERC, EM_MAX_ITERATIONS);
+            }
+
+            mContributions.setCol(sampleIndex, sigAllocs);
+            ++mFittedCount;
+        }
+
+        return (long)0;
+    }
+}
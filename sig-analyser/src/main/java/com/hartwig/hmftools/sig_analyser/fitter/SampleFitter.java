@@ -20,6 +20,7 @@ import static com.hartwig.hmftools.sig_analyser.common.CommonUtils.LOG_DEBUG;
 import static com.hartwig.hmftools.sig_analyser.common.CommonUtils.SAMPLE_IDS;
 import static com.hartwig.hmftools.sig_analyser.common.CommonUtils.SIGNATURES_FILE;
 import static com.hartwig.hmftools.sig_analyser.common.CommonUtils.SIG_LOGGER;
+import static com.hartwig.hmftools.sig_analyser.common.CommonUtils.THREADS;
 import static com.hartwig.hmftools.sig_analyser.common.CommonUtils.formOutputFilename;
 import static com.hartwig.hmftools.sig_analyser.common.CommonUtils.loadSampleListFile;
 import static com.hartwig.hmftools.sig_analyser.common.CommonUtils.loadSampleMatrixCounts;
@@ -67,6 +68,7 @@ public class SampleFitter
 
     private final int mPositionBucketSize;
     private final int mMaxSampleCount;
+    private final int mThreads;
 
     private final DatabaseAccess mDbAccess;
     private final String mVcfFile;
@@ -100,6 +102,7 @@ public class SampleFitter
 
         mPositionBucketSize = Integer.parseInt(cmd.getOptionValue(POSITION_BUCKET_SIZE, "0"));
         mMaxSampleCount = Integer.parseInt(cmd.getOptionValue(MAX_SAMPLE_COUNT, String.valueOf(DEFAULT_POS_FREQ_MAX_SAMPLE_COUNT)));
+        mThreads = Integer.parseInt(cmd.getOptionValue(THREADS, "1"));
 
         mSnvLoader = new SigSnvLoader(null);
 
@@ -177,10 +180,33 @@ public class SampleFitter
         int sampleCount = mSampleIdList.size();
         int sigCount = mSignatures.Cols;
 
-        final Matrix sampleContribs = new Matrix(sigCount, sampleCount);
-
         SIG_LOGGER.info("fitting sample({}) with {} signatures", sampleCount, sigCount);
 
+        if(mSampleCountsMatrix != null)
+        {
+            // with all counts loaded up-front, fit them in parallel and then process the results in sample order
+            final Matrix sampleContribs = SampleFitTask.fitSamples(FitMethod.LEAST_SQUARES, mSignatures, mSampleCountsMatrix, mThreads);
+
+            if(sampleContribs == null)
+            {
+                SIG_LOGGER.error("sample fit failed");
+                return;
+            }
+
+            for(int i = 0; i < sampleCount; ++i)
+            {
+                final double[] sampleCounts = mSampleCountsMatrix.getCol(i);
+                double sampleTotal = sumVector(sampleCounts);
+
+                if(sampleTotal == 0)
+                    continue;
+
+                processSampleResults(mSampleIdList.get(i), sampleCounts, sampleTotal, sampleContribs.getCol(i));
+            }
+
+            return;
+        }
+
         LeastSquaresFit lsqFit = new LeastSquaresFit(mSignatures.Rows, mSignatures.Cols);
 
         for(int i = 0; i < sampleCount; ++i)
@@ -188,6 +214,9 @@ public class SampleFitter
             final String sampleId = mSampleIdList.get(i);
             final double[] sampleCounts = getSampleCounts(sampleId, i);
 
+            if(sampleCounts == null)
+                continue;
+
             double sampleTotal = sumVector(sampleCounts);
 
             if(sampleTotal == 0)
@@ -197,7 +226,6 @@ public class SampleFitter
             lsqFit.solve();
 
             final double[] sigAllocs = lsqFit.getContribs();
-            sampleContribs.setCol(i, sigAllocs);
 
             processSampleResults(sampleId, sampleCounts, sampleTotal, sigAllocs);
 
@@ -215,7 +243,11 @@ public class SampleFitter
 
         mSnvLoader.setSampleIds(Lists.newArrayList(sampleId));
 
-        mSnvLoader.loadData(mDbAccess, mVcfFile, false);
+        if(!mSnvLoader.loadData(mDbAccess, mVcfFile, false))
+        {
+            SIG_LOGGER.error("sample({}) SNV counts not loaded", sampleId);
+            return null;
+        }
 
         if(mSampleIdList.size() == 1)
         {
@@ -1,10 +1,12 @@
 package com.hartwig.hmftools.sig_analyser.loaders;
 
 import static com.hartwig.hmftools.common.utils.io.FileWriterUtils.OUTPUT_DIR;
+import static com.hartwig.hmftools.common.utils.io.FileWriterUtils.checkAddDirSeparator;
 import static com.hartwig.hmftools.common.utils.io.FileWriterUtils.parseOutputDir;
 import static com.hartwig.hmftools.patientdb.dao.DatabaseAccess.MIN_SAMPLE_PURITY;
 import static com.hartwig.hmftools.sig_analyser.common.CommonUtils.OUTPUT_FILE_ID;
 import static com.hartwig.hmftools.sig_analyser.common.CommonUtils.SAMPLE_IDS;
+import static com.hartwig.hmftools.sig_analyser.common.CommonUtils.THREADS;
 import static com.hartwig.hmftools.sig_analyser.common.CommonUtils.loadSampleListFile;
 
 import java.util.Arrays;
@@ -28,12 +30,16 @@ public class DataLoaderConfig
 
     public final List<Integer> PositionBucketSizes;
 
+    public final String SomaticVcfDir; // optional, to load each sample's SNVs from its VCF rather than the database
+    public final int Threads;
+
     private static final String APPLY_SAMPLE_QC = "apply_sample_qc";
     private static final String SUBCLONAL_MIN = "subclonal_min";
     private static final String SUBCLONAL_MAX = "subclonal_max";
     private static final String PLOIDY_MAX = "ploidy_max";
     private static final String PLOIDY_MIN = "ploidy_min";
     private static final String POSITION_BUCKET_SIZES = "pos_bucket_sizes";
+    private static final String SOMATIC_VCF_DIR = "somatic_vcf_dir";
 
     public DataLoaderConfig(final CommandLine cmd)
     {
@@ -66,11 +72,14 @@ public class DataLoaderConfig
             final String[] positonBuckets = cmd.getOptionValue(POSITION_BUCKET_SIZES).split(";", -1);
             Arrays.stream(positonBuckets).forEach(x -> PositionBucketSizes.add(Integer.parseInt(x)));
         }
+
+        SomaticVcfDir = cmd.hasOption(SOMATIC_VCF_DIR) ? checkAddDirSeparator(cmd.getOptionValue(SOMATIC_VCF_DIR)) : null;
+        Threads = Integer.parseInt(cmd.getOptionValue(THREADS, "1"));
     }
 
     public void loadSampleIds(final DatabaseAccess dbAccess)
     {
-        if(!SampleIds.isEmpty())
+        if(!SampleIds.isEmpty() || dbAccess == null)
             return;
 
         if(ApplySampleQC)
@@ -91,6 +100,8 @@ public class DataLoaderConfig
         options.addOption(PLOIDY_MIN, true, "Optional: ploidy min threshold");
 
         options.addOption(POSITION_BUCKET_SIZES, true, "Optional: position bucket sizes, separated by ';'");
+        options.addOption(SOMATIC_VCF_DIR, true, "Optional: directory of sample somatic VCFs, named 'SAMPLE_ID.purple.somatic.vcf.gz'");
+        options.addOption(THREADS, true, "Number of threads for loading samples, default 1");
     }
 
 }
@@ -2,11 +2,14 @@ package com.hartwig.hmftools.sig_analyser.loaders;
 
 import static com.hartwig.hmftools.patientdb.dao.DatabaseAccess.addDatabaseCmdLineArgs;
 import static com.hartwig.hmftools.patientdb.dao.DatabaseAccess.databaseAccess;
+import static com.hartwig.hmftools.patientdb.dao.DatabaseAccess.hasDatabaseConfig;
 import static com.hartwig.hmftools.sig_analyser.common.CommonUtils.LOG_DEBUG;
 import static com.hartwig.hmftools.sig_analyser.common.CommonUtils.formOutputFilename;
 
 import java.sql.SQLException;
+import java.util.List;
 
+import com.google.common.collect.Lists;
 import com.hartwig.hmftools.patientdb.dao.DatabaseAccess;
 
 import org.apache.commons.cli.CommandLine;
@@ -46,7 +49,14 @@ public class SigDataLoader
 
         try
         {
-            final DatabaseAccess dbAccess = databaseAccess(cmd);
+            // SNVs can be loaded from VCFs without a database
+            final DatabaseAccess dbAccess = hasDatabaseConfig(cmd) ? databaseAccess(cmd) : null;
+
+            if(dbAccess == null && config.SomaticVcfDir == null)
+            {
+                LOGGER.error("missing DB connection or somatic VCF directory");
+                return;
+            }
 
             config.loadSampleIds(dbAccess);
 
@@ -58,12 +68,36 @@ public class SigDataLoader
                 if(!config.PositionBucketSizes.isEmpty())
                     snvLoader.initialisePositionFrequencies(config.OutputDir, config.PositionBucketSizes);
 
-                snvLoader.loadData(dbAccess, null, true);
+                // each thread reading from the database has its own connection
+                final List<DatabaseAccess> dbConnections = Lists.newArrayList();
+
+                if(config.SomaticVcfDir != null)
+                {
+                    snvLoader.setSomaticVcfDir(config.SomaticVcfDir);
+                }
+                else
+                {
+                    dbConnections.add(dbAccess);
+
+                    for(int i = 1; i < config.Threads; ++i)
+                    {
+                        dbConnections.add(databaseAccess(cmd));
+                    }
+                }
+
+                snvLoader.setThreads(config.Threads, dbConnections);
+                boolean validLoad = snvLoader.loadData(dbAccess, null, true);
+
+                dbConnections.stream().filter(x -> x != dbAccess).forEach(x -> x.close());
 
-                final String fileId = config.SampleIds.size() == 1 ? config.SampleIds.get(0) + "." + "sample_counts" : "sample_counts";
-                final String filename = formOutputFilename(config.OutputDir, config.OutputFileId, fileId);
+                // partial counts are not written, so neither they nor their binary cache can be taken for a complete cohort
+                if(validLoad)
+                {
+                    final String fileId = config.SampleIds.size() == 1 ? config.SampleIds.get(0) + "." + "sample_counts" : "sample_counts";
+                    final String filename = formOutputFilename(config.OutputDir, config.OutputFileId, fileId);
 
-                snvLoader.writeSampleCounts(filename);
+                    snvLoader.writeSampleCounts(filename);
+                }
             }
 
             if(cmd.hasOption(LOAD_MNVS))
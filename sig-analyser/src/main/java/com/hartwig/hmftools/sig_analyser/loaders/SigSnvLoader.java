@@ -1,11 +1,16 @@
 package com.hartwig.hmftools.sig_analyser.loaders;
 
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
 import static com.hartwig.hmftools.common.sigs.PositionFrequencies.DEFAULT_POS_FREQ_MAX_SAMPLE_COUNT;
 import static com.hartwig.hmftools.common.sigs.SnvSigUtils.contextFromVariant;
 import static com.hartwig.hmftools.common.sigs.SnvSigUtils.populateBucketMap;
+import static com.hartwig.hmftools.common.utils.io.BinaryCacheUtils.binaryFilename;
 import static com.hartwig.hmftools.common.utils.io.FileWriterUtils.closeBufferedWriter;
 import static com.hartwig.hmftools.common.utils.io.FileWriterUtils.createBufferedWriter;
 import static com.hartwig.hmftools.sig_analyser.common.CommonUtils.SIG_LOGGER;
+import static com.hartwig.hmftools.common.utils.TaskExecutor.executeTasks;
 
 import static htsjdk.tribble.AbstractFeatureReader.getFeatureReader;
 
@@ -13,14 +18,17 @@ import java.io.BufferedWriter;
 import java.io.IOException;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.hartwig.hmftools.common.sigs.PositionFrequencies;
 import com.hartwig.hmftools.common.variant.SomaticVariant;
 import com.hartwig.hmftools.common.variant.SomaticVariantFactory;
-import com.hartwig.hmftools.common.variant.VariantType;
 import com.hartwig.hmftools.patientdb.dao.DatabaseAccess;
+import com.hartwig.hmftools.sig_analyser.common.SampleCountsCacheFile;
 import com.hartwig.hmftools.common.utils.Matrix;
 
 import org.apache.logging.log4j.LogManager;
@@ -45,7 +53,14 @@ public class SigSnvLoader
 
     private final List<BufferedWriter> mPosFreqWriters;
 
-    private static final int SNV_BUCKET_COUNT = 96;
+    private int mThreads;
+    private final List<DatabaseAccess> mDbConnections; // optional, one per thread
+    private String mSomaticVcfDir;
+    private final AtomicInteger mSamplesProcessed;
+
+    public static final int SNV_BUCKET_COUNT = 96;
+
+    public static final String SOMATIC_VCF_SUFFIX = ".purple.somatic.vcf.gz";
 
     private static final Logger LOGGER = LogManager.getLogger(SigSnvLoader.class);
 
@@ -59,6 +74,11 @@ public class SigSnvLoader
 
         mPositionFrequencies = Lists.newArrayList();
         mPosFreqWriters = Lists.newArrayList();
+
+        mThreads = 1;
+        mDbConnections = Lists.newArrayList();
+        mSomaticVcfDir = null;
+        mSamplesProcessed = new AtomicInteger();
     }
 
     public void setSampleIds(final List<String> sampleIds)
@@ -81,55 +101,131 @@ public class SigSnvLoader
 
     public Matrix getSampleBucketCounts() { return mSampleBucketCounts; }
 
-    public void loadData(final DatabaseAccess dbAccess, final String vcfFile, boolean writePosFreqData)
+    public void setThreads(int threads, final List<DatabaseAccess> dbConnections)
+    {
+        mThreads = max(threads, 1);
+        mDbConnections.clear();
+
+        if(dbConnections != null)
+            mDbConnections.addAll(dbConnections);
+    }
+
+    public void setSomaticVcfDir(final String vcfDir) { mSomaticVcfDir = vcfDir; }
+
+    public boolean loadData(final DatabaseAccess dbAccess, final String vcfFile, boolean writePosFreqData)
     {
         mSampleBucketCounts = new Matrix(SNV_BUCKET_COUNT, mSampleIds.size());
+        mSamplesProcessed.set(0);
 
         LOGGER.debug("retrieving SNV data for {} samples", mSampleIds.size());
 
+        // position frequencies are only per-sample when written out after each one, otherwise they accumulate in a single set
+        int taskCount = writePosFreqData || mPositionFrequencies.isEmpty() ? min(mThreads, mSampleIds.size()) : 1;
+        taskCount = max(taskCount, 1);
+
+        final List<List<Integer>> taskSampleIndices = Lists.newArrayList();
+
+        for(int t = 0; t < taskCount; ++t)
+        {
+            taskSampleIndices.add(Lists.newArrayList());
+        }
+
         for(int sampleIndex = 0; sampleIndex < mSampleIds.size(); ++sampleIndex)
         {
-            String sampleId = mSampleIds.get(sampleIndex);
+            taskSampleIndices.get(sampleIndex % taskCount).add(sampleIndex);
+        }
 
-            final List<SomaticVariant> variants = vcfFile != null ?
-                    loadSomaticVariants(vcfFile, sampleId) : dbAccess.readSomaticVariants(sampleId, VariantType.SNP);
+        final List<SnvSampleLoadTask> loadTasks = Lists.newArrayList();
 
-            LOGGER.info("sample({}) processing {} variants", sampleId, variants.size());
+        for(int t = 0; t < taskCount; ++t)
+        {
+            final DatabaseAccess taskDbAccess = !mDbConnections.isEmpty() ? mDbConnections.get(t % mDbConnections.size()) : dbAccess;
 
-            processSampleVariants(sampleId, variants, sampleIndex);
+            final List<PositionFrequencies> positionFrequencies = Lists.newArrayList();
 
-            if(writePosFreqData)
+            if(taskCount == 1)
             {
-                for(int i = 0; i < mPositionFrequencies.size(); ++i)
-                {
-                    final PositionFrequencies positionFrequency = mPositionFrequencies.get(i);
-                    positionFrequency.writeFrequencyCounts(mPosFreqWriters.get(i), sampleId);
-                    positionFrequency.clear();
-                }
+                positionFrequencies.addAll(mPositionFrequencies);
+            }
+            else
+            {
+                mPositionFrequencies.forEach(x -> positionFrequencies.add(new PositionFrequencies(x.getBucketSize(), x.getMaxSampleCount())));
             }
 
-            if(sampleIndex > 0 && (sampleIndex % 100) == 0)
+            loadTasks.add(new SnvSampleLoadTask(
+                    this, taskSampleIndices.get(t), taskDbAccess, vcfFile, positionFrequencies, writePosFreqData));
+        }
+
+        final List<Callable> tasks = Lists.newArrayList(loadTasks);
+
+        if(!executeTasks(tasks, mThreads, "SigAnalyser"))
+        {
+            LOGGER.error("SNV sample data load failed");
+
+            if(writePosFreqData)
+                mPosFreqWriters.forEach(x -> closeBufferedWriter(x));
+
+            return false;
+        }
+
+        // merge each task's sample counts back in sample order
+        for(final SnvSampleLoadTask loadTask : loadTasks)
+        {
+            final List<Integer> sampleIndices = loadTask.getSampleIndices();
+            final Matrix taskCounts = loadTask.getSampleBucketCounts();
+
+            for(int i = 0; i < sampleIndices.size(); ++i)
             {
-                SIG_LOGGER.info("processed {} samples", sampleIndex);
+                mSampleBucketCounts.setCol(sampleIndices.get(i), taskCounts.getCol(i));
             }
         }
 
         if(writePosFreqData)
             mPosFreqWriters.forEach(x -> closeBufferedWriter(x));
+
+        return true;
+    }
+
+    public final List<String> getSampleIds() { return mSampleIds; }
+
+    public String getSampleVcfFile(final String sampleId, final String vcfFile)
+    {
+        if(mSomaticVcfDir != null)
+            return mSomaticVcfDir + sampleId + SOMATIC_VCF_SUFFIX;
+
+        return vcfFile;
+    }
+
+    public synchronized void writePositionFrequencies(final String sampleId, final List<PositionFrequencies> positionFrequencies)
+    {
+        for(int i = 0; i < positionFrequencies.size(); ++i)
+        {
+            final PositionFrequencies positionFrequency = positionFrequencies.get(i);
+            positionFrequency.writeFrequencyCounts(mPosFreqWriters.get(i), sampleId);
+            positionFrequency.clear();
+        }
     }
 
-    private List<SomaticVariant> loadSomaticVariants(final String vcfFile, final String sampleId)
+    public void markSampleProcessed()
     {
+        int processed = mSamplesProcessed.incrementAndGet();
+
+        if((processed % 100) == 0)
+        {
+            SIG_LOGGER.info("processed {} samples", processed);
+        }
+    }
+
+    public static boolean streamSomaticVariants(final String vcfFile, final String sampleId, final Consumer<SomaticVariant> consumer)
+    {
+        // reads and passes on each SNV in turn rather than collecting them
         CompoundFilter filter = new CompoundFilter(true);
         filter.add(new PassingVariantFilter());
 
         SomaticVariantFactory variantFactory = new SomaticVariantFactory(filter);
-        final List<SomaticVariant> variantList = Lists.newArrayList();
 
-        try
+        try(final AbstractFeatureReader<VariantContext, LineIterator> reader = getFeatureReader(vcfFile, new VCFCodec(), false))
         {
-            final AbstractFeatureReader<VariantContext, LineIterator> reader = getFeatureReader(vcfFile, new VCFCodec(), false);
-
             for (VariantContext variant : reader.iterator())
             {
                 if (filter.test(variant))
@@ -139,16 +235,17 @@ public class SigSnvLoader
                     if(somaticVariant == null || !somaticVariant.isSnp())
                         continue;
 
-                    variantList.add(somaticVariant);
+                    consumer.accept(somaticVariant);
                 }
             }
         }
         catch(IOException e)
         {
             SIG_LOGGER.error(" failed to read somatic VCF file({}): {}", vcfFile, e.toString());
+            return false;
         }
 
-        return variantList;
+        return true;
     }
 
     public void writeSampleCounts(final String filename)
@@ -185,48 +282,52 @@ public class SigSnvLoader
         catch (final IOException e)
         {
             LOGGER.error("error writing to outputFile: {}", e.toString());
+            return;
         }
+
+        // cohort counts are also cached in binary form for later runs to load
+        if(mSampleIds.size() > 1)
+            SampleCountsCacheFile.write(binaryFilename(filename), mSampleIds, mSampleBucketCounts);
     }
 
-    private void processSampleVariants(final String sampleId, List<SomaticVariant> variants, int sampleIndex)
+    public boolean processVariant(
+            final String sampleId, final SomaticVariant variant, final double[] bucketCounts,
+            final List<PositionFrequencies> positionFrequencies)
     {
-        double[][] sampleCounts = mSampleBucketCounts.getData();
+        // returns false if the variant's context cannot be assigned to a bucket
+        if(variant.isFiltered() || !variant.isSnp())
+            return true;
 
-        for(final SomaticVariant variant : variants)
-        {
-            if(variant.isFiltered() || !variant.isSnp())
-                continue;
-
-            if(variant.alt().length() != 1)
-                continue;
+        if(variant.alt().length() != 1)
+            return true;
 
-            String rawContext = variant.trinucleotideContext();
+        String rawContext = variant.trinucleotideContext();
 
-            if(rawContext.contains("N"))
-                continue;
+        if(rawContext.contains("N"))
+            return true;
 
-            // check filters
-            if(mFilters != null && !mFilters.passesFilters(variant))
-                continue;
+        // check filters
+        if(mFilters != null && !mFilters.passesFilters(variant))
+            return true;
 
-            for(PositionFrequencies positionFrequencies : mPositionFrequencies)
-            {
-                positionFrequencies.addPosition(variant.chromosome(), (int)variant.position());
-            }
-
-            final String bucketName = contextFromVariant(variant);
-            Integer bucketIndex = mBucketStringToIndex.get(bucketName);
+        for(PositionFrequencies posFrequencies : positionFrequencies)
+        {
+            posFrequencies.addPosition(variant.chromosome(), (int)variant.position());
+        }
 
-            if(bucketIndex == null)
-            {
-                LOGGER.error("sample({}) invalid bucketName({}) from var({}>{}) context={})",
-                        sampleId, bucketName, variant.ref(), variant.alt(), variant.trinucleotideContext());
+        final String bucketName = contextFromVariant(variant);
+        Integer bucketIndex = mBucketStringToIndex.get(bucketName);
 
-                return;
-            }
+        if(bucketIndex == null)
+        {
+            LOGGER.error("sample({}) invalid bucketName({}) from var({}>{}) context={})",
+                    sampleId, bucketName, variant.ref(), variant.alt(), variant.trinucleotideContext());
 
-            ++sampleCounts[bucketIndex][sampleIndex];
+            return false;
         }
+
+        ++bucketCounts[bucketIndex];
+        return true;
     }
 
     public static String getBucketNameByIndex(final Map<String,Integer> bucketNameIndexMap, int index)
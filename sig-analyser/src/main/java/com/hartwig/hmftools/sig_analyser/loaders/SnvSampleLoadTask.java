@@ -0,0 +1,99 @@
+package com.hartwig.hmftools.sig_analyser.loaders;
+
+import static com.hartwig.hmftools.sig_analyser.loaders.SigSnvLoader.SNV_BUCKET_COUNT;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import com.hartwig.hmftools.common.sigs.PositionFrequencies;
+import com.hartwig.hmftools.common.utils.Matrix;
+import com.hartwig.hmftools.common.variant.SomaticVariant;
+import com.hartwig.hmftools.common.variant.VariantType;
+import com.hartwig.hmftools.patientdb.dao.DatabaseAccess;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+// loads a subset of samples' SNVs, from a VCF or the database, into its own bucket counts and position frequencies, which the
+// loader merges back in sample order once all tasks are complete
+public class SnvSampleLoadTask implements Callable
+{
+    private final SigSnvLoader mLoader;
+    private final List<Integer> mSampleIndices;
+    private final DatabaseAccess mDbAccess;
+    private final String mVcfFile;
+    private final List<PositionFrequencies> mPositionFrequencies;
+    private final boolean mWritePosFreqData;
+
+    private final Matrix mSampleBucketCounts; // a column per sample in this task
+
+    private static final Logger LOGGER = LogManager.getLogger(SnvSampleLoadTask.class);
+
+    public SnvSampleLoadTask(
+            final SigSnvLoader loader, final List<Integer> sampleIndices, final DatabaseAccess dbAccess, final String vcfFile,
+            final List<PositionFrequencies> positionFrequencies, boolean writePosFreqData)
+    {
+        mLoader = loader;
+        mSampleIndices = sampleIndices;
+        mDbAccess = dbAccess;
+        mVcfFile = vcfFile;
+        mPositionFrequencies = positionFrequencies;
+        mWritePosFreqData = writePosFreqData;
+
+        mSampleBucketCounts = new Matrix(SNV_BUCKET_COUNT, sampleIndices.size());
+    }
+
+    public final List<Integer> getSampleIndices() { return mSampleIndices; }
+    public final Matrix getSampleBucketCounts() { return mSampleBucketCounts; }
+
+    @Override
+    public Long call()
+    {
+        final double[] bucketCounts = new double[SNV_BUCKET_COUNT];
+
+        for(int i = 0; i < mSampleIndices.size(); ++i)
+        {
+            final String sampleId = mLoader.getSampleIds().get(mSampleIndices.get(i));
+
+            for(int b = 0; b < bucketCounts.length; ++b)
+            {
+                bucketCounts[b] = 0;
+            }
+
+            final String vcfFile = mLoader.getSampleVcfFile(sampleId, mVcfFile);
+
+            if(vcfFile != null)
+            {
+                // stream the VCF's variants straight into the counts, stopping further counts on an invalid context
+                final boolean[] validSample = { true };
+
+                SigSnvLoader.streamSomaticVariants(vcfFile, sampleId, variant ->
+                {
+                    if(validSample[0])
+                        validSample[0] = mLoader.processVariant(sampleId, variant, bucketCounts, mPositionFrequencies);
+                });
+            }
+            else
+            {
+                final List<SomaticVariant> variants = mDbAccess.readSomaticVariants(sampleId, VariantType.SNP);
+
+                LOGGER.info("sample({}) processing {} variants", sampleId, variants.size());
+
+                for(final SomaticVariant variant : variants)
+                {
+                    if(!mLoader.processVariant(sampleId, variant, bucketCounts, mPositionFrequencies))
+                        break;
+                }
+            }
+
+            mSampleBucketCounts.setCol(i, bucketCounts);
+
+            if(mWritePosFreqData)
+                mLoader.writePositionFrequencies(sampleId, mPositionFrequencies);
+
+            mLoader.markSampleProcessed();
+        }
+
+        return (long)0;
+    }
+}
@@ -16,12 +16,14 @@ import static com.hartwig.hmftools.common.utils.Matrix.extractNonZeros;
 import java.io.BufferedWriter;
 import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 import com.google.common.collect.Lists;
 import com.hartwig.hmftools.common.utils.PerformanceCounter;
 import com.hartwig.hmftools.common.utils.GenericDataLoader;
 import com.hartwig.hmftools.common.utils.GenericDataCollection;
 import com.hartwig.hmftools.common.utils.Matrix;
+import com.hartwig.hmftools.common.utils.TaskExecutor;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
@@ -129,14 +131,38 @@ public class NmfAnalyser
         double lowestRunScore = -1;
         int lowestRunIndex = -1;
 
+        // the runs for each signature count are independent, so their restarts are run together on the one pool -
+        // first each count's initial run, which sets the cost its other restarts are compared against, then the rest
+        final List<NmfRun> nmfRuns = Lists.newArrayList();
+        final List<Callable> initialTasks = Lists.newArrayList();
+
         for (int sigCount = startSigCount; sigCount <= maxSigCount; ++sigCount)
         {
             LOGGER.info("starting run with sigCount({})", sigCount);
 
             NmfRun nmfRun = new NmfRun(mConfig, sigCount, mNmfCalculator, mReferenceSigs);
+            nmfRuns.add(nmfRun);
+            initialTasks.add(nmfRun.createInitialTask());
+        }
+
+        final List<Callable> restartTasks = Lists.newArrayList();
 
-            if (!nmfRun.run()) {
-                LOGGER.warn("run with sigCount({}) invalid, exiting", sigCount);
+        if(TaskExecutor.executeTasks(initialTasks, mConfig.Threads, "SigAnalyser"))
+        {
+            nmfRuns.forEach(x -> restartTasks.addAll(x.createRestartTasks(mConfig.Threads)));
+
+            if(!TaskExecutor.executeTasks(restartTasks, mConfig.Threads, "SigAnalyser"))
+                nmfRuns.clear();
+        }
+        else
+        {
+            nmfRuns.clear();
+        }
+
+        for (final NmfRun nmfRun : nmfRuns)
+        {
+            if (!nmfRun.completeRun()) {
+                LOGGER.warn("run with sigCount({}) invalid, exiting", nmfRun.getSigCount());
                 break;
             }
 
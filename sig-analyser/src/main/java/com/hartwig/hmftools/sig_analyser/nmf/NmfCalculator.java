@@ -104,6 +104,40 @@ public class NmfCalculator
         mRandom = new Random(123456);
     }
 
+    public NmfCalculator(final NmfCalculator other)
+    {
+        // a calculator for another worker, sharing the other's read-only inputs but with its own run state
+        mConfig = other.mConfig;
+        mRunId = 0;
+
+        mSigCount = other.mSigCount;
+        mSampleCounts = other.mSampleCounts;
+        mTotalCount = other.mTotalCount;
+
+        mBucketCount = other.mBucketCount;
+        mSampleCount = other.mSampleCount;
+        mBucketTotals = other.mBucketTotals;
+        mSampleTotals = other.mSampleTotals;
+
+        mTotalResiduals = 0;
+        mNetResiduals = 0;
+        mLowestCost = other.mLowestCost;
+
+        mW = null;
+        mH = null;
+        mV = new Matrix(mBucketCount, mSampleCount);
+        mPrevV = new Matrix(mBucketCount, mSampleCount);
+
+        mRefSignatures = other.mRefSignatures;
+        mRefContributions = other.mRefContributions;
+        mRandomStartSignatures = other.mRandomStartSignatures;
+        mStartSigs = Lists.newArrayList();
+
+        mIsValid = false;
+
+        mRandom = new Random(123456);
+    }
+
     public void setSigCount(int sigCount) { mSigCount = sigCount; }
 
     public void setSignatures(final Matrix refSigs)
@@ -124,6 +158,12 @@ public class NmfCalculator
     public double getTotalResiduals() { return mTotalResiduals; }
     public void clearLowestCost() { mLowestCost = 0; }
 
+    // the lowest cost from other runs, used to abandon runs unlikely to improve on it
+    public void setLowestCost(double cost) { mLowestCost = cost; }
+    public double getLowestCost() { return mLowestCost; }
+
+    public void setRandomSeed(long seed) { mRandom.setSeed(seed); }
+
     public double getTotalCount() { return mTotalCount; }
     public final Matrix getRefSignatures() { return mRefSignatures; }
 
@@ -506,30 +546,26 @@ public class NmfCalculator
         // the multiplicative update method (described by Lee and Seund, 2001)
         // https://papers.nips.cc/paper/1861-algorithms-for-non-negative-matrix-factorization.pdf
 
-        // update contribution matrix
-        Matrix wt = mW.transpose();
-        Matrix hAdj = wt.multiply(mSampleCounts);
-        Matrix hd = wt.multiply(mV);
+        // update contribution matrix: H *= (Wt.V) / (Wt.WH)
+        Matrix hAdj = mW.transposeMultiply(mSampleCounts);
+        Matrix hd = mW.transposeMultiply(mV);
 
-        hAdj.scalarDivide(hd, true);
-        mH.scalarMultiply(hAdj);
+        mH.scalarMultiplyRatio(hAdj, hd);
 
         if(mConfig.SigFloatRate > 0)
         {
-            // update signatures matrix
-            Matrix ht = mH.transpose();
-            Matrix wAdj = mSampleCounts.multiply(ht);
+            // update signatures matrix: W *= (V.Ht) / (WH.Ht)
+            Matrix wAdj = mSampleCounts.multiplyTranspose(mH);
             Matrix wd1 = mW.multiply(mH);
-            Matrix wd = wd1.multiply(ht);
-
-            wAdj.scalarDivide(wd, true);
+            Matrix wd = wd1.multiplyTranspose(mH);
 
             if(mConfig.SigFloatRate == 1)
             {
-                mW.scalarMultiply(wAdj);
+                mW.scalarMultiplyRatio(wAdj, wd);
             }
             else
             {
+                wAdj.scalarDivide(wd, true);
                 mW.scalarMultiplyRateAdjusted(wAdj, mConfig.SigFloatRate, mRefSignatures.Cols);
             }
         }
@@ -537,7 +573,8 @@ public class NmfCalculator
 
     private void modelBrunet()
     {
-        Matrix vWH = mSampleCounts;
+        // work on copies since the sample counts are shared across runs
+        Matrix vWH = new Matrix(mSampleCounts);
         vWH.scalarDivide(mV);
 
         Matrix wSum = new Matrix(mSigCount, mSampleCount);
@@ -552,16 +589,14 @@ public class NmfCalculator
             }
         }
 
-        Matrix wt = mW.transpose();
-        Matrix wt_vWH = wt.multiply(vWH);
-        Matrix hAdj = wt_vWH;
+        Matrix hAdj = mW.transposeMultiply(vWH);
         hAdj.scalarDivide(wSum);
 
         mH.scalarMultiply(hAdj);
 
         // recalc V and WH using the new H
         mV = mW.multiply(mH);
-        vWH = mSampleCounts;
+        vWH = new Matrix(mSampleCounts);
         vWH.scalarDivide(mV);
 
         // now adjust W
@@ -577,9 +612,7 @@ public class NmfCalculator
             }
         }
 
-        Matrix ht = mH.transpose();
-        Matrix vWH_ht = vWH.multiply(ht);
-        Matrix wAdj = vWH_ht;
+        Matrix wAdj = vWH.multiplyTranspose(mH);
         wAdj.scalarDivide(hSum);
 
         mW.scalarMultiply(wAdj);
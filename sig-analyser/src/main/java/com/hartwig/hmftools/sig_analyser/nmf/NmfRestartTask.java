@@ -0,0 +1,104 @@
+package com.hartwig.hmftools.sig_analyser.nmf;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import com.hartwig.hmftools.common.utils.Matrix;
+import com.hartwig.hmftools.common.utils.PerformanceCounter;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+// performs a subset of a run's random restarts on its own calculator, keeping the best of them - each restart is seeded from its
+// run index and compared against the same reference cost, so its result doesn't depend on which task or thread it ran in
+public class NmfRestartTask implements Callable
+{
+    private final NmfCalculator mCalculator;
+    private final int mSigCount;
+    private final List<Integer> mRunIds;
+    private final double mReferenceCost;
+
+    private boolean mValid;
+    private int mBestRunId;
+    private double mLowestResiduals;
+    private Matrix mBestSignatures;
+    private Matrix mBestContributions;
+    private final PerformanceCounter mPerfCounter;
+
+    private static final long RANDOM_SEED = 123456;
+
+    private static final Logger LOGGER = LogManager.getLogger(NmfRestartTask.class);
+
+    public NmfRestartTask(final NmfCalculator calculator, int sigCount, final List<Integer> runIds, double referenceCost)
+    {
+        mCalculator = calculator;
+        mSigCount = sigCount;
+        mRunIds = runIds;
+        mReferenceCost = referenceCost;
+
+        mValid = true;
+        mBestRunId = -1;
+        mLowestResiduals = -1;
+        mBestSignatures = null;
+        mBestContributions = null;
+        mPerfCounter = new PerformanceCounter("NMF Runs");
+    }
+
+    public static long runSeed(int sigCount, int runId)
+    {
+        return RANDOM_SEED + sigCount * 1000003L + runId;
+    }
+
+    public boolean isValid() { return mValid; }
+    public boolean hasResult() { return mBestRunId >= 0; }
+    public int getBestRunId() { return mBestRunId; }
+    public double getLowestResiduals() { return mLowestResiduals; }
+    public final Matrix getBestSignatures() { return mBestSignatures; }
+    public final Matrix getBestContributions() { return mBestContributions; }
+    public double getCalculatorCost() { return mCalculator.getLowestCost(); }
+    public final PerformanceCounter getPerfCounter() { return mPerfCounter; }
+
+    @Override
+    public Long call()
+    {
+        mCalculator.setSigCount(mSigCount);
+
+        for(Integer runId : mRunIds)
+        {
+            mCalculator.setRandomSeed(runSeed(mSigCount, runId));
+            mCalculator.setLowestCost(mReferenceCost);
+            mPerfCounter.start();
+            mCalculator.performRun(runId);
+            mPerfCounter.stop();
+
+            if(!mCalculator.isValid())
+            {
+                LOGGER.warn("sigCount({}) run({}) invalid NMF run", mSigCount, runId);
+                mValid = false;
+                break;
+            }
+
+            double newRunScore = mCalculator.getTotalResiduals();
+
+            if(mBestRunId < 0)
+            {
+                mBestRunId = runId;
+                mLowestResiduals = newRunScore;
+                mBestSignatures = new Matrix(mCalculator.getSignatures());
+                mBestContributions = new Matrix(mCalculator.getContributions());
+            }
+            else if(newRunScore < mLowestResiduals)
+            {
+                LOGGER.debug(String.format("run %d: score lowered(%.0f > %.0f) percent(%.5f)",
+                        runId, mLowestResiduals, newRunScore, newRunScore / mCalculator.getTotalCount()));
+
+                mBestRunId = runId;
+                mLowestResiduals = newRunScore;
+                mBestSignatures.setData(mCalculator.getSignatures().getData());
+                mBestContributions.setData(mCalculator.getContributions().getData());
+            }
+        }
+
+        return (long)0;
+    }
+}
@@ -40,6 +40,9 @@ public class NmfRun {
     private boolean mValid;
     private Matrix mRandomStartSignatures;
 
+    private NmfRestartTask mInitialTask;
+    private final List<NmfRestartTask> mRestartTasks;
+
     PerformanceCounter mPerfCounter;
 
     private static final Logger LOGGER = LogManager.getLogger(NmfRun.class);
@@ -49,7 +52,8 @@ public class NmfRun {
         mConfig = config;
         mSigCount = sigCount;
 
-        mCalculator = nmfCalculator;
+        // each run has its own calculator so that runs for different signature counts can proceed concurrently
+        mCalculator = new NmfCalculator(nmfCalculator);
         mValid = false;
 
         mBucketCount = mCalculator.getSampleCounts().Rows;
@@ -64,6 +68,13 @@ public class NmfRun {
         mRandomStartSignatures = null;
         generateRandomStartSignatures();
 
+        mCalculator.setSigCount(mSigCount);
+        mCalculator.setRandomSignatures(mRandomStartSignatures);
+        mCalculator.clearLowestCost();
+
+        mInitialTask = null;
+        mRestartTasks = Lists.newArrayList();
+
         mPerfCounter = new PerformanceCounter(String.format("NMF %d Sigs", mSigCount));
     }
 
@@ -77,72 +88,82 @@ public class NmfRun {
 
     public final Matrix getBestContributions() { return mBestContributions; }
 
-    public boolean run()
+    public NmfRestartTask createInitialTask()
     {
-        mValid = true;
-
-        mCalculator.setSigCount(mSigCount);
-        mCalculator.setRandomSignatures(mRandomStartSignatures);
-        mCalculator.clearLowestCost();
+        // the first run sets the reference cost against which the other runs can be abandoned early
+        mInitialTask = new NmfRestartTask(mCalculator, mSigCount, Lists.newArrayList(0), 0);
+        return mInitialTask;
+    }
 
-        mPerfCounter.start();
+    public List<NmfRestartTask> createRestartTasks(int taskCount)
+    {
+        mRestartTasks.clear();
 
-        PerformanceCounter runPC = new PerformanceCounter("NMF Runs");
+        if(mInitialTask == null || !mInitialTask.isValid() || mConfig.RunCount <= 1)
+            return mRestartTasks;
 
-        boolean hasValidRun = false;
+        double referenceCost = mInitialTask.getCalculatorCost();
+        int restartCount = mConfig.RunCount - 1;
+        taskCount = max(min(taskCount, restartCount), 1);
 
-        for (int i = 0; i < mConfig.RunCount; ++i)
+        for(int t = 0; t < taskCount; ++t)
         {
-            runPC.start();
-            mCalculator.performRun(i);
-            runPC.stop();
+            final List<Integer> runIds = Lists.newArrayList();
 
-            if (!mCalculator.isValid()) {
-                LOGGER.warn("exiting on invalid NMF run");
-                mValid = false;
-                break;
+            for(int runId = t + 1; runId < mConfig.RunCount; runId += taskCount)
+            {
+                runIds.add(runId);
             }
 
-            double newRunScore = mCalculator.getTotalResiduals();
-            final Matrix newSigs = mCalculator.getSignatures();
+            NmfCalculator calculator = t == 0 ? mCalculator : new NmfCalculator(mCalculator);
+            mRestartTasks.add(new NmfRestartTask(calculator, mSigCount, runIds, referenceCost));
+        }
 
-            if (i == 0 || !hasValidRun)
-            {
-                hasValidRun = true;
+        return mRestartTasks;
+    }
 
-                mLowestResidualCount = newRunScore;
-                mBestSignatures = new Matrix(newSigs);
-                mBestContributions = new Matrix(mCalculator.getContributions());
+    public boolean completeRun()
+    {
+        // take the lowest-scoring run, and the earliest of any with equal scores as if they had been run in order
+        mValid = mInitialTask != null && mInitialTask.isValid() && mRestartTasks.stream().allMatch(x -> x.isValid());
 
-                // mUniqueSignatures.add(new SigMatrix(newSigs));
-            }
-            else
+        if(!mValid)
+        {
+            LOGGER.warn("exiting on invalid NMF run");
+            return false;
+        }
+
+        NmfRestartTask bestTask = null;
+
+        final List<NmfRestartTask> allTasks = Lists.newArrayList(mInitialTask);
+        allTasks.addAll(mRestartTasks);
+
+        for(final NmfRestartTask task : allTasks)
+        {
+            if(!task.hasResult())
+                continue;
+
+            if(bestTask == null || task.getLowestResiduals() < bestTask.getLowestResiduals()
+            || (task.getLowestResiduals() == bestTask.getLowestResiduals() && task.getBestRunId() < bestTask.getBestRunId()))
             {
-                if (newRunScore < mLowestResidualCount)
-                {
-                    double residualsPercent = newRunScore / mCalculator.getTotalCount();
-                    LOGGER.debug(String.format("run %d: score lowered(%.0f > %.0f) percent(%.5f)",
-                            i, mLowestResidualCount, newRunScore, residualsPercent));
-
-                    mLowestResidualCount = newRunScore;
-                    mBestSignatures.setData(newSigs.getData());
-                    mBestContributions.setData(mCalculator.getContributions().getData());
-                }
-
-                // store if this new signature is significantly different
-                // cacheUniqueSignatures(newSigs); // currently unused
+                bestTask = task;
             }
         }
 
-        mPerfCounter.stop();
-
-        if (!mValid)
+        if(bestTask == null)
+        {
+            mValid = false;
             return false;
+        }
+
+        mLowestResidualCount = bestTask.getLowestResiduals();
+        mBestSignatures = bestTask.getBestSignatures();
+        mBestContributions = bestTask.getBestContributions();
 
         double bestFitPercent = mLowestResidualCount / mCalculator.getTotalCount();
 
-        LOGGER.info(String.format("sigCount(%d) %d run(s) complete, lowestResiduals(%.0f perc=%.5f)",
-                mSigCount, mConfig.RunCount, mLowestResidualCount, bestFitPercent));
+        LOGGER.info(String.format("sigCount(%d) %d run(s) complete, lowestResiduals(%.0f perc=%.5f) from run(%d)",
+                mSigCount, mConfig.RunCount, mLowestResidualCount, bestFitPercent, bestTask.getBestRunId()));
 
         mBestSignatures.cacheTranspose();
         mBestContributions.cacheTranspose();
@@ -152,8 +173,9 @@ public class NmfRun {
 
         sigReporter.runAnalysis();
 
+        // the runs are timed by the tasks which performed them, so the total is summed across threads
+        allTasks.forEach(x -> mPerfCounter.merge(x.getPerfCounter()));
         mPerfCounter.logStats();
-        runPC.logStats(false); // mConfig.LogVerbose
 
         return mValid;
     }
@@ -0,0 +1,150 @@
+package com.hartwig.hmftools.sig_analyser;
+
+import static com.hartwig.hmftools.sig_analyser.common.CommonUtils.THREADS;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Random;
+
+import com.google.common.collect.Lists;
+import com.hartwig.hmftools.common.utils.GenericDataCollection;
+import com.hartwig.hmftools.sig_analyser.buckets.BucketAnalyser;
+import com.hartwig.hmftools.sig_analyser.buckets.BucketGroup;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.junit.Test;
+
+public class BucketAnalyserTest
+{
+    private static final int BUCKET_COUNT = 16;
+    private static final int SAMPLE_COUNT = 60;
+    private static final int SIG_COUNT = 3;
+    private static final int ASSESS_ROUNDS = 4;
+
+    @Test
+    public void testCandidateAssessmentThreadsMatch() throws ParseException
+    {
+        final GenericDataCollection collection = createSampleCounts(new Random(1));
+
+        final BucketAnalyser singleThreaded = new BucketAnalyser(collection, createConfig(1));
+        final BucketAnalyser multiThreaded = new BucketAnalyser(collection, createConfig(4));
+
+        singleThreaded.prepareSampleCounts();
+        multiThreaded.prepareSampleCounts();
+
+        // follow the run loop: assess the candidate groups, then allocate the top one before the next round
+        for(int round = 0; round < ASSESS_ROUNDS; ++round)
+        {
+            final List<BucketGroup> groups = singleThreaded.assessCandidateGroups();
+            final List<BucketGroup> threadedGroups = multiThreaded.assessCandidateGroups();
+
+            if(round == 0)
+                assertFalse(groups.isEmpty());
+
+            assertEquals(groups.size(), threadedGroups.size());
+
+            for(int i = 0; i < groups.size(); ++i)
+            {
+                assertGroupsMatch(groups.get(i), threadedGroups.get(i));
+            }
+
+            if(groups.isEmpty())
+                break;
+
+            assertTrue(singleThreaded.allocateCandidateGroup(groups.get(0)));
+            assertTrue(multiThreaded.allocateCandidateGroup(threadedGroups.get(0)));
+        }
+
+        assertEquals(singleThreaded.getOptimiserFitCount(), multiThreaded.getOptimiserFitCount());
+        assertEquals(singleThreaded.getRetainedAllocationCount(), multiThreaded.getRetainedAllocationCount());
+
+        // groups kept from the previous round only refit the samples allocated to the last top group
+        assertTrue(singleThreaded.getRetainedAllocationCount() > 0);
+    }
+
+    private static void assertGroupsMatch(final BucketGroup group, final BucketGroup otherGroup)
+    {
+        assertEquals(group.getId(), otherGroup.getId());
+        assertEquals(group.getBucketIds(), otherGroup.getBucketIds());
+        assertEquals(group.getPotentialAllocation(), otherGroup.getPotentialAllocation(), 0);
+        assertEquals(group.getPotentialAdjAllocation(), otherGroup.getPotentialAdjAllocation(), 0);
+        assertEquals(group.getSampleIds(), otherGroup.getSampleIds());
+        assertEquals(group.getSampleCountTotals(), otherGroup.getSampleCountTotals());
+    }
+
+    private static CommandLine createConfig(int threads) throws ParseException
+    {
+        final Options options = new Options();
+        BucketAnalyser.addCmdLineArgs(options);
+
+        final String[] args = { "-ba_use_background_sigs", "false", "-" + THREADS, String.valueOf(threads) };
+        return new DefaultParser().parse(options, args);
+    }
+
+    private static GenericDataCollection createSampleCounts(final Random random)
+    {
+        // each sample is a mix of 1 or 2 of a few signatures, each concentrated in a handful of buckets
+        final List<double[]> sigs = Lists.newArrayList();
+
+        for(int s = 0; s < SIG_COUNT; ++s)
+        {
+            final double[] sig = new double[BUCKET_COUNT];
+
+            for(int b = 0; b < BUCKET_COUNT; ++b)
+            {
+                sig[b] = (b % SIG_COUNT == s) ? 1 + random.nextInt(10) : random.nextInt(2) * 0.1;
+            }
+
+            sigs.add(sig);
+        }
+
+        final double[][] counts = new double[BUCKET_COUNT][SAMPLE_COUNT];
+
+        for(int i = 0; i < SAMPLE_COUNT; ++i)
+        {
+            int sigIndex = i % SIG_COUNT;
+            int otherSigIndex = random.nextBoolean() ? (sigIndex + 1) % SIG_COUNT : -1;
+
+            for(int b = 0; b < BUCKET_COUNT; ++b)
+            {
+                double count = sigs.get(sigIndex)[b] * (50 + random.nextInt(200));
+
+                if(otherSigIndex >= 0)
+                    count += sigs.get(otherSigIndex)[b] * (20 + random.nextInt(100));
+
+                counts[b][i] = Math.round(count);
+            }
+        }
+
+        final GenericDataCollection collection = new GenericDataCollection(GenericDataCollection.GD_TYPE_DECIMAL);
+
+        final List<String> sampleNames = Lists.newArrayList();
+
+        for(int i = 0; i < SAMPLE_COUNT; ++i)
+        {
+            sampleNames.add(String.format("SAMPLE_%02d", i));
+        }
+
+        collection.setFieldNames(sampleNames);
+
+        for(int b = 0; b < BUCKET_COUNT; ++b)
+        {
+            final List<Double> bucketCounts = Lists.newArrayList();
+
+            for(int i = 0; i < SAMPLE_COUNT; ++i)
+            {
+                bucketCounts.add(counts[b][i]);
+            }
+
+            collection.addDecimalValues(bucketCounts);
+        }
+
+        return collection;
+    }
+}
@@ -1,8 +1,22 @@
 package com.hartwig.hmftools.sig_analyser;
 
 import static com.hartwig.hmftools.common.sigs.DataUtils.round;
+import static com.hartwig.hmftools.common.utils.io.BinaryCacheUtils.binaryFilename;
+import static com.hartwig.hmftools.sig_analyser.common.CommonUtils.loadSampleMatrixCounts;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+
+import com.google.common.collect.Lists;
+import com.hartwig.hmftools.common.utils.Matrix;
+import com.hartwig.hmftools.sig_analyser.common.SampleCountsCacheFile;
 
 import org.junit.Test;
 
@@ -18,4 +32,38 @@ public class MiscTest
         assertEquals(1000, round(value, -3), 0.00001);
     }
 
+    @Test
+    public void testSampleCountsCacheFile() throws IOException
+    {
+        File csvFile = File.createTempFile("sample_counts", ".csv");
+        File binaryFile = new File(binaryFilename(csvFile.getPath()));
+        csvFile.deleteOnExit();
+        binaryFile.deleteOnExit();
+
+        Files.write(csvFile.toPath(), Lists.newArrayList("BucketName,S1,S2", "A[C>A]A,1,2", "A[C>A]C,3,4", "A[C>A]G,5,0"));
+
+        assertFalse(SampleCountsCacheFile.hasCurrentCache(csvFile.getPath()));
+
+        List<String> sampleIds = Lists.newArrayList();
+        Matrix csvCounts = loadSampleMatrixCounts(csvFile.getPath(), sampleIds);
+
+        SampleCountsCacheFile.write(binaryFile.getPath(), sampleIds, csvCounts);
+        assertTrue(SampleCountsCacheFile.hasCurrentCache(csvFile.getPath()));
+
+        List<String> cacheSampleIds = Lists.newArrayList();
+        Matrix cacheCounts = loadSampleMatrixCounts(csvFile.getPath(), cacheSampleIds);
+
+        assertEquals(sampleIds, cacheSampleIds);
+        assertEquals(3, cacheCounts.Rows);
+        assertEquals(2, cacheCounts.Cols);
+
+        for(int i = 0; i < csvCounts.Rows; ++i)
+        {
+            assertArrayEquals(csvCounts.getRow(i), cacheCounts.getRow(i), 0);
+        }
+
+        // a CSV written since the cache was made takes precedence
+        assertTrue(csvFile.setLastModified(binaryFile.lastModified() + 2000));
+        assertFalse(SampleCountsCacheFile.hasCurrentCache(csvFile.getPath()));
+    }
 }
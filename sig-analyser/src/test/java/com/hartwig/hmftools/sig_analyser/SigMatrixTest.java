@@ -1,9 +1,27 @@
 package com.hartwig.hmftools.sig_analyser;
 
+import static com.hartwig.hmftools.common.sigs.VectorUtils.sumVector;
+import static com.hartwig.hmftools.sig_analyser.common.CommonUtils.THREADS;
+
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+
+import com.google.common.collect.Lists;
 import com.hartwig.hmftools.common.utils.Matrix;
+import com.hartwig.hmftools.common.utils.TaskExecutor;
+import com.hartwig.hmftools.sig_analyser.fitter.FitMethod;
+import com.hartwig.hmftools.sig_analyser.fitter.SampleFitTask;
+import com.hartwig.hmftools.sig_analyser.nmf.NmfCalculator;
+import com.hartwig.hmftools.sig_analyser.nmf.NmfConfig;
+import com.hartwig.hmftools.sig_analyser.nmf.NmfRun;
 
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
 import org.junit.Test;
 
 public class SigMatrixTest
@@ -31,4 +49,112 @@ public class SigMatrixTest
         // assertTrue(NmfRun.signaturesEqual(sigs1, sigs2));
     }
 
+    @Test
+    public void testNmfRestartsDeterministic() throws ParseException
+    {
+        // counts from 2 signatures across 12 buckets
+        Random random = new Random(1);
+        Matrix sampleCounts = new Matrix(12, 20);
+
+        for(int s = 0; s < sampleCounts.Cols; ++s)
+        {
+            double sig1 = random.nextInt(500);
+            double sig2 = random.nextInt(500);
+
+            for(int b = 0; b < sampleCounts.Rows; ++b)
+            {
+                double count = sig1 * (b < 6 ? 0.15 : 0.0167) + sig2 * (b < 6 ? 0.0167 : 0.15);
+                sampleCounts.set(b, s, Math.round(count + random.nextInt(3)));
+            }
+        }
+
+        sampleCounts.cacheTranspose();
+
+        NmfRun singleThreadRun = runNmf(sampleCounts, 1);
+        NmfRun multiThreadRun = runNmf(sampleCounts, 3);
+
+        assertTrue(singleThreadRun.isValid());
+        assertTrue(multiThreadRun.isValid());
+        assertEquals(singleThreadRun.getLowestRunScore(), multiThreadRun.getLowestRunScore(), 0);
+        assertTrue(singleThreadRun.getBestSignatures().equals(multiThreadRun.getBestSignatures()));
+        assertTrue(singleThreadRun.getBestContributions().equals(multiThreadRun.getBestContributions()));
+    }
+
+    @Test
+    public void testParallelSampleFit()
+    {
+        // 3 signatures across 10 buckets, with samples formed from random contributions of each
+        Random random = new Random(2);
+        Matrix signatures = new Matrix(10, 3);
+
+        for(int s = 0; s < signatures.Cols; ++s)
+        {
+            double[] sigRatios = new double[signatures.Rows];
+            double total = 0;
+
+            for(int b = 0; b < signatures.Rows; ++b)
+            {
+                sigRatios[b] = random.nextDouble();
+                total += sigRatios[b];
+            }
+
+            for(int b = 0; b < signatures.Rows; ++b)
+            {
+                signatures.set(b, s, sigRatios[b] / total);
+            }
+        }
+
+        Matrix sampleCounts = new Matrix(10, 25);
+
+        for(int i = 0; i < sampleCounts.Cols; ++i)
+        {
+            // leave one sample without any counts
+            if(i == 7)
+                continue;
+
+            for(int b = 0; b < sampleCounts.Rows; ++b)
+            {
+                double count = 0;
+
+                for(int s = 0; s < signatures.Cols; ++s)
+                {
+                    count += random.nextInt(1000) * signatures.get(b, s);
+                }
+
+                sampleCounts.set(b, i, Math.round(count));
+            }
+        }
+
+        for(FitMethod fitMethod : Lists.newArrayList(FitMethod.LEAST_SQUARES, FitMethod.EXPECTATIONS_MAX))
+        {
+            Matrix serialContribs = SampleFitTask.fitSamples(fitMethod, signatures, sampleCounts, 1);
+            Matrix parallelContribs = SampleFitTask.fitSamples(fitMethod, signatures, sampleCounts, 4);
+
+            assertTrue(serialContribs != null && parallelContribs != null);
+            assertTrue(serialContribs.equals(parallelContribs));
+            assertEquals(0, sumVector(parallelContribs.getCol(7)), 0);
+        }
+    }
+
+    private static NmfRun runNmf(final Matrix sampleCounts, int threads) throws ParseException
+    {
+        Options options = new Options();
+        NmfConfig.addCmdLineArgs(options);
+
+        String[] args = { "-nmf_sig_count", "2", "-nmf_run_count", "7", "-nmf_exit_level", "0",
+                "-nmf_max_iterations", "50", "-" + THREADS, String.valueOf(threads) };
+
+        NmfConfig config = new NmfConfig(new DefaultParser().parse(options, args));
+
+        NmfRun nmfRun = new NmfRun(config, config.SigCount, new NmfCalculator(sampleCounts, config), null);
+
+        List<Callable> initialTasks = Lists.newArrayList(nmfRun.createInitialTask());
+        assertTrue(TaskExecutor.executeTasks(initialTasks, threads, "SigAnalyser"));
+
+        List<Callable> restartTasks = Lists.newArrayList(nmfRun.createRestartTasks(config.Threads));
+        assertTrue(TaskExecutor.executeTasks(restartTasks, threads, "SigAnalyser"));
+
+        nmfRun.completeRun();
+        return nmfRun;
+    }
 }
@@ -1,7 +1,10 @@
 package com.hartwig.hmftools.statcalcs.common;
 
+import static java.lang.Math.max;
+
 import static com.hartwig.hmftools.common.utils.io.FileWriterUtils.OUTPUT_DIR;
 
+import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.Options;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -11,6 +14,7 @@ public class StatsCommon
     public static final String LOG_DEBUG = "log_debug";
 
     public static final String OUTPUT_FILE_ID = "output_file_id";
+    public static final String THREADS = "threads";
 
     public static final Logger STAT_LOGGER = LogManager.getLogger(StatsCommon.class);
 
@@ -22,11 +26,17 @@ public class StatsCommon
             return outputDir + fileId  + ".csv";
     }
 
+    public static int parseThreads(final CommandLine cmd)
+    {
+        return max(Integer.parseInt(cmd.getOptionValue(THREADS, "1")), 1);
+    }
+
     public static void addCmdLineArgs(final Options options)
     {
         options.addOption(OUTPUT_DIR, true, "Path to output files");
         options.addOption(OUTPUT_FILE_ID, true, "Output file ID");
         options.addOption(LOG_DEBUG, false, "Sets log level to Debug, off by default");
+        options.addOption(THREADS, true, "Number of threads, default 1");
     }
 
 }
@@ -1,5 +1,9 @@
 package com.hartwig.hmftools.statcalcs.cooc;
 
+import static com.hartwig.hmftools.statcalcs.common.StatsCommon.THREADS;
+
+import com.hartwig.hmftools.common.stats.FisherExactTest;
+
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
 import org.apache.commons.cli.DefaultParser;
@@ -17,6 +21,9 @@ public class CoOccurenceCalcs
     private TwoVarCoOccurence mTwoVarCoOccurence;
     private SampleCountsCoOccurence mSampleCountsCoOccurence;
 
+    // the log-factorial table is shared by each analysis
+    private final FisherExactTest mFisherET;
+
     private static final String LOG_DEBUG = "log_debug";
     private static final String DATA_OUTPUT_DIR = "output_dir";
 
@@ -45,6 +52,7 @@ public class CoOccurenceCalcs
         final Options options = new Options();
         options.addOption(DATA_OUTPUT_DIR, true, "Output directory");
         options.addOption(LOG_DEBUG, false, "Verbose logging");
+        options.addOption(THREADS, true, "Number of threads, default 1");
 
         TwoVarCoOccurence.addCmdLineOptions(options);
         ThreeVarCoOccurence.addCmdLineOptions(options);
@@ -64,6 +72,7 @@ public class CoOccurenceCalcs
         mThreeVarCoOccurence = null;
         mSampleCountsCoOccurence = null;
         mTwoVarCoOccurence = null;
+        mFisherET = new FisherExactTest();
     }
 
     public boolean loadConfig(final CommandLine cmd, final String outputDir)
@@ -72,17 +81,17 @@ public class CoOccurenceCalcs
 
         if(SampleCountsCoOccurence.hasConfig(cmd))
         {
-            mSampleCountsCoOccurence = new SampleCountsCoOccurence(cmd, outputDir);
+            mSampleCountsCoOccurence = new SampleCountsCoOccurence(cmd, outputDir, mFisherET);
         }
 
         if(ThreeVarCoOccurence.hasConfig(cmd))
         {
-            mThreeVarCoOccurence = new ThreeVarCoOccurence(cmd, outputDir);
+            mThreeVarCoOccurence = new ThreeVarCoOccurence(cmd, outputDir, mFisherET);
         }
 
         if(TwoVarCoOccurence.hasConfig(cmd))
         {
-            mTwoVarCoOccurence = new TwoVarCoOccurence(cmd, outputDir);
+            mTwoVarCoOccurence = new TwoVarCoOccurence(cmd, outputDir, mFisherET);
         }
 
         return valid;
@@ -0,0 +1,146 @@
+package com.hartwig.hmftools.statcalcs.cooc;
+
+import static java.lang.Math.min;
+
+import static com.hartwig.hmftools.common.stats.FdrCalcs.calculateQValues;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import com.google.common.collect.Lists;
+import com.hartwig.hmftools.common.stats.FisherExactTest;
+import com.hartwig.hmftools.common.utils.TaskExecutor;
+
+// the 2x2 table, expected count and Fisher's exact test probability for each pair of values of 2 variables A and B, held in
+// arrays indexed by A value then B value
+public class ContingencyTables
+{
+    public final int ACount;
+    public final int BCount;
+    public final int SampleCount;
+
+    public final int[] WithATotals;
+    public final int[] WithBTotals;
+
+    public final int[] WithAWithB;
+    public final int[] NoAWithB;
+    public final int[] WithANoB;
+    public final int[] NoANoB;
+    public final double[] ExpectedCounts;
+    public final double[] Probabilities;
+    public double[] QValues;
+
+    // sets the table for a pair of values - called concurrently for different A values
+    public interface PairTableCalc
+    {
+        void calcTable(final ContingencyTables tables, int aIndex, int bIndex);
+    }
+
+    public ContingencyTables(int aCount, int bCount, int sampleCount)
+    {
+        ACount = aCount;
+        BCount = bCount;
+        SampleCount = sampleCount;
+
+        WithATotals = new int[aCount];
+        WithBTotals = new int[bCount];
+
+        int pairCount = aCount * bCount;
+        WithAWithB = new int[pairCount];
+        NoAWithB = new int[pairCount];
+        WithANoB = new int[pairCount];
+        NoANoB = new int[pairCount];
+        ExpectedCounts = new double[pairCount];
+        Probabilities = new double[pairCount];
+        QValues = null;
+    }
+
+    public int pairCount() { return ACount * BCount; }
+    public int index(int aIndex, int bIndex) { return aIndex * BCount + bIndex; }
+
+    public void setTable(int aIndex, int bIndex, int withAWithB, int noAWithB, int withANoB, int noANoB, double expectedCount)
+    {
+        int index = index(aIndex, bIndex);
+        WithAWithB[index] = withAWithB;
+        NoAWithB[index] = noAWithB;
+        WithANoB[index] = withANoB;
+        NoANoB[index] = noANoB;
+        ExpectedCounts[index] = expectedCount;
+    }
+
+    // the A values are dealt across the threads, with all threads using the one log-factorial table
+    public boolean calculate(final PairTableCalc tableCalc, final FisherExactTest fisherET, int threads)
+    {
+        fisherET.initialise(SampleCount);
+
+        int taskCount = min(threads, ACount);
+        final List<Callable> tasks = Lists.newArrayList();
+
+        for(int i = 0; i < taskCount; ++i)
+        {
+            tasks.add(new PairTask(tableCalc, fisherET, i, taskCount));
+        }
+
+        return TaskExecutor.executeTasks(tasks, taskCount, "StatCalcs");
+    }
+
+    private class PairTask implements Callable
+    {
+        private final PairTableCalc mTableCalc;
+        private final FisherExactTest mFisherET;
+        private final int mStartIndex;
+        private final int mIndexStep;
+
+        public PairTask(final PairTableCalc tableCalc, final FisherExactTest fisherET, int startIndex, int indexStep)
+        {
+            mTableCalc = tableCalc;
+            mFisherET = fisherET;
+            mStartIndex = startIndex;
+            mIndexStep = indexStep;
+        }
+
+        @Override
+        public Long call()
+        {
+            for(int a = mStartIndex; a < ACount; a += mIndexStep)
+            {
+                for(int b = 0; b < BCount; ++b)
+                {
+                    mTableCalc.calcTable(ContingencyTables.this, a, b);
+
+                    int index = index(a, b);
+
+                    Probabilities[index] = mFisherET.calc(
+                            WithAWithB[index], NoAWithB[index], WithANoB[index], NoANoB[index], ExpectedCounts[index]);
+                }
+            }
+
+            return (long)0;
+        }
+    }
+
+    // FDR across all the tables' tests in a single ranking
+    public static void calcQValues(final List<ContingencyTables> tablesList)
+    {
+        int testCount = tablesList.stream().mapToInt(x -> x.pairCount()).sum();
+
+        final double[] pValues = new double[testCount];
+
+        int offset = 0;
+        for(ContingencyTables tables : tablesList)
+        {
+            System.arraycopy(tables.Probabilities, 0, pValues, offset, tables.pairCount());
+            offset += tables.pairCount();
+        }
+
+        final double[] qValues = calculateQValues(pValues);
+
+        offset = 0;
+        for(ContingencyTables tables : tablesList)
+        {
+            tables.QValues = new double[tables.pairCount()];
+            System.arraycopy(qValues, offset, tables.QValues, 0, tables.pairCount());
+            offset += tables.pairCount();
+        }
+    }
+}
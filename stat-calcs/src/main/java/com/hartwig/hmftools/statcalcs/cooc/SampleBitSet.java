@@ -0,0 +1,45 @@
+package com.hartwig.hmftools.statcalcs.cooc;
+
+// the samples with a variable's value, as a bit per sample index, so that the samples shared by 2 values are counted by popcount
+public class SampleBitSet
+{
+    private final long[] mWords;
+    private int mCount;
+
+    public SampleBitSet(int sampleCount)
+    {
+        mWords = new long[(sampleCount + 63) >> 6];
+        mCount = 0;
+    }
+
+    public int count() { return mCount; }
+
+    public boolean get(int sampleIndex)
+    {
+        return (mWords[sampleIndex >> 6] & (1L << sampleIndex)) != 0;
+    }
+
+    public void set(int sampleIndex)
+    {
+        if(get(sampleIndex))
+            return;
+
+        mWords[sampleIndex >> 6] |= 1L << sampleIndex;
+        ++mCount;
+    }
+
+    public int intersectCount(final SampleBitSet other)
+    {
+        if(mCount == 0 || other.mCount == 0)
+            return 0;
+
+        int count = 0;
+
+        for(int i = 0; i < mWords.length; ++i)
+        {
+            count += Long.bitCount(mWords[i] & other.mWords[i]);
+        }
+
+        return count;
+    }
+}
@@ -1,5 +1,7 @@
 package com.hartwig.hmftools.statcalcs.cooc;
 
+import static com.hartwig.hmftools.statcalcs.common.StatsCommon.parseThreads;
+
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.FileReader;
@@ -27,7 +29,7 @@ import org.apache.logging.log4j.Logger;
 
 public class SampleCountsCoOccurence
 {
-    private List<String> mSamples;
+    private Map<String, SampleGeneData> mSampleDataMap;
     private Map<String, List<SampleGeneData>> mCancerSampleData;
 
     private List<String> mGenes;
@@ -37,9 +39,8 @@ public class SampleCountsCoOccurence
     private Map<String, Integer> mCategoryIndexMap;
     private Map<String, Integer> mGeneIndexMap;
 
-    private int[][][] mSampleCountsMatrix;
-
     private final FisherExactTest mFisherET;
+    private final int mThreads;
 
     private BufferedWriter mWriter;
 
@@ -48,19 +49,19 @@ public class SampleCountsCoOccurence
 
     private static final Logger LOGGER = LogManager.getLogger(SampleCountsCoOccurence.class);
 
-    public SampleCountsCoOccurence(final CommandLine cmd, final String outputDir)
+    public SampleCountsCoOccurence(final CommandLine cmd, final String outputDir, final FisherExactTest fisherET)
     {
         mCancerTypes = Lists.newArrayList();
-        mSamples = Lists.newArrayList();
+        mSampleDataMap = new HashMap();
         mGenes = Lists.newArrayList();
 
         mCategories = Lists.newArrayList();
         mCategoryIndexMap = new HashMap();
         mGeneIndexMap = new HashMap();
         mCancerSampleData = new HashMap();
-        mSampleCountsMatrix = null;
 
-        mFisherET = new FisherExactTest();
+        mFisherET = fisherET;
+        mThreads = parseThreads(cmd);
 
         final String sampleCountsFile = cmd.getOptionValue(SAMPLE_COUNTS_FILE);
         final String driverDataFile = cmd.getOptionValue(DRIVER_GENES_FILE);
@@ -89,21 +90,9 @@ public class SampleCountsCoOccurence
     private static String VALUE_FALSE = "FALSE";
     private static String VALUE_UNCLEAR = "UNCLEAR";
 
-    private static int ENR_CAT_NO_GENE = 0;
-    private static int UNC_CAT_NO_GENE = 1;
-    private static int ENR_CAT_WITH_GENE = 2;
-    private static int UNC_CAT_WITH_GENE = 3;
-    private static int ENR_CAT_UNC_GENE = 4;
-    private static int UNC_CAT_UNC_GENE = 5;
-    private static int INDEX_COUNT = 6;
-
     // debug
     private static String SPEC_CANCER = "";
     // private static String SPEC_CANCER = "Eye";
-    private static String SPEC_GENE = "";
-    // private static String SPEC_GENE = "OR11H1";
-    private static String SPEC_CATEGORY = "";
-    // private static String SPEC_CATEGORY = "DUP_LT_100";
 
     public void run()
     {
@@ -135,160 +124,125 @@ public class SampleCountsCoOccurence
     private void analyseCancerType(final String cancerType, final List<SampleGeneData> sampleDataList)
     {
         /* calc method (for each cancer type):
-        - each sample data has enriched categories and driver genes
-        - from this it can contribute to each non-false cell
-        - also tally up across all samples the counts per category and gene
+        - each sample's enriched and unclear categories and its driver and unclear genes are set in a bitset per value
+        - the table for each category and gene comes from the counts of samples in both, with samples unclear for either
+          excluded from the 'no' counts
          */
         int categoryCount = mCategories.size();
         int geneCount = mGenes.size();
 
-        int hypothesesCount = geneCount * categoryCount;
-
         int sampleCount = sampleDataList.size();
         LOGGER.info("processing cancerType({}) with {} samples", cancerType, sampleCount);
 
-        // populate the matrix with counts
-        mSampleCountsMatrix = new int[geneCount][categoryCount][INDEX_COUNT];
+        final SampleBitSet[] withCategories = new SampleBitSet[categoryCount];
+        final SampleBitSet[] unclearCategories = new SampleBitSet[categoryCount];
+        final SampleBitSet[] withGenes = new SampleBitSet[geneCount];
+        final SampleBitSet[] unclearGenes = new SampleBitSet[geneCount];
 
-        mFisherET.initialise(sampleCount);
-
-        Map<String, Integer> withCategoryTotals = new HashMap();
-        Map<String, Integer> unclearCategoryTotals = new HashMap();
-        Map<String, Integer> withGeneTotals = new HashMap();
-        Map<String, Integer> unclearGeneTotals = new HashMap();
-
-        for(final SampleGeneData sampleData : sampleDataList)
+        for(int i = 0; i < categoryCount; ++i)
         {
-            // calc category totals
-            for(int i = 0; i <= 1; ++i)
-            {
-                final List<String> categories = (i == 0) ? sampleData.CategoryKnown : sampleData.CategoryUnclear;
-                Map<String, Integer> totalsMap = (i == 0) ? withCategoryTotals : unclearCategoryTotals;
-
-                for (final String category : categories)
-                {
-                    Integer total = totalsMap.get(category);
+            withCategories[i] = new SampleBitSet(sampleCount);
+            unclearCategories[i] = new SampleBitSet(sampleCount);
+        }
 
-                    if(total == null)
-                        totalsMap.put(category, 1);
-                    else
-                        totalsMap.put(category, total+1);
-                }
-            }
+        for(int i = 0; i < geneCount; ++i)
+        {
+            withGenes[i] = new SampleBitSet(sampleCount);
+            unclearGenes[i] = new SampleBitSet(sampleCount);
+        }
 
-            // and then gene totals
-            for(int i = 0; i <= 1; ++i)
-            {
-                final List<String> genes = (i == 0) ? sampleData.GeneKnown : sampleData.GeneUnclear;
-                Map<String, Integer> totalsMap = (i == 0) ? withGeneTotals : unclearGeneTotals;
+        for(int s = 0; s < sampleCount; ++s)
+        {
+            final SampleGeneData sampleData = sampleDataList.get(s);
 
-                for (final String gene : genes)
-                {
-                    Integer total = totalsMap.get(gene);
+            setSampleValues(s, sampleData.CategoryKnown, sampleData.CategoryUnclear, mCategoryIndexMap, withCategories, unclearCategories);
+            setSampleValues(s, sampleData.GeneKnown, sampleData.GeneUnclear, mGeneIndexMap, withGenes, unclearGenes);
+        }
 
-                    if(total == null)
-                        totalsMap.put(gene, 1);
-                    else
-                        totalsMap.put(gene, total+1);
-                }
-            }
+        LOGGER.info("cancerType({}) input counts populated", cancerType);
 
-            for(int i = 0; i <= 1; ++i)
-            {
-                final List<String> categories = (i == 0) ? sampleData.CategoryKnown : sampleData.CategoryUnclear;
+        final ContingencyTables tables = new ContingencyTables(categoryCount, geneCount, sampleCount);
 
-                for (int j = 0; j <= 1; ++j)
-                {
-                    final List<String> genes = (j == 0) ? sampleData.GeneKnown : sampleData.GeneUnclear;
-
-                    int countsIndex;
-                    if(i == 0 && j == 0)
-                        countsIndex = ENR_CAT_WITH_GENE;
-                    else if(i == 0 && j == 1)
-                        countsIndex = ENR_CAT_UNC_GENE;
-                    else if(i == 1 && j == 0)
-                        countsIndex = UNC_CAT_WITH_GENE;
-                    else
-                        countsIndex = UNC_CAT_UNC_GENE;
-
-                    for(final String category : categories)
-                    {
-                        for(final String gene : genes)
-                        {
-                            int categoryIndex = mCategoryIndexMap.get(category);
-                            int geneIndex = mGeneIndexMap.get(gene);
-
-                            ++mSampleCountsMatrix[geneIndex][categoryIndex][countsIndex];
-                        }
-                    }
-                }
-            }
+        for(int i = 0; i < categoryCount; ++i)
+        {
+            tables.WithATotals[i] = withCategories[i].count();
         }
 
-        LOGGER.info("cancerType({}) input counts populated", cancerType);
+        for(int i = 0; i < geneCount; ++i)
+        {
+            tables.WithBTotals[i] = withGenes[i].count();
+        }
 
-        for(final String category : mCategories)
+        final ContingencyTables.PairTableCalc tableCalc = (pairTables, categoryIndex, geneIndex) ->
         {
-            if(!SPEC_CATEGORY.isEmpty() && !cancerType.equals(SPEC_CATEGORY))
-                continue;
+            final SampleBitSet withCat = withCategories[categoryIndex];
+            final SampleBitSet uncCat = unclearCategories[categoryIndex];
+            final SampleBitSet withGene = withGenes[geneIndex];
+            final SampleBitSet uncGene = unclearGenes[geneIndex];
+
+            int withCatTotal = withCat.count();
+            int uncCatTotal = uncCat.count();
+            int withGeneTotal = withGene.count();
+            int uncGeneTotal = uncGene.count();
+            int noGeneTotal = sampleCount - withGeneTotal - uncGeneTotal;
+
+            int withCatWithGene = withCat.intersectCount(withGene);
+            int withCatUncGene = withCat.intersectCount(uncGene);
+            int uncCatWithGene = uncCat.intersectCount(withGene);
+            int uncCatUncGene = uncCat.intersectCount(uncGene);
+
+            // infer the others
+            int noCatWithGene = withGeneTotal - withCatWithGene - uncCatWithGene;
+            int withCatNoGene = withCatTotal - withCatWithGene - withCatUncGene;
+            int uncCatNoGene = uncCatTotal - uncCatWithGene - uncCatUncGene;
+            int noCatNoGene = noGeneTotal - withCatNoGene - uncCatNoGene;
+
+            double geneSamplesPerc = withGeneTotal/(double)sampleCount;
+            double expectedVal  = withCatTotal * geneSamplesPerc;
+
+            pairTables.setTable(categoryIndex, geneIndex, withCatWithGene, noCatWithGene, withCatNoGene, noCatNoGene, expectedVal);
+        };
+
+        if(!tables.calculate(tableCalc, mFisherET, mThreads))
+            return;
 
-            int withCatTotal = withCategoryTotals.containsKey(category) ? withCategoryTotals.get(category) : 0;
-            int uncCatTotal = unclearCategoryTotals.containsKey(category) ? unclearCategoryTotals.get(category) : 0;
-            int noCatTotal = sampleCount - withCatTotal - uncCatTotal;
+        ContingencyTables.calcQValues(Lists.newArrayList(tables));
 
-            int categoryIndex = mCategoryIndexMap.get(category);
+        int hypothesesCount = tables.pairCount();
 
-            for(final String gene : mGenes)
+        for(int categoryIndex = 0; categoryIndex < categoryCount; ++categoryIndex)
+        {
+            for(int geneIndex = 0; geneIndex < geneCount; ++geneIndex)
             {
-                if(!SPEC_GENE.isEmpty() && !cancerType.equals(SPEC_GENE))
-                    continue;
-
-                int withGeneTotal = withGeneTotals.containsKey(gene) ? withGeneTotals.get(gene) : 0;
-                int uncGeneTotal = unclearGeneTotals.containsKey(gene) ? unclearGeneTotals.get(gene) : 0;
-                int noGeneTotal = sampleCount - withGeneTotal - uncGeneTotal;
-
-                int geneIndex = mGeneIndexMap.get(gene);
-
-                int withCatWithGene = mSampleCountsMatrix[geneIndex][categoryIndex][ENR_CAT_WITH_GENE];
-                int withCatUncGene = mSampleCountsMatrix[geneIndex][categoryIndex][ENR_CAT_UNC_GENE];
-                int uncCatWithGene = mSampleCountsMatrix[geneIndex][categoryIndex][UNC_CAT_WITH_GENE];
-                int uncCatUncGene = mSampleCountsMatrix[geneIndex][categoryIndex][UNC_CAT_UNC_GENE];
-
-                // infer the others
-                int noCatWithGene = withGeneTotal - withCatWithGene - uncCatWithGene;
-                int noCatUncGene = uncGeneTotal - withCatUncGene - uncCatUncGene;
-                int withCatNoGene = withCatTotal - withCatWithGene - withCatUncGene;
-                int uncCatNoGene = uncCatTotal - uncCatWithGene - uncCatUncGene;
-                int noCatNoGene = noGeneTotal - withCatNoGene - uncCatNoGene;
-
-                if(withCatWithGene < 0 || noCatWithGene < 0 || withCatNoGene < 0 || noCatNoGene < 0)
-                {
-                    LOGGER.warn("INVALID COUNTS: cancer({}) samples({}) gene({}) counts(w={} u={} n={}) cat({}) counts(w={}) u={} n={})",
-                            cancerType, sampleCount, gene, withGeneTotal, uncGeneTotal, noGeneTotal,
-                            category, withCatTotal, uncCatTotal, noCatTotal);
-
-                    LOGGER.warn("with cat: total({}) withGene({}) uncGene({}) noGene({})",
-                            withCatTotal, withCatWithGene, withCatUncGene, withCatNoGene);
+                int index = tables.index(categoryIndex, geneIndex);
 
-                    LOGGER.warn("unclear cat: total({}) withGene({}) uncGene({}) noGene({})",
-                            uncCatTotal, uncCatWithGene, uncCatUncGene, uncCatNoGene);
+                writeResultsData(cancerType, mGenes.get(geneIndex), mCategories.get(categoryIndex), sampleCount,
+                        tables.WithBTotals[geneIndex], tables.WithATotals[categoryIndex],
+                        tables.Probabilities[index], tables.QValues[index], tables.ExpectedCounts[index], hypothesesCount,
+                        tables.WithAWithB[index], tables.NoAWithB[index], tables.WithANoB[index], tables.NoANoB[index]);
+            }
+        }
 
-                    LOGGER.warn("no cat: total({}) withGene({}) uncGene({}) noGene({})",
-                            noCatTotal, noCatWithGene, noCatUncGene, noCatNoGene);
+        LOGGER.info("cancerType({}) results written to file", cancerType);
+    }
 
-                    return;
-                }
+    // a sample is only unclear for a value it doesn't also have as known
+    private static void setSampleValues(
+            int sampleIndex, final List<String> known, final List<String> unclear, final Map<String,Integer> indexMap,
+            final SampleBitSet[] withValues, final SampleBitSet[] unclearValues)
+    {
+        for(final String value : known)
+        {
+            withValues[indexMap.get(value)].set(sampleIndex);
+        }
 
-                double geneSamplesPerc = withGeneTotal/(double)sampleCount;
-                double expectedVal  = withCatTotal * geneSamplesPerc;
-                double fisherProb = mFisherET.calc(withCatWithGene, noCatWithGene, withCatNoGene, noCatNoGene, expectedVal);
+        for(final String value : unclear)
+        {
+            int valueIndex = indexMap.get(value);
 
-                writeResultsData(cancerType, gene, category, sampleCount, withGeneTotal, withCatTotal, fisherProb,
-                        expectedVal, hypothesesCount, withCatWithGene, noCatWithGene, withCatNoGene, noCatNoGene);
-            }
+            if(!withValues[valueIndex].get(sampleIndex))
+                unclearValues[valueIndex].set(sampleIndex);
         }
-
-        LOGGER.info("cancerType({}) results written to file", cancerType);
     }
 
     private boolean initialiseOutputFile(final String outputFileName)
@@ -298,7 +252,7 @@ public class SampleCountsCoOccurence
             mWriter = FileWriterUtils.createBufferedWriter(outputFileName, false);
 
             mWriter.write("CancerType,Gene,Category,SampleCount");
-            mWriter.write(",WithGeneCount,WithCategoryCount,ExpectedCount,FETProb");
+            mWriter.write(",WithGeneCount,WithCategoryCount,ExpectedCount,FETProb,QValue");
             mWriter.write(",WithCatWithGene,NoCatWithGene,WithCatNoGene,NoCatNoGene,TestCount,CountGtExp");
 
             mWriter.newLine();
@@ -313,7 +267,7 @@ public class SampleCountsCoOccurence
     }
 
     private void writeResultsData(final String cancerType, final String gene, final String category, int sampleCount,
-            int withGeneTotal, int withCatTotal, double fetProbability, double expectedVal, int hypothesesCount,
+            int withGeneTotal, int withCatTotal, double fetProbability, double qValue, double expectedVal, int hypothesesCount,
             int withCatWithGene, int noCatWithGene, int withCatNoGene, int noCatNoGene)
     {
         if (mWriter == null)
@@ -326,8 +280,8 @@ public class SampleCountsCoOccurence
                             cancerType, gene, category, sampleCount));
 
             mWriter.write(
-                    String.format(",%d,%d,%.2f,%4.3e,%d,%d,%d,%d,%d,%s",
-                            withGeneTotal, withCatTotal, expectedVal, fetProbability,
+                    String.format(",%d,%d,%.2f,%4.3e,%4.3e,%d,%d,%d,%d,%d,%s",
+                            withGeneTotal, withCatTotal, expectedVal, fetProbability, qValue,
                             withCatWithGene, noCatWithGene, withCatNoGene, noCatNoGene,
                             hypothesesCount, withCatWithGene > expectedVal));
 
@@ -340,31 +294,22 @@ public class SampleCountsCoOccurence
     }
     private SampleGeneData getOrCreateSampleData(final String cancerType, final String sampleId)
     {
+        SampleGeneData sampleData = mSampleDataMap.get(sampleId);
+
+        if (sampleData != null)
+            return sampleData;
+
         List<SampleGeneData> sampleDataList = mCancerSampleData.get(cancerType);
 
-        SampleGeneData sampleData = null;
         if (sampleDataList == null)
         {
             sampleDataList = Lists.newArrayList();
             mCancerSampleData.put(cancerType, sampleDataList);
         }
-        else
-        {
-            for (final SampleGeneData sd : sampleDataList)
-            {
-                if (sd.SampleId.equals(sampleId))
-                {
-                    sampleData = sd;
-                    break;
-                }
-            }
-        }
 
-        if (sampleData == null)
-        {
-            sampleData = new SampleGeneData(sampleId);
-            sampleDataList.add(sampleData);
-        }
+        sampleData = new SampleGeneData(sampleId);
+        sampleDataList.add(sampleData);
+        mSampleDataMap.put(sampleId, sampleData);
 
         return sampleData;
     }
@@ -413,9 +358,6 @@ public class SampleCountsCoOccurence
                 if(!mCancerTypes.contains(cancerType))
                     mCancerTypes.add(cancerType);
 
-                if(!mSamples.contains(sampleId))
-                    mSamples.add(sampleId);
-
                 if(!mGenes.contains(gene))
                 {
                     mGeneIndexMap.put(gene, mGenes.size());
@@ -484,9 +426,6 @@ public class SampleCountsCoOccurence
                 if(!mCancerTypes.contains(cancerType))
                     mCancerTypes.add(cancerType);
 
-                if(!mSamples.contains(sampleId))
-                    mSamples.add(sampleId);
-
                 if(!mCategories.contains(category))
                 {
                     mCategoryIndexMap.put(category, mCategories.size());
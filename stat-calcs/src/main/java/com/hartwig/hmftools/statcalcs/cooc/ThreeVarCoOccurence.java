@@ -1,5 +1,6 @@
 package com.hartwig.hmftools.statcalcs.cooc;
 
+import static com.hartwig.hmftools.statcalcs.common.StatsCommon.parseThreads;
 import static com.hartwig.hmftools.statcalcs.cooc.SampleCategoryData.SAMPLE_CAT_1_INDEX;
 import static com.hartwig.hmftools.statcalcs.cooc.SampleCategoryData.SAMPLE_CAT_2_INDEX;
 
@@ -10,8 +11,10 @@ import java.io.IOException;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 import com.hartwig.hmftools.common.stats.FisherExactTest;
 import com.hartwig.hmftools.common.utils.io.FileWriterUtils;
 
@@ -27,19 +30,22 @@ import org.apache.logging.log4j.Logger;
 
 public class ThreeVarCoOccurence
 {
-    private List<String> mSamples;
+    private final Set<String> mSamples;
 
     // generic data structure for 3-way co-occurrence
     private final Map<String, List<SampleCategoryData>> mGroupingSampleGenericData;
     private final List<String> mGroupingValues;
     private final List<String> mCat1Values;
     private final List<String> mCat2Values;
+    private final Map<String, Integer> mCat1IndexMap;
+    private final Map<String, Integer> mCat2IndexMap;
 
     private String mGroupingField;
     private String mCategory1;
     private String mCategory2;
 
     private final FisherExactTest mFisherET;
+    private final int mThreads;
 
     private BufferedWriter mWriter;
 
@@ -47,26 +53,29 @@ public class ThreeVarCoOccurence
 
     private static final Logger LOGGER = LogManager.getLogger(ThreeVarCoOccurence.class);
 
-    public ThreeVarCoOccurence(final CommandLine cmd, final String outputDir)
+    public ThreeVarCoOccurence(final CommandLine cmd, final String outputDir, final FisherExactTest fisherET)
     {
         mGroupingField = "";
         mCategory1 = "";
         mCategory2 = "";
 
+        mSamples = Sets.newHashSet();
+        mGroupingSampleGenericData = new HashMap();
+        mGroupingValues = Lists.newArrayList();
+        mCat1Values = Lists.newArrayList();
+        mCat2Values = Lists.newArrayList();
+        mCat1IndexMap = new HashMap();
+        mCat2IndexMap = new HashMap();
+
+        mFisherET = fisherET;
+        mThreads = parseThreads(cmd);
+
         final String inputFile = cmd.getOptionValue(THREE_VAR_INPUT_FILE);
 
         loadSampleGenericData(inputFile);
 
         final String outputFile = outputDir + "STATS_3VAR.csv";
         initialiseOutput(outputFile);
-
-        mSamples = Lists.newArrayList();
-        mGroupingSampleGenericData = new HashMap();
-        mGroupingValues = Lists.newArrayList();
-        mCat1Values = Lists.newArrayList();
-        mCat2Values = Lists.newArrayList();
-
-        mFisherET = new FisherExactTest();
     }
 
     public static void addCmdLineOptions(Options options)
@@ -92,6 +101,9 @@ public class ThreeVarCoOccurence
 
         int hypothesesCount = mGroupingValues.size() * mCat1Values.size() * mCat2Values.size();
 
+        final List<String> groupingValues = Lists.newArrayList();
+        final List<ContingencyTables> groupTables = Lists.newArrayList();
+
         for(final String groupingValue : mGroupingValues)
         {
             final List<SampleCategoryData> sampleDataList = mGroupingSampleGenericData.get(groupingValue);
@@ -99,71 +111,40 @@ public class ThreeVarCoOccurence
             if(sampleDataList == null || sampleDataList.isEmpty())
                 continue;
 
-            int sampleCount = sampleDataList.size();
-
-            LOGGER.info("processing group({}) with {} samples", groupingValue, sampleCount);
+            LOGGER.info("processing group({}) with {} samples", groupingValue, sampleDataList.size());
 
             if(groupingValue.equals(SPEC_GROUP_VAL))
             {
                 LOGGER.debug("spec group value: {}", groupingValue);
             }
 
-            for(final String cat1 : mCat1Values)
-            {
-                for(final String cat2 : mCat2Values)
-                {
-                    int withCat1 = 0;
-                    int withCat2 = 0;
-                    int withCat1WithCat2 = 0;
-                    int withCat1NoCat2 = 0;
-                    int noCat1WithCat2 = 0;
-                    int noCat1NoCat2 = 0;
-
-                    for(final SampleCategoryData sampleData : sampleDataList)
-                    {
-                        final List<String[]> catDataList = sampleData.getCategoryData();
-
-                        boolean hasCat1 = false;
-                        boolean hasCat2 = false;
-                        boolean hasBoth = false;
-
-                        for (final String[] catList : catDataList)
-                        {
-                            if (catList[SAMPLE_CAT_1_INDEX].equals(cat1) && catList[SAMPLE_CAT_2_INDEX].equals(cat2))
-                            {
-                                hasBoth = true;
-                                break;
-                            }
-
-                            if (catList[SAMPLE_CAT_1_INDEX].equals(cat1))
-                                hasCat1 = true;
-
-                            if(catList[SAMPLE_CAT_2_INDEX].equals(cat2))
-                                hasCat2 = true;
-                        }
-
-                        if(hasBoth)
-                            ++withCat1WithCat2;
-                        else if(hasCat1)
-                            ++withCat1NoCat2;
-                        else if(hasCat2)
-                            ++noCat1WithCat2;
-                        else
-                            ++noCat1NoCat2;
-
-                        if(hasCat1 || hasBoth)
-                            ++withCat1;
-
-                        if(hasCat2 || hasBoth)
-                            ++withCat2;
-                    }
+            final ContingencyTables tables = calcGroupTables(sampleDataList);
 
-                    double expectedVal = withCat1 / (double)sampleCount * withCat2;
+            if(tables == null)
+                return;
+
+            groupingValues.add(groupingValue);
+            groupTables.add(tables);
+        }
 
-                    double fisherProb = mFisherET.calc(withCat1WithCat2, noCat1WithCat2, withCat1NoCat2, noCat1NoCat2, expectedVal);
+        // the FDR is across the tests for all groups
+        ContingencyTables.calcQValues(groupTables);
+
+        for(int i = 0; i < groupTables.size(); ++i)
+        {
+            final String groupingValue = groupingValues.get(i);
+            final ContingencyTables tables = groupTables.get(i);
 
-                    writeResultsData(groupingValue, cat1, cat2, sampleCount, withCat1, withCat2, fisherProb,
-                            expectedVal, hypothesesCount, withCat1WithCat2, noCat1WithCat2, withCat1NoCat2, noCat1NoCat2);
+            for(int cat1Index = 0; cat1Index < tables.ACount; ++cat1Index)
+            {
+                for(int cat2Index = 0; cat2Index < tables.BCount; ++cat2Index)
+                {
+                    int index = tables.index(cat1Index, cat2Index);
+
+                    writeResultsData(groupingValue, mCat1Values.get(cat1Index), mCat2Values.get(cat2Index), tables.SampleCount,
+                            tables.WithATotals[cat1Index], tables.WithBTotals[cat2Index], tables.Probabilities[index],
+                            tables.QValues[index], tables.ExpectedCounts[index], hypothesesCount,
+                            tables.WithAWithB[index], tables.NoAWithB[index], tables.WithANoB[index], tables.NoANoB[index]);
                 }
             }
         }
@@ -171,6 +152,79 @@ public class ThreeVarCoOccurence
         FileWriterUtils.closeBufferedWriter(mWriter);
     }
 
+    private ContingencyTables calcGroupTables(final List<SampleCategoryData> sampleDataList)
+    {
+        // a sample counts as having both categories only if they are paired in one of its records, otherwise it counts as having
+        // category 1 and not category 2 if it has category 1 in any record
+        int sampleCount = sampleDataList.size();
+        int cat1Count = mCat1Values.size();
+        int cat2Count = mCat2Values.size();
+
+        final SampleBitSet[] withCat1 = new SampleBitSet[cat1Count];
+        final SampleBitSet[] withCat2 = new SampleBitSet[cat2Count];
+        final SampleBitSet[] withPair = new SampleBitSet[cat1Count * cat2Count]; // only for pairs in the group's records
+
+        for(int i = 0; i < cat1Count; ++i)
+        {
+            withCat1[i] = new SampleBitSet(sampleCount);
+        }
+
+        for(int i = 0; i < cat2Count; ++i)
+        {
+            withCat2[i] = new SampleBitSet(sampleCount);
+        }
+
+        for(int s = 0; s < sampleCount; ++s)
+        {
+            for(final String[] catList : sampleDataList.get(s).getCategoryData())
+            {
+                int cat1Index = mCat1IndexMap.get(catList[SAMPLE_CAT_1_INDEX]);
+                int cat2Index = mCat2IndexMap.get(catList[SAMPLE_CAT_2_INDEX]);
+                int pairIndex = cat1Index * cat2Count + cat2Index;
+
+                withCat1[cat1Index].set(s);
+                withCat2[cat2Index].set(s);
+
+                if(withPair[pairIndex] == null)
+                    withPair[pairIndex] = new SampleBitSet(sampleCount);
+
+                withPair[pairIndex].set(s);
+            }
+        }
+
+        final ContingencyTables tables = new ContingencyTables(cat1Count, cat2Count, sampleCount);
+
+        for(int i = 0; i < cat1Count; ++i)
+        {
+            tables.WithATotals[i] = withCat1[i].count();
+        }
+
+        for(int i = 0; i < cat2Count; ++i)
+        {
+            tables.WithBTotals[i] = withCat2[i].count();
+        }
+
+        final ContingencyTables.PairTableCalc tableCalc = (pairTables, cat1Index, cat2Index) ->
+        {
+            final SampleBitSet pairSamples = withPair[pairTables.index(cat1Index, cat2Index)];
+
+            int withCat1Total = withCat1[cat1Index].count();
+            int withCat2Total = withCat2[cat2Index].count();
+            int withCat1AndCat2 = withCat1[cat1Index].intersectCount(withCat2[cat2Index]);
+
+            int withCat1WithCat2 = pairSamples != null ? pairSamples.count() : 0;
+            int withCat1NoCat2 = withCat1Total - withCat1WithCat2;
+            int noCat1WithCat2 = withCat2Total - withCat1AndCat2;
+            int noCat1NoCat2 = sampleCount - withCat1Total - withCat2Total + withCat1AndCat2;
+
+            double expectedVal = withCat1Total / (double)sampleCount * withCat2Total;
+
+            pairTables.setTable(cat1Index, cat2Index, withCat1WithCat2, noCat1WithCat2, withCat1NoCat2, noCat1NoCat2, expectedVal);
+        };
+
+        return tables.calculate(tableCalc, mFisherET, mThreads) ? tables : null;
+    }
+
     private boolean initialiseOutput(final String outputFileName)
     {
         try
@@ -179,7 +233,7 @@ public class ThreeVarCoOccurence
 
             mWriter.write(String.format("%s,%s,%s,With%sCount", mGroupingField, mCategory1, mCategory2, mGroupingField));
 
-            mWriter.write(String.format(",With%sCount,With%sCount,ExpectedCount,FETProb,TestCount,CountGtExp",
+            mWriter.write(String.format(",With%sCount,With%sCount,ExpectedCount,FETProb,QValue,TestCount,CountGtExp",
                     mCategory1, mCategory2));
 
             mWriter.write(String.format(",With%sWith%s,No%sWith%s,With%sNo%s,No%sNo%s",
@@ -197,7 +251,7 @@ public class ThreeVarCoOccurence
     }
 
     private void writeResultsData(final String groupingValue, final String cat1, final String cat2, int sampleCount,
-            int withCat1, int withCat2, double fetProbability, double expectedVal, int testCount,
+            int withCat1, int withCat2, double fetProbability, double qValue, double expectedVal, int testCount,
             int withCat1WithCat2, int noCat1WithCat2, int withCat1NoCat2, int noCat1NoCat2)
     {
         if (mWriter == null)
@@ -210,8 +264,8 @@ public class ThreeVarCoOccurence
                             groupingValue, cat1, cat2, sampleCount));
 
             mWriter.write(
-                    String.format(",%d,%d,%.2f,%4.3e,%d,%s,%d,%d,%d,%d",
-                            withCat1, withCat2, expectedVal, fetProbability,
+                    String.format(",%d,%d,%.2f,%4.3e,%4.3e,%d,%s,%d,%d,%d,%d",
+                            withCat1, withCat2, expectedVal, fetProbability, qValue,
                             testCount, withCat1WithCat2 > expectedVal,
                             withCat1WithCat2, noCat1WithCat2, withCat1NoCat2, noCat1NoCat2));
 
@@ -262,6 +316,8 @@ public class ThreeVarCoOccurence
             int recordCount = 0;
             String currentGroupingValue = "";
             List<SampleCategoryData> sampleDataList = null;
+            Map<String, SampleCategoryData> groupSampleDataMap = null;
+            final Map<String, Map<String, SampleCategoryData>> groupingSampleDataMaps = new HashMap();
 
             while ((line = fileReader.readLine()) != null)
             {
@@ -283,43 +339,43 @@ public class ThreeVarCoOccurence
                     currentGroupingValue = groupingValue;
 
                     sampleDataList = mGroupingSampleGenericData.get(groupingValue);
+                    groupSampleDataMap = groupingSampleDataMaps.get(groupingValue);
 
                     if(sampleDataList == null)
                     {
                         sampleDataList = Lists.newArrayList();
                         mGroupingSampleGenericData.put(groupingValue, sampleDataList);
+                        mGroupingValues.add(groupingValue);
+
+                        groupSampleDataMap = new HashMap();
+                        groupingSampleDataMaps.put(groupingValue, groupSampleDataMap);
                     }
                 }
 
-                if(!mSamples.contains(sampleId))
-                    mSamples.add(sampleId);
+                mSamples.add(sampleId);
 
-                if(!mGroupingValues.contains(groupingValue))
-                    mGroupingValues.add(groupingValue);
-
-                if(!mCat1Values.contains(cat1Value))
+                if(!mCat1IndexMap.containsKey(cat1Value))
+                {
+                    mCat1IndexMap.put(cat1Value, mCat1Values.size());
                     mCat1Values.add(cat1Value);
+                }
 
-                if(!mCat2Values.contains(cat2Value))
-                    mCat2Values.add(cat2Value);
-
-                boolean found = false;
-                for(final SampleCategoryData sampleData : sampleDataList)
+                if(!mCat2IndexMap.containsKey(cat2Value))
                 {
-                    if(sampleData.SampleId.equals(sampleId))
-                    {
-                        sampleData.addCategoryData(cat1Value, cat2Value);
-                        found = true;
-                        break;
-                    }
+                    mCat2IndexMap.put(cat2Value, mCat2Values.size());
+                    mCat2Values.add(cat2Value);
                 }
 
-                if(!found)
+                SampleCategoryData sampleData = groupSampleDataMap.get(sampleId);
+
+                if(sampleData == null)
                 {
-                    SampleCategoryData sampleData = new SampleCategoryData(sampleId);
-                    sampleData.addCategoryData(cat1Value, cat2Value);
+                    sampleData = new SampleCategoryData(sampleId);
                     sampleDataList.add(sampleData);
+                    groupSampleDataMap.put(sampleId, sampleData);
                 }
+
+                sampleData.addCategoryData(cat1Value, cat2Value);
             }
 
             LOGGER.info("loaded {} sample generic data records", recordCount);
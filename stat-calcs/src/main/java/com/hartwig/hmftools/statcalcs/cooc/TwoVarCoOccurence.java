@@ -1,10 +1,14 @@
 package com.hartwig.hmftools.statcalcs.cooc;
 
+import static com.hartwig.hmftools.statcalcs.common.StatsCommon.parseThreads;
+
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.FileReader;
 import java.io.IOException;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import com.google.common.collect.Lists;
 import com.hartwig.hmftools.common.stats.FisherExactTest;
@@ -26,11 +30,14 @@ public class TwoVarCoOccurence
     private final List<TwoCategoryData> mCategoryCountsData;
     private final List<String> mCat1Values;
     private final List<String> mCat2Values;
+    private final Map<String, Integer> mCat1IndexMap;
+    private final Map<String, Integer> mCat2IndexMap;
 
     private String mCategory1;
     private String mCategory2;
 
     private final FisherExactTest mFisherET;
+    private final int mThreads;
 
     private BufferedWriter mWriter;
 
@@ -38,7 +45,7 @@ public class TwoVarCoOccurence
 
     private static final Logger LOGGER = LogManager.getLogger(TwoVarCoOccurence.class);
 
-    public TwoVarCoOccurence(final CommandLine cmd, final String outputDir)
+    public TwoVarCoOccurence(final CommandLine cmd, final String outputDir, final FisherExactTest fisherET)
     {
         mCategory1 = "";
         mCategory2 = "";
@@ -46,11 +53,14 @@ public class TwoVarCoOccurence
         mCategoryCountsData = Lists.newArrayList();
         mCat1Values = Lists.newArrayList();
         mCat2Values = Lists.newArrayList();
+        mCat1IndexMap = new HashMap();
+        mCat2IndexMap = new HashMap();
 
         final String inputFile = cmd.getOptionValue(TWO_VAR_INPUT_FILE);
         loadSampleGenericData(inputFile);
 
-        mFisherET = new FisherExactTest();
+        mFisherET = fisherET;
+        mThreads = parseThreads(cmd);
 
         final String outputFile = outputDir + "STATS_2VAR.csv";
         initialiseOutput(outputFile);
@@ -73,60 +83,58 @@ public class TwoVarCoOccurence
 
         int totalRecords = mCategoryCountsData.stream().mapToInt(x -> x.Count).sum();
 
-        mFisherET.initialise(totalRecords);
+        int cat1Count = mCat1Values.size();
+        int cat2Count = mCat2Values.size();
+
+        final ContingencyTables tables = new ContingencyTables(cat1Count, cat2Count, totalRecords);
+
+        // the input is already counts, so each table is formed from the pair's count and the totals for each category
+        final int[] pairCounts = new int[tables.pairCount()];
+
+        for(final TwoCategoryData catData : mCategoryCountsData)
+        {
+            int cat1Index = mCat1IndexMap.get(catData.Category1);
+            int cat2Index = mCat2IndexMap.get(catData.Category2);
+
+            pairCounts[tables.index(cat1Index, cat2Index)] += catData.Count;
+            tables.WithATotals[cat1Index] += catData.Count;
+            tables.WithBTotals[cat2Index] += catData.Count;
+        }
 
-        int hypothesesCount = mCat1Values.size() * mCat2Values.size();
+        int hypothesesCount = tables.pairCount();
 
         LOGGER.info("processing {} 2-var records, hypothese({})", totalRecords, hypothesesCount);
 
-        for(final String cat1 : mCat1Values)
+        final ContingencyTables.PairTableCalc tableCalc = (pairTables, cat1Index, cat2Index) ->
         {
-            for(final String cat2 : mCat2Values)
-            {
-                int withCat1 = 0;
-                int withCat2 = 0;
-                int withCat1WithCat2 = 0;
-                int withCat1NoCat2 = 0;
-                int noCat1WithCat2 = 0;
-                int noCat1NoCat2 = 0;
-
-                for(final TwoCategoryData catData : mCategoryCountsData)
-                {
-                    boolean hasCat1 = false;
-                    boolean hasCat2 = false;
-                    boolean hasBoth = false;
-
-                    if (catData.Category1.equals(cat1) && catData.Category2.equals(cat2))
-                    {
-                        withCat1WithCat2 += catData.Count;
-                        hasBoth = true;
-                    }
-                    else if (catData.Category1.equals(cat1))
-                    {
-                        withCat1NoCat2 += catData.Count;
-                        hasCat1 = true;
-                    }
-                    else if(catData.Category2.equals(cat2))
-                    {
-                        noCat1WithCat2 += catData.Count;
-                        hasCat2 = true;
-                    }
-
-                    if(hasCat1 || hasBoth)
-                        withCat1 += catData.Count;
-
-                    if(hasCat2 || hasBoth)
-                        withCat2 += catData.Count;
-                }
+            int withCat1 = pairTables.WithATotals[cat1Index];
+            int withCat2 = pairTables.WithBTotals[cat2Index];
 
-                noCat1NoCat2 = totalRecords - withCat1WithCat2 - noCat1WithCat2 - withCat1NoCat2;
+            int withCat1WithCat2 = pairCounts[pairTables.index(cat1Index, cat2Index)];
+            int withCat1NoCat2 = withCat1 - withCat1WithCat2;
+            int noCat1WithCat2 = withCat2 - withCat1WithCat2;
+            int noCat1NoCat2 = totalRecords - withCat1WithCat2 - noCat1WithCat2 - withCat1NoCat2;
 
-                double expectedVal = withCat1 / (double)totalRecords * withCat2;
+            double expectedVal = withCat1 / (double)totalRecords * withCat2;
 
-                double fisherProb = mFisherET.calc(withCat1WithCat2, noCat1WithCat2, withCat1NoCat2, noCat1NoCat2, expectedVal);
+            pairTables.setTable(cat1Index, cat2Index, withCat1WithCat2, noCat1WithCat2, withCat1NoCat2, noCat1NoCat2, expectedVal);
+        };
 
-                writeResultsData(cat1, cat2, totalRecords, withCat1, withCat2, fisherProb,
-                        expectedVal, hypothesesCount, withCat1WithCat2, noCat1WithCat2, withCat1NoCat2, noCat1NoCat2);
+        if(tables.calculate(tableCalc, mFisherET, mThreads))
+        {
+            ContingencyTables.calcQValues(Lists.newArrayList(tables));
+
+            for(int cat1Index = 0; cat1Index < cat1Count; ++cat1Index)
+            {
+                for(int cat2Index = 0; cat2Index < cat2Count; ++cat2Index)
+                {
+                    int index = tables.index(cat1Index, cat2Index);
+
+                    writeResultsData(mCat1Values.get(cat1Index), mCat2Values.get(cat2Index), totalRecords,
+                            tables.WithATotals[cat1Index], tables.WithBTotals[cat2Index], tables.Probabilities[index],
+                            tables.QValues[index], tables.ExpectedCounts[index], hypothesesCount,
+                            tables.WithAWithB[index], tables.NoAWithB[index], tables.WithANoB[index], tables.NoANoB[index]);
+                }
             }
         }
 
@@ -141,7 +149,7 @@ public class TwoVarCoOccurence
 
             mWriter.write(String.format("%s,%s,TotalCount", mCategory1, mCategory2));
 
-            mWriter.write(String.format(",With%s,With%s,ExpectedCount,FETProb,TestCount,CountGtExp",
+            mWriter.write(String.format(",With%s,With%s,ExpectedCount,FETProb,QValue,TestCount,CountGtExp",
                     mCategory1, mCategory2));
 
             mWriter.write(String.format(",With%sWith%s,No%sWith%s,With%sNo%s,No%sNo%s",
@@ -159,7 +167,7 @@ public class TwoVarCoOccurence
     }
 
     private void writeResultsData(final String cat1, final String cat2, int totalCount,
-            int withCat1, int withCat2, double fetProbability, double expectedVal, int testCount,
+            int withCat1, int withCat2, double fetProbability, double qValue, double expectedVal, int testCount,
             int withCat1WithCat2, int noCat1WithCat2, int withCat1NoCat2, int noCat1NoCat2)
     {
         if (mWriter == null)
@@ -169,8 +177,8 @@ public class TwoVarCoOccurence
         {
             mWriter.write(String.format("%s,%s,%d", cat1, cat2, totalCount));
 
-            mWriter.write(String.format(",%d,%d,%.2f,%4.3e,%d,%s,%d,%d,%d,%d",
-                    withCat1, withCat2, expectedVal, fetProbability, testCount, withCat1WithCat2 > expectedVal,
+            mWriter.write(String.format(",%d,%d,%.2f,%4.3e,%4.3e,%d,%s,%d,%d,%d,%d",
+                    withCat1, withCat2, expectedVal, fetProbability, qValue, testCount, withCat1WithCat2 > expectedVal,
                     withCat1WithCat2, noCat1WithCat2, withCat1NoCat2, noCat1NoCat2));
 
             mWriter.newLine();
@@ -231,11 +239,17 @@ public class TwoVarCoOccurence
                 final String cat2Value = items[CAT_2_INDEX];
                 int counts = Integer.parseInt(items[COUNT_INDEX]);
 
-                if(!mCat1Values.contains(cat1Value))
+                if(!mCat1IndexMap.containsKey(cat1Value))
+                {
+                    mCat1IndexMap.put(cat1Value, mCat1Values.size());
                     mCat1Values.add(cat1Value);
+                }
 
-                if(!mCat2Values.contains(cat2Value))
+                if(!mCat2IndexMap.containsKey(cat2Value))
+                {
+                    mCat2IndexMap.put(cat2Value, mCat2Values.size());
                     mCat2Values.add(cat2Value);
+                }
 
                 mCategoryCountsData.add(new TwoCategoryData(cat1Value, cat2Value, counts));
             }
@@ -16,6 +16,7 @@ import static com.hartwig.hmftools.statcalcs.common.StatsCommon.LOG_DEBUG;
 import static com.hartwig.hmftools.statcalcs.common.StatsCommon.OUTPUT_FILE_ID;
 import static com.hartwig.hmftools.statcalcs.common.StatsCommon.STAT_LOGGER;
 import static com.hartwig.hmftools.statcalcs.common.StatsCommon.formOutputFilename;
+import static com.hartwig.hmftools.statcalcs.common.StatsCommon.parseThreads;
 
 import java.io.BufferedWriter;
 import java.io.File;
@@ -55,6 +56,8 @@ public class CosineSimAnalyser
     private final Matrix mReferenceSampleCounts;
     private final List<String> mRefNames;
 
+    private final int mThreads;
+
     private BufferedWriter mWriter;
 
     private static final String CSS_THRESHOLD = "css_threshold";
@@ -77,6 +80,7 @@ public class CosineSimAnalyser
         mCssThreshold = cmd.hasOption(CSS_THRESHOLD) ? Double.parseDouble(cmd.getOptionValue(CSS_THRESHOLD)) : DEFAULT_CSS_THRESHOLD;
         mUseElevated = cmd.hasOption(USE_ELEVATED);
         mRangeMap = Maps.newHashMap();
+        mThreads = parseThreads(cmd);
 
         mSampleCounts = loadMatrixDataFile(cmd.getOptionValue(SAMPLE_COUNTS_FILE), mSampleCountsIndex, null);
         mSampleCounts.cacheTranspose();
@@ -145,103 +149,85 @@ public class CosineSimAnalyser
             return;
         }
 
-        STAT_LOGGER.info("running CSS comparison for {} samples", mSampleIds.size());
+        final List<String> sampleIds = Lists.newArrayList();
+        final List<double[]> sampleCountsList = Lists.newArrayList();
 
-        for(int i = 0; i < mSampleIds.size(); ++i)
+        for(final String sampleId : mSampleIds)
         {
-            final String sampleId = mSampleIds.get(i);
+            Integer sampleIndex = mSampleCountsIndex.get(sampleId);
 
-            if(mSampleCountsIndex.get(sampleId) == null)
+            if(sampleIndex == null)
                 continue;
 
-            final double[] sampleCounts = mSampleCounts.getCol(mSampleCountsIndex.get(sampleId));
+            sampleIds.add(sampleId);
+            sampleCountsList.add(mSampleCounts.getCol(sampleIndex));
+        }
 
-            if(mReferenceSampleCounts == null)
-            {
-                for(int j = i + 1; j < mSampleIds.size(); ++j)
-                {
-                    final String sampleId2 = mSampleIds.get(j);
-                    final double[] sampleCounts2 = mSampleCounts.getCol(mSampleCountsIndex.get(sampleId2));
+        STAT_LOGGER.info("running CSS comparison for {} samples", sampleIds.size());
 
-                    double css = mUseElevated ?
-                            calcElevatedCountsCss(sampleCounts, sampleCounts2) : calcCosineSim(sampleCounts, sampleCounts2);
+        final CosineSimKernel kernel;
 
-                    if(css >= mCssThreshold)
-                    {
-                        writeCssResults(sampleId, sampleId2, css);
-                    }
-                }
-            }
-            else
-            {
-                double sampleTotal = sumVector(sampleCounts);
-                final String sampleCancerType = mSampleCancerTypes.get(sampleId);
+        if(mReferenceSampleCounts == null)
+        {
+            kernel = new CosineSimKernel(sampleCountsList, null, mCssThreshold, mThreads);
 
-                for(int j = 0; j < mRefNames.size(); ++j)
-                {
-                    final String refName = mRefNames.get(j);
-                    final double[] refCounts = mReferenceSampleCounts.getCol(j);
-
-                    double css;
-
-                    if(sampleCancerType != null && refName.equals(sampleCancerType))
-                    {
-                        double[] adjustedRefCounts = new double[refCounts.length];
-                        copyVector(refCounts, adjustedRefCounts);
-
-                        for(int b = 0; b < refCounts.length; ++b)
-                        {
-                            adjustedRefCounts[b] = max(adjustedRefCounts[b] - (sampleCounts[b]), 0);
-                        }
-
-                        css = calcCosineSim(sampleCounts, adjustedRefCounts);
-                    }
-                    else
-                    {
-                        css = calcCosineSim(sampleCounts, refCounts);
-                    }
-
-                    if(css >= mCssThreshold)
-                    {
-                        writeCssResults(sampleId, refName, css);
-                    }
-                }
+            if(mUseElevated)
+            {
+                final List<boolean[]> elevatedBuckets = Lists.newArrayList();
+                sampleCountsList.forEach(x -> elevatedBuckets.add(findElevatedBuckets(x)));
+                kernel.setElevatedBuckets(elevatedBuckets, null, MIN_ELEVATED_BUCKETS);
             }
+        }
+        else
+        {
+            final List<double[]> refCountsList = Lists.newArrayList();
 
-            if(i > 0 && (i % 100) == 0)
+            for(int j = 0; j < mRefNames.size(); ++j)
             {
-                STAT_LOGGER.info("processed {} samples", i);
+                refCountsList.add(mReferenceSampleCounts.getCol(j));
             }
-        }
 
-        STAT_LOGGER.info("CSS comparison complete");
+            kernel = new CosineSimKernel(sampleCountsList, refCountsList, mCssThreshold, mThreads);
 
-        closeBufferedWriter(mWriter);
-    }
-
-    private double calcElevatedCountsCss(final double[] sampleCounts1, final double[] sampleCounts2)
-    {
-        double[] elevCounts1 = extractElevatedCounts(sampleCounts1);
-        double[] elevCounts2 = extractElevatedCounts(sampleCounts2);
-        int elevatedBuckets = 0;
+            // a sample is compared to its own cancer type's reference with its counts taken out
+            final int[] ownRefIndices = new int[sampleIds.size()];
+            final double[] ownRefCss = new double[sampleIds.size()];
 
-        for(int b = 0; b < sampleCounts1.length; ++b)
-        {
-            if(elevCounts1[b] > 0 || elevCounts2[b] > 0)
+            for(int i = 0; i < sampleIds.size(); ++i)
             {
-                elevCounts1[b] = sampleCounts1[b];
-                elevCounts2[b] = sampleCounts2[b];
-                ++elevatedBuckets;
+                final String sampleCancerType = mSampleCancerTypes.get(sampleIds.get(i));
+                ownRefIndices[i] = sampleCancerType != null ? mRefNames.indexOf(sampleCancerType) : -1;
+
+                if(ownRefIndices[i] < 0)
+                    continue;
+
+                final double[] sampleCounts = sampleCountsList.get(i);
+                final double[] refCounts = refCountsList.get(ownRefIndices[i]);
+
+                double[] adjustedRefCounts = new double[refCounts.length];
+                copyVector(refCounts, adjustedRefCounts);
+
+                for(int b = 0; b < refCounts.length; ++b)
+                {
+                    adjustedRefCounts[b] = max(adjustedRefCounts[b] - (sampleCounts[b]), 0);
+                }
+
+                ownRefCss[i] = calcCosineSim(sampleCounts, adjustedRefCounts);
             }
+
+            kernel.setPairOverrides(ownRefIndices, ownRefCss);
         }
 
-        if(elevatedBuckets < MIN_ELEVATED_BUCKETS)
-            return 0;
+        final List<String> otherNames = mReferenceSampleCounts == null ? sampleIds : mRefNames;
 
-        return calcCosineSim(elevCounts1, elevCounts2);
+        kernel.run((row, otherRow, css) -> writeCssResults(sampleIds.get(row), otherNames.get(otherRow), css));
+
+        STAT_LOGGER.info("CSS comparison complete");
+
+        closeBufferedWriter(mWriter);
     }
 
-    private double[] extractElevatedCounts(final double[] counts)
+    private boolean[] findElevatedBuckets(final double[] counts)
     {
         double total = sumVector(counts);
         int bucketCount = counts.length;
@@ -256,15 +242,14 @@ public class CosineSimAnalyser
             mRangeMap.put(expectedValue, maxPermittedValue);
         }
 
-        double[] elevatedCounts = new double[bucketCount];
+        boolean[] elevatedBuckets = new boolean[bucketCount];
 
         for(int b = 0; b < bucketCount; ++b)
         {
-            if(counts[b] > maxPermittedValue)
-                elevatedCounts[b] = counts[b];
+            elevatedBuckets[b] = counts[b] > maxPermittedValue;
         }
 
-        return elevatedCounts;
+        return elevatedBuckets;
     }
 
     private void writeCssResults(
@@ -297,9 +282,10 @@ public class CosineSimAnalyser
     {
         Options options = new Options();
         StatsCommon.addCmdLineArgs(options);
+        options.addOption(SAMPLE_COUNTS_FILE, true, "Sample bucket counts file");
         options.addOption(CSS_THRESHOLD, true, "Optional - min CSS to log (default = 0.8)");
         options.addOption(USE_ELEVATED, false, "Optional - only include elevated counts in comparison");
-        options.addOption(REF_COUNTS_FILE, true, "Optional - min CSS to log (default = 0.8)");
+        options.addOption(REF_COUNTS_FILE, true, "Optional - reference bucket counts file, to compare samples against");
         options.addOption(SAMPLE_REF_FILE, true, "Optional - sample to ref-type mapping file");
 
         final CommandLineParser parser = new DefaultParser();
@@ -0,0 +1,333 @@
+package com.hartwig.hmftools.statcalcs.css;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.lang.Math.sqrt;
+
+import static com.hartwig.hmftools.common.stats.CosineSimilarity.unitVector;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import com.google.common.collect.Lists;
+import com.hartwig.hmftools.common.utils.TaskExecutor;
+
+// cosine similarity of every row against every other row, or against a second set of rows, keeping only pairs at or above a
+// threshold - rows are scaled to unit length up front so each pair is a dot product, and compared a tile of rows at a time so
+// the other tile stays in cache across the rows of the first
+public class CosineSimKernel
+{
+    private final double[] mRows; // unit-length rows, one after the other
+    private final int mRowCount;
+    private final double[] mOtherRows;
+    private final int mOtherCount;
+    private final int mLength;
+    private final boolean mAllPairs; // rows against themselves, so only pairs where the other row is after the row
+    private final double mThreshold;
+    private final int mThreads;
+
+    // the length of the second half of each row, bounding what the rest of a dot product can add once the first half is summed
+    private final double[] mRowTailLengths;
+    private final double[] mOtherTailLengths;
+    private final int mTailStart;
+
+    // optionally restrict each pair to the buckets elevated in either row
+    private boolean[] mRowElevated;
+    private boolean[] mOtherElevated;
+    private int mMinElevatedBuckets;
+
+    // optionally a pre-calculated similarity for one other row per row
+    private int[] mOverrideOthers;
+    private double[] mOverrideCss;
+
+    public static final int TILE_SIZE = 64;
+    private static final int TILES_PER_TASK = 4; // tiles dealt to each thread before the batch's results are written
+    private static final double PRUNE_TOLERANCE = 1e-10;
+
+    public interface PairWriter
+    {
+        void writePair(int row, int otherRow, double css);
+    }
+
+    public CosineSimKernel(final List<double[]> rows, final List<double[]> otherRows, double threshold, int threads)
+    {
+        mAllPairs = otherRows == null;
+        mRowCount = rows.size();
+        mOtherCount = mAllPairs ? mRowCount : otherRows.size();
+        mLength = !rows.isEmpty() ? rows.get(0).length : 0;
+        mThreshold = threshold;
+        mThreads = max(threads, 1);
+        mTailStart = mLength / 2;
+
+        mRows = unitRows(rows, mLength);
+        mRowTailLengths = tailLengths(mRows, mRowCount, mLength, mTailStart);
+
+        if(mAllPairs)
+        {
+            mOtherRows = mRows;
+            mOtherTailLengths = mRowTailLengths;
+        }
+        else
+        {
+            mOtherRows = unitRows(otherRows, mLength);
+            mOtherTailLengths = tailLengths(mOtherRows, mOtherCount, mLength, mTailStart);
+        }
+
+        mRowElevated = null;
+        mOtherElevated = null;
+        mMinElevatedBuckets = 0;
+        mOverrideOthers = null;
+        mOverrideCss = null;
+    }
+
+    // cosine similarity is unchanged by scaling, so it can be taken over any subset of buckets from the unit-length rows
+    public void setElevatedBuckets(final List<boolean[]> rowElevated, final List<boolean[]> otherElevated, int minElevatedBuckets)
+    {
+        mRowElevated = flatten(rowElevated, mLength);
+        mOtherElevated = mAllPairs ? mRowElevated : flatten(otherElevated, mLength);
+        mMinElevatedBuckets = minElevatedBuckets;
+    }
+
+    public void setPairOverrides(final int[] otherRows, final double[] css)
+    {
+        mOverrideOthers = otherRows;
+        mOverrideCss = css;
+    }
+
+    // pairs are passed to the writer on the calling thread, in order of row then other row
+    public boolean run(final PairWriter writer)
+    {
+        int tileCount = (mRowCount + TILE_SIZE - 1) / TILE_SIZE;
+        int batchTileCount = mThreads * TILES_PER_TASK;
+
+        for(int batchStart = 0; batchStart < tileCount; batchStart += batchTileCount)
+        {
+            int batchEnd = min(batchStart + batchTileCount, tileCount);
+            int taskCount = min(mThreads, batchEnd - batchStart);
+
+            final List<TileTask> tileTasks = Lists.newArrayList();
+            final List<Callable> tasks = Lists.newArrayList();
+
+            for(int i = 0; i < taskCount; ++i)
+            {
+                TileTask tileTask = new TileTask(batchStart + i, batchEnd, taskCount);
+                tileTasks.add(tileTask);
+                tasks.add(tileTask);
+            }
+
+            if(!TaskExecutor.executeTasks(tasks, taskCount, "StatCalcs"))
+                return false;
+
+            for(int tile = batchStart; tile < batchEnd; ++tile)
+            {
+                final PairHits[] tileHits = tileTasks.get((tile - batchStart) % taskCount).getTileHits(tile);
+
+                int tileRowStart = tile * TILE_SIZE;
+
+                for(int r = 0; r < tileHits.length; ++r)
+                {
+                    final PairHits hits = tileHits[r];
+
+                    for(int h = 0; h < hits.Count; ++h)
+                    {
+                        writer.writePair(tileRowStart + r, hits.OtherRows[h], hits.Css[h]);
+                    }
+                }
+            }
+        }
+
+        return true;
+    }
+
+    private class TileTask implements Callable
+    {
+        private final int mStartTile;
+        private final int mEndTile;
+        private final int mTileStep;
+        private final List<PairHits[]> mTileHits;
+
+        public TileTask(int startTile, int endTile, int tileStep)
+        {
+            mStartTile = startTile;
+            mEndTile = endTile;
+            mTileStep = tileStep;
+            mTileHits = Lists.newArrayList();
+        }
+
+        public PairHits[] getTileHits(int tile) { return mTileHits.get((tile - mStartTile) / mTileStep); }
+
+        @Override
+        public Long call()
+        {
+            for(int tile = mStartTile; tile < mEndTile; tile += mTileStep)
+            {
+                mTileHits.add(calcTile(tile));
+            }
+
+            return (long)0;
+        }
+    }
+
+    private PairHits[] calcTile(int tile)
+    {
+        int rowStart = tile * TILE_SIZE;
+        int rowEnd = min(rowStart + TILE_SIZE, mRowCount);
+
+        final PairHits[] tileHits = new PairHits[rowEnd - rowStart];
+
+        for(int r = rowStart; r < rowEnd; ++r)
+        {
+            tileHits[r - rowStart] = new PairHits();
+        }
+
+        int otherStart = mAllPairs ? rowStart : 0;
+
+        for(int otherTileStart = otherStart; otherTileStart < mOtherCount; otherTileStart += TILE_SIZE)
+        {
+            int otherTileEnd = min(otherTileStart + TILE_SIZE, mOtherCount);
+
+            for(int r = rowStart; r < rowEnd; ++r)
+            {
+                final PairHits hits = tileHits[r - rowStart];
+                int overrideOther = mOverrideOthers != null ? mOverrideOthers[r] : -1;
+
+                for(int o = mAllPairs ? max(otherTileStart, r + 1) : otherTileStart; o < otherTileEnd; ++o)
+                {
+                    double css;
+
+                    if(o == overrideOther)
+                        css = mOverrideCss[r];
+                    else if(mRowElevated != null)
+                        css = calcElevatedCss(r, o);
+                    else
+                        css = calcCss(r, o);
+
+                    if(css >= mThreshold)
+                        hits.add(o, css);
+                }
+            }
+        }
+
+        return tileHits;
+    }
+
+    private double calcCss(int row, int otherRow)
+    {
+        int rowOffset = row * mLength;
+        int otherOffset = otherRow * mLength;
+
+        double abTotal = 0;
+
+        for(int b = 0; b < mTailStart; ++b)
+        {
+            abTotal += mRows[rowOffset + b] * mOtherRows[otherOffset + b];
+        }
+
+        // the rest can add at most the product of the rows' remaining lengths, so if that falls short the bound is returned instead
+        double maxTotal = abTotal + mRowTailLengths[row] * mOtherTailLengths[otherRow];
+
+        if(maxTotal < mThreshold - PRUNE_TOLERANCE)
+            return maxTotal;
+
+        for(int b = mTailStart; b < mLength; ++b)
+        {
+            abTotal += mRows[rowOffset + b] * mOtherRows[otherOffset + b];
+        }
+
+        return min(abTotal, 1.0);
+    }
+
+    private double calcElevatedCss(int row, int otherRow)
+    {
+        int rowOffset = row * mLength;
+        int otherOffset = otherRow * mLength;
+
+        double aaTotal = 0;
+        double bbTotal = 0;
+        double abTotal = 0;
+        int elevatedBuckets = 0;
+
+        for(int b = 0; b < mLength; ++b)
+        {
+            if(!mRowElevated[rowOffset + b] && !mOtherElevated[otherOffset + b])
+                continue;
+
+            double a = mRows[rowOffset + b];
+            double o = mOtherRows[otherOffset + b];
+
+            aaTotal += a * a;
+            bbTotal += o * o;
+            abTotal += a * o;
+            ++elevatedBuckets;
+        }
+
+        if(elevatedBuckets < mMinElevatedBuckets || aaTotal <= 0 || bbTotal <= 0)
+            return 0;
+
+        return min(abTotal / (sqrt(aaTotal) * sqrt(bbTotal)), 1.0);
+    }
+
+    private static double[] unitRows(final List<double[]> rows, int length)
+    {
+        final double[] data = new double[rows.size() * length];
+
+        for(int r = 0; r < rows.size(); ++r)
+        {
+            System.arraycopy(unitVector(rows.get(r)), 0, data, r * length, length);
+        }
+
+        return data;
+    }
+
+    private static boolean[] flatten(final List<boolean[]> rows, int length)
+    {
+        final boolean[] data = new boolean[rows.size() * length];
+
+        for(int r = 0; r < rows.size(); ++r)
+        {
+            System.arraycopy(rows.get(r), 0, data, r * length, length);
+        }
+
+        return data;
+    }
+
+    private static double[] tailLengths(final double[] data, int rowCount, int length, int tailStart)
+    {
+        final double[] tailLengths = new double[rowCount];
+
+        for(int r = 0; r < rowCount; ++r)
+        {
+            double total = 0;
+
+            for(int b = tailStart; b < length; ++b)
+            {
+                total += data[r * length + b] * data[r * length + b];
+            }
+
+            tailLengths[r] = sqrt(total);
+        }
+
+        return tailLengths;
+    }
+
+    private static class PairHits
+    {
+        public int[] OtherRows = new int[4];
+        public double[] Css = new double[4];
+        public int Count = 0;
+
+        public void add(int otherRow, double css)
+        {
+            if(Count == OtherRows.length)
+            {
+                OtherRows = Arrays.copyOf(OtherRows, Count * 2);
+                Css = Arrays.copyOf(Css, Count * 2);
+            }
+
+            OtherRows[Count] = otherRow;
+            Css[Count] = css;
+            ++Count;
+        }
+    }
+}
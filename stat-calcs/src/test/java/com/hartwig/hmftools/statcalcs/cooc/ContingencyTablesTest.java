@@ -0,0 +1,127 @@
+package com.hartwig.hmftools.statcalcs.cooc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.Lists;
+import com.hartwig.hmftools.common.stats.FisherExactTest;
+
+import org.junit.Test;
+
+public class ContingencyTablesTest
+{
+    @Test
+    public void testSampleBitSets()
+    {
+        SampleBitSet samples1 = new SampleBitSet(130);
+        SampleBitSet samples2 = new SampleBitSet(130);
+
+        samples1.set(0);
+        samples1.set(63);
+        samples1.set(64);
+        samples1.set(129);
+        samples1.set(129);
+
+        samples2.set(1);
+        samples2.set(64);
+        samples2.set(129);
+
+        assertEquals(4, samples1.count());
+        assertTrue(samples1.get(63));
+        assertFalse(samples1.get(1));
+        assertEquals(2, samples1.intersectCount(samples2));
+        assertEquals(0, samples1.intersectCount(new SampleBitSet(130)));
+    }
+
+    @Test
+    public void testPairTables()
+    {
+        int sampleCount = 200;
+        int aCount = 5;
+        int bCount = 7;
+
+        SampleBitSet[] withA = new SampleBitSet[aCount];
+        SampleBitSet[] withB = new SampleBitSet[bCount];
+
+        for(int a = 0; a < aCount; ++a)
+        {
+            withA[a] = new SampleBitSet(sampleCount);
+
+            for(int s = a; s < sampleCount; s += a + 2)
+            {
+                withA[a].set(s);
+            }
+        }
+
+        for(int b = 0; b < bCount; ++b)
+        {
+            withB[b] = new SampleBitSet(sampleCount);
+
+            for(int s = 0; s < sampleCount; s += b + 3)
+            {
+                withB[b].set(s);
+            }
+        }
+
+        final ContingencyTables.PairTableCalc tableCalc = (tables, a, b) ->
+        {
+            int withAWithB = withA[a].intersectCount(withB[b]);
+            int withANoB = withA[a].count() - withAWithB;
+            int noAWithB = withB[b].count() - withAWithB;
+            int noANoB = sampleCount - withAWithB - withANoB - noAWithB;
+            double expected = withA[a].count() / (double)sampleCount * withB[b].count();
+
+            tables.setTable(a, b, withAWithB, noAWithB, withANoB, noANoB, expected);
+        };
+
+        FisherExactTest fisherET = new FisherExactTest();
+        fisherET.initialise(10);
+
+        ContingencyTables tables = new ContingencyTables(aCount, bCount, sampleCount);
+        assertTrue(tables.calculate(tableCalc, fisherET, 3));
+        assertEquals(sampleCount, fisherET.maxCount());
+
+        // matches the tables calculated directly on a single thread
+        FisherExactTest singleFisherET = new FisherExactTest();
+        singleFisherET.initialise(sampleCount);
+
+        for(int a = 0; a < aCount; ++a)
+        {
+            for(int b = 0; b < bCount; ++b)
+            {
+                int index = tables.index(a, b);
+
+                int withAWithB = 0;
+                int withANoB = 0;
+                int noAWithB = 0;
+
+                for(int s = 0; s < sampleCount; ++s)
+                {
+                    if(withA[a].get(s) && withB[b].get(s))
+                        ++withAWithB;
+                    else if(withA[a].get(s))
+                        ++withANoB;
+                    else if(withB[b].get(s))
+                        ++noAWithB;
+                }
+
+                int noANoB = sampleCount - withAWithB - withANoB - noAWithB;
+                double expected = withA[a].count() / (double)sampleCount * withB[b].count();
+
+                assertEquals(withAWithB, tables.WithAWithB[index]);
+                assertEquals(noANoB, tables.NoANoB[index]);
+
+                double prob = singleFisherET.calc(withAWithB, noAWithB, withANoB, noANoB, expected);
+                assertEquals(prob, tables.Probabilities[index], 1e-12);
+            }
+        }
+
+        // a smaller initialisation keeps the existing table
+        fisherET.initialise(50);
+        assertEquals(sampleCount, fisherET.maxCount());
+
+        ContingencyTables.calcQValues(Lists.newArrayList(tables));
+        assertEquals(tables.pairCount(), tables.QValues.length);
+    }
+}
@@ -0,0 +1,119 @@
+package com.hartwig.hmftools.statcalcs.css;
+
+import static com.hartwig.hmftools.common.stats.CosineSimilarity.calcCosineSim;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Random;
+
+import com.google.common.collect.Lists;
+
+import org.junit.Test;
+
+public class CosineSimKernelTest
+{
+    @Test
+    public void testAllPairs()
+    {
+        final Random random = new Random(1);
+        final List<double[]> rows = randomRows(random, 150, 12);
+        rows.set(3, new double[12]);
+
+        double threshold = 0.75;
+
+        // a thread count of zero is treated as one
+        for(int threads : new int[] { 0, 2 })
+        {
+            final List<double[]> pairs = Lists.newArrayList();
+
+            CosineSimKernel kernel = new CosineSimKernel(rows, null, threshold, threads);
+            assertTrue(kernel.run((row, otherRow, css) -> pairs.add(new double[] { row, otherRow, css })));
+
+            int index = 0;
+
+            for(int i = 0; i < rows.size(); ++i)
+            {
+                for(int j = i + 1; j < rows.size(); ++j)
+                {
+                    double css = calcCosineSim(rows.get(i), rows.get(j));
+
+                    if(css < threshold)
+                        continue;
+
+                    final double[] pair = pairs.get(index++);
+                    assertEquals(i, (int)pair[0]);
+                    assertEquals(j, (int)pair[1]);
+                    assertEquals(css, pair[2], 1e-10);
+                }
+            }
+
+            assertEquals(index, pairs.size());
+        }
+    }
+
+    @Test
+    public void testOtherRows()
+    {
+        final Random random = new Random(2);
+        final List<double[]> rows = randomRows(random, 70, 8);
+        final List<double[]> otherRows = randomRows(random, 5, 8);
+
+        double threshold = 0.6;
+
+        final int[] overrideOthers = new int[rows.size()];
+        final double[] overrideCss = new double[rows.size()];
+
+        for(int i = 0; i < rows.size(); ++i)
+        {
+            overrideOthers[i] = i % otherRows.size();
+            overrideCss[i] = (i % 2) == 0 ? 1 : 0;
+        }
+
+        final List<double[]> pairs = Lists.newArrayList();
+
+        CosineSimKernel kernel = new CosineSimKernel(rows, otherRows, threshold, 3);
+        kernel.setPairOverrides(overrideOthers, overrideCss);
+        assertTrue(kernel.run((row, otherRow, css) -> pairs.add(new double[] { row, otherRow, css })));
+
+        int index = 0;
+
+        for(int i = 0; i < rows.size(); ++i)
+        {
+            for(int j = 0; j < otherRows.size(); ++j)
+            {
+                double css = j == overrideOthers[i] ? overrideCss[i] : calcCosineSim(rows.get(i), otherRows.get(j));
+
+                if(css < threshold)
+                    continue;
+
+                final double[] pair = pairs.get(index++);
+                assertEquals(i, (int)pair[0]);
+                assertEquals(j, (int)pair[1]);
+                assertEquals(css, pair[2], 1e-10);
+            }
+        }
+
+        assertEquals(index, pairs.size());
+    }
+
+    private static List<double[]> randomRows(final Random random, int rowCount, int length)
+    {
+        final List<double[]> rows = Lists.newArrayList();
+
+        for(int i = 0; i < rowCount; ++i)
+        {
+            double[] row = new double[length];
+
+            for(int b = 0; b < length; ++b)
+            {
+                row[b] = random.nextInt(4) == 0 ? 0 : random.nextInt(20);
+            }
+
+            rows.add(row);
+        }
+
+        return rows;
+    }
+}
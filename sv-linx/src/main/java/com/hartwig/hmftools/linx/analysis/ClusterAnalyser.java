@@ -23,6 +23,7 @@ import static com.hartwig.hmftools.linx.types.ResolvedType.LINE;
 import static com.hartwig.hmftools.linx.types.ResolvedType.NONE;
 import static com.hartwig.hmftools.linx.types.ResolvedType.SIMPLE_GRP;
 
+import java.util.Comparator;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -61,7 +62,12 @@ public class ClusterAnalyser {
     PerformanceCounter mPcClustering;
     PerformanceCounter mPcChaining;
 
+    // candidate links tested by the chaining rules, for the current sample and all samples
+    private long mSampleChainRuleEvaluations;
+    private long mTotalChainRuleEvaluations;
+
     private static final int SMALL_CLUSTER_SIZE = 3;
+    private static final int LARGE_CLUSTER_SIZE = 500;
 
     public ClusterAnalyser(final LinxConfig config)
     {
@@ -93,6 +99,8 @@ public class ClusterAnalyser {
 
         mPcClustering = new PerformanceCounter("Clustering");
         mPcChaining = new PerformanceCounter("Chaining");
+        mSampleChainRuleEvaluations = 0;
+        mTotalChainRuleEvaluations = 0;
     }
 
     public final ClusteringState getState() { return mState; }
@@ -152,6 +160,10 @@ public class ClusterAnalyser {
     {
         mClusters.clear();
         mDmFinder.clear();
+        mSampleChainRuleEvaluations = 0;
+
+        // breakend copy number and JCN are fixed from here on
+        mState.buildBreakendIndex();
 
         mPcClustering.start();
         mFilters.clusterExcludedVariants(mClusters);
@@ -185,7 +197,7 @@ public class ClusterAnalyser {
         mClusters.stream().filter(x -> x.getSvCount() > 1).forEach(SvCluster::logDetails);
 
         // INVs and other SV-pairs which make foldbacks are now used in the inconsistent clustering logic
-        FoldbackFinder.markFoldbacks(mState.getChrBreakendMap());
+        FoldbackFinder.markFoldbacks(mState.getChrBreakendIndex());
 
         mPcClustering.resume();
         mComplexClustering.applyRules(mSampleId, false);
@@ -197,6 +209,8 @@ public class ClusterAnalyser {
         dissolveSimpleGroups();
         mPcChaining.stop();
 
+        logLargeClusterTimes();
+
         if(mRunValidationChecks)
         {
             if(!mSimpleClustering.validateClustering(mClusters) || !checkClusterDuplicates(mClusters))
@@ -209,7 +223,7 @@ public class ClusterAnalyser {
         // final clean-up and analysis
 
         // re-check foldbacks amongst newly formed chains and then DM status
-        if(FoldbackFinder.markFoldbacks(mState.getChrBreakendMap(), true))
+        if(FoldbackFinder.markFoldbacks(mState.getChrBreakendIndex(), true))
         {
             mComplexClustering.applyRules(mSampleId, true);
         }
@@ -244,6 +258,26 @@ public class ClusterAnalyser {
         return true;
     }
 
+    private void logLargeClusterTimes()
+    {
+        // clustering and chaining time is dominated by samples with very large clusters, so report these individually
+        SvCluster largestCluster = mClusters.stream().max(Comparator.comparingInt(SvCluster::getSvCount)).orElse(null);
+
+        if(largestCluster == null || largestCluster.getSvCount() < LARGE_CLUSTER_SIZE)
+            return;
+
+        final List<Double> clusteringTimes = mPcClustering.getTimes();
+        final List<Double> chainingTimes = mPcChaining.getTimes();
+
+        if(clusteringTimes.isEmpty() || chainingTimes.isEmpty())
+            return;
+
+        LNX_LOGGER.info(String.format("sample(%s) largest cluster(%d) SVs(%d) of total(%d) clustering time(%.3f) chaining time(%.3f) ruleEvaluations(%d)",
+                mSampleId, largestCluster.id(), largestCluster.getSvCount(), mAllVariants.size(),
+                clusteringTimes.get(clusteringTimes.size() - 1), chainingTimes.get(chainingTimes.size() - 1),
+                mSampleChainRuleEvaluations));
+    }
+
     public void findLimitedChains()
     {
         // chain small clusters and only assembled links in larger ones
@@ -361,6 +395,9 @@ public class ClusterAnalyser {
         mChainFinder.formChains(assembledLinksOnly);
         mChainFinder.addChains(cluster);
 
+        mSampleChainRuleEvaluations += mChainFinder.getRuleEvaluations();
+        mTotalChainRuleEvaluations += mChainFinder.getRuleEvaluations();
+
         if(!assembledLinksOnly)
             mChainFinder.getDiagnostics().diagnoseChains();
 
@@ -414,6 +451,8 @@ public class ClusterAnalyser {
     {
         mPcClustering.logStats();
         mPcChaining.logStats();
+
+        LNX_LOGGER.info("chaining rule evaluations({})", mTotalChainRuleEvaluations);
     }
 
 }
@@ -6,6 +6,7 @@ import java.util.Map;
 import com.google.common.collect.Maps;
 import com.hartwig.hmftools.linx.cn.HomLossEvent;
 import com.hartwig.hmftools.linx.cn.LohEvent;
+import com.hartwig.hmftools.linx.types.ChrBreakendIndex;
 import com.hartwig.hmftools.linx.types.SvBreakend;
 
 public class ClusteringState
@@ -15,6 +16,9 @@ public class ClusteringState
     // every breakend on a chromosome, ordered by ascending position
     private final Map<String, List<SvBreakend>> mChrBreakendMap;
 
+    // columnar form of the same breakends, built once filtering and copy number annotation are complete
+    private final Map<String, ChrBreakendIndex> mChrBreakendIndex;
+
     private List<LohEvent> mLohEventList;
     private List<HomLossEvent> mHomLossList;
 
@@ -24,6 +28,7 @@ public class ClusteringState
     public ClusteringState()
     {
         mChrBreakendMap = Maps.newHashMap();
+        mChrBreakendIndex = Maps.newHashMap();
         mLohEventList = null;
         mHomLossList = null;
 
@@ -31,6 +36,7 @@ public class ClusteringState
     }
 
     public final Map<String, List<SvBreakend>> getChrBreakendMap() { return mChrBreakendMap; }
+    public final Map<String, ChrBreakendIndex> getChrBreakendIndex() { return mChrBreakendIndex; }
     public final List<LohEvent> getLohEventList() { return mLohEventList; }
     public final List<HomLossEvent> getHomLossList() { return mHomLossList; }
     public int getNextClusterId() { return mNextClusterId++; }
@@ -50,6 +56,17 @@ public class ClusteringState
         mDelCutoffLength = 0;
         mDupCutoffLength = 0;
         mChrBreakendMap.clear();
+        mChrBreakendIndex.clear();
+    }
+
+    public void buildBreakendIndex()
+    {
+        mChrBreakendIndex.clear();
+
+        for(Map.Entry<String, List<SvBreakend>> entry : mChrBreakendMap.entrySet())
+        {
+            mChrBreakendIndex.put(entry.getKey(), new ChrBreakendIndex(entry.getKey(), entry.getValue()));
+        }
     }
 
     public void setCutoffLengths(int delLength, int dupLength)
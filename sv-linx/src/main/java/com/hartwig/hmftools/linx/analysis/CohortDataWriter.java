@@ -231,12 +231,12 @@ public class CohortDataWriter
                 int dbLenStart = NO_DB_MARKER;
                 int dbLenEnd = NO_DB_MARKER;
 
-                if(dbStart != null && cluster.getSVs().contains(dbStart.getOtherSV(var)))
+                if(dbStart != null && cluster.hasVariant(dbStart.getOtherSV(var)))
                 {
                     dbLenStart = (!var.isInferredSgl() && !dbStart.getOtherSV(var).isInferredSgl()) ? dbStart.length() : INF_DB_MARKER;
                 }
 
-                if(dbEnd != null && cluster.getSVs().contains(dbEnd.getOtherSV(var)))
+                if(dbEnd != null && cluster.hasVariant(dbEnd.getOtherSV(var)))
                 {
                     dbLenEnd = (!var.isInferredSgl() && !dbEnd.getOtherSV(var).isInferredSgl()) ? dbEnd.length() : INF_DB_MARKER;
                 }
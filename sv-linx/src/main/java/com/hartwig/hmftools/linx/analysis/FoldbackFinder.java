@@ -13,10 +13,10 @@ import static com.hartwig.hmftools.linx.chaining.ChainUtils.breakendsAreChained;
 import static com.hartwig.hmftools.linx.chaining.LinkFinder.getMinTemplatedInsertionLength;
 import static com.hartwig.hmftools.linx.types.LinxConstants.MAX_FOLDBACK_CHAIN_LENGTH;
 
-import java.util.List;
 import java.util.Map;
 
 import com.hartwig.hmftools.linx.chaining.SvChain;
+import com.hartwig.hmftools.linx.types.ChrBreakendIndex;
 import com.hartwig.hmftools.linx.types.DbPair;
 import com.hartwig.hmftools.linx.types.LinkedPair;
 import com.hartwig.hmftools.linx.types.SvBreakend;
@@ -25,23 +25,21 @@ import com.hartwig.hmftools.linx.types.SvVarData;
 
 public class FoldbackFinder
 {
-    public static void markFoldbacks(final Map<String, List<SvBreakend>> chrBreakendMap)
+    public static void markFoldbacks(final Map<String, ChrBreakendIndex> chrBreakendIndex)
     {
-        markFoldbacks(chrBreakendMap, false);
+        markFoldbacks(chrBreakendIndex, false);
     }
 
-    public static boolean markFoldbacks(final Map<String, List<SvBreakend>> chrBreakendMap, boolean recheckChainedSVs)
+    public static boolean markFoldbacks(final Map<String, ChrBreakendIndex> chrBreakendIndex, boolean recheckChainedSVs)
     {
         boolean foundAnyFoldback = false;
 
         // find all valid consecutive breakends formed either from a single SV or a chained set
-        for(final Map.Entry<String, List<SvBreakend>> entry : chrBreakendMap.entrySet())
+        for(final ChrBreakendIndex breakendIndex : chrBreakendIndex.values())
         {
-            List<SvBreakend> breakendList = entry.getValue();
-
-            for(int i = 0; i < breakendList.size() - 1; ++i)
+            for(int i = 0; i < breakendIndex.size() - 1; ++i)
             {
-                SvBreakend breakend = breakendList.get(i);
+                SvBreakend breakend = breakendIndex.breakend(i);
 
                 if(breakend.isAssembledLink())
                     continue;
@@ -55,24 +53,24 @@ public class FoldbackFinder
                 SvBreakend beBack = null;
 
                 int j = i + 1;
-                while(j < breakendList.size())
+                while(j < breakendIndex.size())
                 {
-                    nextBreakend = breakendList.get(j);
+                    nextBreakend = breakendIndex.breakend(j);
 
                     // first skip over any breakends in a DB with the initial breakend
-                    if(j == i + 1 && breakend.orientation() == -1 && nextBreakend.orientation() == 1
-                    && nextBreakend.position() - breakend.position() < getMinTemplatedInsertionLength(nextBreakend, breakend))
+                    if(j == i + 1 && breakendIndex.orientation(i) == -1 && breakendIndex.orientation(j) == 1
+                    && breakendIndex.position(j) - breakendIndex.position(i) < getMinTemplatedInsertionLength(nextBreakend, breakend))
                     {
                         ++j;
                         continue;
                     }
 
                     // check for any assembled links in between the potential foldback breakends
-                    if(j + 1 < breakendList.size() && nextBreakend.isAssembledLink()
+                    if(j + 1 < breakendIndex.size() && nextBreakend.isAssembledLink()
                     && nextBreakend.getSV().getLinkedPair(nextBreakend.usesStart()) != null)
                     {
                         LinkedPair asmbLink = nextBreakend.getSV().getLinkedPair(nextBreakend.usesStart());
-                        SvBreakend nextNextBreakend = breakendList.get(j + 1);
+                        SvBreakend nextNextBreakend = breakendIndex.breakend(j + 1);
                         if(asmbLink.getOtherBreakend(nextBreakend) == nextNextBreakend)
                         {
                             // skip over both these assembled links
@@ -82,12 +80,12 @@ public class FoldbackFinder
                     }
 
                     // check again for an overlapping DB at the outer (potential) foldback breakend
-                    if(breakend.orientation() == 1 && nextBreakend.orientation() == -1 && j < breakendList.size() - 1)
+                    if(breakendIndex.orientation(i) == 1 && breakendIndex.orientation(j) == -1 && j < breakendIndex.size() - 1)
                     {
-                        SvBreakend nextNextBreakend = breakendList.get(j + 1);
+                        SvBreakend nextNextBreakend = breakendIndex.breakend(j + 1);
 
-                        if(nextNextBreakend.orientation() == breakend.orientation()
-                        && nextNextBreakend.position() - nextBreakend.position() < getMinTemplatedInsertionLength(nextBreakend, nextNextBreakend))
+                        if(breakendIndex.orientation(j + 1) == breakendIndex.orientation(i)
+                        && breakendIndex.position(j + 1) - breakendIndex.position(j) < getMinTemplatedInsertionLength(nextBreakend, nextNextBreakend))
                         {
                             nextBreakend = nextNextBreakend;
                         }
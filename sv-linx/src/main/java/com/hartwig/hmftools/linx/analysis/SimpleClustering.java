@@ -39,18 +39,23 @@ import java.io.BufferedWriter;
 import java.io.IOException;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 import com.hartwig.hmftools.common.variant.structural.StructuralVariantType;
 import com.hartwig.hmftools.linx.LinxConfig;
 import com.hartwig.hmftools.linx.cn.HomLossEvent;
 import com.hartwig.hmftools.linx.cn.LohEvent;
+import com.hartwig.hmftools.linx.types.ChrBreakendIndex;
 import com.hartwig.hmftools.linx.types.ResolvedType;
 import com.hartwig.hmftools.linx.types.SvBreakend;
 import com.hartwig.hmftools.linx.types.SvCluster;
 import com.hartwig.hmftools.linx.types.SvVarData;
 
+import org.jetbrains.annotations.Nullable;
+
 public class SimpleClustering
 {
     private ClusteringState mState;
@@ -80,27 +85,17 @@ public class SimpleClustering
         int proximityDistance = mConfig.ProximityDistance;
 
         // walk through each chromosome and breakend list
-        for (final Map.Entry<String, List<SvBreakend>> entry : mState.getChrBreakendMap().entrySet())
+        for (final ChrBreakendIndex breakendIndex : mState.getChrBreakendIndex().values())
         {
-            final List<SvBreakend> breakendList = entry.getValue();
-
             int currentIndex = 0;
-            while (currentIndex < breakendList.size())
+            while (currentIndex < breakendIndex.size())
             {
-                final SvBreakend breakend = breakendList.get(currentIndex);
+                final SvBreakend breakend = breakendIndex.breakend(currentIndex);
                 SvVarData var = breakend.getSV();
 
-                SvBreakend nextBreakend = null;
                 int nextIndex = currentIndex + 1;
 
-                for (; nextIndex < breakendList.size(); ++nextIndex)
-                {
-                    final SvBreakend nextBe = breakendList.get(nextIndex);
-                    nextBreakend = nextBe;
-                    break;
-                }
-
-                if (nextBreakend == null)
+                if (nextIndex >= breakendIndex.size())
                 {
                     // no more breakends on this chromosome
                     if (var.getCluster() == null)
@@ -114,14 +109,14 @@ public class SimpleClustering
                 }
 
                 SvCluster cluster = var.getCluster();
-                SvVarData nextVar = nextBreakend.getSV();
+                SvVarData nextVar = breakendIndex.breakend(nextIndex).getSV();
                 SvCluster nextCluster = nextVar.getCluster();
 
                 if (cluster != null && cluster == nextCluster)
                 {
                     // already clustered
                 }
-                else if (abs(nextBreakend.position() - breakend.position()) > proximityDistance)
+                else if (abs(breakendIndex.position(nextIndex) - breakendIndex.position(currentIndex)) > proximityDistance)
                 {
                     // too far between the breakends
                     if (cluster == null)
@@ -276,14 +271,19 @@ public class SimpleClustering
         // will then fall within the bounds of the new larger clusters
         boolean foundMerges = true;
         int iterations = 0;
+        Set<SvCluster> recheckClusters = null;
 
         while(foundMerges)
         {
             foundMerges = false;
 
-            if(mergeOnOverlappingInvDupDels(clusters, false))
+            Set<SvCluster> modifiedClusters = Sets.newIdentityHashSet();
+
+            if(mergeOnOverlappingInvDupDels(clusters, false, recheckClusters, modifiedClusters))
                 foundMerges = true;
 
+            recheckClusters = modifiedClusters;
+
             ++iterations;
 
             if(iterations >= 10)
@@ -582,14 +582,19 @@ public class SimpleClustering
     {
         boolean foundMerges = true;
         int iterations = 0;
+        Set<SvCluster> recheckClusters = null;
 
         while(foundMerges)
         {
             foundMerges = false;
 
-            if(mergeOnOverlappingInvDupDels(clusters, true))
+            Set<SvCluster> modifiedClusters = Sets.newIdentityHashSet();
+
+            if(mergeOnOverlappingInvDupDels(clusters, true, recheckClusters, modifiedClusters))
                 foundMerges = true;
 
+            recheckClusters = modifiedClusters;
+
             ++iterations;
 
             if(iterations >= 5)
@@ -601,9 +606,13 @@ public class SimpleClustering
         }
     }
 
-    private boolean mergeOnOverlappingInvDupDels(List<SvCluster> clusters, boolean allowDelDupOverlaps)
+    private boolean mergeOnOverlappingInvDupDels(
+            List<SvCluster> clusters, boolean allowDelDupOverlaps,
+            @Nullable final Set<SvCluster> recheckClusters, final Set<SvCluster> modifiedClusters)
     {
         // merge any clusters with overlapping inversions, long dels or long dups on the same arm
+        // a pair of clusters is only re-tested if either was modified in the previous pass (when recheck clusters are provided)
+        // or in this pass, since the test depends only on each cluster's SVs and LOH events
         List<SvCluster> longDDIClusters = clusters.stream()
                 .filter(x -> !x.getInversions().isEmpty() || !x.getLongDelDups().isEmpty())
                 .filter(x -> !x.hasLinkingLineElements())
@@ -615,7 +624,7 @@ public class SimpleClustering
         LNX_LOGGER.debug("checking long {}} overlaps for {} clusters",
                 !allowDelDupOverlaps ? "DEL_DUP-requiring-INV" : "multiple DDI overlaps", longDDIClusters.size());
 
-        List<SvCluster> mergedClusters = Lists.newArrayList();
+        Set<SvCluster> mergedClusters = Sets.newIdentityHashSet();
 
         int index1 = 0;
         while(index1 < longDDIClusters.size())
@@ -645,6 +654,14 @@ public class SimpleClustering
                     continue;
                 }
 
+                if(recheckClusters != null
+                && !recheckClusters.contains(cluster1) && !recheckClusters.contains(cluster2)
+                && !modifiedClusters.contains(cluster1) && !modifiedClusters.contains(cluster2))
+                {
+                    ++index2;
+                    continue;
+                }
+
                 List<SvVarData> cluster2Svs = Lists.newArrayList(cluster2.getLongDelDups());
                 cluster2Svs.addAll(cluster2.getInversions());
 
@@ -731,6 +748,7 @@ public class SimpleClustering
                     cluster1.mergeOtherCluster(cluster2);
                     cluster1.addClusterReason(mergeReason);
                     mergedClusters.add(cluster2);
+                    modifiedClusters.add(cluster1);
                     break;
                 }
                 else
@@ -748,7 +766,7 @@ public class SimpleClustering
         if(mergedClusters.isEmpty())
             return false;
 
-        mergedClusters.forEach(x -> clusters.remove(x));
+        clusters.removeIf(mergedClusters::contains);
         return true;
     }
 
@@ -901,7 +919,7 @@ public class SimpleClustering
         // if an opposing unclustered breakend is encountered and the major AP in the segment after the unclustered breakend is less than
         // the clustered net breakend JCN, then merge in the unclustered breakend, subtract its ploidy and continue
 
-        List<SvCluster> mergedClusters = Lists.newArrayList();
+        Set<SvCluster> mergedClusters = Sets.newIdentityHashSet();
 
         int clusterIndex = 0;
         while(clusterIndex < clusters.size())
@@ -920,7 +938,7 @@ public class SimpleClustering
             {
                 List<SvBreakend> breakendList = entry.getValue();
 
-                List<SvBreakend> fullBreakendList = mState.getChrBreakendMap().get(entry.getKey());
+                final ChrBreakendIndex breakendIndex = mState.getChrBreakendIndex().get(entry.getKey());
 
                 // walk through this list from each direction
                 for(int i = 0; i <= 1; ++i)
@@ -951,18 +969,18 @@ public class SimpleClustering
                         {
                             chrIndex += traverseUp ? 1 : -1;
 
-                            if(chrIndex < 0 || chrIndex >= fullBreakendList.size())
+                            if(chrIndex < 0 || chrIndex >= breakendIndex.size())
                                 break;
 
-                            SvBreakend nextBreakend = fullBreakendList.get(chrIndex);
-
-                            if(abs(nextBreakend.position() - breakend.position()) > MAX_MERGE_DISTANCE)
+                            if(abs(breakendIndex.position(chrIndex) - breakend.position()) > MAX_MERGE_DISTANCE)
                                 break;
 
+                            SvBreakend nextBreakend = breakendIndex.breakend(chrIndex);
+
                             if(nextBreakend.arm() != breakend.arm())
                                 break;
 
-                            if(nextBreakend.orientation() == breakend.orientation())
+                            if(breakendIndex.orientation(chrIndex) == breakend.orientation())
                                 continue;
 
                             if(skipClusterType(nextBreakend.getCluster()))
@@ -1052,41 +1070,41 @@ public class SimpleClustering
         // has continuous major allele copy number at or above this same threshold
         final List<SvCluster> mergedClusters = Lists.newArrayList();
 
-        for (Map.Entry<String, List<SvBreakend>> entry : mState.getChrBreakendMap().entrySet())
+        for (final ChrBreakendIndex breakendIndex : mState.getChrBreakendIndex().values())
         {
-            final List<SvBreakend> breakendList = entry.getValue();
-
-            for(final SvBreakend breakend : breakendList)
+            for(int i = 0; i < breakendIndex.size(); ++i)
             {
-                if(breakend.orientation() == POS_ORIENT)
+                if(breakendIndex.orientation(i) == POS_ORIENT)
                     continue;
 
-                if(breakend.getCluster().getResolvedType() == LINE)
+                if(breakendIndex.jcn(i) < HIGH_JCN_THRESHOLD)
                     continue;
 
-                if(breakend.jcn() < HIGH_JCN_THRESHOLD)
+                double adjacentMaJcn = breakendIndex.majorAlleleJcn(i, true);
+
+                if(breakendIndex.jcn(i) / max(adjacentMaJcn, 0.01) < ADJACENT_JCN_RATIO)
                     continue;
 
-                double adjacentMaJcn = breakend.majorAlleleJcn(true);
+                final SvBreakend breakend = breakendIndex.breakend(i);
 
-                if(breakend.jcn() / max(adjacentMaJcn, 0.01) < ADJACENT_JCN_RATIO)
+                if(breakend.getCluster().getResolvedType() == LINE)
                     continue;
 
                 // now look for from here through a region of sustained high major allele CN until a facing breakend is reached
-                for(int index = breakend.getChrPosIndex() + 1; index < breakendList.size(); ++index)
+                for(int index = i + 1; index < breakendIndex.size(); ++index)
                 {
-                    final SvBreakend nextBreakend = breakendList.get(index);
-
-                    if(nextBreakend.orientation() == NEG_ORIENT)
+                    if(breakendIndex.orientation(index) == NEG_ORIENT)
                         continue;
 
-                    double nextAdjacentMaJcn = nextBreakend.majorAlleleJcn(false);
+                    double nextAdjacentMaJcn = breakendIndex.majorAlleleJcn(index, false);
 
-                    boolean isHighFacingBreakend = nextBreakend.jcn() >= HIGH_JCN_THRESHOLD &&
-                            nextBreakend.jcn() / max(nextAdjacentMaJcn, 0.01) >= ADJACENT_JCN_RATIO;
+                    boolean isHighFacingBreakend = breakendIndex.jcn(index) >= HIGH_JCN_THRESHOLD &&
+                            breakendIndex.jcn(index) / max(nextAdjacentMaJcn, 0.01) >= ADJACENT_JCN_RATIO;
 
                     if(isHighFacingBreakend)
                     {
+                        final SvBreakend nextBreakend = breakendIndex.breakend(index);
+
                         if(nextBreakend.getCluster() == breakend.getCluster() || nextBreakend.getCluster().getResolvedType() == LINE)
                             continue;
 
@@ -1106,7 +1124,7 @@ public class SimpleClustering
                         mergedClusters.add(otherCluster);
                     }
 
-                    if(nextBreakend.majorAlleleJcn(false) < HIGH_JCN_THRESHOLD)
+                    if(nextAdjacentMaJcn < HIGH_JCN_THRESHOLD)
                         break;
 
                     /*
@@ -1164,7 +1182,7 @@ public class SimpleClustering
                 .filter(x -> !x.hasLinkingLineElements())
                 .collect(Collectors.toList());
 
-        List<SvCluster> mergedClusters = Lists.newArrayList();
+        Set<SvCluster> mergedClusters = Sets.newIdentityHashSet();
 
         for(SvCluster lohCluster : clustersWithLohEvents)
         {
@@ -1196,7 +1214,7 @@ public class SimpleClustering
                         continue;
 
                     // walk towards the LOH from the other end of this DUP to see if it can find a resolving event within the cluster
-                    List<SvBreakend> fullBreakendList = mState.getChrBreakendMap().get(lohBreakend.chromosome());
+                    final ChrBreakendIndex breakendIndex = mState.getChrBreakendIndex().get(lohBreakend.chromosome());
 
                     SvBreakend otherBreakend = lohBreakend.getOtherBreakend();
                     int index = otherBreakend.getChrPosIndex();
@@ -1208,10 +1226,10 @@ public class SimpleClustering
                     {
                         index += traverseUp ? 1 : -1;
 
-                        if(index < 0 || index >= fullBreakendList.size())
+                        if(index < 0 || index >= breakendIndex.size())
                             break;
 
-                        SvBreakend nextBreakend = fullBreakendList.get(index);
+                        SvBreakend nextBreakend = breakendIndex.breakend(index);
 
                         if(nextBreakend == lohBreakend)
                         {
@@ -1233,7 +1251,7 @@ public class SimpleClustering
                             break;
                         }
 
-                        if(nextBreakend.orientation() == otherBreakend.orientation())
+                        if(breakendIndex.orientation(index) == otherBreakend.orientation())
                             continue;
 
                         if(nextBreakend.isAssembledLink())
@@ -1266,7 +1284,7 @@ public class SimpleClustering
         if(mergedClusters.isEmpty())
             return false;
 
-        mergedClusters.forEach(x -> clusters.remove(x));
+        clusters.removeIf(mergedClusters::contains);
         return true;
     }
 
@@ -1311,7 +1329,7 @@ public class SimpleClustering
 
                 for(SvVarData var : cluster1.getSVs())
                 {
-                    if(cluster2.getSVs().contains(var))
+                    if(cluster2.hasVariant(var))
                     {
                         LNX_LOGGER.error("var({}) in 2 clusters({} and {})", var.posId(), cluster1.id(), cluster2.id());
                         return false;
@@ -98,8 +98,8 @@ public class SvUtilities {
                 chrBreakendMap.put(breakend.chromosome(), breakendList);
             }
 
-            // add the variant in order by ascending position
-            int index = 0;
+            // add the variant in order by ascending position, starting from the first breakend at or beyond this position
+            int index = findBreakendPositionIndex(breakendList, position, false);
             for (; index < breakendList.size(); ++index)
             {
                 final SvBreakend otherBreakend = breakendList.get(index);
@@ -153,6 +153,26 @@ public class SvUtilities {
         }
     }
 
+    public static int findBreakendPositionIndex(final List<SvBreakend> breakendList, int position, boolean afterPosition)
+    {
+        // binary search for the first breakend at the position, or beyond it if specified
+        int lower = 0;
+        int upper = breakendList.size();
+
+        while(lower < upper)
+        {
+            int mid = (lower + upper) >>> 1;
+            int midPosition = breakendList.get(mid).position();
+
+            if(midPosition < position || (afterPosition && midPosition == position))
+                lower = mid + 1;
+            else
+                upper = mid;
+        }
+
+        return lower;
+    }
+
     public static String getSvTypesStr(final int[] typeCounts)
     {
         // the following map-based naming convention leads
@@ -25,9 +25,11 @@ import static org.apache.logging.log4j.Level.TRACE;
 
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.hartwig.hmftools.linx.LinxConfig;
 import com.hartwig.hmftools.linx.types.LinkedPair;
 import com.hartwig.hmftools.linx.types.SvBreakend;
@@ -287,6 +289,9 @@ public class ChainFinder
     public final long[] calcRangeData() { return mClusterJcnLimits.calcRangeData(); }
     public final ChainDiagnostics getDiagnostics() { return mDiagnostics; }
 
+    // the number of candidate links tested by the chaining rules for the last cluster
+    public long getRuleEvaluations() { return mRuleSelector.getRuleEvaluations(); }
+
     public void close()
     {
         mDiagnostics.close();
@@ -321,6 +326,12 @@ public class ChainFinder
 
         mDiagnostics.chainingComplete();
 
+        if(mSvList.size() >= 4)
+        {
+            LNX_LOGGER.debug("cluster({}) chaining complete with links({}) ruleEvaluations({})",
+                    mClusterId, mLinkAllocator.getLinkIndex(), mRuleSelector.getRuleEvaluations());
+        }
+
         disableLogVerbose();
 
         if(!isValid())
@@ -846,6 +857,8 @@ public class ChainFinder
         for(int i = 0; i < mChains.size() - 1; ++i)
         {
             final SvChain chain1 = mChains.get(i);
+            final Set<LinkedPair> chain1Pairs = Sets.newIdentityHashSet();
+            chain1Pairs.addAll(chain1.getLinkedPairs());
 
             for(int j = i + 1; j < mChains.size(); ++j)
             {
@@ -853,7 +866,7 @@ public class ChainFinder
 
                 for(final LinkedPair pair : chain2.getLinkedPairs())
                 {
-                    if(chain1.getLinkedPairs().stream().anyMatch(x -> x == pair))
+                    if(chain1Pairs.contains(pair))
                     {
                         LNX_LOGGER.error("cluster({}) chain({}) and chain({}) share pair({})",
                                 mClusterId, chain1.id(), chain2.id(), pair.toString());
@@ -37,11 +37,13 @@ public class ChainLinkAllocator
     private int mClusterId;
 
     private final Map<LinkedPair,LinkSkipType> mSkippedPairs;
+    private final LinkedPairIndex mSkippedPairIndex;
     private int mLinkIndex; // incrementing value for each link added to any chain
     private boolean mIsValid;
     private boolean mPairSkipped; // keep track of any excluded pair or SV without exiting the chaining routine
     private boolean mChainsSplit;
     private final List<LinkedPair> mUniquePairs; // cache of unique pairs added through chaining
+    private final LinkedPairIndex mUniquePairIndex;
     private int mNextChainId;
 
     // chaining state for each SV
@@ -68,7 +70,9 @@ public class ChainLinkAllocator
         mSvConnections = new SvChainConnections();
         mSvCompletedConnections = Lists.newArrayList();
         mUniquePairs = Lists.newArrayList();
+        mUniquePairIndex = new LinkedPairIndex();
         mSkippedPairs = Maps.newHashMap();
+        mSkippedPairIndex = new LinkedPairIndex();
         mIsValid = true;
         mNextChainId = 0;
     }
@@ -102,7 +106,9 @@ public class ChainLinkAllocator
         mNextChainId = 0;
 
         mUniquePairs.clear();
+        mUniquePairIndex.clear();
         mSkippedPairs.clear();
+        mSkippedPairIndex.clear();
         mSvConnections.clear();
         mSvCompletedConnections.clear();
     }
@@ -401,6 +407,7 @@ public class ChainLinkAllocator
             if(mChainsSplit)
             {
                 mSkippedPairs.clear(); // any skipped links can now be re-evaluated
+                mSkippedPairIndex.clear();
             }
             else
             {
@@ -409,7 +416,7 @@ public class ChainLinkAllocator
                         .map(x -> x.getKey())
                         .collect(Collectors.toList());
 
-                pairsToRemove.stream().forEach(x -> mSkippedPairs.remove(x));
+                pairsToRemove.stream().forEach(x -> removeSkippedPair(x));
             }
         }
     }
@@ -896,7 +903,7 @@ public class ChainLinkAllocator
         {
             mJcnLimits.assignLinkJcn(newPair, proposedLink.jcn());
 
-            mSkippedPairs.remove(newPair);
+            removeSkippedPair(newPair);
 
             removeOppositeLinks(newPair);
 
@@ -969,6 +976,7 @@ public class ChainLinkAllocator
             if (!matchesExistingPair(newPair))
             {
                 mUniquePairs.add(newPair);
+                mUniquePairIndex.add(newPair);
             }
         }
 
@@ -1201,18 +1209,12 @@ public class ChainLinkAllocator
 
     public boolean matchesExistingPair(final LinkedPair pair)
     {
-        for(LinkedPair existingPair : mUniquePairs)
-        {
-            if(pair.matches(existingPair))
-                return true;
-        }
-
-        return false;
+        return mUniquePairIndex.hasMatch(pair);
     }
 
     public boolean hasSkippedPairs(final LinkedPair pair)
     {
-        return mSkippedPairs.keySet().stream().anyMatch(x -> x.matches(pair));
+        return mSkippedPairIndex.hasMatch(pair);
     }
 
     public int getSkippedPairCount(final LinkSkipType type)
@@ -1232,6 +1234,13 @@ public class ChainLinkAllocator
 
         mPairSkipped = true;
         mSkippedPairs.put(pair, type);
+        mSkippedPairIndex.add(pair);
+    }
+
+    private void removeSkippedPair(final LinkedPair pair)
+    {
+        if(mSkippedPairs.remove(pair) != null)
+            mSkippedPairIndex.remove(pair);
     }
 
     public void removeSkippedPairs(final List<ProposedLinks> proposedLinks)
@@ -32,13 +32,20 @@ import static com.hartwig.hmftools.linx.chaining.ProposedLinks.PM_NONE;
 import static com.hartwig.hmftools.linx.chaining.ProposedLinks.PM_OVERLAP;
 import static com.hartwig.hmftools.linx.types.LinkedPair.hasLinkClash;
 import static com.hartwig.hmftools.common.utils.sv.StartEndIterator.SE_END;
+import static com.hartwig.hmftools.common.utils.sv.StartEndIterator.SE_PAIR;
 import static com.hartwig.hmftools.common.utils.sv.StartEndIterator.SE_START;
 import static com.hartwig.hmftools.common.utils.sv.StartEndIterator.isStart;
 
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
+import com.google.common.collect.HashMultiset;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multiset;
+import com.google.common.collect.Sets;
 import com.hartwig.hmftools.linx.types.DbPair;
 import com.hartwig.hmftools.linx.types.SvBreakend;
 import com.hartwig.hmftools.linx.types.LinkedPair;
@@ -55,6 +62,8 @@ public class ChainRuleSelector
     private List<FoldbackBreakendPair> mFoldbackBreakendPairs; // a pair of breakends forming a breakend, either chained or single
     private boolean mFoldbacksInitialised;
 
+    private long mRuleEvaluations; // count of candidate links tested against a rule, for the cluster being chained
+
     // references from chain-finder
     private final Map<SvBreakend, List<LinkedPair>> mSvBreakendPossibleLinks;
     private final ChainJcnLimits mJcnLimits;
@@ -87,8 +96,11 @@ public class ChainRuleSelector
         mRulesToApply = Lists.newArrayList();
         mFoldbackBreakendPairs = Lists.newArrayList();
         mFoldbacksInitialised = false;
+        mRuleEvaluations = 0;
     }
 
+    public long getRuleEvaluations() { return mRuleEvaluations; }
+
     public void initialise(int clusterId, boolean clusterHasReplication)
     {
         mHasReplication = clusterHasReplication;
@@ -116,6 +128,7 @@ public class ChainRuleSelector
 
         mFoldbacksInitialised = false;
         mFoldbackBreakendPairs.clear();
+        mRuleEvaluations = 0;
     }
 
     public List<ProposedLinks> findProposedLinks()
@@ -225,8 +238,14 @@ public class ChainRuleSelector
             }
         }
 
+        // the first link of each proposed link, to skip the duplicate link stored against the other breakend
+        final Multiset<LinkedPair> proposedFirstLinks = HashMultiset.create();
+        proposedLinks.forEach(x -> proposedFirstLinks.add(x.Links.get(0)));
+
         for(Map.Entry<SvBreakend, List<LinkedPair>> entry : mSvBreakendPossibleLinks.entrySet())
         {
+            ++mRuleEvaluations;
+
             if(entry.getValue().isEmpty())
             {
                 LNX_LOGGER.warn("breakend({}) has no possibles left, should be purged", entry.getKey().toString());
@@ -266,7 +285,7 @@ public class ChainRuleSelector
                 continue;
 
             // skip the duplicate link stored against the other breakend
-            if(proposedLinks.stream().map(x -> x.Links.get(0)).anyMatch(y -> y == newPair))
+            if(proposedFirstLinks.contains(newPair))
                 continue;
 
             double jcnFirst = mLinkAllocator.getUnlinkedBreakendCount(newPair.firstBreakend(), true);
@@ -303,6 +322,7 @@ public class ChainRuleSelector
                         }
 
                         proposedLinks.remove(otherLink);
+                        proposedFirstLinks.remove(otherPair);
                     }
 
                     // keep both for now and let downstream rules decide
@@ -317,12 +337,15 @@ public class ChainRuleSelector
                     }
 
                     proposedLinks.remove(otherLink);
-
+                    proposedFirstLinks.remove(otherPair);
                 }
             }
 
             if(addNew)
+            {
                 proposedLinks.add(proposedLink);
+                proposedFirstLinks.add(newPair);
+            }
         }
 
         return proposedLinks;
@@ -544,15 +567,19 @@ public class ChainRuleSelector
 
             cullDualOptionPairs(foldbackStart, pairsOnFbStart);
 
+            // index the foldback end's pairs by their other breakend, taking the first where there are several
+            final Map<SvBreakend,LinkedPair> fbEndOtherBreakendPairs = Maps.newHashMap();
+            pairsOnFbEnd.forEach(x -> fbEndOtherBreakendPairs.putIfAbsent(x.getOtherBreakend(foldbackEnd), x));
+
             for (LinkedPair pairStart : pairsOnFbStart)
             {
+                ++mRuleEvaluations;
+
                 SvVarData nonFbVar = pairStart.getOtherSV(foldback);
                 SvBreakend otherBreakend = pairStart.getOtherBreakend(foldbackStart);
 
                 // find the other pairing - would expect this to exist
-                LinkedPair pairEnd = pairsOnFbEnd.stream()
-                        .filter(x -> x.getOtherBreakend(foldbackEnd) == otherBreakend)
-                        .findFirst().orElse(null);
+                LinkedPair pairEnd = fbEndOtherBreakendPairs.get(otherBreakend);
 
                 if (pairEnd == null)
                     continue;
@@ -880,7 +907,7 @@ public class ChainRuleSelector
                 return proposedLinks;
         }
 
-        List<LinkedPair> addedLinks = Lists.newArrayList();
+        Set<LinkedPair> addedLinks = Sets.newIdentityHashSet();
 
         for(ChainState svConn : mSvConnectionsMap.values())
         {
@@ -908,6 +935,8 @@ public class ChainRuleSelector
 
                 for(final LinkedPair pair : svLinks)
                 {
+                    ++mRuleEvaluations;
+
                     if(mLinkAllocator.hasSkippedPairs(pair))
                         continue;
 
@@ -988,11 +1017,10 @@ public class ChainRuleSelector
 
         List<ProposedLinks> newProposedLinks = Lists.newArrayList();
 
-        while(!mAdjacentMatchingPairs.isEmpty())
+        // all adjacent matching pairs are consumed by this search
+        for(final LinkedPair nextPair : mAdjacentMatchingPairs)
         {
-            LinkedPair nextPair = mAdjacentMatchingPairs.get(0);
-
-            mAdjacentMatchingPairs.remove(0);
+            ++mRuleEvaluations;
 
             if(mLinkAllocator.matchesExistingPair(nextPair))
                 continue;
@@ -1014,6 +1042,8 @@ public class ChainRuleSelector
             newProposedLinks.add(proposedLink);
         }
 
+        mAdjacentMatchingPairs.clear();
+
         return restrictProposedLinks(proposedLinks, newProposedLinks, ADJACENT);
     }
 
@@ -1037,11 +1067,9 @@ public class ChainRuleSelector
 
         List<ProposedLinks> newProposedLinks = Lists.newArrayList();
 
-        while(!mAdjacentPairs.isEmpty())
+        for(final LinkedPair nextPair : mAdjacentPairs)
         {
-            LinkedPair nextPair = mAdjacentPairs.get(0);
-
-            mAdjacentPairs.remove(0);
+            ++mRuleEvaluations;
 
             if(mLinkAllocator.matchesExistingPair(nextPair))
                 continue;
@@ -1057,6 +1085,8 @@ public class ChainRuleSelector
             newProposedLinks.add(proposedLink);
         }
 
+        mAdjacentPairs.clear();
+
         checkClusterJcnSupport(newProposedLinks);
 
         // if a new link has ploidy support it will top anything found already (see earlier exit condition for proposed links)
@@ -1086,7 +1116,7 @@ public class ChainRuleSelector
         }
 
         double currentMaxPloidy = 0;
-        List<LinkedPair> addedLinks = Lists.newArrayList();
+        Set<LinkedPair> addedLinks = Sets.newIdentityHashSet();
 
         for(ChainState svConn : mSvConnectionsMap.values())
         {
@@ -1117,6 +1147,8 @@ public class ChainRuleSelector
 
                 for(final LinkedPair pair : svLinks)
                 {
+                    ++mRuleEvaluations;
+
                     if(addedLinks.contains(pair))
                         continue;
 
@@ -1188,6 +1220,8 @@ public class ChainRuleSelector
 
                     for (final LinkedPair pair : svLinks)
                     {
+                        ++mRuleEvaluations;
+
                         if (mLinkAllocator.hasSkippedPairs(pair))
                             continue;
 
@@ -1206,53 +1240,56 @@ public class ChainRuleSelector
             }
         }
 
+        // for proposed links with any breakend clash, just keep the shortest, with the first-added taking precedence for equal
+        // distances - the retained links never clash with each other, so each breakend is held by at most one of them
         List<ProposedLinks> shortestLinks = Lists.newArrayList();
+        Set<ProposedLinks> culledLinks = Sets.newIdentityHashSet();
+        Map<SvVarData,ProposedLinks[]> breakendShortestLinks = Maps.newHashMap();
 
         for(final ProposedLinks proposedLink : proposedLinks)
         {
-            int index = 0;
+            ++mRuleEvaluations;
+
+            List<ProposedLinks> clashingLinks = Lists.newArrayList();
             boolean addNew = true;
-            while(index < shortestLinks.size())
-            {
-                final ProposedLinks otherLink = shortestLinks.get(index);
 
-                // for proposed links with any breakend clash, just keep the shortest
-                if(hasLinkClash(proposedLink.Links, otherLink.Links))
+            for(final LinkedPair pair : proposedLink.Links)
+            {
+                for(int se = SE_START; se <= SE_END && addNew; ++se)
                 {
+                    final SvBreakend breakend = se == SE_START ? pair.firstBreakend() : pair.secondBreakend();
+                    final ProposedLinks[] svLinks = breakendShortestLinks.get(breakend.getSV());
+                    final ProposedLinks otherLink = svLinks != null ? svLinks[breakendIndex(breakend)] : null;
+
+                    if(otherLink == null || clashingLinks.contains(otherLink))
+                        continue;
+
                     if(proposedLink.shortestLinkDistance() < otherLink.shortestLinkDistance())
-                    {
-                        shortestLinks.remove(index);
-                    }
+                        clashingLinks.add(otherLink);
                     else
-                    {
                         addNew = false;
-                        break;
-                    }
-                }
-                else
-                {
-                    ++index;
                 }
             }
 
             if(!addNew)
                 continue;
 
-            // insert by shortest distance first
-            index = 0;
-            while(index < shortestLinks.size())
+            for(final ProposedLinks otherLink : clashingLinks)
             {
-                if(proposedLink.shortestLinkDistance() < shortestLinks.get(index).shortestLinkDistance())
-                    break;
-
-                ++index;
+                culledLinks.add(otherLink);
+                setBreakendLinks(breakendShortestLinks, otherLink, null);
             }
 
-            LNX_LOGGER.trace("adding shortest proposed link: {} index({})", proposedLink.toString(), index);
+            LNX_LOGGER.trace("adding shortest proposed link: {}", proposedLink.toString());
 
-            shortestLinks.add(index, proposedLink);
+            setBreakendLinks(breakendShortestLinks, proposedLink, proposedLink);
+            shortestLinks.add(proposedLink);
         }
 
+        // order by shortest distance, retaining the order links were added for equal distances
+        shortestLinks.removeIf(culledLinks::contains);
+        shortestLinks.sort(Comparator.comparingInt(ProposedLinks::shortestLinkDistance));
+
         if(shortestLinks.size() > 1)
         {
             LNX_LOGGER.trace("found {} shortest non-clashing proposed links", shortestLinks.size());
@@ -1261,6 +1298,29 @@ public class ChainRuleSelector
         return shortestLinks;
     }
 
+    private static int breakendIndex(final SvBreakend breakend) { return breakend.usesStart() ? SE_START : SE_END; }
+
+    private static void setBreakendLinks(
+            final Map<SvVarData,ProposedLinks[]> breakendLinks, final ProposedLinks proposedLink, final ProposedLinks value)
+    {
+        for(final LinkedPair pair : proposedLink.Links)
+        {
+            for(int se = SE_START; se <= SE_END; ++se)
+            {
+                final SvBreakend breakend = se == SE_START ? pair.firstBreakend() : pair.secondBreakend();
+                ProposedLinks[] svLinks = breakendLinks.get(breakend.getSV());
+
+                if(svLinks == null)
+                {
+                    svLinks = new ProposedLinks[SE_PAIR];
+                    breakendLinks.put(breakend.getSV(), svLinks);
+                }
+
+                svLinks[breakendIndex(breakend)] = value;
+            }
+        }
+    }
+
     private boolean anyLinksHaveJcnSupport(final List<ProposedLinks> proposedLinks)
     {
         return proposedLinks.stream().anyMatch(x -> x.hasRule(CA_JCN_SUPPORT));
@@ -0,0 +1,77 @@
+package com.hartwig.hmftools.linx.chaining;
+
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.hartwig.hmftools.linx.types.LinkedPair;
+import com.hartwig.hmftools.linx.types.SvBreakend;
+
+// indexes pairs by their first breakend, so that a pair matching another on the same 2 breakends (in either order) is found
+// without scanning the whole collection
+public class LinkedPairIndex
+{
+    private final Map<SvBreakend,List<LinkedPair>> mBreakendPairs;
+
+    public LinkedPairIndex()
+    {
+        mBreakendPairs = Maps.newHashMap();
+    }
+
+    public void add(final LinkedPair pair)
+    {
+        List<LinkedPair> pairs = mBreakendPairs.get(pair.firstBreakend());
+
+        if(pairs == null)
+        {
+            pairs = Lists.newArrayListWithCapacity(2);
+            mBreakendPairs.put(pair.firstBreakend(), pairs);
+        }
+
+        pairs.add(pair);
+    }
+
+    public void remove(final LinkedPair pair)
+    {
+        List<LinkedPair> pairs = mBreakendPairs.get(pair.firstBreakend());
+
+        if(pairs == null)
+            return;
+
+        for(int i = 0; i < pairs.size(); ++i)
+        {
+            if(pairs.get(i) == pair)
+            {
+                pairs.remove(i);
+                break;
+            }
+        }
+
+        if(pairs.isEmpty())
+            mBreakendPairs.remove(pair.firstBreakend());
+    }
+
+    public boolean hasMatch(final LinkedPair pair)
+    {
+        return hasMatch(pair, pair.firstBreakend()) || hasMatch(pair, pair.secondBreakend());
+    }
+
+    private boolean hasMatch(final LinkedPair pair, final SvBreakend breakend)
+    {
+        final List<LinkedPair> pairs = mBreakendPairs.get(breakend);
+
+        if(pairs == null)
+            return false;
+
+        for(final LinkedPair otherPair : pairs)
+        {
+            if(otherPair.matches(pair))
+                return true;
+        }
+
+        return false;
+    }
+
+    public void clear() { mBreakendPairs.clear(); }
+}
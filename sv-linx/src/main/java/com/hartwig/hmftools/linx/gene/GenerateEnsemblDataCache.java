@@ -14,6 +14,7 @@ import java.util.Map;
 
 import com.google.common.collect.Lists;
 import com.hartwig.hmftools.common.ensemblcache.EnsemblDataCache;
+import com.hartwig.hmftools.common.ensemblcache.EnsemblDataSnapshot;
 import com.hartwig.hmftools.common.ensemblcache.EnsemblGeneData;
 import com.hartwig.hmftools.common.ensemblcache.ExonData;
 import com.hartwig.hmftools.common.ensemblcache.TranscriptData;
@@ -31,6 +32,7 @@ public class GenerateEnsemblDataCache
 {
     private static final String LOG_DEBUG = "log_debug";
     private static final String OUTPUT_DIR = "output_dir";
+    private static final String SNAPSHOT_ONLY = "snapshot_only";
 
     public static void main(@NotNull final String[] args) throws ParseException
     {
@@ -42,7 +44,10 @@ public class GenerateEnsemblDataCache
             Configurator.setRootLevel(Level.DEBUG);
         }
 
-        writeEnsemblDataFiles(cmd);
+        if(cmd.hasOption(SNAPSHOT_ONLY))
+            writeSnapshot(cmd.getOptionValue(OUTPUT_DIR));
+        else
+            writeEnsemblDataFiles(cmd);
     }
 
     public static void writeEnsemblDataFiles(final CommandLine cmd)
@@ -65,14 +70,28 @@ public class GenerateEnsemblDataCache
 
         // create the transcript splice acceptor position data
         EnsemblDataCache geneTransCache = new EnsemblDataCache(outputDir, ensemblDAO.refGenomeVersion());
+        geneTransCache.setUseSnapshot(false);
         geneTransCache.load(false);
 
         createTranscriptPreGenePositionData(
                 geneTransCache.getChrGeneDataMap(), geneTransCache.getTranscriptDataMap(), PRE_GENE_PROMOTOR_DISTANCE, outputDir);
 
+        writeSnapshot(outputDir);
+
         LNX_LOGGER.info("Ensembl data cache complete");
     }
 
+    private static void writeSnapshot(final String outputDir)
+    {
+        // the binary snapshot is written from the complete set of CSV files, so must follow the splice acceptor data
+        final String dataPath = outputDir.endsWith(File.separator) ? outputDir : outputDir + File.separator;
+
+        LNX_LOGGER.info("writing Ensembl data snapshot to {}", dataPath);
+
+        if(!EnsemblDataSnapshot.writeSnapshot(dataPath))
+            LNX_LOGGER.error("failed to write Ensembl data snapshot");
+    }
+
     private static void createTranscriptPreGenePositionData(
             final Map<String, List<EnsemblGeneData>> chrGeneDataMap, final Map<String, List<TranscriptData>> transcriptDataMap,
             long preGenePromotorDistance, final String outputDir)
@@ -202,6 +221,7 @@ public class GenerateEnsemblDataCache
     {
         final Options options = new Options();
         options.addOption(OUTPUT_DIR, true, "Directory to write Ensembl data files");
+        options.addOption(SNAPSHOT_ONLY, false, "Only write the binary snapshot from existing Ensembl data files");
         options.addOption(LOG_DEBUG, false, "Log in verbose mode");
         EnsemblDAO.addCmdLineArgs(options);
 
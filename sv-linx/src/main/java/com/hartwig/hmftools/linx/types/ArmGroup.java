@@ -1,5 +1,6 @@
 package com.hartwig.hmftools.linx.types;
 
+import static com.hartwig.hmftools.linx.analysis.SvUtilities.findBreakendPositionIndex;
 import static com.hartwig.hmftools.linx.analysis.SvUtilities.makeChrArmStr;
 import static com.hartwig.hmftools.common.utils.sv.StartEndIterator.SE_END;
 import static com.hartwig.hmftools.common.utils.sv.StartEndIterator.SE_START;
@@ -64,17 +65,7 @@ public class ArmGroup
             if(!breakend.chromosome().equals(mChromosome) || !breakend.arm().equals(mArm))
                 continue;
 
-            int index = 0;
-            while(index < mBreakends.size())
-            {
-                final SvBreakend otherBreakend = mBreakends.get(index);
-
-                if(breakend.position() < otherBreakend.position())
-                    break;
-
-                ++index;
-            }
-
+            int index = findBreakendPositionIndex(mBreakends, breakend.position(), true);
             mBreakends.add(index, breakend);
         }
 
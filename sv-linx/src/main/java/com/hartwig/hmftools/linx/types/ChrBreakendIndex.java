@@ -0,0 +1,94 @@
+package com.hartwig.hmftools.linx.types;
+
+import java.util.List;
+
+// a columnar copy of a chromosome's position-ordered breakends, so that neighbour and range scans can test positions,
+// orientations and copy number without dereferencing each breakend and its SV
+public class ChrBreakendIndex
+{
+    public final String Chromosome;
+
+    private final List<SvBreakend> mBreakends;
+    private final int[] mPositions;
+    private final byte[] mOrientations;
+    private final double[] mJcns;
+    private final double[] mCopyNumbers;
+    private final double[] mPrevMajorAlleleJcns; // major allele JCN of the segment before the breakend
+    private final double[] mPostMajorAlleleJcns; // and after it
+
+    public ChrBreakendIndex(final String chromosome, final List<SvBreakend> breakendList)
+    {
+        Chromosome = chromosome;
+        mBreakends = breakendList;
+
+        int count = breakendList.size();
+        mPositions = new int[count];
+        mOrientations = new byte[count];
+        mJcns = new double[count];
+        mCopyNumbers = new double[count];
+        mPrevMajorAlleleJcns = new double[count];
+        mPostMajorAlleleJcns = new double[count];
+
+        for(int i = 0; i < count; ++i)
+        {
+            final SvBreakend breakend = breakendList.get(i);
+            mPositions[i] = breakend.position();
+            mOrientations[i] = breakend.orientation();
+            mJcns[i] = breakend.jcn();
+            mCopyNumbers[i] = breakend.copyNumber();
+            mPrevMajorAlleleJcns[i] = breakend.majorAlleleJcn(true);
+            mPostMajorAlleleJcns[i] = breakend.majorAlleleJcn(false);
+        }
+    }
+
+    public int size() { return mPositions.length; }
+
+    public final SvBreakend breakend(int index) { return mBreakends.get(index); }
+    public int position(int index) { return mPositions[index]; }
+    public byte orientation(int index) { return mOrientations[index]; }
+    public double jcn(int index) { return mJcns[index]; }
+    public double copyNumber(int index) { return mCopyNumbers[index]; }
+    public double majorAlleleJcn(int index, boolean usePrevious) { return usePrevious ? mPrevMajorAlleleJcns[index] : mPostMajorAlleleJcns[index]; }
+
+    // index of the first breakend at or after the position, or size() if there is none
+    public int firstIndexFrom(int position)
+    {
+        int low = 0;
+        int high = mPositions.length;
+
+        while(low < high)
+        {
+            int mid = (low + high) >>> 1;
+
+            if(mPositions[mid] < position)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+
+        return low;
+    }
+
+    // index of the last breakend at or before the position, or -1 if there is none
+    public int lastIndexTo(int position)
+    {
+        return firstIndexFrom(position + 1) - 1;
+    }
+
+    // number of breakends with positions in the inclusive range
+    public int countInRange(int posStart, int posEnd)
+    {
+        if(posEnd < posStart)
+            return 0;
+
+        return firstIndexFrom(posEnd + 1) - firstIndexFrom(posStart);
+    }
+
+    public final List<SvBreakend> breakendsInRange(int posStart, int posEnd)
+    {
+        if(posEnd < posStart)
+            return mBreakends.subList(0, 0);
+
+        return mBreakends.subList(firstIndexFrom(posStart), firstIndexFrom(posEnd + 1));
+    }
+}
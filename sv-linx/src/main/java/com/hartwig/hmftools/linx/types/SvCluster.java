@@ -3,6 +3,7 @@ package com.hartwig.hmftools.linx.types;
 import static java.lang.Math.ceil;
 import static java.lang.Math.floor;
 import static java.lang.Math.max;
+import static java.lang.Math.min;
 import static java.lang.Math.round;
 
 import static com.hartwig.hmftools.common.utils.Strings.appendStr;
@@ -19,7 +20,9 @@ import static com.hartwig.hmftools.linx.LinxOutput.SUBSET_SPLIT;
 import static com.hartwig.hmftools.linx.analysis.ClusterClassification.isSimpleSingleSV;
 import static com.hartwig.hmftools.linx.analysis.SvUtilities.addSvToChrBreakendMap;
 import static com.hartwig.hmftools.linx.analysis.SvUtilities.calcConsistency;
+import static com.hartwig.hmftools.linx.analysis.SvUtilities.findBreakendPositionIndex;
 import static com.hartwig.hmftools.linx.analysis.SvUtilities.getSvTypesStr;
+import static com.hartwig.hmftools.linx.analysis.SvUtilities.makeChrArmStr;
 import static com.hartwig.hmftools.linx.chaining.ChainMetrics.extractChainMetrics;
 import static com.hartwig.hmftools.linx.types.LinxConstants.SHORT_TI_LENGTH;
 import static com.hartwig.hmftools.linx.types.ResolvedType.LINE;
@@ -27,10 +30,12 @@ import static com.hartwig.hmftools.linx.types.ResolvedType.NONE;
 
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.hartwig.hmftools.common.variant.structural.StructuralVariantType;
 import com.hartwig.hmftools.linx.analysis.ClusterClassification;
 import com.hartwig.hmftools.linx.analysis.ClusterMetrics;
@@ -54,12 +59,15 @@ public class SvCluster
     private final List<String> mAnnotationList;
 
     private final List<SvVarData> mSVs;
+    private final Set<SvVarData> mSvSet; // identity-based membership to avoid scanning the SV list on each add
     private final List<SvChain> mChains; // pairs of SVs linked into chains
     private final List<LinkedPair> mLinkedPairs; // final set after chaining and linking
     private final List<LinkedPair> mAssemblyLinkedPairs; // TIs found during assembly
     private final List<ArmGroup> mArmGroups; // organise SVs into a group per chromosomal arm
+    private final Map<String, ArmGroup> mArmGroupMap; // keyed by chromosome-arm ID for lookups
     private final List<ArmCluster> mArmClusters; // clusters of proximate SVs on an arm, currently only used for annotations
     private final Map<String, List<SvBreakend>> mChrBreakendMap; // note: does not contain replicated SVs
+    private final Map<String, Integer> mBreakendIndexResetStart; // lowest breakend index per chromosome changed since the last recalc
     private final List<SvVarData> mUnchainedSVs; // includes replicated SVs
     private final List<LohEvent> mLohEvents;
     private String mClusteringReasons;
@@ -93,7 +101,9 @@ public class SvCluster
     {
         mId = clusterId;
         mSVs = Lists.newArrayList();
+        mSvSet = Sets.newIdentityHashSet();
         mArmGroups = Lists.newArrayList();
+        mArmGroupMap = Maps.newHashMap();
         mArmClusters = Lists.newArrayList();
         mTypeCounts = new int[StructuralVariantType.values().length];
 
@@ -106,6 +116,7 @@ public class SvCluster
         mRequiresRecalc = true;
         mAnnotationList = Lists.newArrayList();
         mChrBreakendMap = Maps.newHashMap();
+        mBreakendIndexResetStart = Maps.newHashMap();
 
         // chain data
         mLinkedPairs = Lists.newArrayList();
@@ -140,10 +151,11 @@ public class SvCluster
 
     public final List<SvVarData> getSVs() { return mSVs; }
     public final SvVarData getSV(int index) { return index < mSVs.size() ? mSVs.get(index) : null; }
+    public boolean hasVariant(final SvVarData var) { return mSvSet.contains(var); }
 
     public void addVariant(final SvVarData var)
     {
-        if(mSVs.contains(var))
+        if(!mSvSet.add(var))
         {
             LNX_LOGGER.error("cluster({}) attempting to add SV({}) again", mId, var.id());
             return;
@@ -171,8 +183,20 @@ public class SvCluster
         if (var.type() == BND || var.isCrossArm())
             mRecalcRemoteSVStatus = true;
 
+        mConsistencyCount += calcConsistency(var);
+
         addSvToChrBreakendMap(var, mChrBreakendMap);
 
+        for (int be = SE_START; be <= SE_END; ++be)
+        {
+            if (be == SE_END && var.isSglBreakend())
+                continue;
+
+            final SvBreakend breakend = var.getBreakend(be);
+            final List<SvBreakend> breakendList = mChrBreakendMap.get(breakend.chromosome());
+            markBreakendIndexReset(breakend.chromosome(), findBreakendPositionIndex(breakendList, breakend.position(), false));
+        }
+
         // keep track of all SVs in their respective chromosomal arms
         for (int be = SE_START; be <= SE_END; ++be)
         {
@@ -184,28 +208,24 @@ public class SvCluster
 
             boolean useStart = isStart(be);
 
-            boolean groupFound = false;
-            for (ArmGroup armGroup : mArmGroups)
-            {
-                if (armGroup.chromosome().equals(var.chromosome(useStart)) && armGroup.arm().equals(var.arm(useStart)))
-                {
-                    armGroup.addVariant(var);
-                    groupFound = true;
-                    break;
-                }
-            }
+            ArmGroup armGroup = mArmGroupMap.get(makeChrArmStr(var.chromosome(useStart), var.arm(useStart)));
 
-            if (!groupFound)
+            if (armGroup == null)
             {
-                ArmGroup armGroup = new ArmGroup(var.chromosome(useStart), var.arm(useStart));
-                armGroup.addVariant(var);
+                armGroup = new ArmGroup(var.chromosome(useStart), var.arm(useStart));
                 mArmGroups.add(armGroup);
+                mArmGroupMap.put(armGroup.id(), armGroup);
             }
+
+            armGroup.addVariant(var);
         }
     }
 
     public void removeVariant(final SvVarData var)
     {
+        if(!mSvSet.remove(var))
+            return;
+
         mSVs.remove(var);
         mRequiresRecalc = true;
 
@@ -217,6 +237,8 @@ public class SvCluster
 
         --mTypeCounts[typeAsInt(var.type())];
 
+        mConsistencyCount -= calcConsistency(var);
+
         for (int be = SE_START; be <= SE_END; ++be)
         {
             SvBreakend breakend = var.getBreakend(be);
@@ -224,21 +246,31 @@ public class SvCluster
             if(breakend == null)
                 continue;
 
-            for (ArmGroup armGroup : mArmGroups)
+            ArmGroup armGroup = mArmGroupMap.get(makeChrArmStr(breakend.chromosome(), breakend.arm()));
+
+            if(armGroup != null)
             {
-                if (armGroup.chromosome().equals(breakend.chromosome()) && armGroup.arm().equals(breakend.arm()))
-                {
-                    armGroup.getBreakends().remove(breakend);
-                    armGroup.getSVs().remove(var);
-                    break;
-                }
+                armGroup.getBreakends().remove(breakend);
+                armGroup.getSVs().remove(var);
             }
 
             final List<SvBreakend> breakendList = mChrBreakendMap.get(breakend.chromosome());
-            breakendList.remove(breakend);
+            int index = breakendList.indexOf(breakend);
+
+            if(index >= 0)
+            {
+                breakendList.remove(index);
+                markBreakendIndexReset(breakend.chromosome(), index);
+            }
         }
     }
 
+    private void markBreakendIndexReset(final String chromosome, int index)
+    {
+        Integer startIndex = mBreakendIndexResetStart.get(chromosome);
+        mBreakendIndexResetStart.put(chromosome, startIndex != null ? min(startIndex, index) : index);
+    }
+
     public List<ArmGroup> getArmGroups() { return mArmGroups; }
     public Map<String, List<SvBreakend>> getChrBreakendMap() { return mChrBreakendMap; }
 
@@ -429,8 +461,7 @@ public class SvCluster
         if(!mRequiresRecalc)
             return;
 
-        mConsistencyCount = calcConsistency(mSVs);
-
+        // the consistency count is maintained as SVs are added and removed
         mIsConsistent = (mConsistencyCount == 0);
 
         mDesc = getClusterTypesAsString();
@@ -733,16 +764,19 @@ public class SvCluster
 
     private void resetBreakendMapIndices()
     {
-        for (Map.Entry<String, List<SvBreakend>> entry : mChrBreakendMap.entrySet())
+        // only breakends from the lowest changed index onwards have shifted position since the last recalc
+        for (Map.Entry<String, Integer> entry : mBreakendIndexResetStart.entrySet())
         {
-            List<SvBreakend> breakendList = entry.getValue();
+            List<SvBreakend> breakendList = mChrBreakendMap.get(entry.getKey());
 
-            for (int i = 0; i < breakendList.size(); ++i)
+            for (int i = entry.getValue(); i < breakendList.size(); ++i)
             {
                 final SvBreakend breakend = breakendList.get(i);
                 breakend.setClusterChrPosIndex(i);
             }
         }
+
+        mBreakendIndexResetStart.clear();
     }
 
     public void cacheLinkedPairs()
@@ -33,7 +33,8 @@ public class FoldbackTest
 
         tester.addClusterAndSVs(cluster);
         tester.preClusteringInit();
-        FoldbackFinder.markFoldbacks(tester.Analyser.getState().getChrBreakendMap());
+        tester.Analyser.getState().buildBreakendIndex();
+        FoldbackFinder.markFoldbacks(tester.Analyser.getState().getChrBreakendIndex());
 
         assertEquals(var1.getFoldbackId(true), var1.id());
         assertEquals(var1.getFoldbackId(false), var1.id());
@@ -50,7 +51,8 @@ public class FoldbackTest
 
         tester.addClusterAndSVs(cluster);
         tester.preClusteringInit();
-        FoldbackFinder.markFoldbacks(tester.Analyser.getState().getChrBreakendMap());
+        tester.Analyser.getState().buildBreakendIndex();
+        FoldbackFinder.markFoldbacks(tester.Analyser.getState().getChrBreakendIndex());
 
         assertEquals(var1.getFoldbackId(true), var1.id());
         assertEquals(var1.getFoldbackId(false), var1.id());
@@ -69,7 +71,8 @@ public class FoldbackTest
 
         tester.addClusterAndSVs(cluster);
         tester.preClusteringInit();
-        FoldbackFinder.markFoldbacks(tester.Analyser.getState().getChrBreakendMap());
+        tester.Analyser.getState().buildBreakendIndex();
+        FoldbackFinder.markFoldbacks(tester.Analyser.getState().getChrBreakendIndex());
 
         assertEquals(var2.getFoldbackId(true), var2.id());
         assertEquals(var2.getFoldbackId(false), var2.id());
@@ -94,7 +97,8 @@ public class FoldbackTest
         assertTrue(dbPair.hasBreakend(var2, false));
         assertTrue(dbPair.hasBreakend(del, true));
 
-        FoldbackFinder.markFoldbacks(tester.Analyser.getState().getChrBreakendMap());
+        tester.Analyser.getState().buildBreakendIndex();
+        FoldbackFinder.markFoldbacks(tester.Analyser.getState().getChrBreakendIndex());
 
         assertEquals(var2.getFoldbackBreakend(true), null);
         assertEquals(var2.getFoldbackBreakend(false), null);
@@ -126,7 +130,8 @@ public class FoldbackTest
         assertTrue(dbPair.hasBreakend(var3, false));
         assertTrue(dbPair.hasBreakend(sgl2, true));
 
-        FoldbackFinder.markFoldbacks(tester.Analyser.getState().getChrBreakendMap());
+        tester.Analyser.getState().buildBreakendIndex();
+        FoldbackFinder.markFoldbacks(tester.Analyser.getState().getChrBreakendIndex());
 
         assertEquals(null, var3.getFoldbackBreakend(true));
         assertEquals(null, var3.getFoldbackBreakend(false));
@@ -375,4 +375,38 @@ public class ChainRoutinesTest
         assertEquals(var5.getBreakend(false), chain.getOpenBreakend(false));
 
     }
+
+    @Test
+    public void testLinkedPairIndex()
+    {
+        final SvVarData var1 = createDel(1, "1", 1100, 1200);
+        final SvVarData var2 = createDel(2, "1", 1300, 1400);
+        final SvVarData var3 = createDel(3, "1", 1500, 1600);
+
+        LinkedPair lp1 = LinkedPair.from(var1, var2, false, true);
+        LinkedPair lp2 = LinkedPair.from(var2, var3, false, true);
+
+        LinkedPairIndex index = new LinkedPairIndex();
+        index.add(lp1);
+
+        // matches regardless of breakend order or pair instance
+        assertTrue(index.hasMatch(lp1));
+        assertTrue(index.hasMatch(LinkedPair.from(var2, var1, true, false)));
+        assertFalse(index.hasMatch(lp2));
+        assertFalse(index.hasMatch(LinkedPair.from(var1, var2, true, true)));
+
+        index.add(lp2);
+        assertTrue(index.hasMatch(lp2));
+
+        // removal is by instance
+        index.remove(LinkedPair.from(var1, var2, false, true));
+        assertTrue(index.hasMatch(lp1));
+
+        index.remove(lp1);
+        assertFalse(index.hasMatch(lp1));
+        assertTrue(index.hasMatch(lp2));
+
+        index.clear();
+        assertFalse(index.hasMatch(lp2));
+    }
 }
@@ -26,6 +26,7 @@ import com.google.common.collect.Lists;
 import com.hartwig.hmftools.linx.cn.HomLossEvent;
 import com.hartwig.hmftools.linx.cn.LohEvent;
 import com.hartwig.hmftools.linx.types.ResolvedType;
+import com.hartwig.hmftools.linx.types.SvBreakend;
 import com.hartwig.hmftools.linx.types.SvCluster;
 import com.hartwig.hmftools.linx.types.SvVarData;
 import com.hartwig.hmftools.linx.utils.LinxTester;
@@ -453,5 +454,44 @@ public class SimpleMergeRuleTest
         assertTrue(cluster.hasClusterReason(HOM_LOSS));
     }
 
+    @Test
+    public void testClusterMergeMembership()
+    {
+        SvVarData var1 = createDel(1, "1", 1000, 5000);
+        SvVarData var2 = createDup(2, "1", 2000, 3000);
+        SvVarData var3 = createInv(3, "1", 2000, 6000, 1);
+        SvVarData var4 = createBnd(4, "1", 4000, -1, "2", 1000, 1);
+
+        SvCluster cluster1 = new SvCluster(0);
+        cluster1.addVariant(var1);
+        cluster1.addVariant(var2);
+
+        SvCluster cluster2 = new SvCluster(1);
+        cluster2.addVariant(var3);
+        cluster2.addVariant(var4);
+
+        cluster1.mergeOtherCluster(cluster2);
+
+        assertEquals(4, cluster1.getSvCount());
+        assertTrue(cluster1.hasVariant(var3));
+        assertEquals(cluster1, var4.getCluster());
 
+        // adding an SV again is ignored
+        cluster1.addVariant(var1);
+        assertEquals(4, cluster1.getSvCount());
+
+        // breakends remain ordered by position, with ties kept in order of addition
+        List<SvBreakend> breakends = cluster1.getChrBreakendMap().get("1");
+        assertEquals(7, breakends.size());
+
+        for(int i = 1; i < breakends.size(); ++i)
+        {
+            assertTrue(breakends.get(i - 1).position() <= breakends.get(i).position());
+        }
+
+        assertEquals(var2, breakends.get(1).getSV());
+        assertEquals(var3, breakends.get(2).getSV());
+
+        assertEquals(2, cluster1.getArmCount());
+    }
 }
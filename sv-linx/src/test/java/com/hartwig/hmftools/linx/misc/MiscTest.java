@@ -21,6 +21,7 @@ import java.util.List;
 
 import com.hartwig.hmftools.common.genome.refgenome.RefGenomeVersion;
 import com.hartwig.hmftools.linx.analysis.SvUtilities;
+import com.hartwig.hmftools.linx.types.ChrBreakendIndex;
 import com.hartwig.hmftools.linx.types.SvBreakend;
 import com.hartwig.hmftools.linx.types.SvVarData;
 
@@ -128,5 +129,44 @@ public class MiscTest
         assertEquals(0, findCentromereBreakendIndex(breakendList, Q_ARM));
     }
 
+    @Test
+    public void testChrBreakendIndex()
+    {
+        LinxTester tester = new LinxTester();
 
+        final SvVarData var1 = createDel(tester.nextVarId(), "1", 100,200);
+        final SvVarData var2 = createInv(tester.nextVarId(), "1", 300,400, 1);
+        final SvVarData var3 = createDup(tester.nextVarId(), "1", 400,1000);
+
+        tester.AllVariants.add(var1);
+        tester.AllVariants.add(var2);
+        tester.AllVariants.add(var3);
+
+        tester.preClusteringInit();
+        tester.Analyser.getState().buildBreakendIndex();
+
+        final List<SvBreakend> breakendList = tester.Analyser.getState().getChrBreakendMap().get("1");
+        final ChrBreakendIndex breakendIndex = tester.Analyser.getState().getChrBreakendIndex().get("1");
+
+        assertEquals(6, breakendIndex.size());
+
+        for(int i = 0; i < breakendIndex.size(); ++i)
+        {
+            assertEquals(breakendList.get(i), breakendIndex.breakend(i));
+            assertEquals(breakendList.get(i).position(), breakendIndex.position(i));
+            assertEquals(breakendList.get(i).orientation(), breakendIndex.orientation(i));
+            assertEquals(breakendList.get(i).jcn(), breakendIndex.jcn(i), 0.001);
+        }
+
+        assertEquals(0, breakendIndex.firstIndexFrom(50));
+        assertEquals(1, breakendIndex.firstIndexFrom(101));
+        assertEquals(3, breakendIndex.firstIndexFrom(400));
+        assertEquals(6, breakendIndex.firstIndexFrom(1001));
+        assertEquals(-1, breakendIndex.lastIndexTo(99));
+        assertEquals(4, breakendIndex.lastIndexTo(400));
+
+        assertEquals(4, breakendIndex.countInRange(200, 400));
+        assertEquals(0, breakendIndex.countInRange(500, 900));
+        assertEquals(var3.getBreakend(false), breakendIndex.breakendsInRange(500, 2000).get(0));
+    }
 }